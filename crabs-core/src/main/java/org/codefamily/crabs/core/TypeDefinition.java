@@ -8,7 +8,10 @@ import org.codefamily.crabs.util.ReadonlyList;
 import org.codefamily.crabs.util.StringUtils;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 /**
  * 定义elasticsearch的type的逻辑结构
@@ -30,6 +33,9 @@ public final class TypeDefinition {
 
     private final ArrayList<FieldDefinition> fieldList;
 
+    // 附加描述信息，对应mapping中的_meta
+    private final LinkedHashMap<String, String> metaMap;
+
     // 主键列
     private FieldDefinition primaryFieldDefinition;
 
@@ -83,6 +89,7 @@ public final class TypeDefinition {
         this.allEnabled = allEnabled;
         this.fieldMap = new HashMap<Identifier, FieldDefinition>();
         this.fieldList = new ArrayList<FieldDefinition>();
+        this.metaMap = new LinkedHashMap<String, String>();
         this.published = false;
     }
 
@@ -236,6 +243,33 @@ public final class TypeDefinition {
         return this.allEnabled;
     }
 
+    /**
+     * 设置附加描述信息，随mapping的_meta保存到elasticsearch中
+     *
+     * @param key   描述信息的名称
+     * @param value 描述信息的值
+     */
+    public final void putMeta(final String key, final String value) {
+        if (key == null) {
+            throw new IllegalArgumentException("Argument[key] is required.");
+        }
+        if (value == null) {
+            throw new IllegalArgumentException("Argument[value] is required.");
+        }
+        if (this.published) {
+            throw new IllegalStateException("TypeDefinition is published.");
+        }
+        this.metaMap.put(key, value);
+    }
+
+    public final String getMeta(final String key) {
+        return this.metaMap.get(key);
+    }
+
+    public final Map<String, String> getAllMetas() {
+        return Collections.unmodifiableMap(this.metaMap);
+    }
+
     @Override
     public final boolean equals(final Object obj) {
         return obj instanceof TypeDefinition
@@ -7,11 +7,13 @@ import org.codefamily.crabs.core.IndexDefinition;
 import org.codefamily.crabs.core.TypeDefinition;
 import org.codefamily.crabs.exception.CrabsException;
 import org.elasticsearch.action.Action;
+import org.elasticsearch.action.ActionListener;
 import org.elasticsearch.action.ActionRequest;
 import org.elasticsearch.action.ActionRequestBuilder;
 import org.elasticsearch.action.ActionResponse;
 import org.elasticsearch.action.admin.cluster.ClusterAction;
 import org.elasticsearch.action.admin.indices.IndicesAction;
+import org.elasticsearch.action.search.*;
 import org.elasticsearch.client.Client;
 import org.elasticsearch.client.ClusterAdminClient;
 import org.elasticsearch.client.IndicesAdminClient;
@@ -21,6 +23,7 @@ import org.elasticsearch.common.transport.InetSocketTransportAddress;
 
 import java.io.Closeable;
 import java.io.IOException;
+import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 
@@ -197,7 +200,7 @@ public final class AdvancedClient implements Closeable {
         return this.typeDefinitionManager.getTypeDefinitions(indexIdentifier);
     }
 
-    public final <Request extends ActionRequest,
+    public final <Request extends ActionRequest<Request>,
             Response extends ActionResponse,
             Builder extends ActionRequestBuilder<Request, Response, Builder>,
             TAction extends Action<Request, Response, Builder>, V> void execute(final InternalDocumentRequestBuilder<Request, Response, Builder, TAction, V> internalDocumentRequestBuilder,
@@ -210,7 +213,129 @@ public final class AdvancedClient implements Closeable {
         callback.callback(response);
     }
 
-    public final <Request extends ActionRequest,
+    /**
+     * 执行请求，等待响应的时间以及取消由controller控制
+     */
+    public final <Request extends ActionRequest<Request>,
+            Response extends ActionResponse,
+            Builder extends ActionRequestBuilder<Request, Response, Builder>,
+            TAction extends Action<Request, Response, Builder>, V> void execute(final InternalDocumentRequestBuilder<Request, Response, Builder, TAction, V> internalDocumentRequestBuilder,
+                                                                                final ResponseCallback<Response> callback,
+                                                                                final V value,
+                                                                                final RequestController controller) throws CrabsException {
+        if (controller == null) {
+            throw new IllegalArgumentException("Argument[controller] is null.");
+        }
+        final Response response = controller.await(
+                this.physicalClient.execute(
+                        internalDocumentRequestBuilder.buildAction(),
+                        internalDocumentRequestBuilder.buildRequest(this.physicalClient, value)
+                )
+        );
+        callback.callback(response);
+    }
+
+    /**
+     * 异步执行请求，调用方线程不会等待elasticsearch的响应；响应由callback处理后通知listener，
+     * 请求失败或callback处理失败时同样通知listener。
+     * 请求被controller取消或者超过等待时间时立即通知listener失败，之后到达的响应被忽略
+     */
+    public final <Request extends ActionRequest<Request>,
+            Response extends ActionResponse,
+            Builder extends ActionRequestBuilder<Request, Response, Builder>,
+            TAction extends Action<Request, Response, Builder>, V> void executeAsync(final InternalDocumentRequestBuilder<Request, Response, Builder, TAction, V> internalDocumentRequestBuilder,
+                                                                                     final ResponseCallback<Response> callback,
+                                                                                     final V value,
+                                                                                     final CompletionListener listener,
+                                                                                     final RequestController controller) throws CrabsException {
+        if (callback == null) {
+            throw new IllegalArgumentException("Argument[callback] is null.");
+        }
+        if (listener == null) {
+            throw new IllegalArgumentException("Argument[listener] is null.");
+        }
+        if (controller == null) {
+            throw new IllegalArgumentException("Argument[controller] is null.");
+        }
+        final Request request = internalDocumentRequestBuilder.buildRequest(this.physicalClient, value);
+        // 在listener线程池中处理响应，避免阻塞网络IO线程
+        request.listenerThreaded(true);
+        this.physicalClient.execute(
+                internalDocumentRequestBuilder.buildAction(),
+                request,
+                controller.guard(new ActionListener<Response>() {
+                    @Override
+                    public final void onResponse(final Response response) {
+                        try {
+                            callback.callback(response);
+                        } catch (CrabsException e) {
+                            listener.onFailure(e);
+                            return;
+                        } catch (RuntimeException e) {
+                            listener.onFailure(new CrabsException(e.getMessage(), e));
+                            return;
+                        }
+                        listener.onComplete();
+                    }
+
+                    @Override
+                    public final void onFailure(final Throwable e) {
+                        listener.onFailure(
+                                e instanceof CrabsException ? (CrabsException) e : new CrabsException(e.getMessage(), e)
+                        );
+                    }
+                })
+        );
+    }
+
+    /**
+     * 将多个搜索请求合并为一次multi search请求发出，响应按请求的顺序交给对应的callback处理；
+     * 任何一个请求失败时抛出异常，此时不会调用任何callback
+     */
+    public final <V> void executeMultiSearch(
+            final List<? extends InternalDocumentRequestBuilder<SearchRequest, SearchResponse, SearchRequestBuilder, SearchAction, V>> internalDocumentRequestBuilders,
+            final List<? extends ResponseCallback<SearchResponse>> callbacks,
+            final List<? extends V> values,
+            final RequestController controller) throws CrabsException {
+        if (internalDocumentRequestBuilders == null) {
+            throw new IllegalArgumentException("Argument[internalDocumentRequestBuilders] is null.");
+        }
+        if (callbacks == null) {
+            throw new IllegalArgumentException("Argument[callbacks] is null.");
+        }
+        if (values == null) {
+            throw new IllegalArgumentException("Argument[values] is null.");
+        }
+        if (controller == null) {
+            throw new IllegalArgumentException("Argument[controller] is null.");
+        }
+        final int size = internalDocumentRequestBuilders.size();
+        if (callbacks.size() != size || values.size() != size) {
+            throw new IllegalArgumentException("Arguments[internalDocumentRequestBuilders, callbacks, values] " +
+                    "must have the same size.");
+        }
+        final MultiSearchRequest multiSearchRequest = new MultiSearchRequest();
+        for (int index = 0; index < size; index++) {
+            multiSearchRequest.add(
+                    internalDocumentRequestBuilders.get(index).buildRequest(this.physicalClient, values.get(index))
+            );
+        }
+        final MultiSearchResponse multiSearchResponse = controller.await(
+                this.physicalClient.execute(MultiSearchAction.INSTANCE, multiSearchRequest)
+        );
+        final MultiSearchResponse.Item[] items = multiSearchResponse.getResponses();
+        for (int index = 0; index < size; index++) {
+            if (items[index].isFailure()) {
+                throw new CrabsException("Failed to execute search request[" + index + "] in multi search, "
+                        + items[index].getFailureMessage());
+            }
+        }
+        for (int index = 0; index < size; index++) {
+            callbacks.get(index).callback(items[index].getResponse());
+        }
+    }
+
+    public final <Request extends ActionRequest<Request>,
             Response extends ActionResponse,
             Builder extends ActionRequestBuilder<Request, Response, Builder>,
             Action extends IndicesAction<Request, Response, Builder>, V> void execute(final InternalIndicesRequestBuilder<Request, Response, Builder, Action, V> internalIndicesRequestBuilder,
@@ -224,7 +349,7 @@ public final class AdvancedClient implements Closeable {
         callback.callback(response);
     }
 
-    public final <Request extends ActionRequest,
+    public final <Request extends ActionRequest<Request>,
             Response extends ActionResponse,
             Builder extends ActionRequestBuilder<Request, Response, Builder>,
             Action extends ClusterAction<Request, Response, Builder>, V> void execute(final InternalClusterRequestBuilder<Request, Response, Builder, Action, V> abstractIndicesRequestBuilder,
@@ -327,7 +452,7 @@ public final class AdvancedClient implements Closeable {
 
     }
 
-    public interface InternalDocumentRequestBuilder<Request extends ActionRequest, Response extends ActionResponse,
+    public interface InternalDocumentRequestBuilder<Request extends ActionRequest<Request>, Response extends ActionResponse,
             Builder extends ActionRequestBuilder<Request, Response, Builder>,
             TAction extends Action<Request, Response, Builder>, V> {
 
@@ -337,7 +462,7 @@ public final class AdvancedClient implements Closeable {
 
     }
 
-    public interface InternalIndicesRequestBuilder<Request extends ActionRequest, Response extends ActionResponse,
+    public interface InternalIndicesRequestBuilder<Request extends ActionRequest<Request>, Response extends ActionResponse,
             Builder extends ActionRequestBuilder<Request, Response, Builder>,
             Action extends IndicesAction<Request, Response, Builder>, V> {
 
@@ -346,7 +471,7 @@ public final class AdvancedClient implements Closeable {
         Request buildRequest(IndicesAdminClient adminClient, V value) throws CrabsException;
     }
 
-    public interface InternalClusterRequestBuilder<Request extends ActionRequest, Response extends ActionResponse,
+    public interface InternalClusterRequestBuilder<Request extends ActionRequest<Request>, Response extends ActionResponse,
             Builder extends ActionRequestBuilder<Request, Response, Builder>,
             Action extends ClusterAction<Request, Response, Builder>, V> {
 
@@ -360,4 +485,12 @@ public final class AdvancedClient implements Closeable {
         void callback(T response) throws CrabsException;
     }
 
+    public interface CompletionListener {
+
+        void onComplete();
+
+        void onFailure(CrabsException e);
+
+    }
+
 }
@@ -0,0 +1,193 @@
+package org.codefamily.crabs.core.client;
+
+import org.codefamily.crabs.core.exception.RequestCancelledException;
+import org.codefamily.crabs.core.exception.RequestTimeoutException;
+import org.elasticsearch.ElasticsearchTimeoutException;
+import org.elasticsearch.action.ActionFuture;
+import org.elasticsearch.action.ActionListener;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 控制一次执行中发往elasticsearch的请求，限定客户端等待每个响应的时间，
+ * 并可以从其它线程取消正在等待的请求；取消后，之后的请求都不会再被发出
+ *
+ * @author zhuchunlai
+ * @version $Id: RequestController.java, v1.0 2014/10/18 10:00 $
+ */
+public final class RequestController {
+
+    public static final long NO_TIMEOUT = 0L;
+
+    public RequestController(final long timeoutMillis) {
+        if (timeoutMillis < 0) {
+            throw new IllegalArgumentException("Argument[timeoutMillis] is less than 0.");
+        }
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    private final long timeoutMillis;
+
+    private ActionFuture<?> pendingFuture;
+
+    private AsyncRequestListener<?> pendingAsyncRequestListener;
+
+    private boolean cancelled;
+
+    public final long getTimeoutMillis() {
+        return this.timeoutMillis;
+    }
+
+    public final synchronized boolean isCancelled() {
+        return this.cancelled;
+    }
+
+    /**
+     * 取消正在等待的请求，等待的线程会立即返回；elasticsearch端的执行仍由搜索的timeout限定
+     */
+    public final void cancel() {
+        final AsyncRequestListener<?> asyncRequestListener;
+        synchronized (this) {
+            this.cancelled = true;
+            if (this.pendingFuture != null) {
+                this.pendingFuture.cancel(true);
+                this.pendingFuture = null;
+            }
+            asyncRequestListener = this.pendingAsyncRequestListener;
+        }
+        if (asyncRequestListener != null) {
+            asyncRequestListener.onFailure(new RequestCancelledException("Request has been cancelled."));
+        }
+    }
+
+    /**
+     * 包装异步请求的listener：取消或者超过等待时间时立即通知listener失败，之后到达的响应被忽略
+     */
+    final <Response> ActionListener<Response> guard(final ActionListener<Response> listener)
+            throws RequestCancelledException {
+        final AsyncRequestListener<Response> asyncRequestListener = new AsyncRequestListener<Response>(listener);
+        synchronized (this) {
+            if (this.cancelled) {
+                throw new RequestCancelledException("Request has been cancelled.");
+            }
+            this.pendingAsyncRequestListener = asyncRequestListener;
+        }
+        if (this.timeoutMillis != NO_TIMEOUT) {
+            asyncRequestListener.scheduleTimeout();
+        }
+        return asyncRequestListener;
+    }
+
+    final <Response> Response await(final ActionFuture<Response> future)
+            throws RequestCancelledException, RequestTimeoutException {
+        synchronized (this) {
+            if (this.cancelled) {
+                future.cancel(true);
+                throw new RequestCancelledException("Request has been cancelled.");
+            }
+            this.pendingFuture = future;
+        }
+        try {
+            if (this.timeoutMillis == NO_TIMEOUT) {
+                return future.actionGet();
+            } else {
+                return future.actionGet(this.timeoutMillis);
+            }
+        } catch (CancellationException e) {
+            throw new RequestCancelledException("Request has been cancelled.");
+        } catch (ElasticsearchTimeoutException e) {
+            future.cancel(true);
+            throw new RequestTimeoutException("No response from elasticsearch in " + this.timeoutMillis + "ms.");
+        } finally {
+            synchronized (this) {
+                if (this.pendingFuture == future) {
+                    this.pendingFuture = null;
+                }
+            }
+        }
+    }
+
+    private final class AsyncRequestListener<Response> implements ActionListener<Response> {
+
+        AsyncRequestListener(final ActionListener<Response> listener) {
+            this.listener = listener;
+        }
+
+        private final ActionListener<Response> listener;
+
+        private ScheduledFuture<?> timeoutFuture;
+
+        private boolean completed;
+
+        final synchronized void scheduleTimeout() {
+            if (!this.completed) {
+                this.timeoutFuture = TimeoutScheduler.INSTANCE.schedule(new Runnable() {
+                    @Override
+                    public final void run() {
+                        AsyncRequestListener.this.onFailure(
+                                new RequestTimeoutException(
+                                        "No response from elasticsearch in " + RequestController.this.timeoutMillis + "ms."
+                                )
+                        );
+                    }
+                }, RequestController.this.timeoutMillis, TimeUnit.MILLISECONDS);
+            }
+        }
+
+        @Override
+        public final void onResponse(final Response response) {
+            if (this.complete()) {
+                this.listener.onResponse(response);
+            }
+        }
+
+        @Override
+        public final void onFailure(final Throwable e) {
+            if (this.complete()) {
+                this.listener.onFailure(e);
+            }
+        }
+
+        // 响应、失败、取消和超时只有第一个会被通知
+        private boolean complete() {
+            synchronized (this) {
+                if (this.completed) {
+                    return false;
+                }
+                this.completed = true;
+                if (this.timeoutFuture != null) {
+                    this.timeoutFuture.cancel(false);
+                }
+            }
+            synchronized (RequestController.this) {
+                if (RequestController.this.pendingAsyncRequestListener == this) {
+                    RequestController.this.pendingAsyncRequestListener = null;
+                }
+            }
+            return true;
+        }
+
+    }
+
+    // 所有异步请求共用的超时触发线程，第一次使用时创建
+    private static final class TimeoutScheduler {
+
+        static final ScheduledExecutorService INSTANCE = Executors.newSingleThreadScheduledExecutor(
+                new ThreadFactory() {
+                    @Override
+                    public final Thread newThread(final Runnable runnable) {
+                        final Thread thread = new Thread(runnable, "request-timeout-scheduler");
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                }
+        );
+
+    }
+
+}
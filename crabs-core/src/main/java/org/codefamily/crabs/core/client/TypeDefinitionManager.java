@@ -77,6 +77,13 @@ final class TypeDefinitionManager {
                             .endObject();
                     contentBuilder.startObject("_all").field("enabled", typeDefinition.isAllEnabled()).endObject();
                     contentBuilder.startObject("_ttl").field("enabled", typeDefinition.isTTLEnabled()).endObject();
+                    if (!typeDefinition.getAllMetas().isEmpty()) {
+                        contentBuilder.startObject("_meta");
+                        for (Map.Entry<String, String> metaEntry : typeDefinition.getAllMetas().entrySet()) {
+                            contentBuilder.field(metaEntry.getKey(), metaEntry.getValue());
+                        }
+                        contentBuilder.endObject();
+                    }
                     contentBuilder.startObject("properties");
                     for (TypeDefinition.FieldDefinition fieldDefinition : typeDefinition.getAllFieldDefinitions()) {
                         final DataType dataType = fieldDefinition.getDataType();
@@ -273,6 +280,7 @@ final class TypeDefinitionManager {
                                         fieldDefinition.asPrimaryField();
                                     }
                                 }
+                                putMetas(typeDefinition, source);
                                 typeDefinition.publish();
                                 typeDefinitionList.add(typeDefinition);
                             }
@@ -395,6 +403,7 @@ final class TypeDefinitionManager {
                                     fieldDefinition.asPrimaryField();
                                 }
                             }
+                            putMetas(typeDefinition, source);
                             typeDefinition.publish();
                             typeDefinitionList.add(typeDefinition);
                         }
@@ -447,4 +456,16 @@ final class TypeDefinitionManager {
         return result.exists;
     }
 
+    private static void putMetas(final TypeDefinition typeDefinition, final Map<String, Object> source) {
+        if (source.containsKey("_meta")) {
+            @SuppressWarnings("unchecked")
+            final Map<String, Object> metaMap = (Map<String, Object>) source.get("_meta");
+            for (Map.Entry<String, Object> metaEntry : metaMap.entrySet()) {
+                if (metaEntry.getValue() != null) {
+                    typeDefinition.putMeta(metaEntry.getKey(), metaEntry.getValue().toString());
+                }
+            }
+        }
+    }
+
 }
@@ -0,0 +1,17 @@
+package org.codefamily.crabs.core.exception;
+
+import org.codefamily.crabs.exception.CrabsException;
+
+/**
+ * 等待elasticsearch响应的请求被取消
+ *
+ * @author zhuchunlai
+ * @version $Id: RequestCancelledException.java, v1.0 2014/10/18 10:05 $
+ */
+public final class RequestCancelledException extends CrabsException {
+
+    public RequestCancelledException(final String message) {
+        super(message);
+    }
+
+}
@@ -0,0 +1,17 @@
+package org.codefamily.crabs.core.exception;
+
+import org.codefamily.crabs.exception.CrabsException;
+
+/**
+ * 在限定时间内没有得到elasticsearch的响应
+ *
+ * @author zhuchunlai
+ * @version $Id: RequestTimeoutException.java, v1.0 2014/10/18 10:05 $
+ */
+public final class RequestTimeoutException extends CrabsException {
+
+    public RequestTimeoutException(final String message) {
+        super(message);
+    }
+
+}
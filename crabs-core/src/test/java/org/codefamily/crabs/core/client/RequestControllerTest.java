@@ -0,0 +1,98 @@
+package org.codefamily.crabs.core.client;
+
+import org.codefamily.crabs.core.exception.RequestCancelledException;
+import org.codefamily.crabs.core.exception.RequestTimeoutException;
+import org.elasticsearch.action.ActionListener;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class RequestControllerTest {
+
+    @Test
+    public void testGuard_Cancel() throws Exception {
+        final RequestController controller = new RequestController(RequestController.NO_TIMEOUT);
+        final RecordingListener listener = new RecordingListener();
+        final ActionListener<String> guardedListener = controller.guard(listener);
+        controller.cancel();
+        assertTrue(listener.await());
+        assertTrue(listener.failure instanceof RequestCancelledException);
+        // 取消后到达的响应被忽略
+        guardedListener.onResponse("response");
+        assertNull(listener.response);
+        assertEquals(1, listener.notifiedCount);
+    }
+
+    @Test
+    public void testGuard_AlreadyCancelled() throws Exception {
+        final RequestController controller = new RequestController(RequestController.NO_TIMEOUT);
+        controller.cancel();
+        try {
+            controller.guard(new RecordingListener());
+            fail();
+        } catch (RequestCancelledException e) {
+            // expected.
+        }
+    }
+
+    @Test
+    public void testGuard_Timeout() throws Exception {
+        final RequestController controller = new RequestController(50L);
+        final RecordingListener listener = new RecordingListener();
+        final ActionListener<String> guardedListener = controller.guard(listener);
+        assertTrue(listener.await());
+        assertTrue(listener.failure instanceof RequestTimeoutException);
+        guardedListener.onResponse("response");
+        assertNull(listener.response);
+        assertEquals(1, listener.notifiedCount);
+    }
+
+    @Test
+    public void testGuard_Response() throws Exception {
+        final RequestController controller = new RequestController(50L);
+        final RecordingListener listener = new RecordingListener();
+        final ActionListener<String> guardedListener = controller.guard(listener);
+        guardedListener.onResponse("response");
+        assertTrue(listener.await());
+        assertEquals("response", listener.response);
+        // 响应之后的超时和取消不再通知
+        Thread.sleep(100L);
+        controller.cancel();
+        assertNull(listener.failure);
+        assertEquals(1, listener.notifiedCount);
+    }
+
+    private static final class RecordingListener implements ActionListener<String> {
+
+        private final CountDownLatch notifiedLatch = new CountDownLatch(1);
+
+        private volatile String response;
+
+        private volatile Throwable failure;
+
+        private volatile int notifiedCount;
+
+        @Override
+        public final void onResponse(final String response) {
+            this.response = response;
+            this.notifiedCount++;
+            this.notifiedLatch.countDown();
+        }
+
+        @Override
+        public final void onFailure(final Throwable e) {
+            this.failure = e;
+            this.notifiedCount++;
+            this.notifiedLatch.countDown();
+        }
+
+        final boolean await() throws InterruptedException {
+            return this.notifiedLatch.await(5, TimeUnit.SECONDS);
+        }
+
+    }
+
+}
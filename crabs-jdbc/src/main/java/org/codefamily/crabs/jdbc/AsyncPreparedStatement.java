@@ -0,0 +1,17 @@
+package org.codefamily.crabs.jdbc;
+
+import java.sql.SQLException;
+import java.util.concurrent.Future;
+
+/**
+ * 预编译语句的异步查询接口，通过{@link java.sql.PreparedStatement#unwrap(Class)}获取，
+ * 执行时使用当前已设置的参数值
+ *
+ * @author zhuchunlai
+ * @version $Id: AsyncPreparedStatement.java, v1.0 2014/10/17 15:20 $
+ */
+public interface AsyncPreparedStatement extends AsyncStatement {
+
+    Future<java.sql.ResultSet> executeQueryAsync() throws SQLException;
+
+}
@@ -0,0 +1,19 @@
+package org.codefamily.crabs.jdbc;
+
+import java.sql.SQLException;
+import java.util.concurrent.Future;
+
+/**
+ * 异步查询接口，通过{@link java.sql.Statement#unwrap(Class)}获取。
+ * 查询请求发出后立即返回，调用方线程不需要等待elasticsearch的响应；
+ * 返回的结果集不会作为Statement的当前结果集，需要由调用方负责关闭；
+ * Statement的查询超时时间和{@link java.sql.Statement#cancel()}同样作用于异步查询
+ *
+ * @author zhuchunlai
+ * @version $Id: AsyncStatement.java, v1.0 2014/10/17 15:20 $
+ */
+public interface AsyncStatement {
+
+    Future<java.sql.ResultSet> executeQueryAsync(String SQL) throws SQLException;
+
+}
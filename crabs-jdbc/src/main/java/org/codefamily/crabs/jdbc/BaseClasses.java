@@ -194,11 +194,6 @@ final class BaseClasses {
 
         // Unsupported Method**********************************
 
-        @Override
-        public final void addBatch() throws SQLException {
-            throw new SQLFeatureNotSupportedException();
-        }
-
         @Override
         public final void setBigDecimal(final int parameterIndex,
                                         final BigDecimal value) throws SQLException {
@@ -1292,12 +1287,6 @@ final class BaseClasses {
             throw new SQLFeatureNotSupportedException();
         }
 
-        @Override
-        public final void setQueryTimeout(final int seconds)
-                throws SQLException {
-            throw new SQLFeatureNotSupportedException();
-        }
-
         @Override
         public final void setCursorName(final String name) throws SQLException {
             throw new SQLFeatureNotSupportedException();
@@ -1309,11 +1298,6 @@ final class BaseClasses {
             throw new SQLFeatureNotSupportedException();
         }
 
-        @Override
-        public final void setFetchSize(final int rows) throws SQLException {
-            throw new SQLFeatureNotSupportedException();
-        }
-
         @Override
         public final void setPoolable(final boolean poolable)
                 throws SQLException {
@@ -1326,11 +1310,6 @@ final class BaseClasses {
             throw new SQLFeatureNotSupportedException();
         }
 
-        @Override
-        public final int[] executeBatch() throws SQLException {
-            throw new SQLFeatureNotSupportedException();
-        }
-
         @Override
         public final int executeUpdate(final String SQL,
                                        final int autoGeneratedKeys) throws SQLException {
@@ -1367,21 +1346,6 @@ final class BaseClasses {
             throw new SQLFeatureNotSupportedException();
         }
 
-        @Override
-        public final void addBatch(final String SQL) throws SQLException {
-            throw new SQLFeatureNotSupportedException();
-        }
-
-        @Override
-        public final void clearBatch() throws SQLException {
-            throw new SQLFeatureNotSupportedException();
-        }
-
-        @Override
-        public final void cancel() throws SQLException {
-            throw new SQLFeatureNotSupportedException();
-        }
-
     }
 
     private BaseClasses() {
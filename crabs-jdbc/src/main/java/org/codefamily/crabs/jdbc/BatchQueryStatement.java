@@ -0,0 +1,17 @@
+package org.codefamily.crabs.jdbc;
+
+import java.sql.SQLException;
+
+/**
+ * 批量查询接口，通过{@link java.sql.Statement#unwrap(Class)}获取。
+ * 通过addBatch加入的查询合并为一次multi search请求发出，结果集与加入的顺序一致；
+ * 返回的结果集不会作为Statement的当前结果集，需要由调用方负责关闭
+ *
+ * @author zhuchunlai
+ * @version $Id: BatchQueryStatement.java, v1.0 2014/10/20 10:30 $
+ */
+public interface BatchQueryStatement {
+
+    java.sql.ResultSet[] executeQueryBatch() throws SQLException;
+
+}
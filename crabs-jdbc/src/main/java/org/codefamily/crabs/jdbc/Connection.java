@@ -12,6 +12,7 @@ import org.codefamily.crabs.exception.CrabsException;
 import org.codefamily.crabs.jdbc.BaseClasses.ConnectionBase;
 import org.codefamily.crabs.jdbc.Protocol.PropertyEntry;
 import org.codefamily.crabs.jdbc.compiler.GrammarAnalyzer;
+import org.codefamily.crabs.jdbc.compiler.LiteralParameterizer;
 import org.codefamily.crabs.jdbc.compiler.StatementCache;
 import org.codefamily.crabs.jdbc.engine.ExecuteEnvironment;
 import org.codefamily.crabs.jdbc.internal.InternalResultSet;
@@ -24,6 +25,8 @@ public final class Connection extends ConnectionBase {
 
     private static final int TRANSACTION_LEVEL = Connection.TRANSACTION_NONE;
 
+    private static final Object[] EMPTY_ARGUMENT_VALUES = new Object[0];
+
     final AdvancedClient advancedClient;
 
     final ExecuteEnvironment executeEnvironment;
@@ -34,6 +37,7 @@ public final class Connection extends ConnectionBase {
 
     private final Identifier connectedDatabaseIdentifier;
 
+    // 同一URL的连接共用
     private final StatementCache statementCache;
 
     Connection(final String URL, final Properties properties) throws SQLException {
@@ -73,15 +77,26 @@ public final class Connection extends ConnectionBase {
         }
         final StatementCache statementCache;
         try {
-            statementCache = new StatementCache();
-            statementCache.start();
+            statementCache = StatementCache.getInstance(
+                    URL,
+                    Integer.parseInt(
+                            finallyProperties.getProperty(
+                                    Protocol.PROPERTY_ENTRY$STATEMENT_CACHE_SIZE.identifier,
+                                    Protocol.PROPERTY_ENTRY$STATEMENT_CACHE_SIZE.defaultValue
+                            )
+                    )
+            );
         } catch (Throwable ex) {
             throw new SQLException(ex.getMessage(), ex);
         }
         this.URL = URL;
         this.advancedClient = advancedClient;
-        this.executeEnvironment
-                = new ExecuteEnvironment(advancedClient, connectedDatabaseIdentifier, finallyProperties);
+        this.executeEnvironment = new ExecuteEnvironment(
+                advancedClient,
+                connectedDatabaseIdentifier,
+                finallyProperties,
+                URL
+        );
         this.properties = finallyProperties;
         this.connectedDatabaseIdentifier = connectedDatabaseIdentifier;
         this.statementCache = statementCache;
@@ -266,20 +281,16 @@ public final class Connection extends ConnectionBase {
             return;
         }
         try {
-            this.statementCache.stop();
+            this.executeEnvironment.close();
+        } catch (IOException e) {
+            throw new SQLException(e.getMessage(), e);
         } finally {
             try {
-                this.executeEnvironment.close();
+                this.advancedClient.close();
             } catch (IOException e) {
                 throw new SQLException(e.getMessage(), e);
             } finally {
-                try {
-                    this.advancedClient.close();
-                } catch (IOException e) {
-                    throw new SQLException(e.getMessage(), e);
-                } finally {
-                    this.closed = true;
-                }
+                this.closed = true;
             }
         }
     }
@@ -289,6 +300,11 @@ public final class Connection extends ConnectionBase {
         return this.executeEnvironment;
     }
 
+    // 用于查看语句缓存的命中、未命中以及淘汰次数
+    public final StatementCache getStatementCache() {
+        return this.statementCache;
+    }
+
     final org.codefamily.crabs.jdbc.lang.Statement analyzeStatement(final String SQL) throws SQLException {
         org.codefamily.crabs.jdbc.lang.Statement statement = this.statementCache.getStatement(SQL);
         if (statement == null) {
@@ -298,6 +314,63 @@ public final class Connection extends ConnectionBase {
         return statement;
     }
 
+    /**
+     * 不带参数执行的SQL，where子句的比较值以及limit子句的常量被替换为参数，结构相同的SQL共用同一个语法分析的结果，
+     * 被替换的常量作为参数值返回；不能参数化时与{@link #analyzeStatement(String)}相同
+     */
+    final AnalyzedStatement analyzeStatementWithLiterals(final String SQL) throws SQLException {
+        final LiteralParameterizer literalParameterizer = LiteralParameterizer.parameterize(SQL);
+        if (literalParameterizer != null) {
+            final AnalyzedStatement analyzedStatement;
+            try {
+                analyzedStatement = this.analyzeParameterizedStatement(literalParameterizer);
+            } catch (SQLException e) {
+                // 参数化只是优化，参数化SQL不能分析时由原始SQL的语法分析决定结果
+                return new AnalyzedStatement(this.analyzeStatement(SQL), EMPTY_ARGUMENT_VALUES);
+            } catch (CrabsException e) {
+                return new AnalyzedStatement(this.analyzeStatement(SQL), EMPTY_ARGUMENT_VALUES);
+            }
+            if (analyzedStatement != null) {
+                return analyzedStatement;
+            }
+        }
+        return new AnalyzedStatement(this.analyzeStatement(SQL), EMPTY_ARGUMENT_VALUES);
+    }
+
+    /**
+     * @return 参数化SQL不能使用时返回null
+     */
+    private AnalyzedStatement analyzeParameterizedStatement(final LiteralParameterizer literalParameterizer)
+            throws SQLException, CrabsException {
+        final String parameterizedSQL = literalParameterizer.parameterizedSQL;
+        // 与原始SQL共用缓存：缓存的是SQL文本的语法分析结果，与SQL来自参数化还是用户编写无关
+        org.codefamily.crabs.jdbc.lang.Statement statement = this.statementCache.getStatement(parameterizedSQL);
+        if (statement == null) {
+            statement = GrammarAnalyzer.analyze(parameterizedSQL);
+            // 不能参数化的语句也放入缓存，之后结构相同的SQL不必再次分析参数化SQL
+            this.statementCache.putStatement(parameterizedSQL, statement);
+        }
+        // 参数化SQL可能与用户编写的带参数SQL相同，每次使用前都要检查参数的位置
+        if (LiteralParameterizer.isParameterizable(statement, literalParameterizer.argumentValues.length)) {
+            return new AnalyzedStatement(statement, literalParameterizer.argumentValues);
+        }
+        return null;
+    }
+
+    static final class AnalyzedStatement {
+
+        AnalyzedStatement(final org.codefamily.crabs.jdbc.lang.Statement statement,
+                          final Object[] argumentValues) {
+            this.statement = statement;
+            this.argumentValues = argumentValues;
+        }
+
+        final org.codefamily.crabs.jdbc.lang.Statement statement;
+
+        final Object[] argumentValues;
+
+    }
+
     public static final class DatabaseTypeSystem {
 
         DatabaseTypeSystem(final Connection connection) {
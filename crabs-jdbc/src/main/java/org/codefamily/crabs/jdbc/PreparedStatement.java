@@ -9,8 +9,9 @@ import org.codefamily.crabs.jdbc.lang.extension.statement.SelectStatement;
 import java.sql.*;
 import java.sql.Date;
 import java.util.*;
+import java.util.concurrent.Future;
 
-public final class PreparedStatement extends PreparedStatementBase {
+public final class PreparedStatement extends PreparedStatementBase implements AsyncPreparedStatement {
 
     private static int toInnerParameterIndex(final int outerParameterIndex) {
         return outerParameterIndex - 1;
@@ -160,6 +161,31 @@ public final class PreparedStatement extends PreparedStatementBase {
         }
     }
 
+    @Override
+    public final Future<java.sql.ResultSet> executeQueryAsync() throws SQLException {
+        final Statement statement = this.statement;
+        if (statement instanceof SelectStatement) {
+            return this.executeQueryAsync((SelectStatement) statement, this.getParameterValues());
+        } else {
+            throw new SQLException("SQL is not a query statement. \n" + this.SQL);
+        }
+    }
+
+    @Override
+    public final void addBatch() throws SQLException {
+        final Statement statement = this.statement;
+        if (statement instanceof SelectStatement) {
+            this.addBatch((SelectStatement) statement, this.getParameterValues());
+        } else {
+            throw new SQLException("SQL is not a query statement. \n" + this.SQL);
+        }
+    }
+
+    @Override
+    public final void addBatch(final String SQL) throws SQLException {
+        throw new SQLException("Can not add SQL to batch of prepared statement.");
+    }
+
     @Override
     public final int executeUpdate() throws SQLException {
         final Statement statement = this.statement;
@@ -132,6 +132,9 @@ public final class Protocol {
     public static final PropertyEntry PROPERTY_ENTRY$SCAN_SIZE
             = new PropertyEntry("clientScanSize", Integer.MAX_VALUE, "500", "Client scan size.");
 
+    public static final PropertyEntry PROPERTY_ENTRY$SCROLL_KEEP_ALIVE
+            = new PropertyEntry("scrollKeepAlive", Integer.MAX_VALUE, "60", "Scroll keep alive time(s) between two fetches.");
+
     public static final PropertyEntry PROPERTY_ENTRY$DRIVER_NAME
             = new PropertyEntry("driverName", Integer.MAX_VALUE, Driver.class.getName(), "Driver name.");
 
@@ -153,6 +156,24 @@ public final class Protocol {
     public static final PropertyEntry PROPERTY_ENTRY$ES_CACHE_ENABLED
             = new PropertyEntry("elasticsearchCacheEnabled", 1, String.valueOf(Boolean.TRUE), "Enable elasticsearch cache");
 
+    public static final PropertyEntry PROPERTY_ENTRY$SEARCH_TEMPLATE_ENABLED
+            = new PropertyEntry("searchTemplateEnabled", 1, String.valueOf(Boolean.TRUE), "Send prepared statements as elasticsearch search templates.");
+
+    public static final PropertyEntry PROPERTY_ENTRY$FLAT_GROUP_BY_COLUMN_COUNT
+            = new PropertyEntry("flatGroupByColumnCount", Integer.MAX_VALUE, "0", "Group by a script composite key when group by columns reach this count, 0 is disabled.");
+
+    public static final PropertyEntry PROPERTY_ENTRY$AGGREGATION_PARTITION_INTERVAL
+            = new PropertyEntry("aggregationPartitionInterval", Integer.MAX_VALUE, "0", "Cache aggregations of closed time partitions of this length(s) within a date between condition, 0 is disabled.");
+
+    public static final PropertyEntry PROPERTY_ENTRY$AGGREGATION_PARTITION_CACHE_MEMORY
+            = new PropertyEntry("aggregationPartitionCacheMemory", Integer.MAX_VALUE, "64", "Max memory(MB) of cached aggregation partitions shared by the connections of the same URL.");
+
+    public static final PropertyEntry PROPERTY_ENTRY$STATEMENT_CACHE_SIZE
+            = new PropertyEntry("statementCacheSize", Integer.MAX_VALUE, "1000", "Max count of cached statements shared by the connections of the same URL.");
+
+    public static final PropertyEntry PROPERTY_ENTRY$MATERIALIZED_VIEW_REFRESH_INTERVAL
+            = new PropertyEntry("materializedViewRefreshInterval", Integer.MAX_VALUE, "60", "Refresh a materialized view in background when a query could be answered by it, if it was refreshed more than this time(s) ago, 0 is never.");
+
     // =======================================================
 
     static final int RESULT_SET_TYPE = ResultSet.TYPE_FORWARD_ONLY;
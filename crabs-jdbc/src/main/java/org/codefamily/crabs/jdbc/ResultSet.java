@@ -98,7 +98,7 @@ public final class ResultSet extends ResultSetBase {
                 return false;
             }
         } catch (CrabsException ex) {
-            throw new SQLException(ex.getMessage(), ex);
+            throw Statement.toSQLException(ex);
         }
     }
 
@@ -114,6 +114,15 @@ public final class ResultSet extends ResultSetBase {
 
     @Override
     public final boolean getBoolean(final int columnIndex) throws SQLException {
+        final DataType primitiveDataType = this.getPrimitiveColumnDataType(columnIndex);
+        if (primitiveDataType != null && primitiveDataType != DataType.DATE) {
+            if (this.wasNull) {
+                return false;
+            }
+            return isDoubleDataType(primitiveDataType)
+                    ? this.getPrimitiveDoubleValue(columnIndex) == Constants.BOOLEAN_TRUE_BYTE
+                    : this.getPrimitiveLongValue(columnIndex) == Constants.BOOLEAN_TRUE_BYTE;
+        }
         final Object value = this.getObject(columnIndex);
         if (value != null) {
             final DataType columnDataType = this.getMetaData().getColumnDataType(columnIndex);
@@ -151,6 +160,15 @@ public final class ResultSet extends ResultSetBase {
 
     @Override
     public final byte getByte(final int columnIndex) throws SQLException {
+        final DataType primitiveDataType = this.getPrimitiveColumnDataType(columnIndex);
+        if (primitiveDataType != null) {
+            if (this.wasNull) {
+                return 0;
+            }
+            return isDoubleDataType(primitiveDataType)
+                    ? (byte) this.getPrimitiveDoubleValue(columnIndex)
+                    : (byte) this.getPrimitiveLongValue(columnIndex);
+        }
         final Object value = this.getObject(columnIndex);
         if (value != null) {
             final DataType columnValueType = this.getMetaData()
@@ -183,6 +201,15 @@ public final class ResultSet extends ResultSetBase {
 
     @Override
     public final short getShort(final int columnIndex) throws SQLException {
+        final DataType primitiveDataType = this.getPrimitiveColumnDataType(columnIndex);
+        if (primitiveDataType != null) {
+            if (this.wasNull) {
+                return 0;
+            }
+            return isDoubleDataType(primitiveDataType)
+                    ? (short) this.getPrimitiveDoubleValue(columnIndex)
+                    : (short) this.getPrimitiveLongValue(columnIndex);
+        }
         final Object value = this.getObject(columnIndex);
         if (value != null) {
             final DataType columnValueType = this.getMetaData().getColumnDataType(columnIndex);
@@ -214,6 +241,15 @@ public final class ResultSet extends ResultSetBase {
 
     @Override
     public final int getInt(final int columnIndex) throws SQLException {
+        final DataType primitiveDataType = this.getPrimitiveColumnDataType(columnIndex);
+        if (primitiveDataType != null) {
+            if (this.wasNull) {
+                return 0;
+            }
+            return isDoubleDataType(primitiveDataType)
+                    ? (int) this.getPrimitiveDoubleValue(columnIndex)
+                    : (int) this.getPrimitiveLongValue(columnIndex);
+        }
         final Object value = this.getObject(columnIndex);
         if (value != null) {
             final DataType columnValueType = this.getMetaData().getColumnDataType(columnIndex);
@@ -252,6 +288,15 @@ public final class ResultSet extends ResultSetBase {
 
     @Override
     public final long getLong(final int columnIndex) throws SQLException {
+        final DataType primitiveDataType = this.getPrimitiveColumnDataType(columnIndex);
+        if (primitiveDataType != null) {
+            if (this.wasNull) {
+                return 0;
+            }
+            return isDoubleDataType(primitiveDataType)
+                    ? (long) this.getPrimitiveDoubleValue(columnIndex)
+                    : this.getPrimitiveLongValue(columnIndex);
+        }
         final Object value = this.getObject(columnIndex);
         if (value != null) {
             final DataType columnValueType = this.getMetaData().getColumnDataType(columnIndex);
@@ -290,6 +335,10 @@ public final class ResultSet extends ResultSetBase {
 
     @Override
     public final Timestamp getTimestamp(final int columnIndex) throws SQLException {
+        final DataType primitiveDataType = this.getPrimitiveColumnDataType(columnIndex);
+        if (primitiveDataType == DataType.DATE) {
+            return this.wasNull ? null : new Timestamp(this.getPrimitiveLongValue(columnIndex));
+        }
         final Object value = this.getObject(columnIndex);
         if (value != null) {
             final DataType columnValueType = this.getMetaData().getColumnDataType(columnIndex);
@@ -322,6 +371,15 @@ public final class ResultSet extends ResultSetBase {
 
     @Override
     public final float getFloat(final int columnIndex) throws SQLException {
+        final DataType primitiveDataType = this.getPrimitiveColumnDataType(columnIndex);
+        if (primitiveDataType != null) {
+            if (this.wasNull) {
+                return 0;
+            }
+            return isDoubleDataType(primitiveDataType)
+                    ? (float) this.getPrimitiveDoubleValue(columnIndex)
+                    : (float) this.getPrimitiveLongValue(columnIndex);
+        }
         final Object value = this.getObject(columnIndex);
         if (value != null) {
             final DataType columnValueType = this.getMetaData().getColumnDataType(columnIndex);
@@ -360,6 +418,15 @@ public final class ResultSet extends ResultSetBase {
 
     @Override
     public final double getDouble(final int columnIndex) throws SQLException {
+        final DataType primitiveDataType = this.getPrimitiveColumnDataType(columnIndex);
+        if (primitiveDataType != null) {
+            if (this.wasNull) {
+                return 0;
+            }
+            return isDoubleDataType(primitiveDataType)
+                    ? this.getPrimitiveDoubleValue(columnIndex)
+                    : (double) this.getPrimitiveLongValue(columnIndex);
+        }
         final Object value = this.getObject(columnIndex);
         if (value != null) {
             final DataType columnValueType = this.getMetaData().getColumnDataType(columnIndex);
@@ -418,10 +485,53 @@ public final class ResultSet extends ResultSetBase {
         return this.getString(this.findColumn(columnLabel));
     }
 
+    private static boolean isDoubleDataType(final DataType dataType) {
+        return dataType == DataType.DOUBLE || dataType == DataType.FLOAT;
+    }
+
+    /**
+     * 列值以基本类型存储时，返回列的数据类型并设置wasNull，之后可直接读取基本类型的值；
+     * 否则返回null，由调用方通过getObject读取
+     */
+    private DataType getPrimitiveColumnDataType(final int columnIndex) throws SQLException {
+        checkOuterColumnIndex(columnIndex);
+        final int innerColumnIndex = toInnerColumnIndex(columnIndex);
+        if (!this.resultSet.isPrimitiveColumn(innerColumnIndex)) {
+            return null;
+        }
+        try {
+            this.wasNull = this.resultSet.isColumnValueNull(innerColumnIndex);
+        } catch (CrabsException ex) {
+            throw new SQLException(ex.getMessage(), ex);
+        }
+        return this.resultSet.getMetaData().getColumnValueType(innerColumnIndex);
+    }
+
+    private long getPrimitiveLongValue(final int columnIndex) throws SQLException {
+        try {
+            return this.resultSet.getLongColumnValue(toInnerColumnIndex(columnIndex));
+        } catch (CrabsException ex) {
+            throw new SQLException(ex.getMessage(), ex);
+        }
+    }
+
+    private double getPrimitiveDoubleValue(final int columnIndex) throws SQLException {
+        try {
+            return this.resultSet.getDoubleColumnValue(toInnerColumnIndex(columnIndex));
+        } catch (CrabsException ex) {
+            throw new SQLException(ex.getMessage(), ex);
+        }
+    }
+
     @Override
     public final Object getObject(final int columnIndex) throws SQLException {
         checkOuterColumnIndex(columnIndex);
-        final Object value = this.resultSet.getColumnValue(toInnerColumnIndex(columnIndex));
+        final Object value;
+        try {
+            value = this.resultSet.getColumnValue(toInnerColumnIndex(columnIndex));
+        } catch (CrabsException ex) {
+            throw new SQLException(ex.getMessage(), ex);
+        }
         this.wasNull = (value == null);
         return value;
     }
@@ -1,19 +1,30 @@
 package org.codefamily.crabs.jdbc;
 
+import org.codefamily.crabs.core.exception.RequestCancelledException;
+import org.codefamily.crabs.core.exception.RequestTimeoutException;
 import org.codefamily.crabs.exception.CrabsException;
 import org.codefamily.crabs.jdbc.BaseClasses.StatementBase;
 import org.codefamily.crabs.jdbc.engine.ExecuteEngine;
+import org.codefamily.crabs.jdbc.engine.ExecuteListener;
+import org.codefamily.crabs.jdbc.engine.ExecuteOptions;
 import org.codefamily.crabs.jdbc.internal.InternalResultSet;
 import org.codefamily.crabs.jdbc.lang.extension.statement.SelectStatement;
 
+import java.io.IOException;
 import java.sql.SQLException;
-import java.sql.SQLFeatureNotSupportedException;
+import java.sql.SQLTimeoutException;
 import java.sql.SQLWarning;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.*;
 
-public class Statement extends StatementBase {
+public class Statement extends StatementBase implements AsyncStatement, BatchQueryStatement {
 
     public static final int NO_UPDATE_COUNT = -1;
 
+    private static final String SQL_STATE$OPERATION_CANCELLED = "HY008";
+
     Statement(final Connection connection) {
         this.connection = connection;
         this.lastUpdateCount = NO_UPDATE_COUNT;
@@ -24,8 +35,24 @@ public class Statement extends StatementBase {
 
     private int maxinumRowCount;
 
+    private int fetchSize;
+
+    // 单位：秒
+    private int queryTimeout;
+
+    // 最近一次执行的选项，用于取消正在等待的请求
+    private volatile ExecuteOptions lastExecuteOptions;
+
     private ResultSet lastResultSet;
 
+    // 通过addBatch加入的查询及其参数值
+    private final ArrayList<SelectStatement> batchStatementList = new ArrayList<SelectStatement>();
+
+    private final ArrayList<Object[]> batchArgumentValuesList = new ArrayList<Object[]>();
+
+    // executeBatch得到的、尚未通过getMoreResults读取的结果集
+    private final LinkedList<ResultSet> pendingResultSetList = new LinkedList<ResultSet>();
+
     private int lastUpdateCount;
 
     private boolean closed;
@@ -47,8 +74,7 @@ public class Statement extends StatementBase {
 
     @Override
     public final int getQueryTimeout() throws SQLException {
-        // todo
-        throw new SQLFeatureNotSupportedException();
+        return this.queryTimeout;
     }
 
     @Override
@@ -65,16 +91,27 @@ public class Statement extends StatementBase {
 
     @Override
     public final boolean getMoreResults() throws SQLException {
-        return false;
+        return this.getMoreResults(CLOSE_CURRENT_RESULT);
     }
 
+    /**
+     * 只有executeBatch会产生多个结果集
+     */
     @Override
     public final boolean getMoreResults(final int current) throws SQLException {
-        return false;
+        final ResultSet resultSet = this.lastResultSet;
+        if (resultSet != null && current != KEEP_CURRENT_RESULT) {
+            resultSet.close();
+        }
+        this.lastResultSet = this.pendingResultSetList.poll();
+        return this.lastResultSet != null;
     }
 
     @Override
     public final int getFetchSize() throws SQLException {
+        if (this.fetchSize != ExecuteOptions.DEFAULT_FETCH_SIZE) {
+            return this.fetchSize;
+        }
         return Integer.parseInt(
                 this.connection.executeEnvironment.getProperty(
                         Protocol.PROPERTY_ENTRY$SCAN_SIZE.identifier,
@@ -163,6 +200,36 @@ public class Statement extends StatementBase {
         this.maxinumRowCount = maxinumRowCount;
     }
 
+    @Override
+    public final void setFetchSize(final int rows) throws SQLException {
+        if (rows < 0) {
+            throw new SQLException("Fetch size must be greater than or equal to 0.");
+        }
+        this.fetchSize = rows;
+    }
+
+    /**
+     * 超时时间同时作为elasticsearch的搜索超时时间，以及客户端等待每个响应的最长时间
+     */
+    @Override
+    public final void setQueryTimeout(final int seconds) throws SQLException {
+        if (seconds < 0) {
+            throw new SQLException("Query timeout must be greater than or equal to 0.");
+        }
+        this.queryTimeout = seconds;
+    }
+
+    /**
+     * 正在等待的请求立即返回，之后读取结果集时也不会再获取后续分页，scroll会被释放
+     */
+    @Override
+    public final void cancel() throws SQLException {
+        final ExecuteOptions executeOptions = this.lastExecuteOptions;
+        if (executeOptions != null) {
+            executeOptions.getRequestController().cancel();
+        }
+    }
+
     @Override
     public final void clearWarnings() throws SQLException {
         // to do nothing.
@@ -173,12 +240,13 @@ public class Statement extends StatementBase {
         if (SQL == null) {
             throw new IllegalArgumentException("Argument [SQL] is null.");
         }
-        final org.codefamily.crabs.jdbc.lang.Statement statement = this.connection.analyzeStatement(SQL);
+        final Connection.AnalyzedStatement analyzedStatement = this.connection.analyzeStatementWithLiterals(SQL);
+        final org.codefamily.crabs.jdbc.lang.Statement statement = analyzedStatement.statement;
         if (statement instanceof SelectStatement) {
-            this.executeQuery((SelectStatement) statement);
+            this.executeQuery((SelectStatement) statement, analyzedStatement.argumentValues);
             return true;
         } else {
-            this.executeUpdate(statement);
+            this.executeUpdate(statement, analyzedStatement.argumentValues);
             return false;
         }
     }
@@ -188,11 +256,12 @@ public class Statement extends StatementBase {
         if (SQL == null) {
             throw new IllegalArgumentException("Argument [SQL] is null.");
         }
-        final org.codefamily.crabs.jdbc.lang.Statement statement = this.connection.analyzeStatement(SQL);
+        final Connection.AnalyzedStatement analyzedStatement = this.connection.analyzeStatementWithLiterals(SQL);
+        final org.codefamily.crabs.jdbc.lang.Statement statement = analyzedStatement.statement;
         if (!(statement instanceof SelectStatement)) {
             throw new SQLException("SQL is not a query statement, detail as bellow: \n" + SQL);
         }
-        return this.executeQuery((SelectStatement) statement);
+        return this.executeQuery((SelectStatement) statement, analyzedStatement.argumentValues);
     }
 
     @Override
@@ -200,14 +269,95 @@ public class Statement extends StatementBase {
         if (SQL == null) {
             throw new IllegalArgumentException("Argument [SQL] is null.");
         }
-        final org.codefamily.crabs.jdbc.lang.Statement statement = this.connection.analyzeStatement(SQL);
+        final Connection.AnalyzedStatement analyzedStatement = this.connection.analyzeStatementWithLiterals(SQL);
+        final org.codefamily.crabs.jdbc.lang.Statement statement = analyzedStatement.statement;
         if (statement instanceof SelectStatement) {
             throw new SQLException("SQL is not a update statement, detail as bellow: \n" + SQL);
         } else {
-            return this.executeUpdate(statement);
+            return this.executeUpdate(statement, analyzedStatement.argumentValues);
         }
     }
 
+    /**
+     * 只支持查询语句
+     */
+    @Override
+    public void addBatch(final String SQL) throws SQLException {
+        if (SQL == null) {
+            throw new IllegalArgumentException("Argument [SQL] is null.");
+        }
+        final Connection.AnalyzedStatement analyzedStatement = this.connection.analyzeStatementWithLiterals(SQL);
+        final org.codefamily.crabs.jdbc.lang.Statement statement = analyzedStatement.statement;
+        if (!(statement instanceof SelectStatement)) {
+            throw new SQLException("SQL is not a query statement, detail as bellow: \n" + SQL);
+        }
+        this.addBatch((SelectStatement) statement, analyzedStatement.argumentValues);
+    }
+
+    @Override
+    public final void clearBatch() throws SQLException {
+        this.batchStatementList.clear();
+        this.batchArgumentValuesList.clear();
+    }
+
+    /**
+     * 查询不产生更新计数，各个结果集依次通过{@link #getResultSet()}以及{@link #getMoreResults()}读取
+     */
+    @Override
+    public final int[] executeBatch() throws SQLException {
+        final ResultSet[] resultSets = this.executeQueryBatch();
+        final int[] updateCounts = new int[resultSets.length];
+        for (int index = 0; index < resultSets.length; index++) {
+            updateCounts[index] = SUCCESS_NO_INFO;
+            if (index == 0) {
+                this.lastResultSet = resultSets[index];
+            } else {
+                this.pendingResultSetList.add(resultSets[index]);
+            }
+        }
+        return updateCounts;
+    }
+
+    @Override
+    public final ResultSet[] executeQueryBatch() throws SQLException {
+        this.closeCurrentResultSets();
+        final ArrayList<SelectStatement> statementList = new ArrayList<SelectStatement>(this.batchStatementList);
+        final ArrayList<Object[]> argumentValuesList = new ArrayList<Object[]>(this.batchArgumentValuesList);
+        this.clearBatch();
+        final List<InternalResultSet> internalResultSetList;
+        try {
+            internalResultSetList = ExecuteEngine.executeStatementBatch(
+                    this.connection.advancedClient,
+                    this.connection.executeEnvironment,
+                    statementList,
+                    argumentValuesList,
+                    this.buildExecuteOptions(),
+                    InternalResultSet.class
+            );
+        } catch (CrabsException e) {
+            throw toSQLException(e);
+        }
+        final int size = internalResultSetList.size();
+        final ResultSet[] resultSets = new ResultSet[size];
+        for (int index = 0; index < size; index++) {
+            resultSets[index] = new ResultSet(this.connection, this, internalResultSetList.get(index));
+        }
+        return resultSets;
+    }
+
+    @Override
+    public final Future<java.sql.ResultSet> executeQueryAsync(final String SQL) throws SQLException {
+        if (SQL == null) {
+            throw new IllegalArgumentException("Argument [SQL] is null.");
+        }
+        final Connection.AnalyzedStatement analyzedStatement = this.connection.analyzeStatementWithLiterals(SQL);
+        final org.codefamily.crabs.jdbc.lang.Statement statement = analyzedStatement.statement;
+        if (!(statement instanceof SelectStatement)) {
+            throw new SQLException("SQL is not a query statement, detail as bellow: \n" + SQL);
+        }
+        return this.executeQueryAsync((SelectStatement) statement, analyzedStatement.argumentValues);
+    }
+
     @Override
     @SuppressWarnings("unchecked")
     public final <T> T unwrap(final Class<T> iface) throws SQLException {
@@ -223,14 +373,39 @@ public class Statement extends StatementBase {
     @Override
     public void close() throws SQLException {
         try {
-            this.lastResultSet = null;
+            this.closeCurrentResultSets();
         } finally {
+            this.clearBatch();
             this.closed = true;
         }
     }
 
+    final void addBatch(final SelectStatement selectStatement, final Object[] argumentValues) {
+        this.batchStatementList.add(selectStatement);
+        this.batchArgumentValuesList.add(argumentValues);
+    }
+
+    /**
+     * 再次执行或者关闭语句前，关闭上一次执行得到的结果集，释放scroll等服务端资源
+     */
+    private void closeCurrentResultSets() throws SQLException {
+        final ResultSet lastResultSet = this.lastResultSet;
+        this.lastResultSet = null;
+        try {
+            if (lastResultSet != null && !lastResultSet.isClosed()) {
+                lastResultSet.close();
+            }
+        } finally {
+            ResultSet resultSet;
+            while ((resultSet = this.pendingResultSetList.poll()) != null) {
+                resultSet.close();
+            }
+        }
+    }
+
     final ResultSet executeQuery(final SelectStatement selectStatement,
                                  final Object... argumentValues) throws SQLException {
+        this.closeCurrentResultSets();
         final InternalResultSet resultSet;
         try {
             resultSet = ExecuteEngine.executeStatement(
@@ -238,14 +413,35 @@ public class Statement extends StatementBase {
                     this.connection.executeEnvironment,
                     selectStatement,
                     argumentValues,
+                    this.buildExecuteOptions(),
                     InternalResultSet.class
             );
         } catch (CrabsException e) {
-            throw new SQLException(e.getMessage(), e);
+            throw toSQLException(e);
         }
         return this.lastResultSet = new ResultSet(this.connection, this, resultSet);
     }
 
+    final Future<java.sql.ResultSet> executeQueryAsync(final SelectStatement selectStatement,
+                                                       final Object... argumentValues) throws SQLException {
+        final ExecuteOptions executeOptions = this.buildExecuteOptions();
+        final ResultSetFuture future = new ResultSetFuture(executeOptions);
+        try {
+            ExecuteEngine.executeStatementAsync(
+                    this.connection.advancedClient,
+                    this.connection.executeEnvironment,
+                    selectStatement,
+                    argumentValues,
+                    executeOptions,
+                    InternalResultSet.class,
+                    future
+            );
+        } catch (CrabsException e) {
+            throw toSQLException(e);
+        }
+        return future;
+    }
+
     final int executeUpdate(final org.codefamily.crabs.jdbc.lang.Statement statement,
                             final Object... argumentValues) throws SQLException {
         try {
@@ -254,10 +450,11 @@ public class Statement extends StatementBase {
                     this.connection.executeEnvironment,
                     statement,
                     argumentValues,
+                    this.buildExecuteOptions(),
                     Integer.class
             );
         } catch (CrabsException e) {
-            throw new SQLException(e.getMessage(), e);
+            throw toSQLException(e);
         }
     }
 
@@ -265,4 +462,121 @@ public class Statement extends StatementBase {
         return this.lastResultSet;
     }
 
+    private ExecuteOptions buildExecuteOptions() {
+        return this.lastExecuteOptions = new ExecuteOptions(this.fetchSize, this.queryTimeout);
+    }
+
+    static SQLException toSQLException(final CrabsException e) {
+        if (e instanceof RequestTimeoutException) {
+            return new SQLTimeoutException(e.getMessage(), e);
+        } else if (e instanceof RequestCancelledException) {
+            return new SQLException(e.getMessage(), SQL_STATE$OPERATION_CANCELLED, e);
+        }
+        return new SQLException(e.getMessage(), e);
+    }
+
+    /**
+     * 异步查询的结果，由elasticsearch客户端的线程在响应到达后完成；
+     * 超过查询超时时间、Statement被取消或者future被取消时以失败完成
+     */
+    private final class ResultSetFuture implements Future<java.sql.ResultSet>, ExecuteListener<InternalResultSet> {
+
+        ResultSetFuture(final ExecuteOptions executeOptions) {
+            this.executeOptions = executeOptions;
+        }
+
+        private final ExecuteOptions executeOptions;
+
+        private final CountDownLatch completedLatch = new CountDownLatch(1);
+
+        private ResultSet resultSet;
+
+        private SQLException failure;
+
+        private boolean cancelled;
+
+        @Override
+        public final void onResult(final InternalResultSet resultSet) {
+            synchronized (this) {
+                if (!this.cancelled) {
+                    try {
+                        this.resultSet = new ResultSet(Statement.this.connection, Statement.this, resultSet);
+                    } catch (SQLException e) {
+                        this.failure = e;
+                    }
+                    this.completedLatch.countDown();
+                    return;
+                }
+            }
+            // 已被取消，结果不会再被读取
+            try {
+                resultSet.close();
+            } catch (IOException e) {
+                // nothing to do.
+            }
+        }
+
+        @Override
+        public final void onFailure(final CrabsException e) {
+            synchronized (this) {
+                if (!this.cancelled) {
+                    this.failure = toSQLException(e);
+                    this.completedLatch.countDown();
+                }
+            }
+        }
+
+        /**
+         * 同时取消查询的请求，scroll的后续分页也不会再获取
+         */
+        @Override
+        public final boolean cancel(final boolean mayInterruptIfRunning) {
+            synchronized (this) {
+                if (this.isDone()) {
+                    return false;
+                }
+                this.cancelled = true;
+                this.completedLatch.countDown();
+            }
+            this.executeOptions.getRequestController().cancel();
+            return true;
+        }
+
+        @Override
+        public final synchronized boolean isCancelled() {
+            return this.cancelled;
+        }
+
+        @Override
+        public final boolean isDone() {
+            return this.completedLatch.getCount() == 0;
+        }
+
+        @Override
+        public final java.sql.ResultSet get() throws InterruptedException, ExecutionException {
+            this.completedLatch.await();
+            return this.getResult();
+        }
+
+        @Override
+        public final java.sql.ResultSet get(final long timeout, final TimeUnit unit)
+                throws InterruptedException, ExecutionException, TimeoutException {
+            if (!this.completedLatch.await(timeout, unit)) {
+                throw new TimeoutException();
+            }
+            return this.getResult();
+        }
+
+        private synchronized java.sql.ResultSet getResult() throws ExecutionException {
+            if (this.cancelled) {
+                throw new CancellationException();
+            }
+            if (this.failure != null) {
+                throw new ExecutionException(this.failure);
+            }
+            return this.resultSet;
+        }
+
+    }
+
 }
@@ -520,7 +520,7 @@ public final class Benchmark {
                 this.elasticsearchClient.close();
             }
 
-            private abstract class ExecutableTask<Request extends ActionRequest, Response extends ActionResponse,
+            private abstract class ExecutableTask<Request extends ActionRequest<Request>, Response extends ActionResponse,
                     RequestBuilder extends ActionRequestBuilder<Request, Response, RequestBuilder>,
                     TAction extends Action<Request, Response, RequestBuilder>> implements Runnable {
 
@@ -0,0 +1,66 @@
+package org.codefamily.crabs.jdbc.benchmark;
+
+import org.codefamily.crabs.jdbc.compiler.GrammarAnalyzer;
+import org.codefamily.crabs.jdbc.lang.Statement;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.text.DecimalFormat;
+
+/**
+ * 语法分析的基准测试，不连接Elasticsearch，只测量{@link GrammarAnalyzer#analyze(String)}的耗时。
+ * <p/>
+ * 参数：[预热轮数] [测量轮数] [每轮分析次数]，每轮分析全部样例SQL
+ */
+public final class GrammarAnalyzerBenchmark {
+
+    private static final Logger LOG = LoggerFactory.getLogger(GrammarAnalyzerBenchmark.class);
+
+    private static final String[] SQLS = {
+            "SELECT * FROM benchmark WHERE stuChineseScore > 60 AND stuEnglishScore <= 90",
+            "SELECT stuName, stuAge, stuBirthday FROM benchmark WHERE stuName LIKE 'Li%' "
+                    + "AND stuAge IN (18, 19, 20) ORDER BY stuAge DESC LIMIT 0, 100",
+            "SELECT COUNT(*), AVG(stuChineseScore), MAX(stuEnglishScore) FROM benchmark "
+                    + "WHERE stuChineseScore > 60 AND stuEnglishScore <= 90 GROUP BY stuBirthday",
+            "SELECT /*+ ROUTING(tenant1) */ DATE_TRUNC('day', stuBirthday) AS day, COUNT(DISTINCT stuName) "
+                    + "FROM benchmark WHERE stuBirthday BETWEEN '2014-01-01' AND '2014-12-31' "
+                    + "GROUP BY DATE_TRUNC('day', stuBirthday) HAVING COUNT(DISTINCT stuName) > 10"
+    };
+
+    // 防止分析结果被优化掉
+    private static volatile Object BLACK_HOLE;
+
+    private GrammarAnalyzerBenchmark() {
+        // nothing to do.
+    }
+
+    public static void main(final String[] args) throws Exception {
+        final int warmupRoundCount = args.length > 0 ? Integer.parseInt(args[0]) : 5;
+        final int measureRoundCount = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        final int analyzeCount = args.length > 2 ? Integer.parseInt(args[2]) : 100000;
+        for (int round = 0; round < warmupRoundCount; round++) {
+            runRound(analyzeCount);
+        }
+        final DecimalFormat format = new DecimalFormat("#,##0.00");
+        double totalNanosPerAnalyze = 0;
+        for (int round = 0; round < measureRoundCount; round++) {
+            final double nanosPerAnalyze = runRound(analyzeCount);
+            totalNanosPerAnalyze += nanosPerAnalyze;
+            LOG.info("Round " + (round + 1) + ": " + format.format(nanosPerAnalyze) + " ns/analyze");
+        }
+        LOG.info("Average: " + format.format(totalNanosPerAnalyze / measureRoundCount) + " ns/analyze");
+    }
+
+    private static double runRound(final int analyzeCount) throws Exception {
+        final String[] SQLs = SQLS;
+        Statement statement = null;
+        final long startTime = System.nanoTime();
+        for (int index = 0; index < analyzeCount; index++) {
+            statement = GrammarAnalyzer.analyze(SQLs[index % SQLs.length]);
+        }
+        final long elapsedTime = System.nanoTime() - startTime;
+        BLACK_HOLE = statement;
+        return (double) elapsedTime / analyzeCount;
+    }
+
+}
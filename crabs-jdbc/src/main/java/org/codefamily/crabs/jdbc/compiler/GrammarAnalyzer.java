@@ -45,20 +45,21 @@ public class GrammarAnalyzer {
                 || context.currentTokenType() == TokenType.LETTERS)) {
             return null;
         }
-        final StringBuilder stringBuilder = context.getEmptyStringBuilder();
-        context.currentTokenTo(stringBuilder);
+        // 中间没有空白的标记组成同一个标识符，它们在SQL中是连续的
+        final int identifierStartPosition = context.currentTokenStartPosition();
+        int identifierEndPosition = context.currentTokenEndPosition();
         for (; ; ) {
             if (!context.toNextToken()) {
                 switch (context.currentTokenType()) {
                     case NUMBERS:
                     case LETTERS:
-                        context.currentTokenTo(stringBuilder);
+                        identifierEndPosition = context.currentTokenEndPosition();
                         continue;
                 }
             }
             break;
         }
-        return stringBuilder.toString();
+        return context.statementString.substring(identifierStartPosition, identifierEndPosition);
     }
 
     protected static String analyzeGeneralizedIdentifier(
@@ -82,8 +83,7 @@ public class GrammarAnalyzer {
                 // 字符串
                 final int currentTokenStartPosition = context.currentTokenStartPosition();
                 context.toNextToken(expectEndSymbol);
-                final StringBuilder stringBuilder = context.getEmptyStringBuilder();
-                context.currentTokenTo(stringBuilder);
+                final String identifier = context.currentTokenToString();
                 context.toNextToken();
                 switch (context.currentTokenType()) {
                     case EOF:
@@ -96,7 +96,6 @@ public class GrammarAnalyzer {
                         }
                         // 引号匹配
                         context.toNextToken();
-                        final String identifier = stringBuilder.toString();
                         checkIdentifier(identifier);
                         return identifier;
                     default:
@@ -212,7 +211,6 @@ public class GrammarAnalyzer {
         GrammarAnalyzeContext(final String statementString) {
             this.statementString = statementString;
             this.statementCharacters = statementString.toCharArray();
-            this.keywordStringBuilder = new KeywordStringBuilder();
             this.currentTokenStartPosition = -1;
             this.currentTokenLength = 0;
             this.currentTokenType = TokenType.BOF;
@@ -223,8 +221,6 @@ public class GrammarAnalyzer {
 
         private final char[] statementCharacters;
 
-        private final KeywordStringBuilder keywordStringBuilder;
-
         private int currentTokenStartPosition;
 
         private int currentTokenLength;
@@ -252,11 +248,13 @@ public class GrammarAnalyzer {
             return this.stringBuilder;
         }
 
+        /**
+         * 嵌套分析的表达式（如group by中的函数参数）共用同一个列表，
+         * 调用方记录起始位置并通过expressionsListToArray取出自己的部分，因此这里不能清空列表
+         */
         public final ArrayList<Expression> getExpressionList() {
             if (this.expressionList == null) {
                 this.expressionList = new ArrayList<Expression>();
-            } else {
-                this.expressionList.clear();
             }
             return this.expressionList;
         }
@@ -265,6 +263,10 @@ public class GrammarAnalyzer {
             return this.currentTokenStartPosition;
         }
 
+        public final int currentTokenEndPosition() {
+            return this.currentTokenStartPosition + this.currentTokenLength;
+        }
+
         public final TokenType currentTokenType() {
             return this.currentTokenType;
         }
@@ -299,9 +301,56 @@ public class GrammarAnalyzer {
         }
 
         public final String currentTokenToString() {
-            final StringBuilder stringBuilder = this.getEmptyStringBuilder();
-            this.currentTokenTo(stringBuilder);
-            return stringBuilder.toString();
+            switch (this.currentTokenType) {
+                case BOF:
+                case EOF:
+                    return "";
+                default:
+                    return new String(this.statementCharacters, this.currentTokenStartPosition, this.currentTokenLength);
+            }
+        }
+
+        /**
+         * 不创建字符串，比较当前标记与给定的单词是否相同（忽略大小写）
+         */
+        public final boolean currentTokenEqualsIgnoreCase(final String word) {
+            switch (this.currentTokenType) {
+                case BOF:
+                case EOF:
+                    return false;
+                default:
+                    return this.currentTokenLength == word.length()
+                            && this.statementString.regionMatches(
+                            true, this.currentTokenStartPosition, word, 0, this.currentTokenLength
+                    );
+            }
+        }
+
+        /**
+         * 不创建字符串，把当前的数字标记转换为long
+         */
+        public final long currentTokenToLong() {
+            if (this.currentTokenType != TokenType.NUMBERS) {
+                throw new RuntimeException("Current token is not numbers.");
+            }
+            return this.toLong(this.currentTokenStartPosition, this.currentTokenStartPosition + this.currentTokenLength);
+        }
+
+        /**
+         * 把SQL中指定范围内的数字转换为long
+         */
+        final long toLong(final int startPosition, final int endPosition) {
+            final char[] statementCharacters = this.statementCharacters;
+            long value = 0L;
+            for (int position = startPosition; position < endPosition; position++) {
+                final int digit = statementCharacters[position] - '0';
+                if (value > (Long.MAX_VALUE - digit) / 10) {
+                    // 溢出时与Long.parseLong抛出相同的异常
+                    return Long.parseLong(this.statementString.substring(startPosition, endPosition));
+                }
+                value = value * 10 + digit;
+            }
+            return value;
         }
 
         /**
@@ -332,7 +381,7 @@ public class GrammarAnalyzer {
                     this.currentTokenType = TokenType.EOF;
                     return filteredWhitespace;
                 }
-                if (!Character.isWhitespace(statementCharacters[currentPosition])) {
+                if (!isWhitespace(statementCharacters[currentPosition])) {
                     break;
                 }
                 currentPosition++;
@@ -340,82 +389,37 @@ public class GrammarAnalyzer {
             }
             this.currentTokenStartPosition = currentPosition;
             char currentCharacter = statementCharacters[currentPosition];
-            if (Character.isJavaIdentifierStart(currentCharacter)) {
-                switch (currentCharacter) {
-                    case 'a':
-                    case 'b':
-                    case 'c':
-                    case 'd':
-                    case 'e':
-                    case 'f':
-                    case 'g':
-                    case 'h':
-                    case 'i':
-                    case 'j':
-                    case 'k':
-                    case 'l':
-                    case 'm':
-                    case 'n':
-                    case 'o':
-                    case 'p':
-                    case 'q':
-                    case 'r':
-                    case 's':
-                    case 't':
-                    case 'u':
-                    case 'v':
-                    case 'w':
-                    case 'x':
-                    case 'y':
-                    case 'z':
-                        currentCharacter = (char) (currentCharacter - ('a' - 'A'));
-                }
-                final KeywordStringBuilder keywordStringBuilder = this.keywordStringBuilder;
-                keywordStringBuilder.reset();
-                keywordStringBuilder.append(currentCharacter);
+            if (isIdentifierStart(currentCharacter)) {
+                // 扫描的同时计算关键字的散列值，不复制字符
+                final KeywordTable keywordTable = KEYWORD_TABLE;
+                boolean keywordCandidate = true;
+                int keywordHashCode = 0;
                 for (; ; ) {
+                    if (keywordCandidate) {
+                        if (currentCharacter >= 'a' && currentCharacter <= 'z') {
+                            currentCharacter = (char) (currentCharacter - ('a' - 'A'));
+                        } else if (!((currentCharacter >= 'A' && currentCharacter <= 'Z')
+                                || currentCharacter == '_' || currentCharacter == '$')) {
+                            keywordCandidate = false;
+                        }
+                        keywordHashCode = 31 * keywordHashCode + currentCharacter;
+                    }
                     if ((++currentPosition) < statementCharacterCount) {
                         currentCharacter = statementCharacters[currentPosition];
-                        if (Character.isJavaIdentifierPart(currentCharacter)) {
-                            switch (currentCharacter) {
-                                case 'a':
-                                case 'b':
-                                case 'c':
-                                case 'd':
-                                case 'e':
-                                case 'f':
-                                case 'g':
-                                case 'h':
-                                case 'i':
-                                case 'j':
-                                case 'k':
-                                case 'l':
-                                case 'm':
-                                case 'n':
-                                case 'o':
-                                case 'p':
-                                case 'q':
-                                case 'r':
-                                case 's':
-                                case 't':
-                                case 'u':
-                                case 'v':
-                                case 'w':
-                                case 'x':
-                                case 'y':
-                                case 'z':
-                                    currentCharacter = (char) (currentCharacter - ('a' - 'A'));
-                            }
-                            keywordStringBuilder.append(currentCharacter);
+                        if (isIdentifierPart(currentCharacter)) {
                             continue;
                         }
                     }
                     break;
                 }
-                if ((this.currentKeywordToken = keywordStringBuilder.tryToKeyword()) == null) {
-                    this.currentTokenType = TokenType.LETTERS;
-                } else {
+                final int tokenLength = currentPosition - this.currentTokenStartPosition;
+                if (keywordCandidate && tokenLength <= keywordTable.maxKeywordLength
+                        && (this.currentKeywordToken = keywordTable.get(
+                        statementCharacters, this.currentTokenStartPosition, tokenLength, keywordHashCode)) != null) {
                     this.currentTokenType = TokenType.KEYWORD;
+                } else {
+                    this.currentKeywordToken = null;
+                    this.currentTokenType = TokenType.LETTERS;
                 }
             } else {
                 switch (currentCharacter) {
@@ -460,6 +464,41 @@ public class GrammarAnalyzer {
             return filteredWhitespace;
         }
 
+        /**
+         * 当前标记为提示注释"/*+"的开始时，读取注释内容并移动到注释之后的标记
+         *
+         * @return 提示注释的内容，当前标记不是提示注释时返回null
+         */
+        public final String tryToNextTokenAfterHint() throws SQLException {
+            if (this.currentTokenType != TokenType.SYMBOL
+                    || this.statementCharacters[this.currentTokenStartPosition] != '/') {
+                return null;
+            }
+            final char[] statementCharacters = this.statementCharacters;
+            final int statementCharacterCount = statementCharacters.length;
+            final int hintStartPosition = this.currentTokenStartPosition + 3;
+            if (hintStartPosition > statementCharacterCount
+                    || statementCharacters[hintStartPosition - 2] != '*'
+                    || statementCharacters[hintStartPosition - 1] != '+') {
+                return null;
+            }
+            for (int currentPosition = hintStartPosition;
+                 currentPosition + 1 < statementCharacterCount; currentPosition++) {
+                if (statementCharacters[currentPosition] == '*'
+                        && statementCharacters[currentPosition + 1] == '/') {
+                    final String hint = new String(
+                            statementCharacters,
+                            hintStartPosition,
+                            currentPosition - hintStartPosition
+                    );
+                    this.currentTokenLength = currentPosition + 2 - this.currentTokenStartPosition;
+                    this.toNextToken();
+                    return hint;
+                }
+            }
+            throw newSQLException(this, "Missing end of hint comment.", this.currentTokenStartPosition);
+        }
+
         public final void toNextToken(final char finishCharacter) {
             if (this.currentTokenType == TokenType.EOF) {
                 return;
@@ -479,168 +518,199 @@ public class GrammarAnalyzer {
             }
         }
 
+        private static final int CHARACTER_FLAG$WHITESPACE = 1;
+
+        private static final int CHARACTER_FLAG$IDENTIFIER_START = 1 << 1;
+
+        private static final int CHARACTER_FLAG$IDENTIFIER_PART = 1 << 2;
+
+        // ASCII字符的分类结果，与Character中对应的方法一致，避免逐个字符查询Unicode属性
+        private static final byte[] ASCII_CHARACTER_FLAGS = new byte[128];
+
+        static {
+            for (char character = 0; character < ASCII_CHARACTER_FLAGS.length; character++) {
+                int flags = 0;
+                if (Character.isWhitespace(character)) {
+                    flags |= CHARACTER_FLAG$WHITESPACE;
+                }
+                if (Character.isJavaIdentifierStart(character)) {
+                    flags |= CHARACTER_FLAG$IDENTIFIER_START;
+                }
+                if (Character.isJavaIdentifierPart(character)) {
+                    flags |= CHARACTER_FLAG$IDENTIFIER_PART;
+                }
+                ASCII_CHARACTER_FLAGS[character] = (byte) flags;
+            }
+        }
+
+        private static boolean isWhitespace(final char character) {
+            return character < ASCII_CHARACTER_FLAGS.length
+                    ? (ASCII_CHARACTER_FLAGS[character] & CHARACTER_FLAG$WHITESPACE) != 0
+                    : Character.isWhitespace(character);
+        }
+
+        private static boolean isIdentifierStart(final char character) {
+            return character < ASCII_CHARACTER_FLAGS.length
+                    ? (ASCII_CHARACTER_FLAGS[character] & CHARACTER_FLAG$IDENTIFIER_START) != 0
+                    : Character.isJavaIdentifierStart(character);
+        }
+
+        private static boolean isIdentifierPart(final char character) {
+            return character < ASCII_CHARACTER_FLAGS.length
+                    ? (ASCII_CHARACTER_FLAGS[character] & CHARACTER_FLAG$IDENTIFIER_PART) != 0
+                    : Character.isJavaIdentifierPart(character);
+        }
+
         public static void recollectKeywords() {
-            KeywordStringBuilder.recollectKeywords();
+            synchronized (KeywordTable.class) {
+                KEYWORD_TABLE = KeywordTable.collectKeywords();
+            }
         }
 
-        private static final class KeywordStringBuilder {
+        private static volatile KeywordTable KEYWORD_TABLE = KeywordTable.collectKeywords();
 
-            private static final Logger LOGGER = LoggerFactory.getLogger(KeywordStringBuilder.class);
+        /**
+         * 关键字的完美散列表，每个关键字独占一个槽位，查找时直接在SQL的字符上比较，不需要复制字符
+         */
+        private static final class KeywordTable {
 
-            private static final int KEYWORD_ENTRY_MAP_CAPACITY = 'Z' - 'A' + 1;
+            private static final Logger LOGGER = LoggerFactory.getLogger(KeywordTable.class);
 
-            private static final KeywordMapEntry[][] KEYWORD_ENTRY_MAP
-                    = new KeywordMapEntry[KEYWORD_ENTRY_MAP_CAPACITY][];
+            private static final int MAX_TABLE_BITS = 16;
 
-            static void recollectKeywords() {
-                synchronized (KeywordStringBuilder.class) {
-                    final ArrayList<Keyword> keywordList = new ArrayList<Keyword>();
-                    Collections.addAll(keywordList, ReservedKeyword.values());
-                    final Iterator<Class<? extends Keyword>> keywordClassIterator
-                            = ExtensionClassCollector.getExtensionClasses(Keyword.class);
-                    while (keywordClassIterator.hasNext()) {
-                        final Class<? extends Keyword> keywordClass = keywordClassIterator.next();
-                        if (keywordClass.isEnum()) {
-                            Collections.addAll(keywordList, keywordClass.getEnumConstants());
-                        } else {
-                            try {
-                                keywordList.add(keywordClass.newInstance());
-                            } catch (Throwable t) {
-                                LOGGER.error("Can not register keyword.", t);
-                            }
+            private static final int MAX_MULTIPLIER_TRY_COUNT = 1 << 16;
+
+            static KeywordTable collectKeywords() {
+                final ArrayList<Keyword> keywordList = new ArrayList<Keyword>();
+                Collections.addAll(keywordList, ReservedKeyword.values());
+                final Iterator<Class<? extends Keyword>> keywordClassIterator
+                        = ExtensionClassCollector.getExtensionClasses(Keyword.class);
+                while (keywordClassIterator.hasNext()) {
+                    final Class<? extends Keyword> keywordClass = keywordClassIterator.next();
+                    if (keywordClass.isEnum()) {
+                        Collections.addAll(keywordList, keywordClass.getEnumConstants());
+                    } else {
+                        try {
+                            keywordList.add(keywordClass.newInstance());
+                        } catch (Throwable t) {
+                            LOGGER.error("Can not register keyword.", t);
                         }
                     }
-                    final HashSet<String> keywordNameSet = new HashSet<String>();
-                    @SuppressWarnings("unchecked")
-                    final ArrayList<KeywordMapEntry>[] keywordMap = new ArrayList[KEYWORD_ENTRY_MAP_CAPACITY];
-                    for (Keyword keyword : keywordList) {
-                        final String upperKeywordName = keyword.getName().toUpperCase();
-                        if (keywordNameSet.contains(upperKeywordName)) {
-                            continue;
-                        }
-                        final KeywordMapEntry keywordMapEntry = new KeywordMapEntry(keyword);
-                        final char[] key = keywordMapEntry.key;
-                        for (int i = 0; i < key.length; i++) {
-                            switch (key[i]) {
-                                case 'A':
-                                case 'B':
-                                case 'C':
-                                case 'D':
-                                case 'E':
-                                case 'F':
-                                case 'G':
-                                case 'H':
-                                case 'I':
-                                case 'J':
-                                case 'K':
-                                case 'L':
-                                case 'M':
-                                case 'N':
-                                case 'O':
-                                case 'P':
-                                case 'Q':
-                                case 'R':
-                                case 'S':
-                                case 'T':
-                                case 'U':
-                                case 'V':
-                                case 'W':
-                                case 'X':
-                                case 'Y':
-                                case 'Z':
-                                case '_':
-                                case '$':
-                                    continue;
-                            }
-                            throw new RuntimeException("Keyword name contain illegal character. " + keyword.getName());
-                        }
-                        final int mapIndex = (key[0] - 'A') & (KEYWORD_ENTRY_MAP_CAPACITY - 1);
-                        ArrayList<KeywordMapEntry> keywordMapEntryList = keywordMap[mapIndex];
-                        if (keywordMapEntryList == null) {
-                            keywordMapEntryList = new ArrayList<KeywordMapEntry>();
-                            keywordMap[mapIndex] = keywordMapEntryList;
-                        }
-                        keywordMapEntryList.add(keywordMapEntry);
-                        keywordNameSet.add(upperKeywordName);
+                }
+                final HashSet<String> keywordNameSet = new HashSet<String>();
+                final ArrayList<char[]> keyList = new ArrayList<char[]>();
+                final ArrayList<Keyword> valueList = new ArrayList<Keyword>();
+                for (Keyword keyword : keywordList) {
+                    final String upperKeywordName = keyword.getName().toUpperCase();
+                    if (keywordNameSet.contains(upperKeywordName)) {
+                        continue;
                     }
-                    for (int i = 0; i < KEYWORD_ENTRY_MAP_CAPACITY; i++) {
-                        final ArrayList<KeywordMapEntry> keywordMapEntryList = keywordMap[i];
-                        if (keywordMapEntryList != null) {
-                            KEYWORD_ENTRY_MAP[i] = keywordMapEntryList.toArray(
-                                    new KeywordMapEntry[keywordMapEntryList.size()]
-                            );
+                    final char[] key = upperKeywordName.toCharArray();
+                    for (int i = 0; i < key.length; i++) {
+                        final char character = key[i];
+                        if (!((character >= 'A' && character <= 'Z') || character == '_' || character == '$')) {
+                            throw new RuntimeException("Keyword name contain illegal character. " + keyword.getName());
                         }
                     }
+                    keywordNameSet.add(upperKeywordName);
+                    keyList.add(key);
+                    valueList.add(keyword);
                 }
-            }
-
-            static {
-                recollectKeywords();
-            }
-
-            KeywordStringBuilder() {
-                this.characters = new char[10];
-                this.length = 0;
-            }
-
-            private char[] characters;
-
-            private int length;
-
-            final Keyword tryToKeyword() {
-                if (this.length != 0) {
-                    final char[] characters = this.characters;
-                    final int mapIndex = (characters[0] - 'A') & (KEYWORD_ENTRY_MAP_CAPACITY - 1);
-                    if (mapIndex < KEYWORD_ENTRY_MAP_CAPACITY) {
-                        final KeywordMapEntry[] keywordMapEntries = KEYWORD_ENTRY_MAP[mapIndex];
-                        if (keywordMapEntries != null) {
-                            final int length = this.length;
-                            for (int i = 0; i < keywordMapEntries.length; i++) {
-                                final KeywordMapEntry keywordMapEntry = keywordMapEntries[i];
-                                final char[] key = keywordMapEntry.key;
-                                if (key.length == length) {
-                                    compare:
-                                    {
-                                        for (int j = 0; j < length; j++) {
-                                            if (key[j] != characters[j]) {
-                                                break compare;
-                                            }
-                                        }
-                                        return keywordMapEntry.value;
-                                    }
-                                }
+                final int keywordCount = keyList.size();
+                final int[] hashCodes = new int[keywordCount];
+                int maxKeywordLength = 0;
+                for (int i = 0; i < keywordCount; i++) {
+                    final char[] key = keyList.get(i);
+                    hashCodes[i] = hashCode(key);
+                    maxKeywordLength = Math.max(maxKeywordLength, key.length);
+                }
+                // 从两倍于关键字个数的表开始，寻找使所有关键字落在不同槽位上的乘数
+                int tableBits = 1;
+                while ((1 << tableBits) < keywordCount * 2) {
+                    tableBits++;
+                }
+                for (; tableBits <= MAX_TABLE_BITS; tableBits++) {
+                    final int tableSize = 1 << tableBits;
+                    final boolean[] occupied = new boolean[tableSize];
+                    int multiplier = 0x9E3779B1;
+                    multiplierLoop:
+                    for (int tryCount = 0; tryCount < MAX_MULTIPLIER_TRY_COUNT; tryCount++, multiplier += 2) {
+                        Arrays.fill(occupied, false);
+                        for (int i = 0; i < keywordCount; i++) {
+                            final int slot = (hashCodes[i] * multiplier) >>> (32 - tableBits);
+                            if (occupied[slot]) {
+                                continue multiplierLoop;
                             }
+                            occupied[slot] = true;
                         }
+                        final char[][] keys = new char[tableSize][];
+                        final Keyword[] values = new Keyword[tableSize];
+                        for (int i = 0; i < keywordCount; i++) {
+                            final int slot = (hashCodes[i] * multiplier) >>> (32 - tableBits);
+                            keys[slot] = keyList.get(i);
+                            values[slot] = valueList.get(i);
+                        }
+                        return new KeywordTable(keys, values, multiplier, tableBits, maxKeywordLength);
                     }
                 }
-                return null;
+                throw new RuntimeException("Can not build perfect hash table of keywords. " + keywordNameSet);
             }
 
-            final void append(final char upperCharacter) {
-                if (this.length == this.characters.length) {
-                    final char[] newCharacters = new char[this.characters.length + 10];
-                    System.arraycopy(this.characters, 0, newCharacters, 0, this.length);
-                    this.characters = newCharacters;
+            /**
+             * 与扫描标记时计算的散列值一致
+             */
+            private static int hashCode(final char[] upperKey) {
+                int hashCode = 0;
+                for (int i = 0; i < upperKey.length; i++) {
+                    hashCode = 31 * hashCode + upperKey[i];
                 }
-                this.characters[this.length] = upperCharacter;
-                this.length++;
+                return hashCode;
             }
 
-            final void reset() {
-                this.length = 0;
+            private KeywordTable(final char[][] keys,
+                                 final Keyword[] values,
+                                 final int multiplier,
+                                 final int tableBits,
+                                 final int maxKeywordLength) {
+                this.keys = keys;
+                this.values = values;
+                this.multiplier = multiplier;
+                this.shift = 32 - tableBits;
+                this.maxKeywordLength = maxKeywordLength;
             }
 
-            private static final class KeywordMapEntry {
+            private final char[][] keys;
 
-                KeywordMapEntry(final Keyword keyword) {
-                    this.key = keyword.getName().toUpperCase().toCharArray();
-                    this.value = keyword;
-                }
+            private final Keyword[] values;
+
+            private final int multiplier;
 
-                final char[] key;
+            private final int shift;
 
-                final Keyword value;
+            final int maxKeywordLength;
 
+            /**
+             * @param upperHashCode 字符转换为大写后计算的散列值
+             */
+            final Keyword get(final char[] characters,
+                              final int offset,
+                              final int length,
+                              final int upperHashCode) {
+                final int slot = (upperHashCode * this.multiplier) >>> this.shift;
+                final char[] key = this.keys[slot];
+                if (key == null || key.length != length) {
+                    return null;
+                }
+                for (int i = 0; i < length; i++) {
+                    char character = characters[offset + i];
+                    if (character >= 'a' && character <= 'z') {
+                        character = (char) (character - ('a' - 'A'));
+                    }
+                    if (key[i] != character) {
+                        return null;
+                    }
+                }
+                return this.values[slot];
             }
 
         }
@@ -1238,14 +1308,16 @@ public class GrammarAnalyzer {
                     }
                 case NUMBERS:
                     final Constant numberConstant;
-                    String currentTokenString = context.currentTokenToString();
+                    final int integerStartPosition = context.currentTokenStartPosition();
+                    final int integerEndPosition = context.currentTokenEndPosition();
                     context.toNextToken();
                     if (context.currentTokenType == TokenType.SYMBOL
                             && context.currentTokenToSymbol() == '.') {
                         context.toNextToken();
                         if (context.currentTokenType == TokenType.NUMBERS) {
                             final double value = Double.parseDouble(
-                                    currentTokenString + "." + context.currentTokenToString()
+                                    context.statementString.substring(integerStartPosition, integerEndPosition)
+                                            + "." + context.currentTokenToString()
                             );
                             if (value > Float.MIN_VALUE && value <= Float.MAX_VALUE) {
                                 numberConstant = new Constant((float) value);
@@ -1267,7 +1339,7 @@ public class GrammarAnalyzer {
                             );
                         }
                     } else {
-                        final long value = Long.valueOf(currentTokenString);
+                        final long value = context.toLong(integerStartPosition, integerEndPosition);
                         if (value > Integer.MIN_VALUE && value <= Integer.MAX_VALUE) {
                             numberConstant = new Constant((int) value);
                         } else if (value > Long.MIN_VALUE && value <= Long.MAX_VALUE) {
@@ -1296,6 +1368,10 @@ public class GrammarAnalyzer {
                             case '(':
                                 // 函数
                                 context.toNextToken();
+                                if (context.currentTokenType() == TokenType.KEYWORD
+                                        && context.currentTokenToKeyword() == ReservedKeyword.DISTINCT) {
+                                    return analyzeCountDistinctFunction(context, firstIdentifier);
+                                }
                                 final ArrayList<Expression> argumentExpressionList = context
                                         .getExpressionList();
                                 final int startListIndex = argumentExpressionList
@@ -1351,7 +1427,6 @@ public class GrammarAnalyzer {
                     return new Reference(null, firstIdentifier);
                 case SYMBOL:
                     final char symbol = context.currentTokenToSymbol();
-                    final StringBuilder stringBuilder;
                     switch (symbol) {
                         case '?':
                             // 参数
@@ -1412,8 +1487,7 @@ public class GrammarAnalyzer {
                             // 字符串
                             currentTokenStartPosition = context.currentTokenStartPosition();
                             context.toNextToken(symbol);
-                            stringBuilder = context.getEmptyStringBuilder();
-                            context.currentTokenTo(stringBuilder);
+                            final String string = context.currentTokenToString();
                             context.toNextToken();
                             switch (context.currentTokenType()) {
                                 case EOF:
@@ -1423,17 +1497,12 @@ public class GrammarAnalyzer {
                                     context.toNextToken();
                                     if (context.currentTokenType() == TokenType.SYMBOL
                                             && context.currentTokenToSymbol() == '.') {
-                                        firstIdentifier = stringBuilder.toString();
-                                        checkIdentifier(firstIdentifier);
+                                        checkIdentifier(string);
                                         context.toNextToken();
-                                        return new Reference(firstIdentifier,
+                                        return new Reference(string,
                                                 analyzeGeneralizedIdentifier(context));
                                     } else {
-                                        if (symbol == '\'' && stringBuilder.length() == 1) {
-                                            return new Constant(String.valueOf(stringBuilder.charAt(0)));
-                                        } else {
-                                            return new Constant(stringBuilder.toString());
-                                        }
+                                        return new Constant(string);
                                     }
                                 default:
                                     throw newSQLException(context,
@@ -1557,6 +1626,32 @@ public class GrammarAnalyzer {
             return expression;
         }
 
+        /**
+         * COUNT(DISTINCT column)，DISTINCT只能出现在COUNT函数中
+         */
+        private static Expression analyzeCountDistinctFunction(final GrammarAnalyzeContext context,
+                                                               final String functionIdentifier)
+                throws SQLException {
+            if (!CountFunction.IDENTIFIER.equalsIgnoreCase(functionIdentifier)) {
+                throw newSQLException(
+                        context,
+                        ReservedKeyword.DISTINCT.getName() + " is only supported in "
+                                + CountFunction.IDENTIFIER + "().",
+                        context.currentTokenStartPosition()
+                );
+            }
+            context.toNextToken();
+            final Expression expression = analyzeExpectedExpression(context, Byte.MAX_VALUE);
+            expectSymbol(context, ')');
+            // 括号匹配
+            context.toNextToken();
+            try {
+                return new CountDistinctFunction(expression);
+            } catch (Throwable t) {
+                throw new SQLException(t.getMessage(), t);
+            }
+        }
+
         private static Expression analyzeInExpression(
                 final GrammarAnalyzeContext context,
                 final Expression firstExpression) throws SQLException {
@@ -0,0 +1,334 @@
+package org.codefamily.crabs.jdbc.compiler;
+
+import org.codefamily.crabs.util.ReadonlyList;
+import org.codefamily.crabs.exception.CrabsException;
+import org.codefamily.crabs.jdbc.compiler.GrammarAnalyzer.GrammarAnalyzeContext;
+import org.codefamily.crabs.jdbc.compiler.GrammarAnalyzer.TokenType;
+import org.codefamily.crabs.jdbc.lang.Expression;
+import org.codefamily.crabs.jdbc.lang.Keyword;
+import org.codefamily.crabs.jdbc.lang.Statement;
+import org.codefamily.crabs.jdbc.lang.expression.Argument;
+import org.codefamily.crabs.jdbc.lang.expression.util.ExpressionHelper;
+import org.codefamily.crabs.jdbc.lang.extension.ReservedKeyword;
+import org.codefamily.crabs.jdbc.lang.extension.clause.LimitClause;
+import org.codefamily.crabs.jdbc.lang.extension.expression.*;
+import org.codefamily.crabs.jdbc.lang.extension.statement.SelectStatement;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+
+/**
+ * 把SQL中where子句里与列比较的值以及limit子句的常量替换为参数，常量不同而结构相同的SQL得到相同的参数化SQL，
+ * 从而共用同一个语法分析的结果，常量值在执行时作为参数值绑定。
+ * 另一侧不是列的常量（例如常量之间的比较）保留在SQL中，以便语义分析时折叠为恒真或恒假
+ */
+public final class LiteralParameterizer {
+
+    private static final int CLAUSE$OTHER = 0;
+
+    private static final int CLAUSE$WHERE = 1;
+
+    private static final int CLAUSE$LIMIT = 2;
+
+    /**
+     * @return 没有可以替换的常量，或者SQL本身包含参数时返回null
+     */
+    public static LiteralParameterizer parameterize(final String SQL) {
+        if (SQL == null) {
+            throw new IllegalArgumentException("Argument[SQL] is null.");
+        }
+        try {
+            return doParameterize(SQL);
+        } catch (SQLException e) {
+            // 交给语法分析报告错误
+            return null;
+        }
+    }
+
+    /**
+     * 参数化SQL的语法分析结果中，参数只能作为where子句中比较、in、between以及like的操作数，或者limit子句的值，
+     * 这些位置上参数与常量的执行结果相同；其他位置上常量可能被当作标识符或者在执行前就需要确定，不能替换
+     */
+    public static boolean isParameterizable(final Statement statement,
+                                            final int argumentCount) throws CrabsException {
+        if (statement == null) {
+            throw new IllegalArgumentException("Argument[statement] is null.");
+        }
+        if (!(statement instanceof SelectStatement)) {
+            return false;
+        }
+        final SelectStatement selectStatement = (SelectStatement) statement;
+        final int whereArgumentCount = selectStatement.whereClause == null ? 0
+                : countConditionArguments(selectStatement.whereClause.conditionExpression);
+        // limit子句中的参数不计入语句的参数个数
+        if (whereArgumentCount < 0 || selectStatement.getParameterCount() != whereArgumentCount) {
+            return false;
+        }
+        int limitArgumentCount = 0;
+        final LimitClause limitClause = selectStatement.limitClause;
+        if (limitClause != null) {
+            if (limitClause.offset instanceof Argument) {
+                limitArgumentCount++;
+            }
+            if (limitClause.rowCount instanceof Argument) {
+                limitArgumentCount++;
+            }
+        }
+        return whereArgumentCount + limitArgumentCount == argumentCount;
+    }
+
+    private LiteralParameterizer(final String parameterizedSQL, final Object[] argumentValues) {
+        this.parameterizedSQL = parameterizedSQL;
+        this.argumentValues = argumentValues;
+    }
+
+    public final String parameterizedSQL;
+
+    public final Object[] argumentValues;
+
+    private static LiteralParameterizer doParameterize(final String SQL) throws SQLException {
+        final GrammarAnalyzeContext context = new GrammarAnalyzeContext(SQL);
+        final StringBuilder parameterizedSQLBuilder = new StringBuilder(SQL.length());
+        final ArrayList<Object> argumentValueList = new ArrayList<Object>();
+        int copiedPosition = 0;
+        int clause = CLAUSE$OTHER;
+        // 当前标记是否处于可以替换的位置
+        boolean literalExpected = false;
+        // 上一个操作数是否为列
+        boolean referenceBefore = false;
+        // 比较运算符可能由多个符号组成，例如"<>"、">="
+        boolean comparisonStarted = false;
+        boolean comparedWithReference = false;
+        boolean betweenStarted = false;
+        boolean betweenWithReference = false;
+        boolean inStarted = false;
+        boolean inListStarted = false;
+        context.toNextToken();
+        for (; ; ) {
+            final int tokenStartPosition = context.currentTokenStartPosition();
+            switch (context.currentTokenType()) {
+                case EOF:
+                    if (argumentValueList.isEmpty()) {
+                        return null;
+                    }
+                    parameterizedSQLBuilder.append(SQL, copiedPosition, SQL.length());
+                    return new LiteralParameterizer(parameterizedSQLBuilder.toString(), argumentValueList.toArray());
+                case KEYWORD:
+                    final Keyword keyword = context.currentTokenToKeyword();
+                    if (keyword == ReservedKeyword.WHERE) {
+                        clause = CLAUSE$WHERE;
+                    } else if (keyword == ReservedKeyword.LIMIT) {
+                        clause = CLAUSE$LIMIT;
+                    } else if (keyword == ReservedKeyword.SELECT
+                            || keyword == ReservedKeyword.FROM
+                            || keyword == ReservedKeyword.GROUP
+                            || keyword == ReservedKeyword.HAVING
+                            || keyword == ReservedKeyword.ORDER) {
+                        clause = CLAUSE$OTHER;
+                    }
+                    switch (clause) {
+                        case CLAUSE$WHERE:
+                            literalExpected = (keyword == ReservedKeyword.LIKE && referenceBefore)
+                                    || (keyword == ReservedKeyword.BETWEEN && referenceBefore)
+                                    || (keyword == ReservedKeyword.AND && betweenStarted && betweenWithReference);
+                            if (keyword == ReservedKeyword.BETWEEN) {
+                                betweenStarted = true;
+                                betweenWithReference = referenceBefore;
+                            } else if (keyword == ReservedKeyword.AND) {
+                                betweenStarted = false;
+                            }
+                            break;
+                        case CLAUSE$LIMIT:
+                            literalExpected = keyword == ReservedKeyword.LIMIT;
+                            break;
+                        default:
+                            literalExpected = false;
+                    }
+                    inStarted = keyword == ReservedKeyword.IN && referenceBefore;
+                    // "NOT LIKE"、"NOT IN"以及"NOT BETWEEN"中的NOT不改变左侧的操作数
+                    referenceBefore = referenceBefore && keyword == ReservedKeyword.NOT;
+                    comparisonStarted = false;
+                    context.toNextToken();
+                    continue;
+                case NUMBERS:
+                    final String integerString = context.currentTokenToString();
+                    int literalEndPosition = tokenStartPosition + integerString.length();
+                    final boolean filteredWhitespace = context.toNextToken();
+                    if (!filteredWhitespace && (context.currentTokenType() == TokenType.LETTERS
+                            || context.currentTokenType() == TokenType.NUMBERS)) {
+                        // 数字开头的标识符
+                        literalExpected = false;
+                        comparisonStarted = false;
+                        continue;
+                    }
+                    final Object value;
+                    if (context.currentTokenType() == TokenType.SYMBOL
+                            && context.currentTokenToSymbol() == '.') {
+                        context.toNextToken();
+                        if (clause == CLAUSE$LIMIT || context.currentTokenType() != TokenType.NUMBERS) {
+                            return null;
+                        }
+                        final String fractionString = context.currentTokenToString();
+                        literalEndPosition = context.currentTokenStartPosition() + fractionString.length();
+                        context.toNextToken();
+                        value = toDecimalValue(integerString + "." + fractionString);
+                    } else {
+                        value = toIntegerValue(integerString, clause == CLAUSE$LIMIT);
+                    }
+                    if (value == null) {
+                        return null;
+                    }
+                    if (literalExpected && clause != CLAUSE$OTHER) {
+                        parameterizedSQLBuilder.append(SQL, copiedPosition, tokenStartPosition).append('?');
+                        copiedPosition = literalEndPosition;
+                        argumentValueList.add(value);
+                    }
+                    literalExpected = false;
+                    referenceBefore = false;
+                    comparisonStarted = false;
+                    inStarted = false;
+                    continue;
+                case SYMBOL:
+                    final char symbol = context.currentTokenToSymbol();
+                    switch (symbol) {
+                        case '?':
+                            // 已经参数化的SQL中参数的序号由调用方决定
+                            return null;
+                        case '/':
+                            if (context.tryToNextTokenAfterHint() != null) {
+                                literalExpected = false;
+                                referenceBefore = false;
+                                comparisonStarted = false;
+                                inStarted = false;
+                                continue;
+                            }
+                            break;
+                        case '`':
+                        case '"':
+                        case '\'':
+                            context.toNextToken(symbol);
+                            final String string = context.currentTokenToString();
+                            context.toNextToken();
+                            if (context.currentTokenType() != TokenType.SYMBOL
+                                    || context.currentTokenToSymbol() != symbol) {
+                                return null;
+                            }
+                            final int stringEndPosition = context.currentTokenStartPosition() + 1;
+                            context.toNextToken();
+                            // 引号后紧跟"."时是引用
+                            if (symbol != '`' && literalExpected && clause == CLAUSE$WHERE
+                                    && !(context.currentTokenType() == TokenType.SYMBOL
+                                    && context.currentTokenToSymbol() == '.')) {
+                                parameterizedSQLBuilder.append(SQL, copiedPosition, tokenStartPosition).append('?');
+                                copiedPosition = stringEndPosition;
+                                argumentValueList.add(string);
+                            }
+                            literalExpected = false;
+                            // 反引号括起的是列名，其余引号括起的是字符串常量或者后跟"."的表名
+                            referenceBefore = symbol == '`';
+                            comparisonStarted = false;
+                            inStarted = false;
+                            continue;
+                    }
+                    final boolean comparison = symbol == '=' || symbol == '<' || symbol == '>' || symbol == '!';
+                    if (comparison && !comparisonStarted) {
+                        comparedWithReference = referenceBefore;
+                    }
+                    comparisonStarted = comparison;
+                    referenceBefore = false;
+                    switch (clause) {
+                        case CLAUSE$WHERE:
+                            if (symbol == '(' && inStarted) {
+                                inListStarted = true;
+                            } else if (symbol == ')') {
+                                inListStarted = false;
+                            }
+                            literalExpected = (comparison && comparedWithReference)
+                                    || (inListStarted && (symbol == '(' || symbol == ','));
+                            break;
+                        case CLAUSE$LIMIT:
+                            literalExpected = symbol == ',';
+                            break;
+                        default:
+                            literalExpected = false;
+                    }
+                    inStarted = false;
+                    context.toNextToken();
+                    continue;
+                default:
+                    literalExpected = false;
+                    referenceBefore = context.currentTokenType() == TokenType.LETTERS;
+                    comparisonStarted = false;
+                    inStarted = false;
+                    context.toNextToken();
+            }
+        }
+    }
+
+    /**
+     * 与语法分析中整数常量的类型一致，limit子句只接受int
+     */
+    private static Object toIntegerValue(final String integerString, final boolean intOnly) {
+        final long value;
+        try {
+            value = Long.parseLong(integerString);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+        if (value > Integer.MIN_VALUE && value <= Integer.MAX_VALUE) {
+            return (int) value;
+        }
+        return intOnly ? null : value;
+    }
+
+    /**
+     * 与语法分析中小数常量的类型一致
+     */
+    private static Object toDecimalValue(final String decimalString) {
+        final double value = Double.parseDouble(decimalString);
+        if (value > Float.MIN_VALUE && value <= Float.MAX_VALUE) {
+            return (float) value;
+        } else if (value > Double.MIN_VALUE && value <= Double.MAX_VALUE) {
+            return value;
+        }
+        return null;
+    }
+
+    /**
+     * @return 条件中可以替换为参数的常量个数，参数出现在其他位置时返回-1
+     */
+    private static int countConditionArguments(final Expression expression) throws CrabsException {
+        if (expression instanceof Argument) {
+            return -1;
+        }
+        final ReadonlyList<Expression> operandExpressionList = expression.getOperandExpressionList();
+        final boolean predicate = expression instanceof EqualToExpression
+                || expression instanceof UnequalToExpression
+                || expression instanceof GreaterThanExpression
+                || expression instanceof GreaterThanOrEqualToExpression
+                || expression instanceof LessThanExpression
+                || expression instanceof LessThanOrEqualToExpression
+                || expression instanceof InExpression
+                || expression instanceof BetweenExpression
+                || expression instanceof LikeExpression;
+        int argumentCount = 0;
+        for (int index = 0, size = operandExpressionList.size(); index < size; index++) {
+            final Expression operandExpression = operandExpressionList.get(index);
+            if (predicate) {
+                if (operandExpression instanceof Argument) {
+                    argumentCount++;
+                } else if (ExpressionHelper.getArgumentCount(operandExpression) > 0) {
+                    return -1;
+                }
+            } else {
+                final int operandArgumentCount = countConditionArguments(operandExpression);
+                if (operandArgumentCount < 0) {
+                    return -1;
+                }
+                argumentCount += operandArgumentCount;
+            }
+        }
+        return argumentCount;
+    }
+
+}
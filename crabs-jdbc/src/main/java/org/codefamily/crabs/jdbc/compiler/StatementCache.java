@@ -2,36 +2,102 @@ package org.codefamily.crabs.jdbc.compiler;
 
 import org.codefamily.crabs.jdbc.lang.Statement;
 
-import java.lang.ref.ReferenceQueue;
-import java.lang.ref.SoftReference;
-import java.util.HashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
- * SQL语句缓存
+ * SQL语句缓存，同一URL的所有连接共用一个缓存，语法分析的结果与连接无关。
+ * 缓存项的数量有上限，按分段LRU淘汰：新放入的语句先进入试用段，再次命中后晋升到保护段，
+ * 保护段满时把最久未使用的语句降回试用段，淘汰总是从试用段开始，因此只用过一次的语句不会挤掉经常使用的语句。
+ * key只是SQL文本：常量参数化得到的SQL与用户编写的SQL文本相同时语法分析的结果也相同，因此共用同一个缓存；
+ * 常量各不相同的SQL参数化后只占一项，只用过一次的原始SQL停留在试用段，不会挤掉参数化后反复使用的语句
  *
  * @author zhuchunlai
  * @version $Id: StatementCache.java, v1.0 2013/08/26 10:06 $
  */
 public final class StatementCache {
 
-    public StatementCache() {
-        this.statementMap = new HashMap<String, StatementReference>();
-        this.referenceQueue = new ReferenceQueue<Statement>();
-        this.cleaner = new Cleaner();
+    private static final ConcurrentHashMap<String, StatementCache> STATEMENT_CACHE_MAP
+            = new ConcurrentHashMap<String, StatementCache>();
+
+    // 保护段占总容量的比例
+    private static final float PROTECTED_SEGMENT_RATIO = 0.8F;
+
+    /**
+     * @param capacity 第一次创建该URL的缓存时使用的容量
+     */
+    public static StatementCache getInstance(final String URL, final int capacity) {
+        if (URL == null) {
+            throw new IllegalArgumentException("Argument [URL] is null.");
+        }
+        StatementCache statementCache = STATEMENT_CACHE_MAP.get(URL);
+        if (statementCache == null) {
+            statementCache = new StatementCache(capacity);
+            final StatementCache existedStatementCache = STATEMENT_CACHE_MAP.putIfAbsent(URL, statementCache);
+            if (existedStatementCache != null) {
+                statementCache = existedStatementCache;
+            }
+        }
+        return statementCache;
     }
 
-    private final HashMap<String, StatementReference> statementMap;
+    public StatementCache(final int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Argument [capacity] must be greater than 0.");
+        }
+        this.capacity = capacity;
+        this.protectedCapacity = (int) (capacity * PROTECTED_SEGMENT_RATIO);
+        this.nodeMap = new ConcurrentHashMap<String, Node>();
+        this.evictionLock = new ReentrantLock();
+        this.probationHead = new Node(null, null);
+        this.protectedHead = new Node(null, null);
+        this.hitCount = new AtomicLong();
+        this.missCount = new AtomicLong();
+        this.evictionCount = new AtomicLong();
+    }
+
+    private final int capacity;
+
+    private final int protectedCapacity;
 
-    private final ReferenceQueue<Statement> referenceQueue;
+    private final ConcurrentHashMap<String, Node> nodeMap;
 
-    private final Cleaner cleaner;
+    // 以下两个链表只在持有evictionLock时修改，表头之后是最近使用的语句
+    private final ReentrantLock evictionLock;
+
+    private final Node probationHead;
+
+    private final Node protectedHead;
+
+    private int protectedSize;
+
+    private final AtomicLong hitCount;
+
+    private final AtomicLong missCount;
+
+    private final AtomicLong evictionCount;
 
     public final Statement getStatement(final String statementString) {
         if (statementString == null) {
             throw new IllegalArgumentException("Argument [statementString] is null.");
         }
-        final StatementReference reference = this.statementMap.get(statementString);
-        return reference == null ? null : reference.get();
+        final Node node = this.nodeMap.get(statementString);
+        if (node == null) {
+            this.missCount.incrementAndGet();
+            return null;
+        }
+        this.hitCount.incrementAndGet();
+        // 其他线程正在调整链表时不等待，只是少记一次使用，不影响命中
+        final ReentrantLock evictionLock = this.evictionLock;
+        if (evictionLock.tryLock()) {
+            try {
+                this.afterAccess(node);
+            } finally {
+                evictionLock.unlock();
+            }
+        }
+        return node.statement;
     }
 
     public final void putStatement(final String statementString,
@@ -42,68 +108,110 @@ public final class StatementCache {
         if (statement == null) {
             throw new IllegalArgumentException("Argument [statement] is null.");
         }
-        if (!this.statementMap.containsKey(statementString)) {
-            synchronized (this.statementMap) {
-                if (!this.statementMap.containsKey(statementString)) {
-                    this.statementMap.put(
-                            statementString,
-                            new StatementReference(
-                                    statementString,
-                                    statement,
-                                    this.referenceQueue
-                            )
-                    );
+        final Node node = new Node(statementString, statement);
+        if (this.nodeMap.putIfAbsent(statementString, node) != null) {
+            return;
+        }
+        final ReentrantLock evictionLock = this.evictionLock;
+        evictionLock.lock();
+        try {
+            node.linkAfter(this.probationHead);
+            while (this.nodeMap.size() > this.capacity) {
+                Node victim = this.probationHead.previous;
+                if (victim == this.probationHead) {
+                    victim = this.protectedHead.previous;
+                    if (victim == this.protectedHead) {
+                        break;
+                    }
+                    this.protectedSize--;
                 }
+                victim.unlink();
+                this.nodeMap.remove(victim.statementString, victim);
+                this.evictionCount.incrementAndGet();
             }
+        } finally {
+            evictionLock.unlock();
         }
     }
 
-    public final void start() {
-        this.cleaner.start();
+    public final int size() {
+        return this.nodeMap.size();
     }
 
-    public final void stop() {
-        this.cleaner.setRunSwitch(false);
-        this.cleaner.interrupt();
+    public final int getCapacity() {
+        return this.capacity;
     }
 
-    private final class Cleaner extends Thread {
+    public final long getHitCount() {
+        return this.hitCount.get();
+    }
 
-        Cleaner() {
-            super("Statement cache cleaner");
-            this.setDaemon(true);
-            this.runSwitch = true;
-        }
+    public final long getMissCount() {
+        return this.missCount.get();
+    }
 
-        private volatile boolean runSwitch;
+    public final long getEvictionCount() {
+        return this.evictionCount.get();
+    }
 
-        final void setRunSwitch(final boolean runSwitch) {
-            this.runSwitch = runSwitch;
+    private void afterAccess(final Node node) {
+        if (node.previous == null) {
+            // 已被淘汰，或者放入的线程还未加入链表
+            return;
+        }
+        if (node.protectedSegment) {
+            node.unlink();
+            node.linkAfter(this.protectedHead);
+            return;
         }
+        node.unlink();
+        node.protectedSegment = true;
+        node.linkAfter(this.protectedHead);
+        this.protectedSize++;
+        if (this.protectedSize > this.protectedCapacity) {
+            final Node demotedNode = this.protectedHead.previous;
+            demotedNode.unlink();
+            demotedNode.protectedSegment = false;
+            demotedNode.linkAfter(this.probationHead);
+            this.protectedSize--;
+        }
+    }
 
-        @Override
-        public final void run() {
-            final HashMap<String, StatementReference> statementMap = StatementCache.this.statementMap;
-            final ReferenceQueue<Statement> referenceQueue = StatementCache.this.referenceQueue;
-            StatementReference statementReference;
-            while (this.runSwitch
-                    && (statementReference = (StatementReference) referenceQueue.poll()) != null) {
-                synchronized (statementMap) {
-                    statementMap.remove(statementReference.cacheKey);
-                }
+    private static final class Node {
+
+        Node(final String statementString, final Statement statement) {
+            this.statementString = statementString;
+            this.statement = statement;
+            if (statementString == null) {
+                // 表头
+                this.previous = this;
+                this.next = this;
             }
         }
-    }
 
-    private static final class StatementReference extends SoftReference<Statement> {
+        final String statementString;
+
+        final Statement statement;
 
-        StatementReference(final String cacheKey, final Statement statement,
-                           final ReferenceQueue<? super Statement> referenceQueue) {
-            super(statement, referenceQueue);
-            this.cacheKey = cacheKey;
+        Node previous;
+
+        Node next;
+
+        boolean protectedSegment;
+
+        final void linkAfter(final Node node) {
+            this.previous = node;
+            this.next = node.next;
+            node.next.previous = this;
+            node.next = this;
         }
 
-        final String cacheKey;
+        final void unlink() {
+            this.previous.next = this.next;
+            this.next.previous = this.previous;
+            this.previous = null;
+            this.next = null;
+        }
 
     }
 
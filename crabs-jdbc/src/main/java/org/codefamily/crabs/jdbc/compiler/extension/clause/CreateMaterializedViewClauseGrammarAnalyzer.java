@@ -0,0 +1,44 @@
+package org.codefamily.crabs.jdbc.compiler.extension.clause;
+
+import org.codefamily.crabs.jdbc.lang.extension.ReservedKeyword;
+import org.codefamily.crabs.jdbc.lang.extension.clause.CreateMaterializedViewClause;
+import org.codefamily.crabs.jdbc.compiler.GrammarAnalyzer.ClauseGrammarAnalyzer;
+
+import java.sql.SQLException;
+
+public final class CreateMaterializedViewClauseGrammarAnalyzer extends ClauseGrammarAnalyzer {
+
+    public CreateMaterializedViewClauseGrammarAnalyzer() {
+        super(CreateMaterializedViewClause.PREFIX_KEYWORD_LIST);
+    }
+
+    @Override
+    protected final CreateMaterializedViewClause doAnalyze(final GrammarAnalyzeContext context) throws SQLException {
+        // MATERIALIZED和VIEW不是保留字
+        expectWord(context, CreateMaterializedViewClause.MATERIALIZED);
+        context.toNextToken();
+        expectWord(context, CreateMaterializedViewClause.VIEW);
+        context.toNextToken();
+        final int currentTokenStartPosition = context.currentTokenStartPosition();
+        final String viewName = analyzeGeneralizedIdentifier(context);
+        if (viewName == null) {
+            throw newSQLException(context, "Expect a view name.", currentTokenStartPosition);
+        }
+        expectKeyword(context, ReservedKeyword.AS);
+        context.toNextToken();
+        return new CreateMaterializedViewClause(viewName);
+    }
+
+    private static void expectWord(final GrammarAnalyzeContext context,
+                                   final String word) throws SQLException {
+        if (context.currentTokenType() != TokenType.LETTERS
+                || !context.currentTokenEqualsIgnoreCase(word)) {
+            throw newSQLException(
+                    context,
+                    "Expect " + word + ".",
+                    context.currentTokenStartPosition()
+            );
+        }
+    }
+
+}
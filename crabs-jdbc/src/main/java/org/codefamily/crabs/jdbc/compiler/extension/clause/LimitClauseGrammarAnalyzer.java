@@ -87,15 +87,14 @@ public final class LimitClauseGrammarAnalyzer extends ClauseGrammarAnalyzer {
     }
 
     private Constant tryToParseConstant(final GrammarAnalyzeContext context) throws SQLException {
-        final String tokenValue = context.currentTokenToString();
-        final long value = Long.parseLong(tokenValue);
+        final long value = context.currentTokenToLong();
         if (value > Integer.MIN_VALUE && value <= Integer.MAX_VALUE) {
             return new Constant((int) value);
         } else {
             throw newSQLException(
                     context,
                     "Unsupported number."
-                            + tokenValue, context.currentTokenStartPosition()
+                            + context.currentTokenToString(), context.currentTokenStartPosition()
             );
         }
     }
@@ -4,6 +4,7 @@ import org.codefamily.crabs.jdbc.lang.Expression;
 import org.codefamily.crabs.jdbc.lang.Keyword;
 import org.codefamily.crabs.jdbc.lang.extension.ReservedKeyword;
 import org.codefamily.crabs.jdbc.lang.extension.clause.SelectClause;
+import org.codefamily.crabs.jdbc.lang.extension.clause.SelectClause.Hint;
 import org.codefamily.crabs.jdbc.lang.extension.clause.SelectClause.ResultColumnDeclare;
 import org.codefamily.crabs.jdbc.compiler.GrammarAnalyzer.ClauseGrammarAnalyzer;
 
@@ -18,6 +19,7 @@ public final class SelectClauseGrammarAnalyzer extends ClauseGrammarAnalyzer {
 
     @Override
     protected final SelectClause doAnalyze(final GrammarAnalyzeContext context) throws SQLException {
+        final Hint[] hints = analyzeHints(context);
         Boolean distinct = null;
         Expression topNExpression = null;
         for (; ; ) {
@@ -55,7 +57,102 @@ public final class SelectClauseGrammarAnalyzer extends ClauseGrammarAnalyzer {
             }
             break;
         }
-        return new SelectClause(distinct, topNExpression, analyzeResultColumnDeclares(context));
+        return new SelectClause(hints, distinct, topNExpression, analyzeResultColumnDeclares(context));
+    }
+
+    /**
+     * 解析形如"/*+ ROUTING(k1,k2) PREFERENCE(_local) SHARDS(0,3)"的提示注释
+     */
+    private static Hint[] analyzeHints(final GrammarAnalyzeContext context) throws SQLException {
+        final int currentTokenStartPosition = context.currentTokenStartPosition();
+        final String hintString = context.tryToNextTokenAfterHint();
+        if (hintString == null) {
+            return new Hint[0];
+        }
+        final ArrayList<Hint> hintList = new ArrayList<Hint>();
+        final int hintStringLength = hintString.length();
+        int currentPosition = 0;
+        for (; ; ) {
+            while (currentPosition < hintStringLength
+                    && Character.isWhitespace(hintString.charAt(currentPosition))) {
+                currentPosition++;
+            }
+            if (currentPosition == hintStringLength) {
+                break;
+            }
+            final int nameStartPosition = currentPosition;
+            while (currentPosition < hintStringLength
+                    && Character.isJavaIdentifierPart(hintString.charAt(currentPosition))) {
+                currentPosition++;
+            }
+            final String name = hintString.substring(nameStartPosition, currentPosition).toUpperCase();
+            while (currentPosition < hintStringLength
+                    && Character.isWhitespace(hintString.charAt(currentPosition))) {
+                currentPosition++;
+            }
+            if (name.isEmpty() || currentPosition == hintStringLength
+                    || hintString.charAt(currentPosition) != '(') {
+                throw newSQLException(context, "Expect a hint like NAME(arguments).", currentTokenStartPosition);
+            }
+            final int argumentsEndPosition = hintString.indexOf(')', currentPosition);
+            if (argumentsEndPosition < 0) {
+                throw newSQLException(context, "Missing ')' of hint " + name + ".", currentTokenStartPosition);
+            }
+            final String argumentsString = hintString.substring(currentPosition + 1, argumentsEndPosition);
+            final String[] arguments = argumentsString.trim().isEmpty() ? new String[0] : argumentsString.split(",");
+            for (int i = 0; i < arguments.length; i++) {
+                arguments[i] = arguments[i].trim();
+                if (arguments[i].isEmpty()) {
+                    throw newSQLException(context, "Empty argument of hint " + name + ".", currentTokenStartPosition);
+                }
+            }
+            currentPosition = argumentsEndPosition + 1;
+            checkHint(name, arguments);
+            for (int i = 0, hintCount = hintList.size(); i < hintCount; i++) {
+                if (hintList.get(i).name.equals(name)) {
+                    throw new SQLException("Conflict hint " + name + " in select clause.");
+                }
+            }
+            hintList.add(new Hint(name, arguments));
+        }
+        return hintList.toArray(new Hint[hintList.size()]);
+    }
+
+    private static void checkHint(final String name, final String[] arguments) throws SQLException {
+        if (name.equals(Hint.ROUTING)) {
+            if (arguments.length == 0) {
+                throw new SQLException("Hint ROUTING expects at least one argument.");
+            }
+            return;
+        }
+        if (name.equals(Hint.PREFERENCE)) {
+            if (arguments.length != 1) {
+                throw new SQLException("Hint PREFERENCE expects one argument.");
+            }
+            return;
+        }
+        if (name.equals(Hint.NO_MATERIALIZED_VIEW)) {
+            if (arguments.length != 0) {
+                throw new SQLException("Hint NO_MATERIALIZED_VIEW expects no argument.");
+            }
+            return;
+        }
+        if (name.equals(Hint.SHARDS)) {
+            if (arguments.length == 0) {
+                throw new SQLException("Hint SHARDS expects at least one argument.");
+            }
+            for (String argument : arguments) {
+                try {
+                    if (Integer.parseInt(argument) < 0) {
+                        throw new SQLException("Shard number of hint SHARDS is less than 0.");
+                    }
+                } catch (NumberFormatException e) {
+                    throw new SQLException("Shard number of hint SHARDS is not an integer. " + argument);
+                }
+            }
+            return;
+        }
+        throw new SQLException("Now, hint " + name + " is not supported in select clause.");
     }
 
     private static ResultColumnDeclare[] analyzeResultColumnDeclares(
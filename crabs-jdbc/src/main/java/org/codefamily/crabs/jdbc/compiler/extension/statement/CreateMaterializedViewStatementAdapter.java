@@ -0,0 +1,43 @@
+package org.codefamily.crabs.jdbc.compiler.extension.statement;
+
+import org.codefamily.crabs.util.ReadonlyList;
+import org.codefamily.crabs.jdbc.lang.Clause;
+import org.codefamily.crabs.jdbc.lang.Statement;
+import org.codefamily.crabs.jdbc.lang.extension.clause.CreateMaterializedViewClause;
+import org.codefamily.crabs.jdbc.lang.extension.statement.CreateMaterializedViewStatement;
+import org.codefamily.crabs.jdbc.lang.extension.statement.SelectStatement;
+import org.codefamily.crabs.jdbc.compiler.StatementFactory;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+
+public final class CreateMaterializedViewStatementAdapter extends StatementFactory.StatementAdapter {
+
+    public CreateMaterializedViewStatementAdapter() {
+        super(CreateMaterializedViewClause.class);
+    }
+
+    private final SelectStatementAdapter selectStatementAdapter = new SelectStatementAdapter();
+
+    @Override
+    protected final Statement adaptStatement(final ReadonlyList<Clause> clauseList) throws SQLException {
+        if (!(clauseList.get(0) instanceof CreateMaterializedViewClause)) {
+            throw new SQLException("Unexpected clause in create materialized view statement. "
+                    + clauseList.get(0).prefixKeywordList);
+        }
+        // 其余的子句组成定义视图的查询语句
+        final ArrayList<Clause> selectClauseList = new ArrayList<Clause>(clauseList.size() - 1);
+        for (int i = 1, clauseCount = clauseList.size(); i < clauseCount; i++) {
+            final Clause clause = clauseList.get(i);
+            if (clause instanceof CreateMaterializedViewClause) {
+                throw new SQLException("Conflict create materialized view clause in create materialized view statement.");
+            }
+            selectClauseList.add(clause);
+        }
+        return new CreateMaterializedViewStatement(
+                (CreateMaterializedViewClause) clauseList.get(0),
+                (SelectStatement) this.selectStatementAdapter.adaptStatement(ReadonlyList.newInstance(selectClauseList))
+        );
+    }
+
+}
@@ -0,0 +1,97 @@
+package org.codefamily.crabs.jdbc.engine;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 按时间分区缓存的聚合结果，以序列化后的形式保存；
+ * 占用的内存按key和序列化结果的大小估算，超过容量时淘汰最久未使用的分区。
+ * 同一URL的所有连接共用一个缓存，容量是进程内该URL的上限，不会随连接数增长
+ */
+final class AggregationPartitionCache {
+
+    private static final ConcurrentHashMap<String, AggregationPartitionCache> AGGREGATION_PARTITION_CACHE_MAP
+            = new ConcurrentHashMap<String, AggregationPartitionCache>();
+
+    // 每个缓存项除key和序列化结果之外的估算开销
+    private static final long ENTRY_OVERHEAD = 64L;
+
+    /**
+     * @param capacity 第一次创建该URL的缓存时使用的容量，单位：字节
+     */
+    static AggregationPartitionCache getInstance(final String URL, final long capacity) {
+        if (URL == null) {
+            throw new IllegalArgumentException("Argument [URL] is null.");
+        }
+        AggregationPartitionCache aggregationPartitionCache = AGGREGATION_PARTITION_CACHE_MAP.get(URL);
+        if (aggregationPartitionCache == null) {
+            aggregationPartitionCache = new AggregationPartitionCache(capacity);
+            final AggregationPartitionCache existedAggregationPartitionCache
+                    = AGGREGATION_PARTITION_CACHE_MAP.putIfAbsent(URL, aggregationPartitionCache);
+            if (existedAggregationPartitionCache != null) {
+                aggregationPartitionCache = existedAggregationPartitionCache;
+            }
+        }
+        return aggregationPartitionCache;
+    }
+
+    AggregationPartitionCache(final long capacity) {
+        if (capacity < 0) {
+            throw new IllegalArgumentException("Argument[capacity] is less than 0.");
+        }
+        this.capacity = capacity;
+        this.partitionMap = new LinkedHashMap<String, byte[]>(16, 0.75f, true);
+        this.size = 0L;
+    }
+
+    private final long capacity;
+
+    private final LinkedHashMap<String, byte[]> partitionMap;
+
+    // 已缓存的分区估算占用的字节数
+    private long size;
+
+    final synchronized byte[] getPartition(final String cacheKey) {
+        return this.partitionMap.get(cacheKey);
+    }
+
+    /**
+     * 大于缓存容量的分区不缓存，也不会因此淘汰其它分区
+     */
+    final synchronized void putPartition(final String cacheKey, final byte[] partition) {
+        final long entrySize = entrySize(cacheKey, partition);
+        if (entrySize > this.capacity) {
+            this.removePartition(cacheKey);
+            return;
+        }
+        final byte[] replacedPartition = this.partitionMap.put(cacheKey, partition);
+        if (replacedPartition != null) {
+            this.size -= entrySize(cacheKey, replacedPartition);
+        }
+        this.size += entrySize;
+        final Iterator<Map.Entry<String, byte[]>> iterator = this.partitionMap.entrySet().iterator();
+        while (this.size > this.capacity) {
+            final Map.Entry<String, byte[]> eldest = iterator.next();
+            this.size -= entrySize(eldest.getKey(), eldest.getValue());
+            iterator.remove();
+        }
+    }
+
+    final synchronized void removePartition(final String cacheKey) {
+        final byte[] removedPartition = this.partitionMap.remove(cacheKey);
+        if (removedPartition != null) {
+            this.size -= entrySize(cacheKey, removedPartition);
+        }
+    }
+
+    final synchronized long size() {
+        return this.size;
+    }
+
+    private static long entrySize(final String cacheKey, final byte[] partition) {
+        return ENTRY_OVERHEAD + 2L * cacheKey.length() + partition.length;
+    }
+
+}
@@ -5,16 +5,143 @@ import org.codefamily.crabs.core.client.AdvancedClient;
 import org.codefamily.crabs.jdbc.lang.Statement;
 import org.codefamily.crabs.exception.CrabsException;
 
+import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
 public final class ExecuteEngine {
 
+    /**
+     * 使用默认选项执行，每次执行新建选项，避免不同的执行共用同一个{@link ExecuteOptions#getRequestController()}
+     */
     public static <TStatement extends Statement, TResult> TResult executeStatement(
             final AdvancedClient advancedClient,
             final ExecuteEnvironment environment,
             TStatement statement,
             final Object[] argumentValues,
             final Class<TResult> resultClass) throws CrabsException {
+        return executeStatement(
+                advancedClient,
+                environment,
+                statement,
+                argumentValues,
+                new ExecuteOptions(ExecuteOptions.DEFAULT_FETCH_SIZE),
+                resultClass
+        );
+    }
+
+    public static <TStatement extends Statement, TResult> TResult executeStatement(
+            final AdvancedClient advancedClient,
+            final ExecuteEnvironment environment,
+            TStatement statement,
+            final Object[] argumentValues,
+            final ExecuteOptions options,
+            final Class<TResult> resultClass) throws CrabsException {
+        final StatementExecutor<TStatement, TResult> statementExecutor
+                = getStatementExecutor(advancedClient, environment, statement, argumentValues, options, resultClass);
+        return statementExecutor.execute(advancedClient, statement, environment, options, argumentValues);
+    }
+
+    /**
+     * 异步执行语句，结果通过listener通知；参数错误或请求无法发出时直接抛出异常，不会通知listener
+     */
+    public static <TStatement extends Statement, TResult> void executeStatementAsync(
+            final AdvancedClient advancedClient,
+            final ExecuteEnvironment environment,
+            TStatement statement,
+            final Object[] argumentValues,
+            final ExecuteOptions options,
+            final Class<TResult> resultClass,
+            final ExecuteListener<TResult> listener) throws CrabsException {
+        if (listener == null) {
+            throw new IllegalArgumentException("Argument[listener] is null.");
+        }
+        getStatementExecutor(advancedClient, environment, statement, argumentValues, options, resultClass)
+                .executeAsync(advancedClient, statement, environment, options, argumentValues, listener);
+    }
+
+    /**
+     * 批量执行语句，同一类语句交给对应的执行器一起执行，以便合并发往elasticsearch的请求；
+     * 结果与语句的顺序一致，任何一条语句执行失败时抛出异常，已得到的结果会被关闭
+     */
+    public static <TStatement extends Statement, TResult> List<TResult> executeStatementBatch(
+            final AdvancedClient advancedClient,
+            final ExecuteEnvironment environment,
+            final List<TStatement> statements,
+            final List<Object[]> argumentValuesList,
+            final ExecuteOptions options,
+            final Class<TResult> resultClass) throws CrabsException {
+        if (statements == null) {
+            throw new IllegalArgumentException("Argument[statements] is null.");
+        }
+        if (argumentValuesList == null) {
+            throw new IllegalArgumentException("Argument[argumentValuesList] is null.");
+        }
+        final int size = statements.size();
+        if (argumentValuesList.size() != size) {
+            throw new IllegalArgumentException("Arguments[statements, argumentValuesList] must have the same size.");
+        }
+        // 按执行器分组，保持语句原有的顺序
+        final LinkedHashMap<StatementExecutor<TStatement, TResult>, ArrayList<Integer>> statementIndexMap
+                = new LinkedHashMap<StatementExecutor<TStatement, TResult>, ArrayList<Integer>>();
+        for (int index = 0; index < size; index++) {
+            final StatementExecutor<TStatement, TResult> statementExecutor = getStatementExecutor(
+                    advancedClient,
+                    environment,
+                    statements.get(index),
+                    argumentValuesList.get(index),
+                    options,
+                    resultClass
+            );
+            ArrayList<Integer> statementIndexList = statementIndexMap.get(statementExecutor);
+            if (statementIndexList == null) {
+                statementIndexList = new ArrayList<Integer>();
+                statementIndexMap.put(statementExecutor, statementIndexList);
+            }
+            statementIndexList.add(index);
+        }
+        final ArrayList<TResult> resultList = new ArrayList<TResult>(size);
+        for (int index = 0; index < size; index++) {
+            resultList.add(null);
+        }
+        try {
+            for (Map.Entry<StatementExecutor<TStatement, TResult>, ArrayList<Integer>> entry
+                    : statementIndexMap.entrySet()) {
+                final ArrayList<Integer> statementIndexList = entry.getValue();
+                final int statementCount = statementIndexList.size();
+                final ArrayList<TStatement> groupedStatementList = new ArrayList<TStatement>(statementCount);
+                final ArrayList<Object[]> groupedArgumentValuesList = new ArrayList<Object[]>(statementCount);
+                for (int index = 0; index < statementCount; index++) {
+                    groupedStatementList.add(statements.get(statementIndexList.get(index)));
+                    groupedArgumentValuesList.add(argumentValuesList.get(statementIndexList.get(index)));
+                }
+                final List<TResult> groupedResultList = entry.getKey().executeBatch(
+                        advancedClient,
+                        groupedStatementList,
+                        environment,
+                        options,
+                        groupedArgumentValuesList
+                );
+                for (int index = 0; index < statementCount; index++) {
+                    resultList.set(statementIndexList.get(index), groupedResultList.get(index));
+                }
+            }
+        } catch (CrabsException e) {
+            StatementExecutor.closeResults(resultList);
+            throw e;
+        }
+        return resultList;
+    }
+
+    private static <TStatement extends Statement, TResult> StatementExecutor<TStatement, TResult> getStatementExecutor(
+            final AdvancedClient advancedClient,
+            final ExecuteEnvironment environment,
+            TStatement statement,
+            final Object[] argumentValues,
+            final ExecuteOptions options,
+            final Class<TResult> resultClass) throws CrabsException {
         if (advancedClient == null) {
             throw new IllegalArgumentException("Argument[advancedClient] is null.");
         }
@@ -27,6 +154,9 @@ public final class ExecuteEngine {
         if (argumentValues == null) {
             throw new IllegalArgumentException("Argument[argumentValues] is null.");
         }
+        if (options == null) {
+            throw new IllegalArgumentException("Argument[options] is null.");
+        }
         if (resultClass == null) {
             throw new IllegalArgumentException("Argument[resultClass] is null.");
         }
@@ -38,7 +168,7 @@ public final class ExecuteEngine {
                     + statement.getClass().getSimpleName()
                     + ", result class " + resultClass.getName());
         }
-        return statementExecutor.execute(advancedClient, statement, environment, argumentValues);
+        return statementExecutor;
     }
 
     public static void recollectStatementExecutor() {
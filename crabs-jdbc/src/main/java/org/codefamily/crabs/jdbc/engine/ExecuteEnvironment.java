@@ -1,5 +1,6 @@
 package org.codefamily.crabs.jdbc.engine;
 
+import org.codefamily.crabs.util.ReadonlyList;
 import org.codefamily.crabs.util.TimeCacheMap;
 import org.codefamily.crabs.core.Identifier;
 import org.codefamily.crabs.core.IndexDefinition;
@@ -7,6 +8,7 @@ import org.codefamily.crabs.core.TypeDefinition;
 import org.codefamily.crabs.core.client.AdvancedClient;
 import org.codefamily.crabs.exception.CrabsException;
 import org.codefamily.crabs.jdbc.Protocol;
+import org.codefamily.crabs.jdbc.lang.Statement;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -14,6 +16,7 @@ import java.io.Closeable;
 import java.io.IOException;
 import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
 
 public final class ExecuteEnvironment implements Closeable {
 
@@ -27,8 +30,19 @@ public final class ExecuteEnvironment implements Closeable {
 
     private final Properties properties;
 
+    private final String URL;
+
     private final TimeCacheMap<Identifier, TypeDefinition> typeDefinitionCache;
 
+    private final TimeCacheMap<Identifier, ReadonlyList<TypeDefinition>> typeDefinitionsCache;
+
+    private final StatementExecutePlanCache statementExecutePlanCache;
+
+    private final AggregationPartitionCache aggregationPartitionCache;
+
+    // 扩展的执行器在连接范围内保存的资源，例如解析后的物化视图，执行环境关闭时一并关闭
+    private final ConcurrentHashMap<Class<? extends Closeable>, Closeable> resourceMap;
+
     public ExecuteEnvironment(final AdvancedClient advancedClient,
                               final Identifier indexIdentifier) {
         this(advancedClient, indexIdentifier, EMPTY_PROPERTIES);
@@ -37,6 +51,16 @@ public final class ExecuteEnvironment implements Closeable {
     public ExecuteEnvironment(final AdvancedClient advancedClient,
                               final Identifier indexIdentifier,
                               final Properties properties) {
+        this(advancedClient, indexIdentifier, properties, null);
+    }
+
+    /**
+     * @param URL 连接的URL，同一URL的执行环境共用聚合结果缓存以及物化视图的刷新状态；为null时这些资源只属于本执行环境
+     */
+    public ExecuteEnvironment(final AdvancedClient advancedClient,
+                              final Identifier indexIdentifier,
+                              final Properties properties,
+                              final String URL) {
         if (advancedClient == null) {
             throw new IllegalArgumentException("Argument[advancedClient] is null.");
         }
@@ -50,7 +74,19 @@ public final class ExecuteEnvironment implements Closeable {
         this.advancedClient = advancedClient;
         this.indexIdentifier = indexIdentifier;
         this.properties = finallyProperties;
+        this.URL = URL;
         this.closed = false;
+        this.statementExecutePlanCache = new StatementExecutePlanCache();
+        this.resourceMap = new ConcurrentHashMap<Class<? extends Closeable>, Closeable>();
+        final long aggregationPartitionCacheCapacity = Long.parseLong(
+                this.getProperty(
+                        Protocol.PROPERTY_ENTRY$AGGREGATION_PARTITION_CACHE_MEMORY.identifier,
+                        Protocol.PROPERTY_ENTRY$AGGREGATION_PARTITION_CACHE_MEMORY.defaultValue
+                )
+        ) * 1024L * 1024L;
+        this.aggregationPartitionCache = URL == null
+                ? new AggregationPartitionCache(aggregationPartitionCacheCapacity)
+                : AggregationPartitionCache.getInstance(URL, aggregationPartitionCacheCapacity);
         this.typeDefinitionCache = new TimeCacheMap<Identifier, TypeDefinition>(
                 Integer.parseInt(
                         this.getProperty(
@@ -67,12 +103,35 @@ public final class ExecuteEnvironment implements Closeable {
                     }
                 }
         );
+        this.typeDefinitionsCache = new TimeCacheMap<Identifier, ReadonlyList<TypeDefinition>>(
+                Integer.parseInt(
+                        this.getProperty(
+                                Protocol.PROPERTY_ENTRY$META_DATA_TTL.identifier,
+                                Protocol.PROPERTY_ENTRY$META_DATA_TTL.defaultValue
+                        )
+                ),
+                10,
+                new TimeCacheMap.ExpiredCallback<Identifier, ReadonlyList<TypeDefinition>>() {
+                    @Override
+                    public final void expire(final Identifier indexIdentifier,
+                                             final ReadonlyList<TypeDefinition> typeDefinitions) {
+                        // nothing to do.
+                    }
+                }
+        );
     }
 
     public final String getProperty(final String propertyName, final String defaultValue) {
         return this.properties.getProperty(propertyName, defaultValue);
     }
 
+    /**
+     * @return 连接的URL，执行环境不属于连接时返回null
+     */
+    public final String getURL() {
+        return this.URL;
+    }
+
     private volatile boolean closed;
 
     @Override
@@ -82,6 +141,16 @@ public final class ExecuteEnvironment implements Closeable {
                 if (!this.closed) {
                     this.closed = true;
                     this.typeDefinitionCache.cleanup();
+                    this.typeDefinitionsCache.cleanup();
+                    this.statementExecutePlanCache.clear();
+                    for (Closeable resource : this.resourceMap.values()) {
+                        try {
+                            resource.close();
+                        } catch (IOException e) {
+                            LOG.warn("Failed to close resource[" + resource + "].", e);
+                        }
+                    }
+                    this.resourceMap.clear();
                 }
             }
         }
@@ -114,6 +183,118 @@ public final class ExecuteEnvironment implements Closeable {
         return typeDefinition;
     }
 
+    /**
+     * 获取索引中所有type的定义，与单个type的定义一样按metaDataTTL缓存
+     */
+    public final ReadonlyList<TypeDefinition> getTypeDefinitions() throws CrabsException {
+        ReadonlyList<TypeDefinition> typeDefinitions = this.typeDefinitionsCache.get(this.indexIdentifier);
+        if (typeDefinitions == null) {
+            synchronized (this) {
+                typeDefinitions = this.typeDefinitionsCache.get(this.indexIdentifier);
+                if (typeDefinitions == null) {
+                    typeDefinitions = this.advancedClient.getTypeDefinitions(this.indexIdentifier);
+                    this.typeDefinitionsCache.put(this.indexIdentifier, typeDefinitions);
+                }
+            }
+        }
+        return typeDefinitions;
+    }
+
+    /**
+     * 创建或删除type之后调用，使缓存的type定义在下次使用时重新获取
+     */
+    public final void invalidateTypeDefinitions() {
+        synchronized (this) {
+            this.typeDefinitionsCache.remove(this.indexIdentifier);
+        }
+    }
+
+    /**
+     * 获取语句已缓存的执行计划，没有缓存或者已被回收时返回null
+     */
+    public final <TStatementExecutePlan extends StatementExecutePlan> TStatementExecutePlan getStatementExecutePlan(
+            final Statement statement,
+            final Class<TStatementExecutePlan> planClass) {
+        if (statement == null) {
+            throw new IllegalArgumentException("Argument[statement] is null.");
+        }
+        if (planClass == null) {
+            throw new IllegalArgumentException("Argument[planClass] is null.");
+        }
+        return this.statementExecutePlanCache.getStatementExecutePlan(statement, planClass);
+    }
+
+    public final void putStatementExecutePlan(final Statement statement,
+                                              final StatementExecutePlan statementExecutePlan) {
+        if (statement == null) {
+            throw new IllegalArgumentException("Argument[statement] is null.");
+        }
+        if (statementExecutePlan == null) {
+            throw new IllegalArgumentException("Argument[statementExecutePlan] is null.");
+        }
+        this.statementExecutePlanCache.putStatementExecutePlan(statement, statementExecutePlan);
+    }
+
+    /**
+     * 获取已缓存的时间分区的聚合结果，没有缓存或者已被淘汰时返回null
+     */
+    public final byte[] getAggregationPartition(final String cacheKey) {
+        if (cacheKey == null) {
+            throw new IllegalArgumentException("Argument[cacheKey] is null.");
+        }
+        return this.aggregationPartitionCache.getPartition(cacheKey);
+    }
+
+    /**
+     * 缓存时间分区的聚合结果，超过缓存容量的结果不会被缓存
+     */
+    public final void putAggregationPartition(final String cacheKey, final byte[] partition) {
+        if (cacheKey == null) {
+            throw new IllegalArgumentException("Argument[cacheKey] is null.");
+        }
+        if (partition == null) {
+            throw new IllegalArgumentException("Argument[partition] is null.");
+        }
+        this.aggregationPartitionCache.putPartition(cacheKey, partition);
+    }
+
+    public final void removeAggregationPartition(final String cacheKey) {
+        if (cacheKey == null) {
+            throw new IllegalArgumentException("Argument[cacheKey] is null.");
+        }
+        this.aggregationPartitionCache.removePartition(cacheKey);
+    }
+
+    /**
+     * 获取按类型保存的资源，没有时返回null
+     */
+    public final <TResource extends Closeable> TResource getResource(final Class<TResource> resourceClass) {
+        if (resourceClass == null) {
+            throw new IllegalArgumentException("Argument[resourceClass] is null.");
+        }
+        return resourceClass.cast(this.resourceMap.get(resourceClass));
+    }
+
+    /**
+     * 保存资源，已经存在同类型的资源时返回已存在的资源，传入的资源由调用方关闭；执行环境关闭后不能再保存资源
+     */
+    public final <TResource extends Closeable> TResource putResourceIfAbsent(final Class<TResource> resourceClass,
+                                                                             final TResource resource) {
+        if (resourceClass == null) {
+            throw new IllegalArgumentException("Argument[resourceClass] is null.");
+        }
+        if (resource == null) {
+            throw new IllegalArgumentException("Argument[resource] is null.");
+        }
+        synchronized (this) {
+            if (this.closed) {
+                throw new IllegalStateException("Execute environment is closed.");
+            }
+            final Closeable existedResource = this.resourceMap.putIfAbsent(resourceClass, resource);
+            return existedResource == null ? resource : resourceClass.cast(existedResource);
+        }
+    }
+
     // ----------------- 以下是性能测试所需 -----------------
 
     private final ThreadLocal<Long> startTimeInMillisThreadLocal = new ThreadLocal<Long>();
@@ -0,0 +1,17 @@
+package org.codefamily.crabs.jdbc.engine;
+
+import org.codefamily.crabs.exception.CrabsException;
+
+/**
+ * 异步执行语句时的结果通知，回调可能在elasticsearch客户端的线程中执行
+ *
+ * @author zhuchunlai
+ * @version $Id: ExecuteListener.java, v1.0 2014/10/17 15:10 $
+ */
+public interface ExecuteListener<TResult> {
+
+    void onResult(TResult result);
+
+    void onFailure(CrabsException e);
+
+}
@@ -0,0 +1,71 @@
+package org.codefamily.crabs.jdbc.engine;
+
+import org.codefamily.crabs.core.client.RequestController;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 单次语句执行的选项，由JDBC Statement在执行时给出
+ *
+ * @author zhuchunlai
+ * @version $Id: ExecuteOptions.java, v1.0 2014/10/17 10:20 $
+ */
+public final class ExecuteOptions {
+
+    /**
+     * 未设置fetch size时，由执行计划自行决定每次从elasticsearch获取的记录数
+     */
+    public static final int DEFAULT_FETCH_SIZE = 0;
+
+    /**
+     * 未设置查询超时时间，不限定等待elasticsearch响应的时间
+     */
+    public static final int NO_QUERY_TIMEOUT = 0;
+
+    public ExecuteOptions(final int fetchSize) {
+        this(fetchSize, NO_QUERY_TIMEOUT);
+    }
+
+    /**
+     * 每次执行都需要新建选项，执行过程中发出的请求可以通过{@link #getRequestController()}取消
+     */
+    public ExecuteOptions(final int fetchSize, final int queryTimeout) {
+        if (fetchSize < 0) {
+            throw new IllegalArgumentException("Argument[fetchSize] is less than 0.");
+        }
+        if (queryTimeout < 0) {
+            throw new IllegalArgumentException("Argument[queryTimeout] is less than 0.");
+        }
+        this.fetchSize = fetchSize;
+        this.queryTimeout = queryTimeout;
+        this.requestController = new RequestController(TimeUnit.SECONDS.toMillis(queryTimeout));
+    }
+
+    private final int fetchSize;
+
+    // 单位：秒
+    private final int queryTimeout;
+
+    private final RequestController requestController;
+
+    public final int getFetchSize() {
+        return this.fetchSize;
+    }
+
+    public final boolean isFetchSizeSpecified() {
+        return this.fetchSize != DEFAULT_FETCH_SIZE;
+    }
+
+    public final int getQueryTimeout() {
+        return this.queryTimeout;
+    }
+
+    public final boolean isQueryTimeoutSpecified() {
+        return this.queryTimeout != NO_QUERY_TIMEOUT;
+    }
+
+    public final RequestController getRequestController() {
+        return this.requestController;
+    }
+
+}
@@ -4,30 +4,22 @@ import org.codefamily.crabs.jdbc.lang.Statement;
 
 import java.lang.ref.ReferenceQueue;
 import java.lang.ref.SoftReference;
-import java.util.HashMap;
+import java.util.concurrent.ConcurrentHashMap;
 
-final class StatementExecutePlanCache extends Thread {
+/**
+ * 按语句缓存编译后的执行计划，执行计划以软引用的方式持有，内存不足时由GC回收，
+ * 被回收的缓存项在下一次放入时清理
+ */
+final class StatementExecutePlanCache {
 
     StatementExecutePlanCache() {
-        this.setName("Statement execute plan cache cleaner");
-        this.setDaemon(true);
         this.referenceQueue = new ReferenceQueue<StatementExecutePlan>();
-        this.statementExecutePlanCache = new HashMap<Statement, StatementExecutePlanReference>();
+        this.statementExecutePlanCache = new ConcurrentHashMap<Statement, StatementExecutePlanReference>();
     }
 
     private final ReferenceQueue<StatementExecutePlan> referenceQueue;
 
-    private final HashMap<Statement, StatementExecutePlanReference> statementExecutePlanCache;
-
-    @Override
-    public final void run() {
-        StatementExecutePlanReference selectExecutePlanReference;
-        while ((selectExecutePlanReference = (StatementExecutePlanReference) this.referenceQueue.poll()) != null) {
-            synchronized (this.statementExecutePlanCache) {
-                this.statementExecutePlanCache.remove(selectExecutePlanReference.cacheKey);
-            }
-        }
-    }
+    private final ConcurrentHashMap<Statement, StatementExecutePlanReference> statementExecutePlanCache;
 
     final <TStatementExecutePlan extends StatementExecutePlan> TStatementExecutePlan getStatementExecutePlan(
             final Statement cacheKey,
@@ -35,7 +27,7 @@ final class StatementExecutePlanCache extends Thread {
         final StatementExecutePlanReference reference = this.statementExecutePlanCache.get(cacheKey);
         if (reference != null) {
             final StatementExecutePlan statementExecutePlan = reference.get();
-            if (statementExecutePlan != null) {
+            if (planClass.isInstance(statementExecutePlan)) {
                 return planClass.cast(statementExecutePlan);
             }
         }
@@ -44,11 +36,22 @@ final class StatementExecutePlanCache extends Thread {
 
     final void putStatementExecutePlan(final Statement cacheKey,
                                        final StatementExecutePlan statementExecutePlan) {
-        synchronized (this.statementExecutePlanCache) {
-            this.statementExecutePlanCache.put(
-                    cacheKey,
-                    new StatementExecutePlanReference(cacheKey, statementExecutePlan, this.referenceQueue)
-            );
+        this.expungeStaleReferences();
+        this.statementExecutePlanCache.put(
+                cacheKey,
+                new StatementExecutePlanReference(cacheKey, statementExecutePlan, this.referenceQueue)
+        );
+    }
+
+    final void clear() {
+        this.statementExecutePlanCache.clear();
+    }
+
+    private void expungeStaleReferences() {
+        StatementExecutePlanReference reference;
+        while ((reference = (StatementExecutePlanReference) this.referenceQueue.poll()) != null) {
+            // 同一语句可能已经放入了新的执行计划
+            this.statementExecutePlanCache.remove(reference.cacheKey, reference);
         }
     }
 
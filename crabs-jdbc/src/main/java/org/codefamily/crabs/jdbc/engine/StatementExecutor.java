@@ -4,6 +4,11 @@ import org.codefamily.crabs.core.client.AdvancedClient;
 import org.codefamily.crabs.jdbc.lang.Statement;
 import org.codefamily.crabs.exception.CrabsException;
 
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
 public abstract class StatementExecutor<TStatement extends Statement, TResult> {
 
     protected StatementExecutor(final Class<TStatement> statementClass,
@@ -27,6 +32,56 @@ public abstract class StatementExecutor<TStatement extends Statement, TResult> {
     protected abstract TResult execute(AdvancedClient advancedClient,
                                        TStatement statement,
                                        ExecuteEnvironment environment,
+                                       ExecuteOptions options,
                                        Object[] argumentValues) throws CrabsException;
 
+    /**
+     * 异步执行语句，默认在调用方线程中同步执行后通知listener，支持非阻塞执行的子类需要覆盖该方法
+     */
+    protected void executeAsync(final AdvancedClient advancedClient,
+                                final TStatement statement,
+                                final ExecuteEnvironment environment,
+                                final ExecuteOptions options,
+                                final Object[] argumentValues,
+                                final ExecuteListener<TResult> listener) throws CrabsException {
+        listener.onResult(this.execute(advancedClient, statement, environment, options, argumentValues));
+    }
+
+    /**
+     * 批量执行语句，结果与语句的顺序一致；默认逐条执行，能够合并请求的子类需要覆盖该方法。
+     * 执行失败时已得到的结果会被关闭
+     */
+    protected List<TResult> executeBatch(final AdvancedClient advancedClient,
+                                         final List<TStatement> statements,
+                                         final ExecuteEnvironment environment,
+                                         final ExecuteOptions options,
+                                         final List<Object[]> argumentValuesList) throws CrabsException {
+        final int size = statements.size();
+        final ArrayList<TResult> resultList = new ArrayList<TResult>(size);
+        try {
+            for (int index = 0; index < size; index++) {
+                resultList.add(
+                        this.execute(advancedClient, statements.get(index), environment, options, argumentValuesList.get(index))
+                );
+            }
+        } catch (CrabsException e) {
+            closeResults(resultList);
+            throw e;
+        }
+        return resultList;
+    }
+
+    protected static void closeResults(final List<?> resultList) {
+        for (int index = 0, size = resultList.size(); index < size; index++) {
+            final Object result = resultList.get(index);
+            if (result instanceof Closeable) {
+                try {
+                    ((Closeable) result).close();
+                } catch (IOException e) {
+                    // nothing to do.
+                }
+            }
+        }
+    }
+
 }
@@ -0,0 +1,44 @@
+package org.codefamily.crabs.jdbc.engine.extension;
+
+import org.codefamily.crabs.core.TypeDefinition;
+import org.codefamily.crabs.core.client.AdvancedClient;
+import org.codefamily.crabs.exception.CrabsException;
+import org.codefamily.crabs.jdbc.engine.ExecuteEnvironment;
+import org.codefamily.crabs.jdbc.engine.ExecuteOptions;
+import org.codefamily.crabs.jdbc.engine.StatementExecutor;
+import org.codefamily.crabs.jdbc.lang.extension.statement.CreateMaterializedViewStatement;
+
+public final class CreateMaterializedViewStatementExecutor
+        extends StatementExecutor<CreateMaterializedViewStatement, Integer> {
+
+    public CreateMaterializedViewStatementExecutor() {
+        super(CreateMaterializedViewStatement.class, Integer.class);
+    }
+
+    /**
+     * 创建视图对应的type并写入当前的分组结果，返回写入的行数
+     */
+    @Override
+    protected final Integer execute(final AdvancedClient advancedClient,
+                                    final CreateMaterializedViewStatement statement,
+                                    final ExecuteEnvironment environment,
+                                    final ExecuteOptions options,
+                                    final Object[] argumentValues) throws CrabsException {
+        if (statement.getParameterCount() > 0) {
+            throw new CrabsException("Can not contain argument in materialized view.");
+        }
+        final MaterializedView materializedView = MaterializedView.define(
+                environment,
+                statement.createMaterializedViewClause.viewIdentifier,
+                statement.selectStatement
+        );
+        final TypeDefinition viewTypeDefinition = materializedView.newTypeDefinition(
+                environment.getIndexDefinition(),
+                environment.getTypeDefinition(materializedView.sourceIdentifier)
+        );
+        advancedClient.createType(viewTypeDefinition);
+        environment.invalidateTypeDefinitions();
+        return materializedView.populate(advancedClient, environment, options, viewTypeDefinition, null, null);
+    }
+
+}
@@ -0,0 +1,1111 @@
+package org.codefamily.crabs.jdbc.engine.extension;
+
+import org.codefamily.crabs.core.DataType;
+import org.codefamily.crabs.core.Identifier;
+import org.codefamily.crabs.core.IndexDefinition;
+import org.codefamily.crabs.core.TypeDefinition;
+import org.codefamily.crabs.core.TypeDefinition.FieldDefinition;
+import org.codefamily.crabs.core.client.AdvancedClient;
+import org.codefamily.crabs.core.client.AdvancedClient.InternalDocumentRequestBuilder;
+import org.codefamily.crabs.core.client.AdvancedClient.InternalIndicesRequestBuilder;
+import org.codefamily.crabs.core.client.AdvancedClient.ResponseCallback;
+import org.codefamily.crabs.exception.CrabsException;
+import org.codefamily.crabs.jdbc.compiler.GrammarAnalyzer;
+import org.codefamily.crabs.jdbc.engine.ExecuteEngine;
+import org.codefamily.crabs.jdbc.engine.ExecuteEnvironment;
+import org.codefamily.crabs.jdbc.engine.ExecuteOptions;
+import org.codefamily.crabs.jdbc.internal.InternalResultSet;
+import org.codefamily.crabs.jdbc.lang.Clause.TableDeclare;
+import org.codefamily.crabs.jdbc.lang.Expression;
+import org.codefamily.crabs.jdbc.lang.Statement;
+import org.codefamily.crabs.jdbc.lang.expression.Aggregation;
+import org.codefamily.crabs.jdbc.lang.expression.Constant;
+import org.codefamily.crabs.jdbc.lang.expression.Function;
+import org.codefamily.crabs.jdbc.lang.expression.Reference;
+import org.codefamily.crabs.jdbc.lang.expression.util.ExpressionHelper;
+import org.codefamily.crabs.jdbc.lang.expression.util.ExtensionExpressionFactory;
+import org.codefamily.crabs.jdbc.lang.extension.clause.*;
+import org.codefamily.crabs.jdbc.lang.extension.clause.FromClause.SimpleTableDeclare;
+import org.codefamily.crabs.jdbc.lang.extension.clause.OrderByClause.OrderSpecification;
+import org.codefamily.crabs.jdbc.lang.extension.clause.SelectClause.Hint;
+import org.codefamily.crabs.jdbc.lang.extension.clause.SelectClause.ResultColumnDeclare;
+import org.codefamily.crabs.jdbc.lang.extension.expression.*;
+import org.codefamily.crabs.jdbc.lang.extension.statement.SelectStatement;
+import org.codefamily.crabs.util.ReadonlyList;
+import org.elasticsearch.action.admin.indices.refresh.RefreshAction;
+import org.elasticsearch.action.admin.indices.refresh.RefreshRequest;
+import org.elasticsearch.action.admin.indices.refresh.RefreshRequestBuilder;
+import org.elasticsearch.action.admin.indices.refresh.RefreshResponse;
+import org.elasticsearch.action.bulk.BulkAction;
+import org.elasticsearch.action.bulk.BulkRequest;
+import org.elasticsearch.action.bulk.BulkRequestBuilder;
+import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.action.deletebyquery.DeleteByQueryAction;
+import org.elasticsearch.action.deletebyquery.DeleteByQueryRequest;
+import org.elasticsearch.action.deletebyquery.DeleteByQueryRequestBuilder;
+import org.elasticsearch.action.deletebyquery.DeleteByQueryResponse;
+import org.elasticsearch.action.deletebyquery.IndexDeleteByQueryResponse;
+import org.elasticsearch.client.Client;
+import org.elasticsearch.client.IndicesAdminClient;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.index.query.FilterBuilder;
+import org.elasticsearch.index.query.FilterBuilders;
+import org.elasticsearch.index.query.QueryBuilders;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.TimeZone;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import static org.codefamily.crabs.jdbc.Protocol.PROPERTY_ENTRY$MATERIALIZED_VIEW_REFRESH_INTERVAL;
+import static org.elasticsearch.common.xcontent.XContentFactory.jsonBuilder;
+
+/**
+ * 物化视图，以分组查询的结果保存的type，字段为各分组列、各聚合列以及由分组列的值拼接成的主键。
+ * 视图的定义语句保存在type的_meta中；查询的条件、分组只涉及视图的分组列，
+ * 并且其中的聚合都能由视图的聚合列再次聚合得到时，查询被改写为对视图的查询
+ */
+final class MaterializedView {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(MaterializedView.class);
+
+    static final String META_DEFINITION = "materializedView";
+
+    static final Identifier ROLLUP_KEY_FIELD_IDENTIFIER = new Identifier("rollup_key");
+
+    // 写入分组的那次刷新开始的时间，刷新范围内早于本次刷新的分组在源数据中已经不存在
+    static final Identifier ROLLUP_GENERATION_FIELD_IDENTIFIER = new Identifier("rollup_generation");
+
+    // 主键中各分组列的值之间的分隔符，不会出现在普通的字段值中
+    private static final char ROLLUP_KEY_SEPARATOR = '\u001f';
+
+    // 由细到粗的时间单位，week只能由day及更细的单位合并得到
+    private static final String[] DATE_TRUNC_UNITS = {"second", "minute", "hour", "day", "week", "month", "quarter", "year"};
+
+    private static final int DAY_UNIT_INDEX = 3;
+
+    private static final int BULK_SIZE = 1000;
+
+    // 日期常量按本地时间解释，与SelectStatementExecutePlan中的时区转换一致
+    private static final long SRC_TIME_ZONE_RAW_OFFSET = TimeZone.getDefault().getRawOffset();
+
+    private static final long TARGET_TIME_ZONE_RAW_OFFSET = TimeZone.getTimeZone("UTC").getRawOffset();
+
+    private MaterializedView(final Identifier viewIdentifier,
+                             final SelectStatement definition) throws CrabsException {
+        final SelectClause selectClause = definition.selectClause;
+        if (definition.whereClause != null
+                || definition.havingClause != null
+                || definition.orderByClause != null
+                || definition.limitClause != null
+                || (selectClause.distinct != null && selectClause.distinct)
+                || selectClause.topNExpression != null
+                || !selectClause.hintList.isEmpty()) {
+            throw new CrabsException(
+                    "Materialized view[" + viewIdentifier + "] only supports select, from and group by clauses."
+            );
+        }
+        final ReadonlyList<TableDeclare> tableDeclareList = definition.fromClause.tableDeclareList;
+        if (tableDeclareList.size() != 1
+                || !(tableDeclareList.get(0) instanceof SimpleTableDeclare)
+                || tableDeclareList.get(0).alias != null) {
+            throw new CrabsException(
+                    "Materialized view[" + viewIdentifier + "] must select from a single type without alias."
+            );
+        }
+        if (definition.groupByClause == null) {
+            throw new CrabsException("Materialized view[" + viewIdentifier + "] must have group by clause.");
+        }
+        final ReadonlyList<Expression> groupExpressionList = definition.groupByClause.groupExpressionList;
+        final int groupExpressionCount = groupExpressionList.size();
+        final Expression[] groupExpressions = new Expression[groupExpressionCount];
+        final Identifier[] groupColumnIdentifiers = new Identifier[groupExpressionCount];
+        for (int index = 0; index < groupExpressionCount; index++) {
+            final Expression groupExpression = groupExpressionList.get(index);
+            if (!(isColumnReference(groupExpression)
+                    || groupExpression instanceof DateTruncFunction
+                    && isColumnReference(((DateTruncFunction) groupExpression).getOperandExpression(1)))) {
+                throw new CrabsException("Unsupported group expression[" + groupExpression + "] in materialized view.");
+            }
+            groupExpressions[index] = groupExpression;
+        }
+        final ArrayList<Aggregation> measureList = new ArrayList<Aggregation>();
+        final ArrayList<Identifier> measureColumnIdentifierList = new ArrayList<Identifier>();
+        final ReadonlyList<ResultColumnDeclare> resultColumnDeclareList = selectClause.resultColumnDeclareList;
+        for (int i = 0, resultColumnCount = resultColumnDeclareList.size(); i < resultColumnCount; i++) {
+            final ResultColumnDeclare resultColumnDeclare = resultColumnDeclareList.get(i);
+            final Expression expression = resultColumnDeclare.expression;
+            final int groupIndex = indexOf(groupExpressions, expression);
+            if (groupIndex >= 0) {
+                if (groupColumnIdentifiers[groupIndex] == null) {
+                    groupColumnIdentifiers[groupIndex] = resultColumnDeclare.alias;
+                }
+            } else if (isMeasure(expression)) {
+                if (!measureList.contains(expression)) {
+                    measureList.add((Aggregation) expression);
+                    measureColumnIdentifierList.add(
+                            resultColumnDeclare.alias == null
+                                    ? defaultMeasureColumnIdentifier((Aggregation) expression)
+                                    : resultColumnDeclare.alias
+                    );
+                }
+            } else {
+                throw new CrabsException("Unsupported expression[" + expression + "] in materialized view.");
+            }
+        }
+        for (int index = 0; index < groupExpressionCount; index++) {
+            if (groupColumnIdentifiers[index] == null) {
+                groupColumnIdentifiers[index] = defaultGroupColumnIdentifier(groupExpressions[index]);
+            }
+        }
+        final HashSet<Identifier> columnIdentifierSet = new HashSet<Identifier>();
+        columnIdentifierSet.add(ROLLUP_KEY_FIELD_IDENTIFIER);
+        columnIdentifierSet.add(ROLLUP_GENERATION_FIELD_IDENTIFIER);
+        final ArrayList<Identifier> columnIdentifierList = new ArrayList<Identifier>();
+        for (Identifier groupColumnIdentifier : groupColumnIdentifiers) {
+            columnIdentifierList.add(groupColumnIdentifier);
+        }
+        columnIdentifierList.addAll(measureColumnIdentifierList);
+        for (Identifier columnIdentifier : columnIdentifierList) {
+            if (!columnIdentifierSet.add(columnIdentifier)) {
+                throw new CrabsException(
+                        "There's multi columns with the same name[" + columnIdentifier + "] in materialized view."
+                );
+            }
+        }
+        this.viewIdentifier = viewIdentifier;
+        this.definition = definition;
+        this.sourceIdentifier = ((SimpleTableDeclare) tableDeclareList.get(0)).tableIdentifier;
+        this.groupExpressions = groupExpressions;
+        this.groupColumnIdentifiers = groupColumnIdentifiers;
+        this.measures = measureList.toArray(new Aggregation[measureList.size()]);
+        this.measureColumnIdentifiers = measureColumnIdentifierList.toArray(
+                new Identifier[measureColumnIdentifierList.size()]
+        );
+        this.populateLock = new Object();
+        this.refreshTime = 0;
+        this.complete = false;
+        this.refreshSubmitted = false;
+    }
+
+    final Identifier viewIdentifier;
+
+    final SelectStatement definition;
+
+    // 视图所依据的type
+    final Identifier sourceIdentifier;
+
+    private final Expression[] groupExpressions;
+
+    private final Identifier[] groupColumnIdentifiers;
+
+    private final Aggregation[] measures;
+
+    private final Identifier[] measureColumnIdentifiers;
+
+    // 写入视图的刷新依次进行，避免并发的刷新删除彼此写入的分组
+    private final Object populateLock;
+
+    // 最近一次刷新开始的时间
+    private volatile long refreshTime;
+
+    // 视图中的数据是一次完整刷新的结果，只有此时查询才改写为对视图的查询；
+    // 刷新开始时置为false，成功完成后置为true，刷新失败的视图要等到下一次刷新成功后才会被使用
+    private volatile boolean complete;
+
+    // 已提交后台刷新但尚未完成，避免重复提交
+    private volatile boolean refreshSubmitted;
+
+    /**
+     * 按CREATE MATERIALIZED VIEW语句中的查询定义视图，定义不符合要求时抛出异常；
+     * 名称和定义都相同的视图已被加载时返回已有的视图，使写入与其后台刷新互斥
+     */
+    static MaterializedView define(final ExecuteEnvironment environment,
+                                   final Identifier viewIdentifier,
+                                   final SelectStatement definition) throws CrabsException {
+        final MaterializedView materializedView = new MaterializedView(viewIdentifier, definition);
+        final MaterializedView existedMaterializedView = registry(environment).materializedViewMap.putIfAbsent(
+                cacheKey(viewIdentifier, definition.toString()),
+                materializedView
+        );
+        return existedMaterializedView != null ? existedMaterializedView : materializedView;
+    }
+
+    /**
+     * 查询能由某个物化视图回答时，返回改写后对视图的查询，否则返回原查询；
+     * 视图超过刷新间隔没有刷新时，在后台增量刷新视图，刷新进行中或者失败时查询仍由原来的type回答
+     */
+    static SelectStatement rewrite(final AdvancedClient advancedClient,
+                                   final ExecuteEnvironment environment,
+                                   final SelectStatement statement) throws CrabsException {
+        if (!isRewritable(statement)) {
+            return statement;
+        }
+        final Identifier sourceIdentifier
+                = ((SimpleTableDeclare) statement.fromClause.tableDeclareList.get(0)).tableIdentifier;
+        final ReadonlyList<TypeDefinition> typeDefinitionList = environment.getTypeDefinitions();
+        for (int index = 0, size = typeDefinitionList.size(); index < size; index++) {
+            final TypeDefinition typeDefinition = typeDefinitionList.get(index);
+            final String definitionString = typeDefinition.getMeta(META_DEFINITION);
+            if (definitionString == null) {
+                continue;
+            }
+            final MaterializedView materializedView
+                    = load(environment, typeDefinition.getIdentifier(), definitionString);
+            if (materializedView == null || !materializedView.sourceIdentifier.equals(sourceIdentifier)) {
+                continue;
+            }
+            final SelectStatement rewrittenStatement = materializedView.tryToRewrite(statement);
+            if (rewrittenStatement != null) {
+                materializedView.refreshIfNecessary(advancedClient, environment);
+                if (materializedView.complete) {
+                    return rewrittenStatement;
+                }
+            }
+        }
+        return statement;
+    }
+
+    /**
+     * 只改写单个type上不带提示的聚合查询
+     */
+    private static boolean isRewritable(final SelectStatement statement) throws CrabsException {
+        final SelectClause selectClause = statement.selectClause;
+        if (!selectClause.hintList.isEmpty()
+                || (selectClause.distinct != null && selectClause.distinct)) {
+            return false;
+        }
+        final ReadonlyList<TableDeclare> tableDeclareList = statement.fromClause.tableDeclareList;
+        if (tableDeclareList.size() != 1
+                || !(tableDeclareList.get(0) instanceof SimpleTableDeclare)
+                || tableDeclareList.get(0).alias != null) {
+            return false;
+        }
+        if (statement.groupByClause != null) {
+            return true;
+        }
+        final ReadonlyList<Expression> resultColumnExpressionList = selectClause.getResultColumnExpressionList();
+        for (int index = 0, size = resultColumnExpressionList.size(); index < size; index++) {
+            if (ExpressionHelper.getAggregations(resultColumnExpressionList.get(index)).length > 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static MaterializedView load(final ExecuteEnvironment environment,
+                                         final Identifier viewIdentifier,
+                                         final String definitionString) throws CrabsException {
+        final ConcurrentHashMap<String, MaterializedView> materializedViewMap
+                = registry(environment).materializedViewMap;
+        final String cacheKey = cacheKey(viewIdentifier, definitionString);
+        MaterializedView materializedView = materializedViewMap.get(cacheKey);
+        if (materializedView == null) {
+            try {
+                final Statement definition = GrammarAnalyzer.analyze(definitionString);
+                if (!(definition instanceof SelectStatement)) {
+                    throw new CrabsException("Expect a select statement.");
+                }
+                materializedView = new MaterializedView(viewIdentifier, (SelectStatement) definition);
+                // 已经存在的视图由创建或者之前的刷新写入，视为已完成
+                materializedView.complete = true;
+            } catch (SQLException e) {
+                LOGGER.warn("Invalid definition of materialized view[" + viewIdentifier + "].", e);
+                return null;
+            } catch (CrabsException e) {
+                LOGGER.warn("Invalid definition of materialized view[" + viewIdentifier + "].", e);
+                return null;
+            }
+            final MaterializedView existedMaterializedView
+                    = materializedViewMap.putIfAbsent(cacheKey, materializedView);
+            if (existedMaterializedView != null) {
+                materializedView = existedMaterializedView;
+            }
+        }
+        return materializedView;
+    }
+
+    private static String cacheKey(final Identifier viewIdentifier, final String definitionString) {
+        return viewIdentifier + "/" + definitionString;
+    }
+
+    private static Registry registry(final ExecuteEnvironment environment) {
+        final String URL = environment.getURL();
+        if (URL != null) {
+            return Registry.getInstance(URL);
+        }
+        final Registry registry = environment.getResource(Registry.class);
+        return registry != null ? registry : environment.putResourceIfAbsent(Registry.class, new Registry());
+    }
+
+    /**
+     * 视图对应的type，主键为分组列的值拼接成的字符串，另有记录写入时刷新批次的长整型字段，分组列的类型与所依据的字段相同，
+     * COUNT为长整型，其余聚合为浮点型。分组列和刷新批次在_meta中声明为只有一个值的字段
+     */
+    final TypeDefinition newTypeDefinition(final IndexDefinition indexDefinition,
+                                           final TypeDefinition sourceTypeDefinition) throws CrabsException {
+        final TypeDefinition typeDefinition = new TypeDefinition(indexDefinition, this.viewIdentifier);
+        typeDefinition.defineStringField(ROLLUP_KEY_FIELD_IDENTIFIER).asPrimaryField();
+        typeDefinition.defineLongField(ROLLUP_GENERATION_FIELD_IDENTIFIER);
+        for (int index = 0; index < this.groupExpressions.length; index++) {
+            final FieldDefinition sourceFieldDefinition
+                    = sourceFieldDefinition(sourceTypeDefinition, this.groupSourceReference(index));
+            if (this.groupExpressions[index] instanceof DateTruncFunction
+                    && sourceFieldDefinition.getDataType() != DataType.DATE) {
+                throw new CrabsException(
+                        "Unsupported group expression[" + this.groupExpressions[index] + "] in materialized view, "
+                                + "expect a date field."
+                );
+            }
+            typeDefinition.defineField(
+                    this.groupColumnIdentifiers[index],
+                    sourceFieldDefinition.getDataType(),
+                    sourceFieldDefinition.getPattern(),
+                    false
+            );
+        }
+        for (int index = 0; index < this.measures.length; index++) {
+            final Aggregation measure = this.measures[index];
+            final Reference reference = (Reference) measure.getOperandExpression(0);
+            if (!reference.columnIdentifier.equals(Reference.ALL_COLUMN_IDENTIFIER)) {
+                sourceFieldDefinition(sourceTypeDefinition, reference);
+            }
+            if (measure instanceof CountFunction) {
+                typeDefinition.defineLongField(this.measureColumnIdentifiers[index]);
+            } else {
+                typeDefinition.defineDoubleField(this.measureColumnIdentifiers[index]);
+            }
+        }
+        typeDefinition.putMeta(META_DEFINITION, this.definition.toString());
+        // 每行是一个分组，分组列只有一个值，查询条件中这些列上的比较可以合并为一个范围
+        final StringBuilder singleValuedFields = new StringBuilder(ROLLUP_GENERATION_FIELD_IDENTIFIER.toString());
+        for (Identifier groupColumnIdentifier : this.groupColumnIdentifiers) {
+            singleValuedFields.append(',').append(groupColumnIdentifier.toString());
+        }
+        typeDefinition.putMeta(SelectStatementExecutor.META_SINGLE_VALUED_FIELDS, singleValuedFields.toString());
+        typeDefinition.publish();
+        return typeDefinition;
+    }
+
+    private static FieldDefinition sourceFieldDefinition(final TypeDefinition sourceTypeDefinition,
+                                                         final Reference reference) throws CrabsException {
+        if (!sourceTypeDefinition.containsField(reference.columnIdentifier)) {
+            throw new CrabsException(
+                    "Field[" + reference.columnIdentifier + "] does not exist in the type["
+                            + sourceTypeDefinition.getIdentifier() + "]."
+            );
+        }
+        return sourceTypeDefinition.getFieldDefinition(reference.columnIdentifier);
+    }
+
+    /**
+     * 按视图的定义重新计算满足条件的分组，写入视图，已有的分组被覆盖；
+     * 再删除rebuiltRangeFilter范围内（为null时即整个视图）本次没有写入的分组，它们在源数据中已被删除或修改，
+     * 最后刷新索引。返回写入的行数。同一视图的写入依次进行，写入完成前查询不改写为对视图的查询
+     */
+    final int populate(final AdvancedClient advancedClient,
+                       final ExecuteEnvironment environment,
+                       final ExecuteOptions options,
+                       final TypeDefinition viewTypeDefinition,
+                       final Expression condition,
+                       final FilterBuilder rebuiltRangeFilter) throws CrabsException {
+        synchronized (this.populateLock) {
+            final long generation = System.currentTimeMillis();
+            this.refreshTime = generation;
+            this.complete = false;
+            final int rowCount = this.populate(
+                    advancedClient,
+                    environment,
+                    options,
+                    viewTypeDefinition,
+                    condition,
+                    rebuiltRangeFilter,
+                    generation
+            );
+            this.complete = true;
+            return rowCount;
+        }
+    }
+
+    private int populate(final AdvancedClient advancedClient,
+                         final ExecuteEnvironment environment,
+                         final ExecuteOptions options,
+                         final TypeDefinition viewTypeDefinition,
+                         final Expression condition,
+                         final FilterBuilder rebuiltRangeFilter,
+                         final long generation) throws CrabsException {
+        final int groupColumnCount = this.groupColumnIdentifiers.length;
+        final ResultColumnDeclare[] resultColumnDeclares
+                = new ResultColumnDeclare[groupColumnCount + this.measures.length];
+        final FieldDefinition[] fieldDefinitions = new FieldDefinition[resultColumnDeclares.length];
+        for (int index = 0; index < groupColumnCount; index++) {
+            resultColumnDeclares[index]
+                    = new ResultColumnDeclare(this.groupColumnIdentifiers[index], this.groupExpressions[index]);
+            fieldDefinitions[index] = viewTypeDefinition.getFieldDefinition(this.groupColumnIdentifiers[index]);
+        }
+        for (int index = 0; index < this.measures.length; index++) {
+            resultColumnDeclares[groupColumnCount + index]
+                    = new ResultColumnDeclare(this.measureColumnIdentifiers[index], this.measures[index]);
+            fieldDefinitions[groupColumnCount + index]
+                    = viewTypeDefinition.getFieldDefinition(this.measureColumnIdentifiers[index]);
+        }
+        final SelectStatement populateStatement = new SelectStatement(
+                new SelectClause(new Hint[]{new Hint(Hint.NO_MATERIALIZED_VIEW)}, null, null, resultColumnDeclares),
+                new FromClause(new SimpleTableDeclare((Identifier) null, this.sourceIdentifier)),
+                condition == null ? null : new WhereClause(condition),
+                new GroupByClause(this.groupExpressions),
+                null,
+                null,
+                null
+        );
+        final String indexName = viewTypeDefinition.getIndexDefinition().getIdentifier().toString();
+        final String typeName = this.viewIdentifier.toString();
+        int rowCount = 0;
+        final InternalResultSet resultSet = ExecuteEngine.executeStatement(
+                advancedClient,
+                environment,
+                populateStatement,
+                new Object[0],
+                options,
+                InternalResultSet.class
+        );
+        try {
+            final ArrayList<Object[]> rowList = new ArrayList<Object[]>(BULK_SIZE);
+            boolean hasNext = resultSet.next();
+            while (hasNext) {
+                rowList.add(readRow(resultSet, fieldDefinitions, groupColumnCount));
+                hasNext = resultSet.next();
+                if (rowList.size() == BULK_SIZE || !hasNext) {
+                    bulkIndex(
+                            advancedClient,
+                            options,
+                            indexName,
+                            typeName,
+                            fieldDefinitions,
+                            rowList,
+                            generation
+                    );
+                    rowCount += rowList.size();
+                    rowList.clear();
+                }
+            }
+        } finally {
+            try {
+                resultSet.close();
+            } catch (IOException e) {
+                // nothing to do.
+            }
+        }
+        FilterBuilder staleFilter = FilterBuilders.rangeFilter(ROLLUP_GENERATION_FIELD_IDENTIFIER.toString())
+                .lt(generation);
+        if (rebuiltRangeFilter != null) {
+            staleFilter = FilterBuilders.andFilter(rebuiltRangeFilter, staleFilter);
+        }
+        deleteByFilter(advancedClient, options, indexName, typeName, staleFilter);
+        refreshIndex(advancedClient, indexName);
+        return rowCount;
+    }
+
+    /**
+     * 读取一行分组结果，第一个值为主键；日期类型的分组取elasticsearch中保存的毫秒数，写回时不再经过格式转换
+     */
+    private static Object[] readRow(final InternalResultSet resultSet,
+                                    final FieldDefinition[] fieldDefinitions,
+                                    final int groupColumnCount) throws CrabsException {
+        final Object[] row = new Object[fieldDefinitions.length + 1];
+        final StringBuilder rollupKeyBuilder = new StringBuilder();
+        for (int index = 0; index < fieldDefinitions.length; index++) {
+            final Object value;
+            if (resultSet.isColumnValueNull(index)) {
+                value = null;
+            } else {
+                switch (fieldDefinitions[index].getDataType()) {
+                    case DATE:
+                    case LONG:
+                    case INTEGER:
+                        value = resultSet.getLongColumnValue(index);
+                        break;
+                    case DOUBLE:
+                    case FLOAT:
+                        value = resultSet.getDoubleColumnValue(index);
+                        break;
+                    default:
+                        value = resultSet.getColumnValue(index);
+                }
+            }
+            if (index < groupColumnCount) {
+                if (index > 0) {
+                    rollupKeyBuilder.append(ROLLUP_KEY_SEPARATOR);
+                }
+                if (value != null) {
+                    rollupKeyBuilder.append(value);
+                }
+            }
+            row[index + 1] = value;
+        }
+        row[0] = rollupKeyBuilder.toString();
+        return row;
+    }
+
+    private static void bulkIndex(final AdvancedClient advancedClient,
+                                  final ExecuteOptions options,
+                                  final String indexName,
+                                  final String typeName,
+                                  final FieldDefinition[] fieldDefinitions,
+                                  final ArrayList<Object[]> rowList,
+                                  final long generation) throws CrabsException {
+        final class InternalDocumentBuilder$BulkRequest implements
+                InternalDocumentRequestBuilder<BulkRequest, BulkResponse,
+                        BulkRequestBuilder, BulkAction, ArrayList<Object[]>> {
+            @Override
+            public final BulkAction buildAction() {
+                return BulkAction.INSTANCE;
+            }
+
+            @Override
+            public final BulkRequest buildRequest(final Client client,
+                                                  final ArrayList<Object[]> value) throws CrabsException {
+                final BulkRequestBuilder requestBuilder = client.prepareBulk();
+                for (Object[] row : value) {
+                    try {
+                        final XContentBuilder contentBuilder = jsonBuilder().startObject();
+                        contentBuilder.field(ROLLUP_KEY_FIELD_IDENTIFIER.toString(), row[0]);
+                        contentBuilder.field(ROLLUP_GENERATION_FIELD_IDENTIFIER.toString(), generation);
+                        for (int index = 0; index < fieldDefinitions.length; index++) {
+                            contentBuilder.field(fieldDefinitions[index].getIdentifier().toString(), row[index + 1]);
+                        }
+                        requestBuilder.add(
+                                client.prepareIndex(indexName, typeName, (String) row[0])
+                                        .setSource(contentBuilder.endObject())
+                        );
+                    } catch (IOException e) {
+                        throw new CrabsException(e.getMessage(), e);
+                    }
+                }
+                return requestBuilder.request();
+            }
+        }
+        advancedClient.execute(
+                new InternalDocumentBuilder$BulkRequest(),
+                new ResponseCallback<BulkResponse>() {
+                    @Override
+                    public final void callback(final BulkResponse response) throws CrabsException {
+                        if (response.hasFailures()) {
+                            throw new CrabsException(response.buildFailureMessage());
+                        }
+                    }
+                },
+                rowList,
+                options.getRequestController()
+        );
+    }
+
+    private static void deleteByFilter(final AdvancedClient advancedClient,
+                                       final ExecuteOptions options,
+                                       final String indexName,
+                                       final String typeName,
+                                       final FilterBuilder filter) throws CrabsException {
+        final class InternalDocumentBuilder$DeleteByQueryRequest implements
+                InternalDocumentRequestBuilder<DeleteByQueryRequest, DeleteByQueryResponse,
+                        DeleteByQueryRequestBuilder, DeleteByQueryAction, FilterBuilder> {
+            @Override
+            public final DeleteByQueryAction buildAction() {
+                return DeleteByQueryAction.INSTANCE;
+            }
+
+            @Override
+            public final DeleteByQueryRequest buildRequest(final Client client,
+                                                           final FilterBuilder value) throws CrabsException {
+                return client.prepareDeleteByQuery(indexName)
+                        .setTypes(typeName)
+                        .setQuery(QueryBuilders.filteredQuery(QueryBuilders.matchAllQuery(), value))
+                        .request();
+            }
+        }
+        advancedClient.execute(
+                new InternalDocumentBuilder$DeleteByQueryRequest(),
+                new ResponseCallback<DeleteByQueryResponse>() {
+                    @Override
+                    public final void callback(final DeleteByQueryResponse response) throws CrabsException {
+                        for (IndexDeleteByQueryResponse indexResponse : response) {
+                            if (indexResponse.getFailedShards() > 0) {
+                                throw new CrabsException(
+                                        "Failed to delete stale rows of materialized view[" + typeName + "] in "
+                                                + indexResponse.getFailedShards() + " shards."
+                                );
+                            }
+                        }
+                    }
+                },
+                filter,
+                options.getRequestController()
+        );
+    }
+
+    private static void refreshIndex(final AdvancedClient advancedClient,
+                                     final String indexName) throws CrabsException {
+        final class InternalIndicesRequestBuilder$RefreshRequest implements
+                InternalIndicesRequestBuilder<RefreshRequest, RefreshResponse,
+                        RefreshRequestBuilder, RefreshAction, String> {
+            @Override
+            public final RefreshAction buildAction() {
+                return RefreshAction.INSTANCE;
+            }
+
+            @Override
+            public final RefreshRequest buildRequest(final IndicesAdminClient adminClient,
+                                                     final String value) throws CrabsException {
+                return adminClient.prepareRefresh(value).request();
+            }
+        }
+        advancedClient.execute(
+                new InternalIndicesRequestBuilder$RefreshRequest(),
+                new ResponseCallback<RefreshResponse>() {
+                    @Override
+                    public final void callback(final RefreshResponse response) throws CrabsException {
+                        // nothing to do.
+                    }
+                },
+                indexName
+        );
+    }
+
+    /**
+     * 超过刷新间隔没有刷新并且没有已提交的刷新时，提交到后台线程刷新
+     */
+    private void refreshIfNecessary(final AdvancedClient advancedClient,
+                                    final ExecuteEnvironment environment) {
+        final long refreshInterval = Long.parseLong(
+                environment.getProperty(
+                        PROPERTY_ENTRY$MATERIALIZED_VIEW_REFRESH_INTERVAL.identifier,
+                        PROPERTY_ENTRY$MATERIALIZED_VIEW_REFRESH_INTERVAL.defaultValue
+                )
+        ) * 1000L;
+        if (refreshInterval <= 0 || System.currentTimeMillis() - this.refreshTime < refreshInterval) {
+            return;
+        }
+        synchronized (this) {
+            if (this.refreshSubmitted || System.currentTimeMillis() - this.refreshTime < refreshInterval) {
+                return;
+            }
+            this.refreshSubmitted = true;
+        }
+        if (!registry(environment).submitRefresh(this, advancedClient, environment)) {
+            this.refreshSubmitted = false;
+        }
+    }
+
+    /**
+     * 有日期类型的分组列时，以视图中该列的最大值为水位，只重建水位及之后的分组；否则重建所有分组
+     */
+    private void refresh(final AdvancedClient advancedClient,
+                         final ExecuteEnvironment environment,
+                         final ExecuteOptions options) throws CrabsException {
+        final TypeDefinition viewTypeDefinition = environment.getTypeDefinition(this.viewIdentifier);
+        Expression condition = null;
+        FilterBuilder rebuiltRangeFilter = null;
+        for (int index = 0; index < this.groupColumnIdentifiers.length; index++) {
+            if (viewTypeDefinition.getFieldDefinition(this.groupColumnIdentifiers[index]).getDataType()
+                    != DataType.DATE) {
+                continue;
+            }
+            final SelectStatement watermarkStatement = new SelectStatement(
+                    new SelectClause(
+                            new Hint[]{new Hint(Hint.NO_MATERIALIZED_VIEW)},
+                            null,
+                            null,
+                            new ResultColumnDeclare(
+                                    (Identifier) null,
+                                    new MaxinumFunction(new Reference((Identifier) null, this.groupColumnIdentifiers[index]))
+                            )
+                    ),
+                    new FromClause(new SimpleTableDeclare((Identifier) null, this.viewIdentifier)),
+                    null,
+                    null,
+                    null,
+                    null,
+                    null
+            );
+            final InternalResultSet resultSet = ExecuteEngine.executeStatement(
+                    advancedClient,
+                    environment,
+                    watermarkStatement,
+                    new Object[0],
+                    options,
+                    InternalResultSet.class
+            );
+            try {
+                if (resultSet.next() && !resultSet.isColumnValueNull(0)) {
+                    final double watermark = resultSet.getDoubleColumnValue(0);
+                    if (!Double.isNaN(watermark) && !Double.isInfinite(watermark)) {
+                        condition = new GreaterThanOrEqualToExpression(
+                                this.groupSourceReference(index),
+                                new Constant(
+                                        new Date((long) watermark - SRC_TIME_ZONE_RAW_OFFSET + TARGET_TIME_ZONE_RAW_OFFSET)
+                                )
+                        );
+                        rebuiltRangeFilter = FilterBuilders.rangeFilter(this.groupColumnIdentifiers[index].toString())
+                                .gte((long) watermark);
+                    }
+                }
+            } finally {
+                try {
+                    resultSet.close();
+                } catch (IOException e) {
+                    // nothing to do.
+                }
+            }
+            break;
+        }
+        this.populate(advancedClient, environment, options, viewTypeDefinition, condition, rebuiltRangeFilter);
+    }
+
+    /**
+     * 改写为对视图的查询，无法由视图回答时返回null；结果列的名称与原查询保持一致
+     */
+    private SelectStatement tryToRewrite(final SelectStatement statement) throws CrabsException {
+        final SelectClause selectClause = statement.selectClause;
+        final ReadonlyList<ResultColumnDeclare> resultColumnDeclareList = selectClause.resultColumnDeclareList;
+        final int resultColumnCount = resultColumnDeclareList.size();
+        final ResultColumnDeclare[] resultColumnDeclares = new ResultColumnDeclare[resultColumnCount];
+        final HashSet<Identifier> aliasSet = new HashSet<Identifier>();
+        for (int index = 0; index < resultColumnCount; index++) {
+            final ResultColumnDeclare resultColumnDeclare = resultColumnDeclareList.get(index);
+            final Expression expression = this.rewriteExpression(resultColumnDeclare.expression, true, null);
+            if (expression == null) {
+                return null;
+            }
+            Identifier alias = resultColumnDeclare.alias;
+            if (alias == null && !expression.equals(resultColumnDeclare.expression)) {
+                alias = new Identifier(resultColumnDeclare.expression.toString());
+            }
+            if (alias != null) {
+                aliasSet.add(alias);
+            }
+            resultColumnDeclares[index] = new ResultColumnDeclare(alias, expression);
+        }
+        WhereClause whereClause = null;
+        if (statement.whereClause != null) {
+            final Expression conditionExpression
+                    = this.rewriteExpression(statement.whereClause.conditionExpression, false, null);
+            if (conditionExpression == null) {
+                return null;
+            }
+            whereClause = new WhereClause(conditionExpression);
+        }
+        GroupByClause groupByClause = null;
+        if (statement.groupByClause != null) {
+            final ReadonlyList<Expression> groupExpressionList = statement.groupByClause.groupExpressionList;
+            final Expression[] groupExpressions = new Expression[groupExpressionList.size()];
+            for (int index = 0; index < groupExpressions.length; index++) {
+                groupExpressions[index] = this.rewriteExpression(groupExpressionList.get(index), false, null);
+                if (groupExpressions[index] == null) {
+                    return null;
+                }
+            }
+            groupByClause = new GroupByClause(groupExpressions);
+        }
+        HavingClause havingClause = null;
+        if (statement.havingClause != null) {
+            final Expression conditionExpression
+                    = this.rewriteExpression(statement.havingClause.conditionExpression, true, aliasSet);
+            if (conditionExpression == null) {
+                return null;
+            }
+            havingClause = new HavingClause(conditionExpression);
+        }
+        OrderByClause orderByClause = null;
+        if (statement.orderByClause != null) {
+            final ReadonlyList<OrderSpecification> orderSpecificationList
+                    = statement.orderByClause.orderSpecificationList;
+            final OrderSpecification[] orderSpecifications = new OrderSpecification[orderSpecificationList.size()];
+            for (int index = 0; index < orderSpecifications.length; index++) {
+                final OrderSpecification orderSpecification = orderSpecificationList.get(index);
+                final Expression orderExpression
+                        = this.rewriteExpression(orderSpecification.expression, true, aliasSet);
+                if (orderExpression == null) {
+                    return null;
+                }
+                orderSpecifications[index] = new OrderSpecification(orderExpression, orderSpecification.ascendingOrder);
+            }
+            orderByClause = new OrderByClause(orderSpecifications);
+        }
+        return new SelectStatement(
+                new SelectClause(selectClause.distinct, selectClause.topNExpression, resultColumnDeclares),
+                new FromClause(new SimpleTableDeclare((Identifier) null, this.viewIdentifier)),
+                whereClause,
+                groupByClause,
+                havingClause,
+                orderByClause,
+                statement.limitClause
+        );
+    }
+
+    /**
+     * 将表达式中视图的分组表达式替换为对应的分组列，聚合替换为对聚合列的再次聚合；
+     * 涉及视图中不存在的字段时返回null。aliasSet不为null时，可以引用结果列的别名
+     */
+    private Expression rewriteExpression(final Expression expression,
+                                         final boolean aggregationAllowed,
+                                         final HashSet<Identifier> aliasSet) throws CrabsException {
+        final int groupIndex = indexOf(this.groupExpressions, expression);
+        if (groupIndex >= 0) {
+            return new Reference((Identifier) null, this.groupColumnIdentifiers[groupIndex]);
+        }
+        if (expression instanceof Reference) {
+            final Reference reference = (Reference) expression;
+            if (aliasSet != null && reference.setIdentifier == null && aliasSet.contains(reference.columnIdentifier)) {
+                return expression;
+            }
+            return null;
+        }
+        if (expression instanceof Aggregation) {
+            return aggregationAllowed ? this.rewriteAggregation((Aggregation) expression) : null;
+        }
+        if (expression instanceof DateTruncFunction) {
+            // 较粗的时间单位由视图中较细的时间单位合并得到
+            final DateTruncFunction dateTruncFunction = (DateTruncFunction) expression;
+            for (int index = 0; index < this.groupExpressions.length; index++) {
+                final Expression groupExpression = this.groupExpressions[index];
+                if (groupExpression instanceof DateTruncFunction
+                        && ((DateTruncFunction) groupExpression).getOperandExpression(1)
+                        .equals(dateTruncFunction.getOperandExpression(1))
+                        && isMergeableUnit(((DateTruncFunction) groupExpression).unit, dateTruncFunction.unit)) {
+                    return new DateTruncFunction(
+                            dateTruncFunction.getOperandExpression(0),
+                            new Reference((Identifier) null, this.groupColumnIdentifiers[index])
+                    );
+                }
+            }
+        }
+        final ReadonlyList<Expression> operandExpressionList = expression.getOperandExpressionList();
+        final int operandCount = operandExpressionList.size();
+        if (operandCount == 0) {
+            // 常量、参数
+            return expression;
+        }
+        final Expression[] operandExpressions = new Expression[operandCount];
+        boolean rewritten = false;
+        for (int index = 0; index < operandCount; index++) {
+            operandExpressions[index]
+                    = this.rewriteExpression(operandExpressionList.get(index), aggregationAllowed, aliasSet);
+            if (operandExpressions[index] == null) {
+                return null;
+            }
+            rewritten |= operandExpressions[index] != operandExpressionList.get(index);
+        }
+        return rewritten
+                ? ExtensionExpressionFactory.newExtensionExpression(expression.getClass(), operandExpressions)
+                : expression;
+    }
+
+    /**
+     * COUNT和SUM由聚合列求和得到，MIN和MAX由聚合列求最小、最大值得到；
+     * COUNT的和仍以长整型返回，与改写前的结果类型一致
+     */
+    private Expression rewriteAggregation(final Aggregation aggregation) throws CrabsException {
+        final int measureIndex = indexOf(this.measures, aggregation);
+        if (measureIndex < 0) {
+            return null;
+        }
+        final Reference reference = new Reference((Identifier) null, this.measureColumnIdentifiers[measureIndex]);
+        if (aggregation instanceof CountFunction) {
+            return new RollupCountFunction(reference);
+        } else if (aggregation instanceof SummaryFunction) {
+            return new SummaryFunction(reference);
+        } else if (aggregation instanceof MininumFunction) {
+            return new MininumFunction(reference);
+        } else if (aggregation instanceof MaxinumFunction) {
+            return new MaxinumFunction(reference);
+        }
+        return null;
+    }
+
+    private Reference groupSourceReference(final int groupIndex) {
+        final Expression groupExpression = this.groupExpressions[groupIndex];
+        if (groupExpression instanceof DateTruncFunction) {
+            return (Reference) ((DateTruncFunction) groupExpression).getOperandExpression(1);
+        }
+        return (Reference) groupExpression;
+    }
+
+    private static boolean isColumnReference(final Expression expression) {
+        return expression instanceof Reference
+                && ((Reference) expression).setIdentifier == null
+                && !((Reference) expression).columnIdentifier.equals(Reference.ALL_COLUMN_IDENTIFIER);
+    }
+
+    private static boolean isMeasure(final Expression expression) {
+        if (!(expression instanceof CountFunction
+                || expression instanceof SummaryFunction
+                || expression instanceof MininumFunction
+                || expression instanceof MaxinumFunction)) {
+            return false;
+        }
+        final Expression operandExpression = ((Aggregation) expression).getOperandExpression(0);
+        return isColumnReference(operandExpression)
+                || expression instanceof CountFunction
+                && operandExpression instanceof Reference
+                && ((Reference) operandExpression).setIdentifier == null;
+    }
+
+    private static Identifier defaultGroupColumnIdentifier(final Expression groupExpression) {
+        if (groupExpression instanceof DateTruncFunction) {
+            final DateTruncFunction dateTruncFunction = (DateTruncFunction) groupExpression;
+            return new Identifier(
+                    ((Reference) dateTruncFunction.getOperandExpression(1)).columnIdentifier
+                            + "_" + dateTruncFunction.unit
+            );
+        }
+        return ((Reference) groupExpression).columnIdentifier;
+    }
+
+    private static Identifier defaultMeasureColumnIdentifier(final Aggregation measure) {
+        final Identifier columnIdentifier = ((Reference) measure.getOperandExpression(0)).columnIdentifier;
+        return new Identifier(
+                ((Function) measure).getIdentifier().toLowerCase() + "_"
+                        + (columnIdentifier.equals(Reference.ALL_COLUMN_IDENTIFIER) ? "all" : columnIdentifier)
+        );
+    }
+
+    private static int indexOf(final Expression[] expressions, final Expression expression) {
+        for (int index = 0; index < expressions.length; index++) {
+            if (expressions[index].equals(expression)) {
+                return index;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean isMergeableUnit(final String viewUnit, final String unit) {
+        if (viewUnit.equals(unit)) {
+            return true;
+        }
+        int viewUnitIndex = -1, unitIndex = -1;
+        for (int index = 0; index < DATE_TRUNC_UNITS.length; index++) {
+            if (DATE_TRUNC_UNITS[index].equals(viewUnit)) {
+                viewUnitIndex = index;
+            }
+            if (DATE_TRUNC_UNITS[index].equals(unit)) {
+                unitIndex = index;
+            }
+        }
+        if (viewUnit.equals("week")) {
+            return false;
+        }
+        if (unit.equals("week")) {
+            return viewUnitIndex <= DAY_UNIT_INDEX;
+        }
+        return viewUnitIndex < unitIndex;
+    }
+
+    /**
+     * 解析后的视图以及刷新视图的后台线程。连接的执行环境按URL共用，视图及其刷新状态在这些连接之间共享，
+     * 同一视图同时只有一次刷新，不会因为新建连接而重新刷新；刷新使用提交它的连接，该连接关闭后刷新失败，
+     * 由之后的查询重新提交。没有URL的执行环境使用自己的，随执行环境关闭而清空，未完成的刷新被取消
+     */
+    static final class Registry implements Closeable {
+
+        private static final ConcurrentHashMap<String, Registry> REGISTRY_MAP
+                = new ConcurrentHashMap<String, Registry>();
+
+        /**
+         * 取得URL对应的共用实例，不会被关闭
+         */
+        static Registry getInstance(final String URL) {
+            if (URL == null) {
+                throw new IllegalArgumentException("Argument [URL] is null.");
+            }
+            Registry registry = REGISTRY_MAP.get(URL);
+            if (registry == null) {
+                registry = new Registry();
+                final Registry existedRegistry = REGISTRY_MAP.putIfAbsent(URL, registry);
+                if (existedRegistry != null) {
+                    registry = existedRegistry;
+                }
+            }
+            return registry;
+        }
+
+        // 按视图名称和定义语句缓存解析后的视图，视图被重新定义时定义语句不同，旧的缓存不再被使用
+        final ConcurrentHashMap<String, MaterializedView> materializedViewMap
+                = new ConcurrentHashMap<String, MaterializedView>();
+
+        // 第一次需要刷新时创建，各视图依次刷新
+        private ExecutorService refreshExecutor;
+
+        // 正在进行的刷新所使用的选项，关闭时通过它取消未完成的请求
+        private ExecuteOptions refreshOptions;
+
+        private boolean closed;
+
+        /**
+         * 提交后台刷新，已关闭时返回false
+         */
+        final synchronized boolean submitRefresh(final MaterializedView materializedView,
+                                                 final AdvancedClient advancedClient,
+                                                 final ExecuteEnvironment environment) {
+            if (this.closed) {
+                return false;
+            }
+            if (this.refreshExecutor == null) {
+                this.refreshExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+                    @Override
+                    public final Thread newThread(final Runnable runnable) {
+                        final Thread thread = new Thread(runnable, "materialized-view-refresher");
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+            }
+            this.refreshExecutor.execute(new Runnable() {
+                @Override
+                public final void run() {
+                    try {
+                        final ExecuteOptions options = new ExecuteOptions(ExecuteOptions.DEFAULT_FETCH_SIZE);
+                        synchronized (Registry.this) {
+                            if (Registry.this.closed) {
+                                return;
+                            }
+                            Registry.this.refreshOptions = options;
+                        }
+                        materializedView.refresh(advancedClient, environment, options);
+                    } catch (CrabsException e) {
+                        LOGGER.warn("Failed to refresh materialized view[" + materializedView.viewIdentifier + "].", e);
+                    } catch (RuntimeException e) {
+                        LOGGER.warn("Failed to refresh materialized view[" + materializedView.viewIdentifier + "].", e);
+                    } finally {
+                        synchronized (Registry.this) {
+                            Registry.this.refreshOptions = null;
+                        }
+                        materializedView.refreshSubmitted = false;
+                    }
+                }
+            });
+            return true;
+        }
+
+        @Override
+        public final synchronized void close() {
+            this.closed = true;
+            if (this.refreshOptions != null) {
+                this.refreshOptions.getRequestController().cancel();
+            }
+            if (this.refreshExecutor != null) {
+                this.refreshExecutor.shutdownNow();
+            }
+            this.materializedViewMap.clear();
+        }
+
+    }
+
+}
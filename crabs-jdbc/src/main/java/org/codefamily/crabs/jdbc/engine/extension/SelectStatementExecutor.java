@@ -6,19 +6,24 @@ import org.codefamily.crabs.core.IndexDefinition;
 import org.codefamily.crabs.core.TypeDefinition;
 import org.codefamily.crabs.core.TypeDefinition.FieldDefinition;
 import org.codefamily.crabs.core.client.AdvancedClient;
+import org.codefamily.crabs.core.client.AdvancedClient.CompletionListener;
 import org.codefamily.crabs.core.client.AdvancedClient.InternalDocumentRequestBuilder;
 import org.codefamily.crabs.core.client.AdvancedClient.ResponseCallback;
 import org.codefamily.crabs.core.exception.FieldNotExistsException;
 import org.codefamily.crabs.core.exception.IndexNotExistsException;
+import org.codefamily.crabs.core.exception.RequestTimeoutException;
 import org.codefamily.crabs.core.exception.TypeNotExistsException;
 import org.codefamily.crabs.exception.CrabsException;
 import org.codefamily.crabs.jdbc.engine.ExecuteEnvironment;
+import org.codefamily.crabs.jdbc.engine.ExecuteListener;
+import org.codefamily.crabs.jdbc.engine.ExecuteOptions;
 import org.codefamily.crabs.jdbc.engine.SemanticAnalyzer;
 import org.codefamily.crabs.jdbc.engine.StatementExecutePlan;
 import org.codefamily.crabs.jdbc.engine.StatementExecutor;
 import org.codefamily.crabs.jdbc.internal.InternalResultSet;
 import org.codefamily.crabs.jdbc.lang.Expression;
 import org.codefamily.crabs.jdbc.lang.expression.*;
+import org.codefamily.crabs.jdbc.lang.expression.util.ExpressionSimplifier;
 import org.codefamily.crabs.jdbc.lang.extension.clause.FromClause.SimpleTableDeclare;
 import org.codefamily.crabs.jdbc.lang.extension.clause.*;
 import org.codefamily.crabs.jdbc.lang.extension.clause.OrderByClause.OrderSpecification;
@@ -29,21 +34,42 @@ import org.codefamily.crabs.util.ExtensionClassCollector;
 import org.codefamily.crabs.util.ReadonlyList;
 import org.elasticsearch.action.search.*;
 import org.elasticsearch.client.Client;
+import org.elasticsearch.client.Requests;
+import org.elasticsearch.common.io.stream.BytesStreamInput;
+import org.elasticsearch.common.io.stream.BytesStreamOutput;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.common.util.BigArrays;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.XContentFactory;
 import org.elasticsearch.index.query.*;
 import org.elasticsearch.rest.RestStatus;
 import org.elasticsearch.search.SearchHit;
 import org.elasticsearch.search.SearchHits;
 import org.elasticsearch.search.aggregations.AbstractAggregationBuilder;
+import org.elasticsearch.search.aggregations.AggregationBuilder;
 import org.elasticsearch.search.aggregations.AggregationBuilders;
 import org.elasticsearch.search.aggregations.Aggregations;
+import org.elasticsearch.search.aggregations.InternalAggregations;
+import org.elasticsearch.search.aggregations.bucket.MultiBucketsAggregation;
+import org.elasticsearch.search.aggregations.bucket.filter.Filter;
+import org.elasticsearch.search.aggregations.bucket.filter.FilterAggregationBuilder;
+import org.elasticsearch.search.aggregations.bucket.histogram.DateHistogram;
+import org.elasticsearch.search.aggregations.bucket.histogram.Histogram;
+import org.elasticsearch.search.aggregations.bucket.range.RangeBuilder;
+import org.elasticsearch.search.aggregations.bucket.range.date.DateRangeBuilder;
 import org.elasticsearch.search.aggregations.bucket.terms.Terms;
 import org.elasticsearch.search.aggregations.bucket.terms.TermsBuilder;
 import org.elasticsearch.search.aggregations.metrics.avg.Avg;
+import org.elasticsearch.search.aggregations.metrics.cardinality.Cardinality;
+import org.elasticsearch.search.aggregations.metrics.cardinality.CardinalityBuilder;
 import org.elasticsearch.search.aggregations.metrics.max.Max;
 import org.elasticsearch.search.aggregations.metrics.min.Min;
+import org.elasticsearch.search.aggregations.metrics.percentiles.Percentiles;
+import org.elasticsearch.search.aggregations.metrics.stats.Stats;
 import org.elasticsearch.search.aggregations.metrics.sum.Sum;
 import org.elasticsearch.search.aggregations.metrics.valuecount.ValueCount;
 import org.elasticsearch.search.builder.SearchSourceBuilder;
+import org.elasticsearch.search.internal.InternalSearchResponse;
 import org.elasticsearch.search.sort.SortBuilders;
 import org.elasticsearch.search.sort.SortOrder;
 import org.slf4j.Logger;
@@ -55,6 +81,7 @@ import java.lang.reflect.Constructor;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 import static org.codefamily.crabs.jdbc.Protocol.*;
 
@@ -62,6 +89,21 @@ public final class SelectStatementExecutor extends StatementExecutor<SelectState
 
     private static final Logger LOGGER = LoggerFactory.getLogger(SelectStatementExecutor.class);
 
+    /**
+     * mapping的_meta中以逗号分隔列出的只有一个值的字段，where条件中这些字段上的比较才会合并上下界、判断矛盾
+     */
+    static final String META_SINGLE_VALUED_FIELDS = "singleValuedFields";
+
+    // where条件恒假时代替elasticsearch的响应
+    private static final SearchResponse EMPTY_SEARCH_RESPONSE = new SearchResponse(
+            InternalSearchResponse.empty(),
+            null,
+            0,
+            0,
+            0L,
+            ShardSearchFailure.EMPTY_ARRAY
+    );
+
     public SelectStatementExecutor() {
         super(SelectStatement.class, InternalResultSet.class);
     }
@@ -70,8 +112,10 @@ public final class SelectStatementExecutor extends StatementExecutor<SelectState
     protected final InternalResultSet execute(final AdvancedClient advancedClient,
                                               final SelectStatement statement,
                                               final ExecuteEnvironment environment,
+                                              final ExecuteOptions options,
                                               final Object[] argumentValues) throws CrabsException {
-        final SearchExecuteContext context = new SearchExecuteContext(statement, environment, argumentValues);
+        final SearchExecuteContext context
+                = newSearchExecuteContext(advancedClient, statement, environment, options, argumentValues);
         final SelectStatementExecutePlan statementExecutePlan = SelectStatementExecutePlan.buildExecutePlan(context);
         final InternalDocumentRequestBuilder requestBuilder = statementExecutePlan.createRequestBuilder();
         final SearchResponseCallback callback = statementExecutePlan.callback();
@@ -85,26 +129,163 @@ public final class SelectStatementExecutor extends StatementExecutor<SelectState
         if (benchmarkEnabled) {
             environment.start();
         }
-        advancedClient.execute(requestBuilder, callback, context);
+        if (statementExecutePlan.isEmptyResult()) {
+            callback.callback(EMPTY_SEARCH_RESPONSE);
+        } else {
+            advancedClient.execute(requestBuilder, callback, context, options.getRequestController());
+        }
         if (benchmarkEnabled) {
             environment.end();
         }
         return callback.getResultSet();
     }
 
-    private static abstract class SelectStatementExecutePlan<RequestBuilder extends InternalDocumentRequestBuilder,
-            Callback extends SearchResponseCallback> extends StatementExecutePlan {
+    /**
+     * 支持multi search的执行计划合并为一次请求发出，其余的(scroll)逐条执行
+     */
+    @Override
+    protected final List<InternalResultSet> executeBatch(final AdvancedClient advancedClient,
+                                                         final List<SelectStatement> statements,
+                                                         final ExecuteEnvironment environment,
+                                                         final ExecuteOptions options,
+                                                         final List<Object[]> argumentValuesList) throws CrabsException {
+        final int size = statements.size();
+        final ArrayList<InternalResultSet> resultSetList = new ArrayList<InternalResultSet>(size);
+        final ArrayList<Integer> multiSearchIndexList = new ArrayList<Integer>(size);
+        final ArrayList<InternalDocumentRequestBuilder<SearchRequest, SearchResponse, SearchRequestBuilder,
+                SearchAction, SearchExecuteContext>> requestBuilderList
+                = new ArrayList<InternalDocumentRequestBuilder<SearchRequest, SearchResponse, SearchRequestBuilder,
+                SearchAction, SearchExecuteContext>>(size);
+        final ArrayList<SearchResponseCallback<?>> callbackList = new ArrayList<SearchResponseCallback<?>>(size);
+        final ArrayList<SearchExecuteContext> contextList = new ArrayList<SearchExecuteContext>(size);
+        try {
+            for (int index = 0; index < size; index++) {
+                final SearchExecuteContext context = newSearchExecuteContext(
+                        advancedClient,
+                        statements.get(index),
+                        environment,
+                        options,
+                        argumentValuesList.get(index)
+                );
+                final SelectStatementExecutePlan<?, ?> statementExecutePlan
+                        = SelectStatementExecutePlan.buildExecutePlan(context);
+                final InternalDocumentRequestBuilder<SearchRequest, SearchResponse, SearchRequestBuilder,
+                        SearchAction, SearchExecuteContext> requestBuilder = statementExecutePlan.createRequestBuilder();
+                final SearchResponseCallback<?> callback = statementExecutePlan.callback();
+                if (statementExecutePlan.isEmptyResult()) {
+                    callback.callback(EMPTY_SEARCH_RESPONSE);
+                    resultSetList.add(callback.getResultSet());
+                } else if (statementExecutePlan.isMultiSearchSupported()) {
+                    multiSearchIndexList.add(index);
+                    requestBuilderList.add(requestBuilder);
+                    callbackList.add(callback);
+                    contextList.add(context);
+                    resultSetList.add(null);
+                } else {
+                    advancedClient.execute(requestBuilder, callback, context, options.getRequestController());
+                    resultSetList.add(callback.getResultSet());
+                }
+            }
+            if (!multiSearchIndexList.isEmpty()) {
+                advancedClient.executeMultiSearch(
+                        requestBuilderList,
+                        callbackList,
+                        contextList,
+                        options.getRequestController()
+                );
+                for (int index = 0, count = multiSearchIndexList.size(); index < count; index++) {
+                    resultSetList.set(multiSearchIndexList.get(index), callbackList.get(index).getResultSet());
+                }
+            }
+        } catch (CrabsException e) {
+            closeResults(resultSetList);
+            throw e;
+        }
+        return resultSetList;
+    }
 
-        static SelectStatementExecutePlan buildExecutePlan(final SearchExecuteContext context) throws CrabsException {
-            for (int index = 0, size = REGISTERED_EXECUTE_PLAN_CLASSES.size(); index < size; index++) {
-                final Class<? extends SelectStatementExecutePlan> clazz = REGISTERED_EXECUTE_PLAN_CLASSES.get(index);
-                final Constructor<? extends SelectStatementExecutePlan> constructor;
+    /**
+     * 能由物化视图回答的聚合查询先改写为对视图的查询；
+     * 语句的语义分析结果按语句缓存在执行环境中，类型定义刷新后需要重新分析
+     */
+    private static SearchExecuteContext newSearchExecuteContext(final AdvancedClient advancedClient,
+                                                                final SelectStatement originalStatement,
+                                                                final ExecuteEnvironment environment,
+                                                                final ExecuteOptions options,
+                                                                final Object[] argumentValues) throws CrabsException {
+        final SelectStatement statement
+                = MaterializedView.rewrite(advancedClient, environment, originalStatement);
+        CompiledSelectStatement compiledStatement
+                = environment.getStatementExecutePlan(statement, CompiledSelectStatement.class);
+        if (compiledStatement == null || compiledStatement.isStale(environment)) {
+            compiledStatement = new CompiledSelectStatement();
+            environment.putStatementExecutePlan(statement, compiledStatement);
+        }
+        return new SearchExecuteContext(
+                advancedClient,
+                statement,
+                environment,
+                options,
+                argumentValues,
+                compiledStatement
+        );
+    }
+
+    /**
+     * 只有第一次请求是异步发出的，scroll执行计划的后续分页仍在读取结果集的线程中获取
+     */
+    @Override
+    protected final void executeAsync(final AdvancedClient advancedClient,
+                                      final SelectStatement statement,
+                                      final ExecuteEnvironment environment,
+                                      final ExecuteOptions options,
+                                      final Object[] argumentValues,
+                                      final ExecuteListener<InternalResultSet> listener) throws CrabsException {
+        final SearchExecuteContext context
+                = newSearchExecuteContext(advancedClient, statement, environment, options, argumentValues);
+        final SelectStatementExecutePlan statementExecutePlan = SelectStatementExecutePlan.buildExecutePlan(context);
+        final InternalDocumentRequestBuilder requestBuilder = statementExecutePlan.createRequestBuilder();
+        final SearchResponseCallback callback = statementExecutePlan.callback();
+        if (statementExecutePlan.isEmptyResult()) {
+            final InternalResultSet resultSet;
+            try {
+                callback.callback(EMPTY_SEARCH_RESPONSE);
+                resultSet = callback.getResultSet();
+            } catch (CrabsException e) {
+                listener.onFailure(e);
+                return;
+            }
+            listener.onResult(resultSet);
+            return;
+        }
+        advancedClient.executeAsync(requestBuilder, callback, context, new CompletionListener() {
+            @Override
+            public final void onComplete() {
+                final InternalResultSet resultSet;
                 try {
-                    constructor = clazz.getDeclaredConstructor(SearchExecuteContext.class);
-                } catch (NoSuchMethodException e) {
-                    // nothing to do because the register method has already ensured the point.
-                    continue;
+                    resultSet = callback.getResultSet();
+                } catch (CrabsException e) {
+                    listener.onFailure(e);
+                    return;
                 }
+                listener.onResult(resultSet);
+            }
+
+            @Override
+            public final void onFailure(final CrabsException e) {
+                listener.onFailure(e);
+            }
+        }, options.getRequestController());
+    }
+
+    private static abstract class SelectStatementExecutePlan<RequestBuilder extends InternalDocumentRequestBuilder<
+            SearchRequest, SearchResponse, SearchRequestBuilder, SearchAction, SearchExecuteContext>,
+            Callback extends SearchResponseCallback<?>> extends StatementExecutePlan {
+
+        static SelectStatementExecutePlan buildExecutePlan(final SearchExecuteContext context) throws CrabsException {
+            for (int index = 0, size = REGISTERED_EXECUTE_PLAN_CONSTRUCTORS.size(); index < size; index++) {
+                final Constructor<? extends SelectStatementExecutePlan> constructor
+                        = REGISTERED_EXECUTE_PLAN_CONSTRUCTORS.get(index);
                 final SelectStatementExecutePlan statementExecutePlan;
                 try {
                     statementExecutePlan = constructor.newInstance(context);
@@ -124,8 +305,9 @@ public final class SelectStatementExecutor extends StatementExecutor<SelectState
             );
         }
 
-        private static final ArrayList<Class<? extends SelectStatementExecutePlan>> REGISTERED_EXECUTE_PLAN_CLASSES
-                = new ArrayList<Class<? extends SelectStatementExecutePlan>>(3);
+        // 注册时即解析出构造函数，避免每次执行都通过反射查找
+        private static final ArrayList<Constructor<? extends SelectStatementExecutePlan>> REGISTERED_EXECUTE_PLAN_CONSTRUCTORS
+                = new ArrayList<Constructor<? extends SelectStatementExecutePlan>>(3);
 
         // 用于去重
         private static final HashSet<Class<? extends SelectStatementExecutePlan>> REGISTERED_EXECUTE_PLAN_CLASS_SET
@@ -145,6 +327,12 @@ public final class SelectStatementExecutor extends StatementExecutor<SelectState
 
         private final boolean elasticsearchCacheEnabled;
 
+        protected final boolean searchTemplateEnabled;
+
+        private final String[] routings;
+
+        private final String preference;
+
         protected SelectStatementExecutePlan(final SearchExecuteContext context) {
             this.context = context;
             this.outputSQLToElasticsearchRequestMapping = Boolean.parseBoolean(
@@ -159,11 +347,58 @@ public final class SelectStatementExecutor extends StatementExecutor<SelectState
                             PROPERTY_ENTRY$ES_CACHE_ENABLED.defaultValue
                     )
             );
+            this.searchTemplateEnabled = Boolean.parseBoolean(
+                    context.environment.getProperty(
+                            PROPERTY_ENTRY$SEARCH_TEMPLATE_ENABLED.identifier,
+                            PROPERTY_ENTRY$SEARCH_TEMPLATE_ENABLED.defaultValue
+                    )
+            );
+            String[] routings = null;
+            String preference = null;
+            String shards = null;
+            final ReadonlyList<SelectClause.Hint> hintList = context.statement.selectClause.hintList;
+            for (int index = 0, size = hintList.size(); index < size; index++) {
+                final SelectClause.Hint hint = hintList.get(index);
+                final ReadonlyList<String> argumentList = hint.argumentList;
+                if (hint.name.equals(SelectClause.Hint.ROUTING)) {
+                    routings = new String[argumentList.size()];
+                    for (int i = 0; i < routings.length; i++) {
+                        routings[i] = argumentList.get(i);
+                    }
+                } else if (hint.name.equals(SelectClause.Hint.PREFERENCE)) {
+                    preference = argumentList.get(0);
+                } else if (hint.name.equals(SelectClause.Hint.SHARDS)) {
+                    final StringBuilder stringBuilder = new StringBuilder("_shards:");
+                    for (int i = 0, argumentCount = argumentList.size(); i < argumentCount; i++) {
+                        if (i > 0) {
+                            stringBuilder.append(',');
+                        }
+                        stringBuilder.append(argumentList.get(i));
+                    }
+                    shards = stringBuilder.toString();
+                }
+            }
+            this.routings = routings;
+            // elasticsearch支持"_shards:0,3;_local"的形式，先限定分片再按其余偏好选择副本
+            this.preference = shards == null ? preference
+                    : preference == null ? shards : shards + ";" + preference;
+        }
+
+        /**
+         * 按语句中的ROUTING、PREFERENCE、SHARDS提示限定搜索的分片，未给出提示时搜索索引的所有分片
+         */
+        protected final void applyHints(final SearchRequestBuilder searchRequestBuilder) {
+            if (this.routings != null) {
+                searchRequestBuilder.setRouting(this.routings);
+            }
+            if (this.preference != null) {
+                searchRequestBuilder.setPreference(this.preference);
+            }
         }
 
         private RequestBuilder requestBuilder;
 
-        public final InternalDocumentRequestBuilder createRequestBuilder() throws CrabsException {
+        public final RequestBuilder createRequestBuilder() throws CrabsException {
             if (this.requestBuilder == null) {
                 this.requestBuilder = this.doCreateRequestBuilder();
             }
@@ -181,10 +416,64 @@ public final class SelectStatementExecutor extends StatementExecutor<SelectState
 
         protected abstract boolean accept() throws CrabsException;
 
+        /**
+         * 只发出一次搜索请求、不持有服务端资源的执行计划可以与其它语句合并为multi search
+         */
+        protected boolean isMultiSearchSupported() {
+            return true;
+        }
+
+        /**
+         * 回调可以处理没有命中文档、也没有聚合结果的空响应时返回true
+         */
+        protected boolean isEmptyResponseSupported() {
+            return false;
+        }
+
+        /**
+         * where条件恒假（包括绑定参数值之后恒假）时结果一定为空，不需要向elasticsearch发出请求，由调用方直接以空响应回调。
+         * 在创建请求之后调用，此时已经完成语义分析
+         */
+        final boolean isEmptyResult() throws CrabsException {
+            return ExpressionSimplifier.isFalse(this.context.whereConditionExpression())
+                    && this.isEmptyResponseSupported();
+        }
+
         protected abstract RequestBuilder doCreateRequestBuilder() throws CrabsException;
 
         protected abstract Callback doCallback() throws CrabsException;
 
+        /**
+         * 不包含参数的条件表达式，其过滤器与参数值无关，可以被同一语句的多次执行复用
+         */
+        static boolean containsArgument(final Expression expression) throws CrabsException {
+            if (expression instanceof Argument) {
+                return true;
+            }
+            final ReadonlyList<Expression> operandExpressionList = expression.getOperandExpressionList();
+            for (int index = 0, size = operandExpressionList.size(); index < size; index++) {
+                if (containsArgument(operandExpressionList.get(index))) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * where条件对应的过滤器，条件中不包含参数时，第一次分析得到的过滤器被之后的执行复用；
+         * 包含参数时由绑定参数值并再次化简后的条件构建，调用前需要确认{@link SearchExecuteContext#whereConditionExpression()}不为null
+         */
+        protected final FilterBuilder buildWhereFilterBuilder(final SearchExecuteContext context) throws CrabsException {
+            FilterBuilder filterBuilder = context.whereFilterBuilder;
+            if (filterBuilder == null) {
+                filterBuilder = this.buildFilterBuilder(context.whereConditionExpression());
+                if (!context.analyzed && !containsArgument(context.finallyWhereConditionExpression)) {
+                    context.whereFilterBuilder = filterBuilder;
+                }
+            }
+            return filterBuilder;
+        }
+
         protected FilterBuilder buildFilterBuilder(final Expression expression) throws CrabsException {
             if (expression instanceof PreferentialExpression) {
                 final PreferentialExpression realExpression = ((PreferentialExpression) expression);
@@ -215,6 +504,21 @@ public final class SelectStatementExecutor extends StatementExecutor<SelectState
                                 this.buildFilterBuilder(((NotExpression) expression).getOperandExpression(0))
                         )
                         .cache(this.elasticsearchCacheEnabled);
+            } else if (ExpressionSimplifier.isTrue(expression)) {
+                return FilterBuilders.matchAllFilter();
+            } else if (ExpressionSimplifier.isFalse(expression)) {
+                return FilterBuilders.notFilter(FilterBuilders.matchAllFilter());
+            } else if (expression instanceof RangeExpression) {
+                // 同一列的上下界合并为一个范围过滤器，边界已经化简为常量或参数
+                final RangeExpression realExpression = (RangeExpression) expression;
+                final Reference reference = Reference.class.cast(realExpression.getOperandExpression(0));
+                return FilterBuilders
+                        .rangeFilter(reference.columnIdentifier.toString())
+                        .from(this.parseBoundValue(realExpression.getOperandExpression(1), reference))
+                        .to(this.parseBoundValue(realExpression.getOperandExpression(2), reference))
+                        .includeLower(realExpression.includeLower)
+                        .includeUpper(realExpression.includeUpper)
+                        .cache(this.elasticsearchCacheEnabled);
             } else {
                 if (expression instanceof GreaterThanExpression) {
                     final GreaterThanExpression realExpression = (GreaterThanExpression) expression;
@@ -1566,8 +1870,25 @@ public final class SelectStatementExecutor extends StatementExecutor<SelectState
 
         private static long TARGET_TIME_ZONE_RAW_OFFSET = TimeZone.getTimeZone("UTC").getRawOffset();
 
+        private Object parseBoundValue(final Expression expression,
+                                       final Reference reference) throws CrabsException {
+            if (expression instanceof Argument) {
+                return this.parseConstantValue(
+                        new Constant(this.context.argumentValue((Argument) expression)),
+                        reference
+                );
+            }
+            return this.parseConstantValue(Constant.class.cast(expression), reference);
+        }
+
         private Object parseConstantValue(final Constant constant,
                                           final Reference reference) throws CrabsException {
+            final SearchTemplateCompiler searchTemplateCompiler = this.context.searchTemplateCompiler;
+            if (searchTemplateCompiler != null
+                    && searchTemplateCompiler.bindPlaceholder(constant.value, reference)) {
+                // 参数占位符，参数值在执行时按相同的规则转换
+                return constant.value;
+            }
             final Identifier columnIdentifier = reference.columnIdentifier;
             final FieldDefinition columnDefinition
                     = this.context.typeDefinition.getFieldDefinition(columnIdentifier);
@@ -1602,8 +1923,9 @@ public final class SelectStatementExecutor extends StatementExecutor<SelectState
                 if (REGISTERED_EXECUTE_PLAN_CLASS_SET.contains(clazz)) {
                     return;
                 }
+                final Constructor<? extends SelectStatementExecutePlan> constructor;
                 try {
-                    clazz.getDeclaredConstructor(SearchExecuteContext.class);
+                    constructor = clazz.getDeclaredConstructor(SearchExecuteContext.class);
                 } catch (NoSuchMethodException e) {
                     throw new RuntimeException(
                             "Invalid select statement execute plan, " +
@@ -1612,7 +1934,7 @@ public final class SelectStatementExecutor extends StatementExecutor<SelectState
                                     " or its child class."
                     );
                 }
-                REGISTERED_EXECUTE_PLAN_CLASSES.add(clazz);
+                REGISTERED_EXECUTE_PLAN_CONSTRUCTORS.add(constructor);
                 REGISTERED_EXECUTE_PLAN_CLASS_SET.add(clazz);
             }
         }
@@ -1625,14 +1947,61 @@ public final class SelectStatementExecutor extends StatementExecutor<SelectState
 
         @Override
         public abstract void callback(SearchResponse response) throws CrabsException;
+
+        static void checkResponse(final SearchResponse response) throws CrabsException {
+            if (response.status() != RestStatus.OK) {
+                throw new CrabsException("Failed to execute query with elasticsearch, response status is: "
+                        + response.status().getStatus());
+            }
+            // 超时的分片只返回了部分结果，不能作为查询结果
+            if (response.isTimedOut()) {
+                throw new RequestTimeoutException("Query timed out in elasticsearch.");
+            }
+        }
+    }
+
+    /**
+     * type中只有一个值的列：主键，以及mapping的_meta中{@link #META_SINGLE_VALUED_FIELDS}列出的字段
+     */
+    private static final class TypeSingleValuedColumns implements ExpressionSimplifier.SingleValuedColumns {
+
+        TypeSingleValuedColumns(final TypeDefinition typeDefinition) {
+            final HashSet<Identifier> columnIdentifierSet = new HashSet<Identifier>();
+            final FieldDefinition primaryFieldDefinition = typeDefinition.getPrimaryFieldDefinition();
+            if (primaryFieldDefinition != null) {
+                columnIdentifierSet.add(primaryFieldDefinition.getIdentifier());
+            }
+            final String singleValuedFields = typeDefinition.getMeta(META_SINGLE_VALUED_FIELDS);
+            if (singleValuedFields != null) {
+                for (String fieldName : singleValuedFields.split(",")) {
+                    fieldName = fieldName.trim();
+                    if (!fieldName.isEmpty()) {
+                        columnIdentifierSet.add(new Identifier(fieldName));
+                    }
+                }
+            }
+            this.columnIdentifierSet = columnIdentifierSet;
+        }
+
+        private final HashSet<Identifier> columnIdentifierSet;
+
+        @Override
+        public final boolean isSingleValued(final Reference reference) {
+            return this.columnIdentifierSet.contains(reference.columnIdentifier);
+        }
+
     }
 
     private static class SearchExecuteContext {
 
+        final AdvancedClient advancedClient;
+
         final SelectStatement statement;
 
         final ExecuteEnvironment environment;
 
+        final ExecuteOptions options;
+
         final int maxRowCount;
 
         final IndexDefinition indexDefinition;
@@ -1647,22 +2016,68 @@ public final class SelectStatementExecutor extends StatementExecutor<SelectState
 
         Expression finallyWhereConditionExpression;
 
-        protected SearchExecuteContext(final SelectStatement statement,
+        // where条件中不包含参数时，对应的过滤器可以被同一语句的多次执行复用
+        FilterBuilder whereFilterBuilder;
+
+        final CompiledSelectStatement compiledStatement;
+
+        // 是否复用了已缓存的语义分析结果
+        boolean analyzed;
+
+        // 只在编译search template期间设置，参数以占位符代替
+        SearchTemplateCompiler searchTemplateCompiler;
+
+        private ExpressionSimplifier.SingleValuedColumns singleValuedColumns;
+
+        /**
+         * 化简where条件时只有一个值的列，在确定了typeDefinition之后调用
+         */
+        final ExpressionSimplifier.SingleValuedColumns singleValuedColumns() {
+            if (this.singleValuedColumns == null) {
+                this.singleValuedColumns = new TypeSingleValuedColumns(this.typeDefinition);
+            }
+            return this.singleValuedColumns;
+        }
+
+        protected SearchExecuteContext(final AdvancedClient advancedClient,
+                                       final SelectStatement statement,
                                        final ExecuteEnvironment environment,
-                                       final Object[] argumentValues) throws CrabsException {
-            this(statement, environment, new ArgumentValues(argumentValues));
+                                       final ExecuteOptions options,
+                                       final Object[] argumentValues,
+                                       final CompiledSelectStatement compiledStatement) throws CrabsException {
+            this(
+                    advancedClient,
+                    statement,
+                    environment,
+                    options,
+                    new ArgumentValues(argumentValues),
+                    compiledStatement
+            );
         }
 
         protected SearchExecuteContext(final SearchExecuteContext context) throws CrabsException {
-            this(context.statement, context.environment, context.argumentValues);
+            this(
+                    context.advancedClient,
+                    context.statement,
+                    context.environment,
+                    context.options,
+                    context.argumentValues,
+                    context.compiledStatement
+            );
         }
 
-        private SearchExecuteContext(final SelectStatement statement,
+        private SearchExecuteContext(final AdvancedClient advancedClient,
+                                     final SelectStatement statement,
                                      final ExecuteEnvironment environment,
-                                     final ArgumentValues values) throws CrabsException {
+                                     final ExecuteOptions options,
+                                     final ArgumentValues values,
+                                     final CompiledSelectStatement compiledStatement) throws CrabsException {
+            this.advancedClient = advancedClient;
             this.statement = statement;
             this.environment = environment;
+            this.options = options;
             this.argumentValues = values;
+            this.compiledStatement = compiledStatement;
             this.maxRowCount = Integer.parseInt(
                     this.environment.getProperty(
                             PROPERTY_ENTRY$SCAN_SIZE.identifier,
@@ -1673,9 +2088,56 @@ public final class SelectStatementExecutor extends StatementExecutor<SelectState
         }
 
         final Object argumentValue(final Argument argument) throws CrabsException {
+            if (this.searchTemplateCompiler != null) {
+                return this.searchTemplateCompiler.placeholder(argument);
+            }
             return this.argumentValues.argumentValue(argument);
         }
 
+        // 本次执行绑定参数值后的where条件
+        private Expression boundWhereConditionExpression;
+
+        private boolean whereConditionBound;
+
+        /**
+         * 本次执行的where条件，恒真时返回null。条件包含参数时以本次的参数值代替后再次化简，
+         * 由参数值决定的恒真、恒假以及同一列的范围在这里才能确定，例如常量被参数化的"a > 10 AND a < 5"；
+         * 编译search template时保留参数
+         */
+        final Expression whereConditionExpression() throws CrabsException {
+            final Expression conditionExpression = this.finallyWhereConditionExpression;
+            if (conditionExpression == null || this.searchTemplateCompiler != null) {
+                return conditionExpression;
+            }
+            if (!this.whereConditionBound) {
+                Expression boundConditionExpression = conditionExpression;
+                if (SelectStatementExecutePlan.containsArgument(conditionExpression)) {
+                    boundConditionExpression = ExpressionSimplifier.simplifyCondition(
+                            ExpressionSimplifier.bindArguments(conditionExpression, this.argumentValues.values),
+                            this.singleValuedColumns()
+                    );
+                    if (ExpressionSimplifier.isTrue(boundConditionExpression)) {
+                        boundConditionExpression = null;
+                    }
+                }
+                this.boundWhereConditionExpression = boundConditionExpression;
+                this.whereConditionBound = true;
+            }
+            return this.boundWhereConditionExpression;
+        }
+
+        /**
+         * 复用已缓存的语义分析结果，这些结果在分析完成后不会再被修改，可以被多个执行共享
+         */
+        protected final void copyAnalyzedState(final SearchExecuteContext analyzedContext) {
+            this.tableIdentifier = analyzedContext.tableIdentifier;
+            this.tableAlias = analyzedContext.tableAlias;
+            this.typeDefinition = analyzedContext.typeDefinition;
+            this.finallyWhereConditionExpression = analyzedContext.finallyWhereConditionExpression;
+            this.whereFilterBuilder = analyzedContext.whereFilterBuilder;
+            this.analyzed = true;
+        }
+
         private static final class ArgumentValues {
 
             private final Object[] values;
@@ -1703,6 +2165,217 @@ public final class SelectStatementExecutor extends StatementExecutor<SelectState
 
     }
 
+    /**
+     * 语句编译后的结果，保存各执行计划的语义分析结果以及与参数无关的过滤器，
+     * 同一语句再次执行时只需要绑定新的参数值
+     */
+    private static final class CompiledSelectStatement extends StatementExecutePlan {
+
+        private final ConcurrentHashMap<Class<? extends SearchExecuteContext>, SearchExecuteContext> analyzedContextMap
+                = new ConcurrentHashMap<Class<? extends SearchExecuteContext>, SearchExecuteContext>();
+
+        private volatile TypeDefinition typeDefinition;
+
+        final <Context extends SearchExecuteContext> Context getAnalyzedContext(final Class<Context> contextClass) {
+            return contextClass.cast(this.analyzedContextMap.get(contextClass));
+        }
+
+        final void putAnalyzedContext(final SearchExecuteContext analyzedContext) {
+            this.typeDefinition = analyzedContext.typeDefinition;
+            this.analyzedContextMap.put(analyzedContext.getClass(), analyzedContext);
+        }
+
+        /**
+         * 执行环境中的类型定义过期刷新后，已缓存的分析结果不再可用
+         */
+        final boolean isStale(final ExecuteEnvironment environment) {
+            final TypeDefinition typeDefinition = this.typeDefinition;
+            if (typeDefinition == null) {
+                return false;
+            }
+            try {
+                return environment.getTypeDefinition(typeDefinition.getIdentifier()) != typeDefinition;
+            } catch (CrabsException e) {
+                return true;
+            }
+        }
+
+    }
+
+    /**
+     * 预编译语句对应的elasticsearch search template，参数值在执行时作为模板参数传递，
+     * 不需要重新构建以及序列化查询条件。
+     * elasticsearch 1.2.x中模板只能是请求中的内联模板或者节点上的模板文件，不能由客户端注册后按id引用(1.3才支持)，
+     * 因此模板内容仍随每次请求发送，转义后的内容只在编译时生成一次；elasticsearch按模板内容缓存编译结果
+     */
+    private static final class SearchTemplate {
+
+        private static final String PARAMETER_NAME_PREFIX = "p";
+
+        SearchTemplate(final String source,
+                       final Argument[] arguments,
+                       final Reference[] references) throws CrabsException {
+            this.source = source;
+            this.arguments = arguments;
+            this.references = references;
+            try {
+                final String templateObject
+                        = XContentFactory.jsonBuilder().startObject().field("template", source).endObject().string();
+                // 去掉结尾的'}'，执行时追加参数
+                this.templateSourcePrefix = templateObject.substring(0, templateObject.length() - 1);
+            } catch (IOException e) {
+                throw new CrabsException("Failed to convert search template[" + source + "] to json.", e);
+            }
+        }
+
+        final String source;
+
+        // {"template":"...转义后的模板内容..."，不含结尾
+        private final String templateSourcePrefix;
+
+        private final Argument[] arguments;
+
+        // 参数对应的列，参数值按列的类型转换
+        private final Reference[] references;
+
+        final Map<String, String> bindParameters(final SelectStatementExecutePlan plan,
+                                                 final SearchExecuteContext context) throws CrabsException {
+            final HashMap<String, String> parameters = new HashMap<String, String>(this.arguments.length * 2);
+            Argument argument;
+            for (int index = 0, length = this.arguments.length; index < length; index++) {
+                argument = this.arguments[index];
+                final Object value = plan.parseConstantValue(
+                        new Constant(context.argumentValue(argument)),
+                        this.references[index]
+                );
+                parameters.put(PARAMETER_NAME_PREFIX + argument.index, toJSONValue(value));
+            }
+            return parameters;
+        }
+
+        /**
+         * 内联模板请求的内容：{"template":"...","params":{...}}
+         */
+        final String buildTemplateSource(final Map<String, String> parameters) throws CrabsException {
+            try {
+                final XContentBuilder builder = XContentFactory.jsonBuilder().startObject();
+                for (Map.Entry<String, String> entry : parameters.entrySet()) {
+                    builder.field(entry.getKey(), entry.getValue());
+                }
+                builder.endObject();
+                return this.templateSourcePrefix + ",\"params\":" + builder.string() + "}";
+            } catch (IOException e) {
+                throw new CrabsException("Failed to convert parameters" + parameters + " to json.", e);
+            }
+        }
+
+        private static String toJSONValue(final Object value) throws CrabsException {
+            try {
+                final XContentBuilder builder = XContentFactory.jsonBuilder();
+                builder.value(value);
+                return builder.string();
+            } catch (IOException e) {
+                throw new CrabsException("Failed to convert value[" + value + "] to json.", e);
+            }
+        }
+
+    }
+
+    /**
+     * 以占位符代替参数值构建查询，再将序列化结果中的占位符替换为mustache参数，
+     * 参数值没有原样进入查询(例如like)的语句不能编译为模板
+     */
+    private static final class SearchTemplateCompiler {
+
+        private static final String PLACEHOLDER_PREFIX = "crabs" + Long.toHexString(System.nanoTime()) + "#";
+
+        private static final String PLACEHOLDER_SUFFIX = "#";
+
+        private final TreeMap<Integer, Argument> argumentMap = new TreeMap<Integer, Argument>();
+
+        private final HashMap<Integer, Reference> referenceMap = new HashMap<Integer, Reference>();
+
+        private boolean compilable = true;
+
+        final String placeholder(final Argument argument) {
+            this.argumentMap.put(argument.index, argument);
+            return PLACEHOLDER_PREFIX + argument.index + PLACEHOLDER_SUFFIX;
+        }
+
+        final boolean bindPlaceholder(final Object value, final Reference reference) {
+            if (!(value instanceof String)) {
+                return false;
+            }
+            final String placeholder = (String) value;
+            if (!(placeholder.startsWith(PLACEHOLDER_PREFIX) && placeholder.endsWith(PLACEHOLDER_SUFFIX))) {
+                return false;
+            }
+            final Integer argumentIndex;
+            try {
+                argumentIndex = Integer.valueOf(
+                        placeholder.substring(
+                                PLACEHOLDER_PREFIX.length(),
+                                placeholder.length() - PLACEHOLDER_SUFFIX.length()
+                        )
+                );
+            } catch (NumberFormatException e) {
+                this.compilable = false;
+                return true;
+            }
+            final Reference boundReference = this.referenceMap.put(argumentIndex, reference);
+            if (boundReference != null && !boundReference.equals(reference)) {
+                this.compilable = false;
+            }
+            return true;
+        }
+
+        final SearchTemplate compile(final SearchSourceBuilder searchSourceBuilder) throws CrabsException {
+            if (!this.compilable || this.argumentMap.isEmpty()) {
+                return null;
+            }
+            String source = searchSourceBuilder.buildAsBytes(Requests.CONTENT_TYPE).toUtf8();
+            if (source.contains("{{")) {
+                return null;
+            }
+            final int size = this.argumentMap.size();
+            final Argument[] arguments = new Argument[size];
+            final Reference[] references = new Reference[size];
+            int index = 0;
+            for (Map.Entry<Integer, Argument> entry : this.argumentMap.entrySet()) {
+                final Integer argumentIndex = entry.getKey();
+                final Reference reference = this.referenceMap.get(argumentIndex);
+                if (reference == null) {
+                    return null;
+                }
+                final String placeholder = PLACEHOLDER_PREFIX + argumentIndex + PLACEHOLDER_SUFFIX;
+                final String quotedPlaceholder = '"' + placeholder + '"';
+                final int occurrenceCount = occurrenceCount(source, placeholder);
+                if (occurrenceCount == 0 || occurrenceCount != occurrenceCount(source, quotedPlaceholder)) {
+                    return null;
+                }
+                source = source.replace(
+                        quotedPlaceholder,
+                        "{{{" + SearchTemplate.PARAMETER_NAME_PREFIX + argumentIndex + "}}}"
+                );
+                arguments[index] = entry.getValue();
+                references[index] = reference;
+                index++;
+            }
+            return new SearchTemplate(source, arguments, references);
+        }
+
+        private static int occurrenceCount(final String source, final String target) {
+            int count = 0;
+            int fromIndex = 0;
+            while ((fromIndex = source.indexOf(target, fromIndex)) >= 0) {
+                count++;
+                fromIndex += target.length();
+            }
+            return count;
+        }
+
+    }
+
     private static abstract class SelectStatementSemanticAnalyzer<Context extends SearchExecuteContext>
             extends SemanticAnalyzer {
 
@@ -1750,8 +2423,13 @@ public final class SelectStatementExecutor extends StatementExecutor<SelectState
                         "Invalid expression in where clause, only allow boolean expression."
                 );
             }
+            final Expression conditionExpression = ExpressionSimplifier.simplifyCondition(
+                    this.analyzeExpressionInWhereClause(originalConditionExpression),
+                    this.context.singleValuedColumns()
+            );
+            // 恒真的条件不需要过滤
             this.context.finallyWhereConditionExpression
-                    = this.analyzeExpressionInWhereClause(originalConditionExpression);
+                    = ExpressionSimplifier.isTrue(conditionExpression) ? null : conditionExpression;
         }
 
         private Expression analyzeExpressionInWhereClause(final Expression expression) throws CrabsException {
@@ -1908,40 +2586,78 @@ public final class SelectStatementExecutor extends StatementExecutor<SelectState
 
         private final SearchResultSetIterator searchResultSetIterator;
 
+        // 当前行已经取过的列值，列值在第一次被访问时才从迭代器中获取
         private Object[] resultValues;
 
+        private boolean[] resultValueFetched;
+
         @Override
         public final InternalMetaData getMetaData() {
             return this.metaData;
         }
 
         @Override
-        public final Object getColumnValue(final Identifier columnIdentifier) {
-            return this.resultValues[this.metaData.getColumnIndex(columnIdentifier)];
+        public final Object getColumnValue(final Identifier columnIdentifier) throws CrabsException {
+            return this.getColumnValue(this.metaData.getColumnIndex(columnIdentifier));
         }
 
         @Override
-        public final Object getColumnValue(final int index) {
+        public final Object getColumnValue(final int index) throws CrabsException {
+            final boolean[] resultValueFetched = this.resultValueFetched;
+            if (!resultValueFetched[index]) {
+                this.resultValues[index] = this.searchResultSetIterator.getResultValue(index);
+                resultValueFetched[index] = true;
+            }
             return this.resultValues[index];
         }
 
+        @Override
+        public final boolean isPrimitiveColumn(final int columnIndex) {
+            return this.searchResultSetIterator.isPrimitiveResultValue(columnIndex);
+        }
+
+        @Override
+        public final boolean isColumnValueNull(final int columnIndex) throws CrabsException {
+            if (this.searchResultSetIterator.isPrimitiveResultValue(columnIndex)) {
+                return this.searchResultSetIterator.isNullResultValue(columnIndex);
+            }
+            return super.isColumnValueNull(columnIndex);
+        }
+
+        @Override
+        public final long getLongColumnValue(final int columnIndex) throws CrabsException {
+            if (this.searchResultSetIterator.isPrimitiveResultValue(columnIndex)) {
+                return this.searchResultSetIterator.getLongResultValue(columnIndex);
+            }
+            return super.getLongColumnValue(columnIndex);
+        }
+
+        @Override
+        public final double getDoubleColumnValue(final int columnIndex) throws CrabsException {
+            if (this.searchResultSetIterator.isPrimitiveResultValue(columnIndex)) {
+                return this.searchResultSetIterator.getDoubleResultValue(columnIndex);
+            }
+            return super.getDoubleColumnValue(columnIndex);
+        }
+
         @Override
         public final boolean next() throws CrabsException {
             final boolean haveNext = this.searchResultSetIterator.next();
             if (haveNext) {
-                final SearchResultSetIterator searchResultSetIterator = this.searchResultSetIterator;
                 Object[] resultValues = this.resultValues;
                 if (resultValues == null) {
                     resultValues = this.resultValues = new Object[this.metaData.getColumnCount()];
+                    this.resultValueFetched = new boolean[resultValues.length];
+                } else {
+                    Arrays.fill(resultValues, null);
+                    Arrays.fill(this.resultValueFetched, false);
                 }
-                if (searchResultSetIterator.getResultValueCount() != resultValues.length) {
+                if (this.searchResultSetIterator.getResultValueCount() != resultValues.length) {
                     throw new UnknownError();
                 }
-                for (int i = 0, resultValueCount = resultValues.length; i < resultValueCount; i++) {
-                    resultValues[i] = searchResultSetIterator.getResultValue(i);
-                }
             } else {
                 this.resultValues = null;
+                this.resultValueFetched = null;
             }
             return haveNext;
         }
@@ -1959,70 +2675,569 @@ public final class SelectStatementExecutor extends StatementExecutor<SelectState
 
         abstract int getResultValueCount();
 
-        abstract Object getResultValue(final int valueIndex);
+        abstract Object getResultValue(final int valueIndex) throws CrabsException;
+
+        // 以下方法仅在isPrimitiveResultValue返回true时被调用，LONG、INTEGER、DATE、BOOLEAN类型的值
+        // 按long读取，DOUBLE、FLOAT类型的值按double读取
+
+        abstract boolean isPrimitiveResultValue(final int valueIndex);
+
+        abstract boolean isNullResultValue(final int valueIndex) throws CrabsException;
+
+        abstract long getLongResultValue(final int valueIndex) throws CrabsException;
+
+        abstract double getDoubleResultValue(final int valueIndex) throws CrabsException;
 
     }
 
-    private static final class NonAggregationNormalSearchExecutePlan extends
-            SelectStatementExecutePlan<NonAggregationNormalSearchExecutePlan.NonAggregationNormalSearchRequestBuilder,
-                    NonAggregationNormalSearchExecutePlan.NonAggregationNormalSearchCallback> {
+    /**
+     * 按列存储的结果值，LONG、INTEGER、DATE、BOOLEAN类型的列存储在long[]中（DATE为毫秒数，BOOLEAN为1或0），
+     * DOUBLE、FLOAT类型的列存储在double[]中，其它类型的列存储在Object[]中，null值记录在每列的位图中
+     */
+    static final class ColumnarResultValues {
 
-        private static final String[] EMPTY_STRING_ARRAY = new String[0];
+        private static final int INITIAL_ROW_CAPACITY = 16;
 
-        protected NonAggregationNormalSearchExecutePlan(
-                final SearchExecuteContext context) throws CrabsException {
-            super(new NonAggregationNormalSearchExecuteContext(context));
+        static boolean isLongDataType(final DataType dataType) {
+            switch (dataType) {
+                case LONG:
+                case INTEGER:
+                case DATE:
+                case BOOLEAN:
+                    return true;
+                default:
+                    return false;
+            }
         }
 
-        @Override
-        protected final boolean accept() throws CrabsException {
-            final SelectStatement statement = this.context.statement;
-            final ReadonlyList<ResultColumnDeclare> resultColumnDeclareList
-                    = statement.selectClause.resultColumnDeclareList;
-            for (int index = 0, size = resultColumnDeclareList.size(); index < size; index++) {
-                final ResultColumnDeclare resultColumnDeclare = resultColumnDeclareList.get(index);
-                final Expression expression = resultColumnDeclare.expression;
-                if (!(expression instanceof Reference
-                        || expression instanceof Constant
-                        || expression instanceof Argument)) {
-                    return false;
-                }
+        static boolean isDoubleDataType(final DataType dataType) {
+            return dataType == DataType.DOUBLE || dataType == DataType.FLOAT;
+        }
+
+        ColumnarResultValues(final DataType[] columnDataTypes) {
+            if (columnDataTypes == null) {
+                throw new IllegalArgumentException("Argument[columnDataTypes] is null.");
             }
-            final LimitClause limitClause = statement.limitClause;
-            if (limitClause != null) {
-                final Expression rowCountExpression = limitClause.rowCount;
-                final int rowCount;
-                if (rowCountExpression instanceof Argument) {
-                    rowCount = Integer.parseInt(
-                            this.context.argumentValue(
-                                    Argument.class.cast(rowCountExpression)
-                            ).toString()
-                    );
+            final int columnCount = columnDataTypes.length;
+            this.columnDataTypes = columnDataTypes;
+            this.longColumns = new long[columnCount][];
+            this.doubleColumns = new double[columnCount][];
+            this.objectColumns = new Object[columnCount][];
+            this.nullBitmaps = new long[columnCount][];
+            for (int columnIndex = 0; columnIndex < columnCount; columnIndex++) {
+                final DataType dataType = columnDataTypes[columnIndex];
+                if (isLongDataType(dataType)) {
+                    this.longColumns[columnIndex] = new long[INITIAL_ROW_CAPACITY];
+                } else if (isDoubleDataType(dataType)) {
+                    this.doubleColumns[columnIndex] = new double[INITIAL_ROW_CAPACITY];
                 } else {
-                    rowCount = Integer.parseInt(
-                            Constant.class.cast(rowCountExpression).value.toString()
-                    );
-                }
-                if (rowCount > this.context.maxRowCount) {
-                    return false;
+                    this.objectColumns[columnIndex] = new Object[INITIAL_ROW_CAPACITY];
                 }
+                this.nullBitmaps[columnIndex] = new long[bitmapLength(INITIAL_ROW_CAPACITY)];
             }
-            // TODO 判断其他子句中是否包含算数运算类表达式，如果包含，则返回false
-            return true;
+            this.rowCapacity = INITIAL_ROW_CAPACITY;
         }
 
-        private SearchSourceBuilder searchSourceBuilder;
+        private final DataType[] columnDataTypes;
 
-        @Override
-        protected final NonAggregationNormalSearchRequestBuilder doCreateRequestBuilder() throws CrabsException {
-            final NonAggregationNormalSearchExecuteContext context
+        private final long[][] longColumns;
+
+        private final double[][] doubleColumns;
+
+        private final Object[][] objectColumns;
+
+        private final long[][] nullBitmaps;
+
+        private int rowCapacity;
+
+        private int rowCount;
+
+        final int getColumnCount() {
+            return this.columnDataTypes.length;
+        }
+
+        final DataType[] getColumnDataTypes() {
+            return this.columnDataTypes;
+        }
+
+        final int getRowCount() {
+            return this.rowCount;
+        }
+
+        /**
+         * 追加一行，返回新行的索引，新行各列的值为0或null
+         */
+        final int addRow() {
+            if (this.rowCount == this.rowCapacity) {
+                final int newRowCapacity = this.rowCapacity << 1;
+                for (int columnIndex = 0, columnCount = this.columnDataTypes.length;
+                     columnIndex < columnCount; columnIndex++) {
+                    if (this.longColumns[columnIndex] != null) {
+                        this.longColumns[columnIndex] = Arrays.copyOf(this.longColumns[columnIndex], newRowCapacity);
+                    } else if (this.doubleColumns[columnIndex] != null) {
+                        this.doubleColumns[columnIndex]
+                                = Arrays.copyOf(this.doubleColumns[columnIndex], newRowCapacity);
+                    } else {
+                        this.objectColumns[columnIndex]
+                                = Arrays.copyOf(this.objectColumns[columnIndex], newRowCapacity);
+                    }
+                    this.nullBitmaps[columnIndex]
+                            = Arrays.copyOf(this.nullBitmaps[columnIndex], bitmapLength(newRowCapacity));
+                }
+                this.rowCapacity = newRowCapacity;
+            }
+            return this.rowCount++;
+        }
+
+        final void setLong(final int rowIndex, final int columnIndex, final long value) {
+            this.longColumns[columnIndex][rowIndex] = value;
+        }
+
+        final void setDouble(final int rowIndex, final int columnIndex, final double value) {
+            this.doubleColumns[columnIndex][rowIndex] = value;
+        }
+
+        final void setObject(final int rowIndex, final int columnIndex, final Object value) {
+            if (value == null) {
+                this.nullBitmaps[columnIndex][rowIndex >>> 6] |= 1L << rowIndex;
+            } else if (this.longColumns[columnIndex] != null) {
+                final long longValue;
+                if (value instanceof Number) {
+                    longValue = ((Number) value).longValue();
+                } else if (value instanceof Boolean) {
+                    longValue = ((Boolean) value) ? 1L : 0L;
+                } else {
+                    longValue = ((Date) value).getTime();
+                }
+                this.longColumns[columnIndex][rowIndex] = longValue;
+            } else if (this.doubleColumns[columnIndex] != null) {
+                this.doubleColumns[columnIndex][rowIndex] = ((Number) value).doubleValue();
+            } else {
+                this.objectColumns[columnIndex][rowIndex] = value;
+            }
+        }
+
+        final boolean isPrimitive(final int columnIndex) {
+            return this.objectColumns[columnIndex] == null;
+        }
+
+        final boolean isLongColumn(final int columnIndex) {
+            return this.longColumns[columnIndex] != null;
+        }
+
+        final boolean isDoubleColumn(final int columnIndex) {
+            return this.doubleColumns[columnIndex] != null;
+        }
+
+        /**
+         * 将另一组结果中的一行复制到本组的指定行，两组结果的列定义必须相同
+         */
+        final void copyRow(final ColumnarResultValues source, final int sourceRowIndex, final int rowIndex) {
+            for (int columnIndex = 0, columnCount = this.columnDataTypes.length;
+                 columnIndex < columnCount; columnIndex++) {
+                if (this.longColumns[columnIndex] != null) {
+                    this.longColumns[columnIndex][rowIndex] = source.longColumns[columnIndex][sourceRowIndex];
+                } else if (this.doubleColumns[columnIndex] != null) {
+                    this.doubleColumns[columnIndex][rowIndex] = source.doubleColumns[columnIndex][sourceRowIndex];
+                } else {
+                    this.objectColumns[columnIndex][rowIndex] = source.objectColumns[columnIndex][sourceRowIndex];
+                }
+                if (source.isNull(sourceRowIndex, columnIndex)) {
+                    this.nullBitmaps[columnIndex][rowIndex >>> 6] |= 1L << rowIndex;
+                } else {
+                    this.nullBitmaps[columnIndex][rowIndex >>> 6] &= ~(1L << rowIndex);
+                }
+            }
+        }
+
+        /**
+         * 比较两组结果中各一行在同一列上的值，null小于任何值
+         */
+        @SuppressWarnings("unchecked")
+        static int compare(final ColumnarResultValues values1, final int rowIndex1,
+                           final ColumnarResultValues values2, final int rowIndex2,
+                           final int columnIndex) {
+            final boolean null1 = values1.isNull(rowIndex1, columnIndex);
+            final boolean null2 = values2.isNull(rowIndex2, columnIndex);
+            if (null1 || null2) {
+                return null1 == null2 ? 0 : (null1 ? -1 : 1);
+            }
+            if (values1.longColumns[columnIndex] != null) {
+                final long value1 = values1.longColumns[columnIndex][rowIndex1];
+                final long value2 = values2.longColumns[columnIndex][rowIndex2];
+                return value1 < value2 ? -1 : (value1 == value2 ? 0 : 1);
+            } else if (values1.doubleColumns[columnIndex] != null) {
+                return Double.compare(
+                        values1.doubleColumns[columnIndex][rowIndex1],
+                        values2.doubleColumns[columnIndex][rowIndex2]
+                );
+            } else {
+                return ((Comparable<Object>) values1.objectColumns[columnIndex][rowIndex1])
+                        .compareTo(values2.objectColumns[columnIndex][rowIndex2]);
+            }
+        }
+
+        final boolean isNull(final int rowIndex, final int columnIndex) {
+            return (this.nullBitmaps[columnIndex][rowIndex >>> 6] & (1L << rowIndex)) != 0;
+        }
+
+        final long getLong(final int rowIndex, final int columnIndex) {
+            return this.longColumns[columnIndex][rowIndex];
+        }
+
+        final double getDouble(final int rowIndex, final int columnIndex) {
+            return this.doubleColumns[columnIndex][rowIndex];
+        }
+
+        /**
+         * 按列的数据类型装箱，仅在以对象方式访问列值时使用
+         */
+        final Object getObject(final int rowIndex, final int columnIndex) {
+            if (this.isNull(rowIndex, columnIndex)) {
+                return null;
+            }
+            switch (this.columnDataTypes[columnIndex]) {
+                case LONG:
+                    return this.longColumns[columnIndex][rowIndex];
+                case INTEGER:
+                    return (int) this.longColumns[columnIndex][rowIndex];
+                case DATE:
+                    return new Date(this.longColumns[columnIndex][rowIndex]);
+                case BOOLEAN:
+                    return this.longColumns[columnIndex][rowIndex] != 0L;
+                case DOUBLE:
+                    return this.doubleColumns[columnIndex][rowIndex];
+                case FLOAT:
+                    return (float) this.doubleColumns[columnIndex][rowIndex];
+                default:
+                    return this.objectColumns[columnIndex][rowIndex];
+            }
+        }
+
+        private static int bitmapLength(final int rowCapacity) {
+            return (rowCapacity + Long.SIZE - 1) >>> 6;
+        }
+
+    }
+
+    /**
+     * 结果列的解码器，在结果集构建时按投影预先生成，并被结果集的所有行复用；
+     * 解码器持有的日期格式不是线程安全的，因此每个结果集使用各自的解码器，不随语义分析结果缓存
+     */
+    private static abstract class ResultColumnDecoder {
+
+        static ResultColumnDecoder newInstance(final Expression resultColumnExpression,
+                                               final TypeDefinition typeDefinition) throws CrabsException {
+            if (resultColumnExpression instanceof Reference) {
+                final Identifier columnIdentifier = Reference.class.cast(resultColumnExpression).columnIdentifier;
+                final FieldDefinition fieldDefinition = typeDefinition.getFieldDefinition(columnIdentifier);
+                return new SourceFieldDecoder(
+                        columnIdentifier.toString(),
+                        fieldDefinition.getDataType(),
+                        fieldDefinition.getPattern()
+                );
+            } else {
+                return new ConstantDecoder(Constant.class.cast(resultColumnExpression).value);
+            }
+        }
+
+        abstract Object decode(SearchHit hit) throws CrabsException;
+
+        /**
+         * 是否可以按基本类型解码，LONG、INTEGER、DATE、BOOLEAN类型按long解码，DOUBLE、FLOAT类型按double解码
+         */
+        abstract boolean isPrimitive();
+
+        abstract boolean isNull(SearchHit hit) throws CrabsException;
+
+        abstract long decodeLong(SearchHit hit) throws CrabsException;
+
+        abstract double decodeDouble(SearchHit hit) throws CrabsException;
+
+        private static final class ConstantDecoder extends ResultColumnDecoder {
+
+            private final Object value;
+
+            ConstantDecoder(final Object value) {
+                this.value = value;
+            }
+
+            @Override
+            final Object decode(final SearchHit hit) {
+                return this.value;
+            }
+
+            // 常量按对象方式读取，以下方法不会被调用
+
+            @Override
+            final boolean isPrimitive() {
+                return false;
+            }
+
+            @Override
+            final boolean isNull(final SearchHit hit) {
+                return this.value == null;
+            }
+
+            @Override
+            final long decodeLong(final SearchHit hit) {
+                throw new IllegalStateException("Constant[" + this.value + "] is not decoded as long.");
+            }
+
+            @Override
+            final double decodeDouble(final SearchHit hit) {
+                throw new IllegalStateException("Constant[" + this.value + "] is not decoded as double.");
+            }
+
+        }
+
+        private static final class SourceFieldDecoder extends ResultColumnDecoder {
+
+            private final String fieldName;
+
+            private final DataType dataType;
+
+            private final String pattern;
+
+            private SimpleDateFormat dateFormat;
+
+            SourceFieldDecoder(final String fieldName,
+                               final DataType dataType,
+                               final String pattern) {
+                this.fieldName = fieldName;
+                this.dataType = dataType;
+                this.pattern = pattern;
+            }
+
+            @Override
+            final Object decode(final SearchHit hit) throws CrabsException {
+                final Object value = hit.getSource().get(this.fieldName);
+                if (value == null) {
+                    return null;
+                }
+                // 优先使用source中已经解析好的值，避免再经过字符串转换
+                switch (this.dataType) {
+                    case STRING:
+                        if (value instanceof String) {
+                            return value;
+                        }
+                        break;
+                    case LONG:
+                        if (value instanceof Number) {
+                            return ((Number) value).longValue();
+                        }
+                        break;
+                    case INTEGER:
+                        if (value instanceof Number) {
+                            return ((Number) value).intValue();
+                        }
+                        break;
+                    case FLOAT:
+                        if (value instanceof Number) {
+                            return ((Number) value).floatValue();
+                        }
+                        break;
+                    case DOUBLE:
+                        if (value instanceof Number) {
+                            return ((Number) value).doubleValue();
+                        }
+                        break;
+                    case BOOLEAN:
+                        if (value instanceof Boolean) {
+                            return value;
+                        }
+                        break;
+                    case DATE:
+                        if (this.dateFormat == null) {
+                            this.dateFormat = new SimpleDateFormat(this.pattern);
+                        }
+                        try {
+                            return this.dateFormat.parse(value.toString());
+                        } catch (ParseException e) {
+                            throw new CrabsException(e.getMessage(), e);
+                        }
+                }
+                return this.dataType.toValue(value.toString(), this.pattern);
+            }
+
+            @Override
+            final boolean isPrimitive() {
+                return this.dataType != DataType.STRING;
+            }
+
+            @Override
+            final boolean isNull(final SearchHit hit) {
+                return hit.getSource().get(this.fieldName) == null;
+            }
+
+            @Override
+            final long decodeLong(final SearchHit hit) throws CrabsException {
+                final Object value = hit.getSource().get(this.fieldName);
+                if (value == null) {
+                    return 0L;
+                }
+                switch (this.dataType) {
+                    case LONG:
+                        if (value instanceof Number) {
+                            return ((Number) value).longValue();
+                        }
+                        return Long.parseLong(value.toString());
+                    case INTEGER:
+                        if (value instanceof Number) {
+                            return ((Number) value).intValue();
+                        }
+                        return Integer.parseInt(value.toString());
+                    case BOOLEAN:
+                        if (value instanceof Boolean) {
+                            return ((Boolean) value) ? 1L : 0L;
+                        }
+                        return Boolean.parseBoolean(value.toString()) ? 1L : 0L;
+                    case DATE:
+                        return ((Date) this.decode(hit)).getTime();
+                    default:
+                        throw new IllegalStateException("Data type[" + this.dataType + "] is not decoded as long.");
+                }
+            }
+
+            @Override
+            final double decodeDouble(final SearchHit hit) {
+                final Object value = hit.getSource().get(this.fieldName);
+                if (value == null) {
+                    return 0D;
+                }
+                switch (this.dataType) {
+                    case DOUBLE:
+                        if (value instanceof Number) {
+                            return ((Number) value).doubleValue();
+                        }
+                        return Double.parseDouble(value.toString());
+                    case FLOAT:
+                        if (value instanceof Number) {
+                            return ((Number) value).floatValue();
+                        }
+                        return Float.parseFloat(value.toString());
+                    default:
+                        throw new IllegalStateException("Data type[" + this.dataType + "] is not decoded as double.");
+                }
+            }
+
+        }
+
+    }
+
+    private static final class NonAggregationNormalSearchExecutePlan extends
+            SelectStatementExecutePlan<NonAggregationNormalSearchExecutePlan.NonAggregationNormalSearchRequestBuilder,
+                    NonAggregationNormalSearchExecutePlan.NonAggregationNormalSearchCallback> {
+
+        private static final String[] EMPTY_STRING_ARRAY = new String[0];
+
+        protected NonAggregationNormalSearchExecutePlan(
+                final SearchExecuteContext context) throws CrabsException {
+            super(new NonAggregationNormalSearchExecuteContext(context));
+        }
+
+        /**
+         * 供其他非聚合执行计划复用查询条件、排序等的构建
+         */
+        NonAggregationNormalSearchExecutePlan(
+                final NonAggregationNormalSearchExecuteContext context) {
+            super(context);
+        }
+
+        @Override
+        protected final boolean accept() throws CrabsException {
+            if (!acceptResultColumns(this.context.statement)) {
+                return false;
+            }
+            final int rowCount = limitRowCount(this.context);
+            if (rowCount == NO_LIMIT_ROW_COUNT) {
+                // 指定了fetch size的非limit查询交由scroll执行计划分批获取
+                return !this.context.options.isFetchSizeSpecified();
+            }
+            // TODO 判断其他子句中是否包含算数运算类表达式，如果包含，则返回false
+            return rowCount <= this.context.maxRowCount;
+        }
+
+        static final int NO_LIMIT_ROW_COUNT = -1;
+
+        static boolean acceptResultColumns(final SelectStatement statement) {
+            final ReadonlyList<ResultColumnDeclare> resultColumnDeclareList
+                    = statement.selectClause.resultColumnDeclareList;
+            for (int index = 0, size = resultColumnDeclareList.size(); index < size; index++) {
+                final ResultColumnDeclare resultColumnDeclare = resultColumnDeclareList.get(index);
+                final Expression expression = resultColumnDeclare.expression;
+                if (!(expression instanceof Reference
+                        || expression instanceof Constant
+                        || expression instanceof Argument)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        static int limitRowCount(final SearchExecuteContext context) throws CrabsException {
+            final LimitClause limitClause = context.statement.limitClause;
+            if (limitClause == null) {
+                return NO_LIMIT_ROW_COUNT;
+            }
+            final Expression rowCountExpression = limitClause.rowCount;
+            if (rowCountExpression instanceof Argument) {
+                return Integer.parseInt(
+                        context.argumentValue(
+                                Argument.class.cast(rowCountExpression)
+                        ).toString()
+                );
+            } else {
+                return Integer.parseInt(
+                        Constant.class.cast(rowCountExpression).value.toString()
+                );
+            }
+        }
+
+        private SearchSourceBuilder searchSourceBuilder;
+
+        @Override
+        protected final boolean isEmptyResponseSupported() {
+            return true;
+        }
+
+        @Override
+        protected final NonAggregationNormalSearchRequestBuilder doCreateRequestBuilder() throws CrabsException {
+            final NonAggregationNormalSearchExecuteContext context
+                    = (NonAggregationNormalSearchExecuteContext) this.context;
+            final SearchTemplate searchTemplate = context.searchTemplate;
+            if (context.analyzed && searchTemplate != null) {
+                // 查询条件等由模板给出，只需要绑定参数以及本次执行的分页
+                NonAggregationNormalSearchSemanticAnalyzer.analyzeLimitClause(context);
+                this.searchSourceBuilder = new SearchSourceBuilder();
+                this
+                        .from(context)
+                        .size(context)
+                        .timeout(context)
+                ;
+                return new NonAggregationNormalSearchRequestBuilder(
+                        this.searchSourceBuilder,
+                        searchTemplate,
+                        searchTemplate.bindParameters(this, context)
+                );
+            }
+            return new NonAggregationNormalSearchRequestBuilder(this.buildSearchSourceBuilder());
+        }
+
+        final SearchSourceBuilder buildSearchSourceBuilder() throws CrabsException {
+            final NonAggregationNormalSearchExecuteContext context
                     = (NonAggregationNormalSearchExecuteContext) this.context;
-            // 语义分析
-            final SelectStatementSemanticAnalyzer semanticAnalyzer
-                    = new NonAggregationNormalSearchSemanticAnalyzer(context);
-            semanticAnalyzer.analyzeStatement();
+            if (context.analyzed) {
+                // 语义分析结果已缓存，只需要绑定本次执行的limit参数
+                NonAggregationNormalSearchSemanticAnalyzer.analyzeLimitClause(context);
+            } else {
+                // 语义分析
+                final SelectStatementSemanticAnalyzer semanticAnalyzer
+                        = new NonAggregationNormalSearchSemanticAnalyzer(context);
+                semanticAnalyzer.analyzeStatement();
+                context.resultSetMetaData = buildResultSetMetaData(context);
+            }
 
-            // TODO 需要完善search template
             this.searchSourceBuilder = new SearchSourceBuilder();
             this
                     .fetchSource(context)
@@ -2031,8 +3246,47 @@ public final class SelectStatementExecutor extends StatementExecutor<SelectState
                     .sort(context)
                     .from(context)
                     .size(context)
+                    .timeout(context)
             ;
-            return new NonAggregationNormalSearchRequestBuilder(this.searchSourceBuilder);
+            if (!context.analyzed) {
+                if (this.searchTemplateEnabled) {
+                    context.searchTemplate = this.compileSearchTemplate(context);
+                }
+                context.compiledStatement.putAnalyzedContext(context);
+            }
+            return this.searchSourceBuilder;
+        }
+
+        /**
+         * 查询条件中包含参数时才需要模板，分页以及超时在每次执行时通过extra source给出
+         */
+        private SearchTemplate compileSearchTemplate(
+                final NonAggregationNormalSearchExecuteContext context) throws CrabsException {
+            final Expression whereConditionExpression = context.finallyWhereConditionExpression;
+            final Expression havingConditionExpression = context.finallyHavingConditionExpression;
+            if (!(whereConditionExpression != null && containsArgument(whereConditionExpression)
+                    || havingConditionExpression != null && containsArgument(havingConditionExpression))) {
+                return null;
+            }
+            final SearchSourceBuilder searchSourceBuilder = this.searchSourceBuilder;
+            final SearchTemplateCompiler searchTemplateCompiler = new SearchTemplateCompiler();
+            context.searchTemplateCompiler = searchTemplateCompiler;
+            try {
+                this.searchSourceBuilder = new SearchSourceBuilder();
+                this
+                        .fetchSource(context)
+                        .query(context)
+                        .postFilter(context)
+                        .sort(context)
+                ;
+                return searchTemplateCompiler.compile(this.searchSourceBuilder);
+            } catch (CrabsException e) {
+                // 无法以占位符代替参数的语句，每次执行时仍然构建完整的查询
+                return null;
+            } finally {
+                context.searchTemplateCompiler = null;
+                this.searchSourceBuilder = searchSourceBuilder;
+            }
         }
 
         @Override
@@ -2040,6 +3294,13 @@ public final class SelectStatementExecutor extends StatementExecutor<SelectState
             return new NonAggregationNormalSearchCallback();
         }
 
+        private NonAggregationNormalSearchExecutePlan timeout(final NonAggregationNormalSearchExecuteContext context) {
+            if (context.options.isQueryTimeoutSpecified()) {
+                this.searchSourceBuilder.timeout(TimeValue.timeValueSeconds(context.options.getQueryTimeout()));
+            }
+            return this;
+        }
+
         private NonAggregationNormalSearchExecutePlan fetchSource(
                 final NonAggregationNormalSearchExecuteContext context) {
             final ArrayList<Reference> resultColumnReferenceList = context.resultColumnReferenceList;
@@ -2054,12 +3315,11 @@ public final class SelectStatementExecutor extends StatementExecutor<SelectState
 
         private NonAggregationNormalSearchExecutePlan query(
                 final NonAggregationNormalSearchExecuteContext context) throws CrabsException {
-            final Expression conditionExpression = context.finallyWhereConditionExpression;
-            if (conditionExpression != null) {
+            if (context.whereConditionExpression() != null) {
                 this.searchSourceBuilder.query(
                         new FilteredQueryBuilder(
                                 QueryBuilders.matchAllQuery(),
-                                this.buildFilterBuilder(conditionExpression)
+                                this.buildWhereFilterBuilder(context)
                         )
                 );
             }
@@ -2070,9 +3330,14 @@ public final class SelectStatementExecutor extends StatementExecutor<SelectState
                 final NonAggregationNormalSearchExecuteContext context) throws CrabsException {
             final Expression conditionExpression = context.finallyHavingConditionExpression;
             if (conditionExpression != null) {
-                this.searchSourceBuilder.postFilter(
-                        this.buildFilterBuilder(conditionExpression)
-                );
+                FilterBuilder filterBuilder = context.havingFilterBuilder;
+                if (filterBuilder == null) {
+                    filterBuilder = this.buildFilterBuilder(conditionExpression);
+                    if (!context.analyzed && !containsArgument(conditionExpression)) {
+                        context.havingFilterBuilder = filterBuilder;
+                    }
+                }
+                this.searchSourceBuilder.postFilter(filterBuilder);
             }
             return this;
         }
@@ -2108,14 +3373,83 @@ public final class SelectStatementExecutor extends StatementExecutor<SelectState
             return this;
         }
 
+        static ResultColumnDecoder[] buildResultColumnDecoders(
+                final NonAggregationNormalSearchExecuteContext context) throws CrabsException {
+            final ArrayList<Expression> resultColumnExpressionList = context.resultColumnExpressionList;
+            final ResultColumnDecoder[] decoders = new ResultColumnDecoder[resultColumnExpressionList.size()];
+            for (int index = 0; index < decoders.length; index++) {
+                decoders[index] = ResultColumnDecoder.newInstance(
+                        resultColumnExpressionList.get(index),
+                        context.typeDefinition
+                );
+            }
+            return decoders;
+        }
+
+        static SearchResultSet.SearchResultSetMetaData buildResultSetMetaData(
+                final NonAggregationNormalSearchExecuteContext context) throws CrabsException {
+            if (context.resultSetMetaData != null) {
+                return context.resultSetMetaData;
+            }
+            SearchResultSet.SearchResultSetMetaData.ColumnInformation columnInformation;
+            Identifier columnIdentifier;
+            String columnLabel;
+            DataType dataType;
+            int columnDisplaySize;
+            Expression columnValueExpression;
+            ArrayList<SearchResultSet.SearchResultSetMetaData.ColumnInformation> columnInformationList
+                    = new ArrayList<SearchResultSet.SearchResultSetMetaData.ColumnInformation>();
+            for (int index = 0, size = context.resultColumnAliasList.size(); index < size; index++) {
+                columnIdentifier = context.resultColumnAliasList.get(index);
+                columnValueExpression = context.aliasExpressionMap.get(columnIdentifier);
+                if (columnValueExpression instanceof Reference) {
+                    dataType = context.typeDefinition.getFieldDefinition(
+                            Reference.class.cast(columnValueExpression).columnIdentifier
+                    ).getDataType();
+                } else {
+                    // constant
+                    dataType = DataType.getDataType(Constant.class.cast(columnValueExpression).value.getClass());
+                }
+                columnLabel = columnIdentifier.toString();
+                columnDisplaySize = dataType.displaySize();
+                columnInformation = new SearchResultSet.SearchResultSetMetaData.ColumnInformation(
+                        columnIdentifier,
+                        columnLabel,
+                        dataType,
+                        columnDisplaySize
+                );
+                columnInformationList.add(columnInformation);
+            }
+            return new SearchResultSet.SearchResultSetMetaData(
+                    columnInformationList.toArray(
+                            new SearchResultSet.SearchResultSetMetaData.ColumnInformation[columnInformationList.size()]
+                    )
+            );
+        }
+
         final class NonAggregationNormalSearchRequestBuilder implements
                 InternalDocumentRequestBuilder<SearchRequest, SearchResponse, SearchRequestBuilder,
                         SearchAction, SearchExecuteContext> {
 
             private final SearchSourceBuilder searchSourceBuilder;
 
+            private final SearchTemplate searchTemplate;
+
+            private final Map<String, String> searchTemplateParameters;
+
             NonAggregationNormalSearchRequestBuilder(final SearchSourceBuilder searchSourceBuilder) {
+                this(searchSourceBuilder, null, null);
+            }
+
+            /**
+             * 使用search template时，searchSourceBuilder只包含分页等每次执行不同的部分
+             */
+            NonAggregationNormalSearchRequestBuilder(final SearchSourceBuilder searchSourceBuilder,
+                                                     final SearchTemplate searchTemplate,
+                                                     final Map<String, String> searchTemplateParameters) {
                 this.searchSourceBuilder = searchSourceBuilder;
+                this.searchTemplate = searchTemplate;
+                this.searchTemplateParameters = searchTemplateParameters;
             }
 
             @Override
@@ -2127,16 +3461,29 @@ public final class SelectStatementExecutor extends StatementExecutor<SelectState
             public final SearchRequest buildRequest(final Client client,
                                                     final SearchExecuteContext context) throws CrabsException {
                 final SearchRequestBuilder searchRequestBuilder = new SearchRequestBuilder(client);
-                searchRequestBuilder.internalBuilder(this.searchSourceBuilder);
+                if (this.searchTemplate == null) {
+                    searchRequestBuilder.internalBuilder(this.searchSourceBuilder);
+                } else {
+                    searchRequestBuilder.setTemplateSource(
+                            this.searchTemplate.buildTemplateSource(this.searchTemplateParameters)
+                    );
+                    searchRequestBuilder.setExtraSource(this.searchSourceBuilder.buildAsBytes(Requests.CONTENT_TYPE));
+                }
                 searchRequestBuilder.setIndices(
                         context.environment.getIndexDefinition().getIdentifier().toString()
                 );
                 searchRequestBuilder.setTypes(
                         NonAggregationNormalSearchExecutePlan.this.context.tableIdentifier.toString()
                 );
+                NonAggregationNormalSearchExecutePlan.this.applyHints(searchRequestBuilder);
                 if (NonAggregationNormalSearchExecutePlan.this.outputSQLToElasticsearchRequestMapping) {
-                    LOGGER.info("SQL and request mapping [" + context.statement + " -> "
-                            + searchRequestBuilder.toString() + "]");
+                    if (this.searchTemplate == null) {
+                        LOGGER.info("SQL and request mapping [" + context.statement + " -> "
+                                + searchRequestBuilder.toString() + "]");
+                    } else {
+                        LOGGER.info("SQL and request mapping [" + context.statement + " -> "
+                                + this.searchTemplate.source + " " + this.searchTemplateParameters + "]");
+                    }
                 }
 
                 return searchRequestBuilder.request();
@@ -2144,16 +3491,16 @@ public final class SelectStatementExecutor extends StatementExecutor<SelectState
 
         }
 
-        final class NonAggregationNormalSearchCallback extends SearchResponseCallback {
+        final class NonAggregationNormalSearchCallback extends SearchResponseCallback<InternalResultSet> {
 
             private final NonAggregationNormalSearchExecuteContext context;
 
-            private final int resultColumnCount;
+            private final ResultColumnDecoder[] resultColumnDecoders;
 
-            NonAggregationNormalSearchCallback() {
+            NonAggregationNormalSearchCallback() throws CrabsException {
                 this.context
                         = (NonAggregationNormalSearchExecuteContext) NonAggregationNormalSearchExecutePlan.this.context;
-                this.resultColumnCount = this.context.resultColumnAliasList.size();
+                this.resultColumnDecoders = buildResultColumnDecoders(this.context);
             }
 
             @Override
@@ -2164,80 +3511,18 @@ public final class SelectStatementExecutor extends StatementExecutor<SelectState
                 );
             }
 
-            private Object[][] values;
+            // 保留原始的hit，列值在被访问时才解码
+            private SearchHit[] hits;
 
             @Override
             public final void callback(final SearchResponse response) throws CrabsException {
-                if (response.status() != RestStatus.OK) {
-                    throw new CrabsException("Failed to execute query with elasticsearch, response status is: "
-                            + response.status().getStatus());
-                }
+                checkResponse(response);
                 final SearchHits searchHits = response.getHits();
-                final SearchHit[] hits = searchHits.getHits();
-                final int length = hits.length;
-                this.values = new Object[length][];
-                Map<String, Object> sourceMap;
-                for (int index = 0; index < length; index++) {
-                    sourceMap = hits[index].getSource();
-                    Expression resultColumnExpression;
-                    Object[] columnValues = new Object[this.resultColumnCount];
-                    for (int columnIndex = 0; columnIndex < this.resultColumnCount; columnIndex++) {
-                        resultColumnExpression = this.context.resultColumnExpressionList.get(columnIndex);
-                        if (resultColumnExpression instanceof Reference) {
-                            final Reference reference = Reference.class.cast(resultColumnExpression);
-                            final Identifier columnIdentifier = reference.columnIdentifier;
-                            final FieldDefinition fieldDefinition
-                                    = this.context.typeDefinition.getFieldDefinition(columnIdentifier);
-                            final DataType dataType
-                                    = fieldDefinition.getDataType();
-                            final Object columnValue = sourceMap.get(columnIdentifier.toString());
-                            columnValues[columnIndex] = columnValue == null ? null : dataType.toValue(
-                                    columnValue.toString(),
-                                    fieldDefinition.getPattern()
-                            );
-                        } else {
-                            columnValues[columnIndex] = Constant.class.cast(resultColumnExpression).value;
-                        }
-                    }
-                    this.values[index] = columnValues;
-                }
+                this.hits = searchHits.getHits();
             }
 
             private SearchResultSet.SearchResultSetMetaData buildResultSetMetaData() throws CrabsException {
-                SearchResultSet.SearchResultSetMetaData.ColumnInformation columnInformation;
-                Identifier columnIdentifier;
-                String columnLabel;
-                DataType dataType;
-                int columnDisplaySize;
-                Expression columnValueExpression;
-                ArrayList<SearchResultSet.SearchResultSetMetaData.ColumnInformation> columnInformationList
-                        = new ArrayList<SearchResultSet.SearchResultSetMetaData.ColumnInformation>();
-                for (int index = 0, size = this.context.resultColumnAliasList.size(); index < size; index++) {
-                    columnIdentifier = this.context.resultColumnAliasList.get(index);
-                    columnValueExpression = this.context.aliasExpressionMap.get(columnIdentifier);
-                    if (columnValueExpression instanceof Reference) {
-                        dataType = this.context.typeDefinition.getFieldDefinition(
-                                Reference.class.cast(columnValueExpression).columnIdentifier
-                        ).getDataType();
-                    } else {
-                        // constant
-                        dataType = DataType.getDataType(Constant.class.cast(columnValueExpression).value.getClass());
-                    }
-                    columnLabel = columnIdentifier.toString();
-                    columnDisplaySize = dataType.displaySize();
-                    columnInformation = new SearchResultSet.SearchResultSetMetaData.ColumnInformation(
-                            columnIdentifier,
-                            columnLabel,
-                            dataType,
-                            columnDisplaySize
-                    );
-                    columnInformationList.add(columnInformation);
-                }
-                return new SearchResultSet.SearchResultSetMetaData(
-                        columnInformationList.toArray(
-                                new SearchResultSet.SearchResultSetMetaData.ColumnInformation[columnInformationList.size()]
-                        )
-                );
+                return NonAggregationNormalSearchExecutePlan.buildResultSetMetaData(this.context);
             }
 
             private SearchResultSetIterator buildResultIterator() throws CrabsException {
@@ -2252,7 +3537,7 @@ public final class SelectStatementExecutor extends StatementExecutor<SelectState
 
                 SearchResultSetIteratorImpl() {
                     this.index = -1;
-                    this.size = NonAggregationNormalSearchCallback.this.values.length;
+                    this.size = NonAggregationNormalSearchCallback.this.hits.length;
                 }
 
                 @Override
@@ -2262,12 +3547,40 @@ public final class SelectStatementExecutor extends StatementExecutor<SelectState
 
                 @Override
                 final int getResultValueCount() {
-                    return NonAggregationNormalSearchCallback.this.values[this.index].length;
+                    return NonAggregationNormalSearchCallback.this.resultColumnDecoders.length;
                 }
 
                 @Override
-                final Object getResultValue(int valueIndex) {
-                    return NonAggregationNormalSearchCallback.this.values[this.index][valueIndex];
+                final Object getResultValue(int valueIndex) throws CrabsException {
+                    return NonAggregationNormalSearchCallback.this.resultColumnDecoders[valueIndex].decode(
+                            NonAggregationNormalSearchCallback.this.hits[this.index]
+                    );
+                }
+
+                @Override
+                final boolean isPrimitiveResultValue(final int valueIndex) {
+                    return NonAggregationNormalSearchCallback.this.resultColumnDecoders[valueIndex].isPrimitive();
+                }
+
+                @Override
+                final boolean isNullResultValue(final int valueIndex) throws CrabsException {
+                    return NonAggregationNormalSearchCallback.this.resultColumnDecoders[valueIndex].isNull(
+                            NonAggregationNormalSearchCallback.this.hits[this.index]
+                    );
+                }
+
+                @Override
+                final long getLongResultValue(final int valueIndex) throws CrabsException {
+                    return NonAggregationNormalSearchCallback.this.resultColumnDecoders[valueIndex].decodeLong(
+                            NonAggregationNormalSearchCallback.this.hits[this.index]
+                    );
+                }
+
+                @Override
+                final double getDoubleResultValue(final int valueIndex) throws CrabsException {
+                    return NonAggregationNormalSearchCallback.this.resultColumnDecoders[valueIndex].decodeDouble(
+                            NonAggregationNormalSearchCallback.this.hits[this.index]
+                    );
                 }
 
                 @Override
@@ -2442,31 +3755,35 @@ public final class SelectStatementExecutor extends StatementExecutor<SelectState
             }
 
             private void analyzeLimitClause() throws CrabsException {
-                final LimitClause limitClause = this.statement.limitClause;
+                analyzeLimitClause(this.context);
+            }
+
+            static void analyzeLimitClause(final NonAggregationNormalSearchExecuteContext context) throws CrabsException {
+                final LimitClause limitClause = context.statement.limitClause;
                 if (limitClause == null) {
-                    this.context.offset = 0;
-                    this.context.rowCount = this.context.maxRowCount;
+                    context.offset = 0;
+                    context.rowCount = context.maxRowCount;
                 } else {
                     final Expression offsetExpression = limitClause.offset;
                     final Expression rowCountExpression = limitClause.rowCount;
                     if (offsetExpression instanceof Argument) {
-                        this.context.offset
+                        context.offset
                                 = Integer.parseInt(
-                                this.context.argumentValue(Argument.class.cast(offsetExpression)).toString()
+                                context.argumentValue(Argument.class.cast(offsetExpression)).toString()
                         );
                     } else {
-                        this.context.offset
+                        context.offset
                                 = Integer.parseInt(
                                 Constant.class.cast(offsetExpression).value.toString()
                         );
                     }
                     if (rowCountExpression instanceof Argument) {
-                        this.context.rowCount
+                        context.rowCount
                                 = Integer.parseInt(
-                                this.context.argumentValue(Argument.class.cast(rowCountExpression)).toString()
+                                context.argumentValue(Argument.class.cast(rowCountExpression)).toString()
                         );
                     } else {
-                        this.context.rowCount
+                        context.rowCount
                                 = Integer.parseInt(
                                 Constant.class.cast(rowCountExpression).value.toString()
                         );
@@ -2521,113 +3838,1793 @@ public final class SelectStatementExecutor extends StatementExecutor<SelectState
 
             final ArrayList<Reference> resultColumnReferenceList;
 
-            final ArrayList<Identifier> resultColumnAliasList;
+            final ArrayList<Identifier> resultColumnAliasList;
+
+            NonAggregationNormalSearchExecuteContext(final SearchExecuteContext context) throws CrabsException {
+                super(context);
+                final NonAggregationNormalSearchExecuteContext analyzedContext
+                        = context.compiledStatement.getAnalyzedContext(NonAggregationNormalSearchExecuteContext.class);
+                if (analyzedContext == null) {
+                    this.aliasReferenceMap = new HashMap<Identifier, Reference>();
+                    this.aliasExpressionMap = new HashMap<Identifier, Expression>();
+                    this.resultColumnReferenceList = new ArrayList<Reference>();
+                    this.resultColumnAliasList = new ArrayList<Identifier>();
+                    this.resultColumnExpressionList = new ArrayList<Expression>();
+                } else {
+                    // 分析完成后以下结果只读，直接共享
+                    this.copyAnalyzedState(analyzedContext);
+                    this.aliasReferenceMap = analyzedContext.aliasReferenceMap;
+                    this.aliasExpressionMap = analyzedContext.aliasExpressionMap;
+                    this.resultColumnReferenceList = analyzedContext.resultColumnReferenceList;
+                    this.resultColumnAliasList = analyzedContext.resultColumnAliasList;
+                    this.resultColumnExpressionList = analyzedContext.resultColumnExpressionList;
+                    this.finallyHavingConditionExpression = analyzedContext.finallyHavingConditionExpression;
+                    this.finallyOrderSpecifications = analyzedContext.finallyOrderSpecifications;
+                    this.havingFilterBuilder = analyzedContext.havingFilterBuilder;
+                    this.resultSetMetaData = analyzedContext.resultSetMetaData;
+                    this.searchTemplate = analyzedContext.searchTemplate;
+                }
+            }
+
+            Expression finallyHavingConditionExpression;
+
+            FilterBuilder havingFilterBuilder;
+
+            OrderSpecification[] finallyOrderSpecifications;
+
+            SearchResultSet.SearchResultSetMetaData resultSetMetaData;
+
+            // 查询条件不包含参数或者无法编译为模板时为null
+            SearchTemplate searchTemplate;
+
+            int offset;
+
+            int rowCount;
+
+        }
+
+    }
+
+    /**
+     * 基于scroll的非聚合查询执行计划，用于limit超过clientScanSize或者指定了fetch size的非limit查询，
+     * 结果集在迭代时才按页从elasticsearch获取，客户端内存占用与结果集大小无关
+     */
+    private static final class NonAggregationScrollSearchExecutePlan extends
+            SelectStatementExecutePlan<NonAggregationScrollSearchExecutePlan.NonAggregationScrollSearchRequestBuilder,
+                    NonAggregationScrollSearchExecutePlan.NonAggregationScrollSearchCallback> {
+
+        protected NonAggregationScrollSearchExecutePlan(final SearchExecuteContext context) throws CrabsException {
+            super(new NonAggregationNormalSearchExecutePlan.NonAggregationNormalSearchExecuteContext(
+                    context
+            ));
+            this.normalSearchExecutePlan = new NonAggregationNormalSearchExecutePlan(
+                    (NonAggregationNormalSearchExecutePlan.NonAggregationNormalSearchExecuteContext)
+                            this.context
+            );
+            this.scrollKeepAlive = TimeValue.timeValueSeconds(
+                    Long.parseLong(
+                            context.environment.getProperty(
+                                    PROPERTY_ENTRY$SCROLL_KEEP_ALIVE.identifier,
+                                    PROPERTY_ENTRY$SCROLL_KEEP_ALIVE.defaultValue
+                            )
+                    )
+            );
+        }
+
+        private final NonAggregationNormalSearchExecutePlan normalSearchExecutePlan;
+
+        private final TimeValue scrollKeepAlive;
+
+        @Override
+        protected final boolean accept() throws CrabsException {
+            if (!NonAggregationNormalSearchExecutePlan.acceptResultColumns(this.context.statement)) {
+                return false;
+            }
+            final int rowCount = NonAggregationNormalSearchExecutePlan.limitRowCount(this.context);
+            if (rowCount == NonAggregationNormalSearchExecutePlan.NO_LIMIT_ROW_COUNT) {
+                return this.context.options.isFetchSizeSpecified();
+            }
+            return rowCount > this.context.maxRowCount;
+        }
+
+        @Override
+        protected final boolean isMultiSearchSupported() {
+            return false;
+        }
+
+        @Override
+        protected final boolean isEmptyResponseSupported() {
+            return true;
+        }
+
+        @Override
+        protected final NonAggregationScrollSearchRequestBuilder doCreateRequestBuilder() throws CrabsException {
+            final NonAggregationNormalSearchExecutePlan.NonAggregationNormalSearchExecuteContext context
+                    = (NonAggregationNormalSearchExecutePlan.NonAggregationNormalSearchExecuteContext)
+                    this.context;
+            final SearchSourceBuilder searchSourceBuilder = this.normalSearchExecutePlan.buildSearchSourceBuilder();
+            if (context.statement.limitClause == null) {
+                context.rowCount = Integer.MAX_VALUE;
+            }
+            final int fetchSize = context.options.isFetchSizeSpecified()
+                    ? context.options.getFetchSize() : context.maxRowCount;
+            // scroll不支持from，offset在客户端迭代时跳过
+            searchSourceBuilder.from(-1);
+            final OrderSpecification[] orderSpecifications = context.finallyOrderSpecifications;
+            final SearchType searchType;
+            if (orderSpecifications != null && orderSpecifications.length > 0) {
+                searchType = SearchType.QUERY_THEN_FETCH;
+                searchSourceBuilder.size(fetchSize);
+            } else {
+                // scan方式下size作用于每个shard
+                final int shardsNum = context.indexDefinition.getShardsNum();
+                searchType = SearchType.SCAN;
+                searchSourceBuilder.size(Math.max(1, (fetchSize + shardsNum - 1) / shardsNum));
+            }
+            return new NonAggregationScrollSearchRequestBuilder(searchSourceBuilder, searchType);
+        }
+
+        @Override
+        protected final NonAggregationScrollSearchCallback doCallback() throws CrabsException {
+            return new NonAggregationScrollSearchCallback();
+        }
+
+        final class NonAggregationScrollSearchRequestBuilder implements
+                InternalDocumentRequestBuilder<SearchRequest, SearchResponse, SearchRequestBuilder,
+                        SearchAction, SearchExecuteContext> {
+
+            private final SearchSourceBuilder searchSourceBuilder;
+
+            private final SearchType searchType;
+
+            NonAggregationScrollSearchRequestBuilder(final SearchSourceBuilder searchSourceBuilder,
+                                                     final SearchType searchType) {
+                this.searchSourceBuilder = searchSourceBuilder;
+                this.searchType = searchType;
+            }
+
+            @Override
+            public final SearchAction buildAction() {
+                return SearchAction.INSTANCE;
+            }
+
+            @Override
+            public final SearchRequest buildRequest(final Client client,
+                                                    final SearchExecuteContext context) throws CrabsException {
+                final SearchRequestBuilder searchRequestBuilder = new SearchRequestBuilder(client);
+                searchRequestBuilder.internalBuilder(this.searchSourceBuilder);
+                searchRequestBuilder.setIndices(
+                        context.environment.getIndexDefinition().getIdentifier().toString()
+                );
+                searchRequestBuilder.setTypes(
+                        NonAggregationScrollSearchExecutePlan.this.context.tableIdentifier.toString()
+                );
+                searchRequestBuilder.setSearchType(this.searchType);
+                searchRequestBuilder.setScroll(NonAggregationScrollSearchExecutePlan.this.scrollKeepAlive);
+                NonAggregationScrollSearchExecutePlan.this.applyHints(searchRequestBuilder);
+                if (NonAggregationScrollSearchExecutePlan.this.outputSQLToElasticsearchRequestMapping) {
+                    LOGGER.info("SQL and request mapping [" + context.statement + " -> "
+                            + searchRequestBuilder.toString() + "]");
+                }
+
+                return searchRequestBuilder.request();
+            }
+
+        }
+
+        private final class NextPageRequestBuilder implements
+                InternalDocumentRequestBuilder<SearchScrollRequest, SearchResponse, SearchScrollRequestBuilder,
+                        SearchScrollAction, SearchExecuteContext> {
+
+            private final String scrollId;
+
+            NextPageRequestBuilder(final String scrollId) {
+                this.scrollId = scrollId;
+            }
+
+            @Override
+            public final SearchScrollAction buildAction() {
+                return SearchScrollAction.INSTANCE;
+            }
+
+            @Override
+            public final SearchScrollRequest buildRequest(final Client client,
+                                                          final SearchExecuteContext context) throws CrabsException {
+                return new SearchScrollRequest(this.scrollId)
+                        .scroll(NonAggregationScrollSearchExecutePlan.this.scrollKeepAlive);
+            }
+
+        }
+
+        private static final class ReleaseScrollRequestBuilder implements
+                InternalDocumentRequestBuilder<ClearScrollRequest, ClearScrollResponse, ClearScrollRequestBuilder,
+                        ClearScrollAction, SearchExecuteContext> {
+
+            private final String scrollId;
+
+            ReleaseScrollRequestBuilder(final String scrollId) {
+                this.scrollId = scrollId;
+            }
+
+            @Override
+            public final ClearScrollAction buildAction() {
+                return ClearScrollAction.INSTANCE;
+            }
+
+            @Override
+            public final ClearScrollRequest buildRequest(final Client client,
+                                                         final SearchExecuteContext context) throws CrabsException {
+                final ClearScrollRequest request = new ClearScrollRequest();
+                request.addScrollId(this.scrollId);
+                return request;
+            }
+
+        }
+
+        private static final SearchHit[] EMPTY_SEARCH_HITS = new SearchHit[0];
+
+        private static final ResponseCallback<ClearScrollResponse> RELEASE_SCROLL_CALLBACK
+                = new ResponseCallback<ClearScrollResponse>() {
+            @Override
+            public final void callback(final ClearScrollResponse response) throws CrabsException {
+                // nothing to do.
+            }
+        };
+
+        final class NonAggregationScrollSearchCallback extends SearchResponseCallback<InternalResultSet> {
+
+            private final NonAggregationNormalSearchExecutePlan.NonAggregationNormalSearchExecuteContext
+                    context;
+
+            private final ResultColumnDecoder[] resultColumnDecoders;
+
+            NonAggregationScrollSearchCallback() throws CrabsException {
+                this.context = (NonAggregationNormalSearchExecutePlan.NonAggregationNormalSearchExecuteContext)
+                        NonAggregationScrollSearchExecutePlan.this.context;
+                this.resultColumnDecoders = NonAggregationNormalSearchExecutePlan.buildResultColumnDecoders(
+                        this.context
+                );
+                this.hits = EMPTY_SEARCH_HITS;
+                this.hitIndex = -1;
+                this.totalHitCount = -1L;
+            }
+
+            // 当前页
+            private SearchHit[] hits;
+
+            private int hitIndex;
+
+            private String scrollId;
+
+            private long totalHitCount;
+
+            private long fetchedHitCount;
+
+            private int skippedRowCount;
+
+            private int returnedRowCount;
+
+            @Override
+            public final InternalResultSet getResultSet() throws CrabsException {
+                return new SearchResultSet(
+                        NonAggregationNormalSearchExecutePlan.buildResultSetMetaData(this.context),
+                        new ScrollSearchResultSetIterator()
+                );
+            }
+
+            @Override
+            public final void callback(final SearchResponse response) throws CrabsException {
+                checkResponse(response);
+                final SearchHits searchHits = response.getHits();
+                if (this.totalHitCount < 0) {
+                    this.totalHitCount = searchHits.getTotalHits();
+                }
+                this.hits = searchHits.getHits();
+                this.hitIndex = -1;
+                this.fetchedHitCount += this.hits.length;
+                this.scrollId = response.getScrollId();
+            }
+
+            private boolean fetchNextPage() throws CrabsException {
+                if (this.scrollId == null) {
+                    return false;
+                }
+                if (this.fetchedHitCount >= this.totalHitCount) {
+                    this.releaseScroll();
+                    return false;
+                }
+                final SearchExecuteContext context = NonAggregationScrollSearchExecutePlan.this.context;
+                try {
+                    context.advancedClient.execute(
+                            new NextPageRequestBuilder(this.scrollId),
+                            this,
+                            context,
+                            context.options.getRequestController()
+                    );
+                } catch (CrabsException e) {
+                    // 超时或者被取消后不会再读取后续分页
+                    this.releaseScroll();
+                    throw e;
+                }
+                if (this.hits.length == 0) {
+                    this.releaseScroll();
+                    return false;
+                }
+                return true;
+            }
+
+            private void releaseScroll() {
+                final String scrollId = this.scrollId;
+                if (scrollId != null) {
+                    this.scrollId = null;
+                    this.hits = EMPTY_SEARCH_HITS;
+                    try {
+                        this.context.advancedClient.execute(
+                                new ReleaseScrollRequestBuilder(scrollId),
+                                RELEASE_SCROLL_CALLBACK,
+                                this.context
+                        );
+                    } catch (Exception e) {
+                        // scroll超时后会被elasticsearch自动释放
+                        LOGGER.warn("Failed to release scroll[" + scrollId + "]", e);
+                    }
+                }
+            }
+
+            private final class ScrollSearchResultSetIterator extends SearchResultSetIterator {
+
+                @Override
+                final boolean next() throws CrabsException {
+                    final NonAggregationScrollSearchCallback callback = NonAggregationScrollSearchCallback.this;
+                    final NonAggregationNormalSearchExecutePlan.NonAggregationNormalSearchExecuteContext context
+                            = callback.context;
+                    for (; ; ) {
+                        if (callback.returnedRowCount >= context.rowCount) {
+                            callback.releaseScroll();
+                            return false;
+                        }
+                        if (++callback.hitIndex < callback.hits.length) {
+                            if (callback.skippedRowCount < context.offset) {
+                                callback.skippedRowCount++;
+                                continue;
+                            }
+                            callback.returnedRowCount++;
+                            return true;
+                        }
+                        if (!callback.fetchNextPage()) {
+                            return false;
+                        }
+                    }
+                }
+
+                @Override
+                final int getResultValueCount() {
+                    return NonAggregationScrollSearchCallback.this.resultColumnDecoders.length;
+                }
+
+                @Override
+                final Object getResultValue(final int valueIndex) throws CrabsException {
+                    final NonAggregationScrollSearchCallback callback = NonAggregationScrollSearchCallback.this;
+                    return callback.resultColumnDecoders[valueIndex].decode(callback.hits[callback.hitIndex]);
+                }
+
+                @Override
+                final boolean isPrimitiveResultValue(final int valueIndex) {
+                    return NonAggregationScrollSearchCallback.this.resultColumnDecoders[valueIndex].isPrimitive();
+                }
+
+                @Override
+                final boolean isNullResultValue(final int valueIndex) throws CrabsException {
+                    final NonAggregationScrollSearchCallback callback = NonAggregationScrollSearchCallback.this;
+                    return callback.resultColumnDecoders[valueIndex].isNull(callback.hits[callback.hitIndex]);
+                }
+
+                @Override
+                final long getLongResultValue(final int valueIndex) throws CrabsException {
+                    final NonAggregationScrollSearchCallback callback = NonAggregationScrollSearchCallback.this;
+                    return callback.resultColumnDecoders[valueIndex].decodeLong(callback.hits[callback.hitIndex]);
+                }
+
+                @Override
+                final double getDoubleResultValue(final int valueIndex) throws CrabsException {
+                    final NonAggregationScrollSearchCallback callback = NonAggregationScrollSearchCallback.this;
+                    return callback.resultColumnDecoders[valueIndex].decodeDouble(callback.hits[callback.hitIndex]);
+                }
+
+                @Override
+                public final void close() throws IOException {
+                    NonAggregationScrollSearchCallback.this.releaseScroll();
+                }
+            }
+
+        }
+
+    }
+
+    /**
+     * 不分组且只包含count(*)的聚合查询，直接使用命中记录数作为结果，不需要elasticsearch加载主键的field data
+     */
+    private static final class AggregationCountSearchExecutePlan extends
+            SelectStatementExecutePlan<AggregationCountSearchExecutePlan.AggregationCountSearchRequestBuilder,
+                    AggregationCountSearchExecutePlan.AggregationCountSearchCallback> {
+
+        protected AggregationCountSearchExecutePlan(final SearchExecuteContext context) throws CrabsException {
+            super(new AggregationNormalSearchExecutePlan.AggregationNormalSearchExecuteContext(context));
+        }
+
+        @Override
+        protected final boolean accept() throws CrabsException {
+            final SelectStatement statement = this.context.statement;
+            // having、order by、limit需要对聚合结果求值，由聚合执行计划处理
+            if (statement.groupByClause != null
+                    || statement.havingClause != null
+                    || statement.orderByClause != null
+                    || statement.limitClause != null) {
+                return false;
+            }
+            final ReadonlyList<ResultColumnDeclare> resultColumnDeclareList
+                    = statement.selectClause.resultColumnDeclareList;
+            boolean existsCountFunction = false;
+            Expression resultColumnExpression;
+            for (int index = 0, size = resultColumnDeclareList.size(); index < size; index++) {
+                resultColumnExpression = resultColumnDeclareList.get(index).expression;
+                if (resultColumnExpression instanceof CountFunction) {
+                    final Expression operandExpression
+                            = CountFunction.class.cast(resultColumnExpression).getOperandExpression(0);
+                    if (!(operandExpression instanceof Reference
+                            && Reference.class.cast(operandExpression).columnIdentifier.equals(
+                            Reference.ALL_COLUMN_IDENTIFIER))) {
+                        return false;
+                    }
+                    existsCountFunction = true;
+                } else if (!(resultColumnExpression instanceof Constant)) {
+                    return false;
+                }
+            }
+            return existsCountFunction;
+        }
+
+        private SearchSourceBuilder searchSourceBuilder;
+
+        @Override
+        protected final boolean isEmptyResponseSupported() {
+            return true;
+        }
+
+        @Override
+        protected final AggregationCountSearchRequestBuilder doCreateRequestBuilder() throws CrabsException {
+            final AggregationNormalSearchExecutePlan.AggregationNormalSearchExecuteContext context
+                    = (AggregationNormalSearchExecutePlan.AggregationNormalSearchExecuteContext) this.context;
+            if (!context.analyzed) {
+                final SelectStatementSemanticAnalyzer semanticAnalyzer
+                        = new AggregationNormalSearchExecutePlan.AggregationNormalSearchSemanticAnalyzer(context);
+                semanticAnalyzer.analyzeStatement();
+                context.resultSetMetaData = AggregationNormalSearchExecutePlan.buildResultSetMetaData(context);
+            }
+            this.searchSourceBuilder = new SearchSourceBuilder();
+            if (context.whereConditionExpression() != null) {
+                this.searchSourceBuilder.query(
+                        new FilteredQueryBuilder(
+                                QueryBuilders.matchAllQuery(),
+                                this.buildWhereFilterBuilder(context)
+                        )
+                );
+            }
+            if (context.options.isQueryTimeoutSpecified()) {
+                this.searchSourceBuilder.timeout(TimeValue.timeValueSeconds(context.options.getQueryTimeout()));
+            }
+            if (!context.analyzed) {
+                context.compiledStatement.putAnalyzedContext(context);
+            }
+            return new AggregationCountSearchRequestBuilder(this.searchSourceBuilder);
+        }
+
+        @Override
+        protected final AggregationCountSearchCallback doCallback() throws CrabsException {
+            return new AggregationCountSearchCallback();
+        }
+
+        final class AggregationCountSearchRequestBuilder implements
+                InternalDocumentRequestBuilder<SearchRequest, SearchResponse, SearchRequestBuilder,
+                        SearchAction, SearchExecuteContext> {
+
+            private final SearchSourceBuilder searchSourceBuilder;
+
+            AggregationCountSearchRequestBuilder(final SearchSourceBuilder searchSourceBuilder) {
+                this.searchSourceBuilder = searchSourceBuilder;
+            }
+
+            @Override
+            public final SearchAction buildAction() {
+                return SearchAction.INSTANCE;
+            }
+
+            @Override
+            public final SearchRequest buildRequest(final Client client,
+                                                    final SearchExecuteContext context) throws CrabsException {
+                final SearchRequestBuilder builder = new SearchRequestBuilder(client);
+                builder.internalBuilder(this.searchSourceBuilder);
+                builder.setIndices(
+                        context.environment.getIndexDefinition().getIdentifier().toString()
+                );
+                builder.setTypes(
+                        AggregationCountSearchExecutePlan.this.context.tableIdentifier.toString()
+                );
+                builder.setSearchType(SearchType.COUNT);
+                AggregationCountSearchExecutePlan.this.applyHints(builder);
+                if (AggregationCountSearchExecutePlan.this.outputSQLToElasticsearchRequestMapping) {
+                    LOGGER.info("SQL and request mapping [" + context.statement + " -> "
+                            + builder.toString() + "]");
+                }
+                return builder.request();
+            }
+
+        }
+
+        final class AggregationCountSearchCallback extends SearchResponseCallback<InternalResultSet> {
+
+            private final AggregationNormalSearchExecutePlan.AggregationNormalSearchExecuteContext context;
+
+            AggregationCountSearchCallback() {
+                this.context = (AggregationNormalSearchExecutePlan.AggregationNormalSearchExecuteContext)
+                        AggregationCountSearchExecutePlan.this.context;
+            }
+
+            private ColumnarResultValues values;
+
+            @Override
+            public final InternalResultSet getResultSet() throws CrabsException {
+                return new SearchResultSet(
+                        this.context.resultSetMetaData,
+                        new SearchResultSetIteratorImpl()
+                );
+            }
+
+            @Override
+            public final void callback(final SearchResponse response) throws CrabsException {
+                checkResponse(response);
+                final SearchResultSet.SearchResultSetMetaData metaData = this.context.resultSetMetaData;
+                final int resultColumnCount = metaData.getColumnCount();
+                final DataType[] columnDataTypes = new DataType[resultColumnCount];
+                for (int index = 0; index < resultColumnCount; index++) {
+                    columnDataTypes[index] = metaData.getColumnValueType(index);
+                }
+                final ColumnarResultValues values = new ColumnarResultValues(columnDataTypes);
+                final int rowIndex = values.addRow();
+                for (Map.Entry<Integer, Constant> constantEntry
+                        : this.context.finallyResultColumnConstantIndexMap.entrySet()) {
+                    values.setObject(rowIndex, constantEntry.getKey(), constantEntry.getValue().value);
+                }
+                final long totalHitCount = response.getHits().getTotalHits();
+                for (Integer index : this.context.finallyResultColumnAggregationIndexMap.values()) {
+                    values.setLong(rowIndex, index, totalHitCount);
+                }
+                this.values = values;
+            }
+
+            private final class SearchResultSetIteratorImpl extends SearchResultSetIterator {
+
+                private int index = -1;
+
+                @Override
+                final boolean next() throws CrabsException {
+                    return ++this.index < AggregationCountSearchCallback.this.values.getRowCount();
+                }
+
+                @Override
+                final int getResultValueCount() {
+                    return AggregationCountSearchCallback.this.values.getColumnCount();
+                }
+
+                @Override
+                final Object getResultValue(final int valueIndex) {
+                    return AggregationCountSearchCallback.this.values.getObject(this.index, valueIndex);
+                }
+
+                @Override
+                final boolean isPrimitiveResultValue(final int valueIndex) {
+                    return AggregationCountSearchCallback.this.values.isPrimitive(valueIndex);
+                }
+
+                @Override
+                final boolean isNullResultValue(final int valueIndex) {
+                    return AggregationCountSearchCallback.this.values.isNull(this.index, valueIndex);
+                }
+
+                @Override
+                final long getLongResultValue(final int valueIndex) {
+                    return AggregationCountSearchCallback.this.values.getLong(this.index, valueIndex);
+                }
+
+                @Override
+                final double getDoubleResultValue(final int valueIndex) {
+                    return AggregationCountSearchCallback.this.values.getDouble(this.index, valueIndex);
+                }
+
+                @Override
+                public final void close() throws IOException {
+                    // nothing to do.
+                }
+            }
+
+        }
+
+    }
+
+    static final class AggregationNormalSearchExecutePlan extends
+            SelectStatementExecutePlan<AggregationNormalSearchExecutePlan.AggregationNormalSearchRequestBuilder,
+                    AggregationNormalSearchExecutePlan.AggregationNormalSearchCallback> {
+
+        protected AggregationNormalSearchExecutePlan(final SearchExecuteContext context) throws CrabsException {
+            super(new AggregationNormalSearchExecuteContext(context));
+        }
+
+        @Override
+        protected final boolean accept() {
+            final SelectStatement statement = this.context.statement;
+            final ReadonlyList<ResultColumnDeclare> resultColumnDeclareList
+                    = statement.selectClause.resultColumnDeclareList;
+            ResultColumnDeclare resultColumnDeclare;
+            for (int index = 0, size = resultColumnDeclareList.size(); index < size; index++) {
+                resultColumnDeclare = resultColumnDeclareList.get(index);
+                if (resultColumnDeclare.expression instanceof Aggregation) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private SearchSourceBuilder searchSourceBuilder;
+
+        /**
+         * where条件恒假时没有分组，不分组的聚合在回调中以没有文档时的聚合结果输出一行
+         */
+        @Override
+        protected final boolean isEmptyResponseSupported() {
+            return true;
+        }
+
+        @Override
+        protected final AggregationNormalSearchRequestBuilder doCreateRequestBuilder() throws CrabsException {
+            final AggregationNormalSearchExecuteContext context
+                    = (AggregationNormalSearchExecuteContext) this.context;
+            if (context.analyzed) {
+                // 语义分析结果已缓存，只需要绑定本次执行的limit参数
+                AggregationNormalSearchSemanticAnalyzer.analyzeLimitClause(context);
+            } else {
+                final SelectStatementSemanticAnalyzer semanticAnalyzer
+                        = new AggregationNormalSearchSemanticAnalyzer(context);
+                semanticAnalyzer.analyzeStatement();
+                context.resultSetMetaData = buildResultSetMetaData(context);
+            }
+            this.searchSourceBuilder = new SearchSourceBuilder();
+            // 时间分区决定了查询中需要排除的已缓存部分，先于查询条件构建
+            this
+                    .agg(context)
+                    .query(context)
+                    .timeout(context);
+            this.havingPredicate = this.buildHavingPredicate(context);
+            if (!context.analyzed) {
+                context.compiledStatement.putAnalyzedContext(context);
+            }
+            return new AggregationNormalSearchRequestBuilder(this.searchSourceBuilder);
+        }
+
+        private AggregationRowPredicate havingPredicate;
+
+        private AggregationRowPredicate buildHavingPredicate(
+                final AggregationNormalSearchExecuteContext context) throws CrabsException {
+            AggregationRowPredicate havingPredicate = context.havingPredicate;
+            final Expression conditionExpression = context.finallyHavingConditionExpression;
+            if (havingPredicate == null && conditionExpression != null) {
+                havingPredicate = AggregationRowPredicate.build(context, conditionExpression);
+                if (!context.analyzed && !containsArgument(conditionExpression)) {
+                    context.havingPredicate = havingPredicate;
+                }
+            }
+            return havingPredicate;
+        }
+
+        /**
+         * 可以作为分组列的函数表达式
+         */
+        static boolean isGroupFunction(final Expression expression) {
+            return expression instanceof DateTruncFunction
+                    || expression instanceof HistogramFunction
+                    || expression instanceof RangeBucketFunction;
+        }
+
+        /**
+         * having、order by中引用的列在结果行中的索引，可以是结果列的别名、分组列或者聚合函数
+         */
+        static int resolveColumnIndex(final AggregationNormalSearchExecuteContext context,
+                                      final Expression expression) throws CrabsException {
+            if (expression instanceof PreferentialExpression) {
+                return resolveColumnIndex(context, ((PreferentialExpression) expression).getOperandExpression(0));
+            }
+            if (expression instanceof Reference) {
+                final Identifier columnIdentifier = Reference.class.cast(expression).columnIdentifier;
+                final int resultColumnIndex = context.finallyResultColumnAliasList.indexOf(columnIdentifier);
+                if (resultColumnIndex >= 0) {
+                    return resultColumnIndex;
+                }
+                final Integer groupColumnIndex = context.finallyGroupColumnResultSetIndexMap.get(columnIdentifier);
+                if (groupColumnIndex == null) {
+                    throw new CrabsException(
+                            "Unknown column[" + columnIdentifier + "], maybe it is not in select clause."
+                    );
+                }
+                return groupColumnIndex;
+            }
+            if (isGroupFunction(expression)) {
+                final Integer groupColumnIndex = context.finallyGroupColumnResultSetIndexMap.get(
+                        new Identifier(expression.toString())
+                );
+                if (groupColumnIndex == null) {
+                    throw new CrabsException(
+                            "Unknown expression[" + expression + "], maybe it is not in select clause."
+                    );
+                }
+                return groupColumnIndex;
+            }
+            if (expression instanceof Aggregation) {
+                final Integer aggregationIndex = context.finallyResultColumnAggregationIndexMap.get(expression);
+                if (aggregationIndex == null) {
+                    throw new CrabsException("Unknown aggregation[" + expression + "].");
+                }
+                return aggregationIndex;
+            }
+            return -1;
+        }
+
+        /**
+         * 客户端对分组排序的条件
+         */
+        static final class AggregationRowOrder {
+
+            AggregationRowOrder(final int[] columnIndexes, final boolean[] ascendingOrders) {
+                this.columnIndexes = columnIndexes;
+                this.ascendingOrders = ascendingOrders;
+            }
+
+            private final int[] columnIndexes;
+
+            private final boolean[] ascendingOrders;
+
+            final int compare(final ColumnarResultValues values1, final int rowIndex1,
+                              final ColumnarResultValues values2, final int rowIndex2) {
+                for (int index = 0; index < this.columnIndexes.length; index++) {
+                    final int result = ColumnarResultValues.compare(
+                            values1, rowIndex1, values2, rowIndex2, this.columnIndexes[index]
+                    );
+                    if (result != 0) {
+                        return this.ascendingOrders[index] ? result : -result;
+                    }
+                }
+                return 0;
+            }
+
+        }
+
+        /**
+         * limit在客户端的取值范围，依次跳过offset个满足having条件的分组，再输出至多rowCount个分组
+         */
+        static final class AggregationRowLimit {
+
+            AggregationRowLimit(final int offset, final int rowCount) {
+                if (rowCount == NonAggregationNormalSearchExecutePlan.NO_LIMIT_ROW_COUNT) {
+                    this.skipRowCount = 0;
+                    this.remainingRowCount = Integer.MAX_VALUE;
+                } else {
+                    this.skipRowCount = offset;
+                    this.remainingRowCount = rowCount;
+                }
+            }
+
+            private int skipRowCount;
+
+            private int remainingRowCount;
+
+            final int getSkipRowCount() {
+                return this.skipRowCount;
+            }
+
+            /**
+             * 需要在客户端排序时保留的分组数
+             */
+            final int getRetainedRowCount() {
+                return (int) Math.min((long) this.skipRowCount + this.remainingRowCount, Integer.MAX_VALUE);
+            }
+
+            final boolean hasRemaining() {
+                return this.remainingRowCount > 0;
+            }
+
+            /**
+             * 对下一个满足having条件的分组，返回是否作为结果行输出
+             */
+            final boolean accept() {
+                if (this.skipRowCount > 0) {
+                    this.skipRowCount--;
+                    return false;
+                }
+                this.remainingRowCount--;
+                return true;
+            }
+
+        }
+
+        /**
+         * 以堆保留排在最前面的maxRowCount个分组，堆顶为其中排在最后的分组，
+         * 新的分组排在堆顶之前时覆盖堆顶所在的行，遍历结束后再对堆排序
+         */
+        static final class AggregationRowTopN {
+
+            AggregationRowTopN(final AggregationRowOrder rowOrder,
+                               final DataType[] columnDataTypes,
+                               final int maxRowCount) {
+                if (rowOrder == null) {
+                    throw new IllegalArgumentException("Argument[rowOrder] is null.");
+                }
+                if (maxRowCount < 0) {
+                    throw new IllegalArgumentException("Argument[maxRowCount] is less than 0.");
+                }
+                this.rowOrder = rowOrder;
+                this.maxRowCount = maxRowCount;
+                this.values = new ColumnarResultValues(columnDataTypes);
+                this.heap = new int[Math.min(maxRowCount, 16)];
+            }
+
+            private final AggregationRowOrder rowOrder;
+
+            private final int maxRowCount;
+
+            // 保留下来的分组
+            private final ColumnarResultValues values;
+
+            // 保留下来的分组在values中的索引
+            private int[] heap;
+
+            private int heapSize;
+
+            final int getMaxRowCount() {
+                return this.maxRowCount;
+            }
+
+            final int getRowCount() {
+                return this.heapSize;
+            }
+
+            final ColumnarResultValues getValues() {
+                return this.values;
+            }
+
+            final void offer(final ColumnarResultValues row, final int rowIndex) {
+                final ColumnarResultValues values = this.values;
+                int[] heap = this.heap;
+                if (this.heapSize < this.maxRowCount) {
+                    final int valuesRowIndex = values.addRow();
+                    values.copyRow(row, rowIndex, valuesRowIndex);
+                    if (this.heapSize == heap.length) {
+                        heap = Arrays.copyOf(heap, (int) Math.min((long) this.heapSize << 1, this.maxRowCount));
+                        this.heap = heap;
+                    }
+                    heap[this.heapSize] = valuesRowIndex;
+                    this.siftUp(heap, this.heapSize++);
+                } else if (this.heapSize > 0 && this.rowOrder.compare(row, rowIndex, values, heap[0]) < 0) {
+                    values.copyRow(row, rowIndex, heap[0]);
+                    this.siftDown(heap, 0, this.heapSize);
+                }
+            }
+
+            /**
+             * 对堆排序，返回按顺序排列的分组在{@link #getValues()}中的索引，前{@link #getRowCount()}个有效，
+             * 排序之后不能再加入分组
+             */
+            final int[] sort() {
+                final int[] heap = this.heap;
+                for (int size = this.heapSize - 1; size > 0; size--) {
+                    final int rowIndex = heap[0];
+                    heap[0] = heap[size];
+                    heap[size] = rowIndex;
+                    this.siftDown(heap, 0, size);
+                }
+                return heap;
+            }
+
+            private void siftUp(final int[] heap, int position) {
+                final ColumnarResultValues values = this.values;
+                final int rowIndex = heap[position];
+                while (position > 0) {
+                    final int parentPosition = (position - 1) >>> 1;
+                    if (this.rowOrder.compare(values, rowIndex, values, heap[parentPosition]) <= 0) {
+                        break;
+                    }
+                    heap[position] = heap[parentPosition];
+                    position = parentPosition;
+                }
+                heap[position] = rowIndex;
+            }
+
+            private void siftDown(final int[] heap, int position, final int size) {
+                final ColumnarResultValues values = this.values;
+                final int rowIndex = heap[position];
+                for (; ; ) {
+                    int childPosition = (position << 1) + 1;
+                    if (childPosition >= size) {
+                        break;
+                    }
+                    if (childPosition + 1 < size
+                            && this.rowOrder.compare(values, heap[childPosition + 1], values, heap[childPosition]) > 0) {
+                        childPosition++;
+                    }
+                    if (this.rowOrder.compare(values, heap[childPosition], values, rowIndex) <= 0) {
+                        break;
+                    }
+                    heap[position] = heap[childPosition];
+                    position = childPosition;
+                }
+                heap[position] = rowIndex;
+            }
+
+        }
+
+        /**
+         * 在客户端对分组求值的having条件，直接读取按列存储的行，求值过程不创建对象
+         */
+        static abstract class AggregationRowPredicate {
+
+            abstract boolean matches(ColumnarResultValues values, int rowIndex);
+
+            static AggregationRowPredicate build(final AggregationNormalSearchExecuteContext context,
+                                                 final Expression expression) throws CrabsException {
+                if (!(expression instanceof NonAggregation)) {
+                    throw new CrabsException("Unsupported expression[" + expression + "] in having clause.");
+                }
+                final NonAggregation realExpression = (NonAggregation) expression;
+                if (expression instanceof PreferentialExpression) {
+                    return build(context, realExpression.getOperandExpression(0));
+                } else if (expression instanceof AndExpression || expression instanceof OrExpression) {
+                    final ReadonlyList<Expression> operandExpressionList = expression.getOperandExpressionList();
+                    final AggregationRowPredicate[] predicates
+                            = new AggregationRowPredicate[operandExpressionList.size()];
+                    for (int index = 0; index < predicates.length; index++) {
+                        predicates[index] = build(context, operandExpressionList.get(index));
+                    }
+                    return new Junction(predicates, expression instanceof AndExpression);
+                } else if (expression instanceof NotExpression) {
+                    return new Negation(build(context, realExpression.getOperandExpression(0)));
+                } else if (expression instanceof IsNullExpression || expression instanceof IsNotNullExpression) {
+                    final int columnIndex = resolveColumnIndex(context, realExpression.getOperandExpression(0));
+                    if (columnIndex < 0) {
+                        throw new CrabsException("Unsupported expression[" + expression + "] in having clause.");
+                    }
+                    return new NullTest(columnIndex, expression instanceof IsNullExpression);
+                } else if (expression instanceof BetweenExpression) {
+                    return new Junction(
+                            new AggregationRowPredicate[]{
+                                    Comparison.build(context, expression, realExpression.getOperandExpression(0),
+                                            realExpression.getOperandExpression(1), Comparison.GREATER_THAN_OR_EQUAL_TO),
+                                    Comparison.build(context, expression, realExpression.getOperandExpression(0),
+                                            realExpression.getOperandExpression(2), Comparison.LESS_THAN_OR_EQUAL_TO)
+                            },
+                            true
+                    );
+                } else if (expression instanceof InExpression) {
+                    final int expressionCountInSet = ((InExpression) expression).expressionCountInSet;
+                    final AggregationRowPredicate[] predicates = new AggregationRowPredicate[expressionCountInSet];
+                    for (int index = 0; index < expressionCountInSet; index++) {
+                        predicates[index] = Comparison.build(context, expression, realExpression.getOperandExpression(0),
+                                realExpression.getOperandExpression(index + 1), Comparison.EQUAL_TO);
+                    }
+                    return new Junction(predicates, false);
+                } else if (expression instanceof EqualToExpression) {
+                    return Comparison.build(context, expression, realExpression.getOperandExpression(0),
+                            realExpression.getOperandExpression(1), Comparison.EQUAL_TO);
+                } else if (expression instanceof UnequalToExpression) {
+                    return Comparison.build(context, expression, realExpression.getOperandExpression(0),
+                            realExpression.getOperandExpression(1), Comparison.UNEQUAL_TO);
+                } else if (expression instanceof GreaterThanExpression) {
+                    return Comparison.build(context, expression, realExpression.getOperandExpression(0),
+                            realExpression.getOperandExpression(1), Comparison.GREATER_THAN);
+                } else if (expression instanceof GreaterThanOrEqualToExpression) {
+                    return Comparison.build(context, expression, realExpression.getOperandExpression(0),
+                            realExpression.getOperandExpression(1), Comparison.GREATER_THAN_OR_EQUAL_TO);
+                } else if (expression instanceof LessThanExpression) {
+                    return Comparison.build(context, expression, realExpression.getOperandExpression(0),
+                            realExpression.getOperandExpression(1), Comparison.LESS_THAN);
+                } else if (expression instanceof LessThanOrEqualToExpression) {
+                    return Comparison.build(context, expression, realExpression.getOperandExpression(0),
+                            realExpression.getOperandExpression(1), Comparison.LESS_THAN_OR_EQUAL_TO);
+                }
+                throw new CrabsException("Unsupported expression[" + expression + "] in having clause.");
+            }
+
+            static final class Junction extends AggregationRowPredicate {
+
+                Junction(final AggregationRowPredicate[] predicates, final boolean conjunction) {
+                    this.predicates = predicates;
+                    this.conjunction = conjunction;
+                }
+
+                private final AggregationRowPredicate[] predicates;
+
+                private final boolean conjunction;
+
+                @Override
+                final boolean matches(final ColumnarResultValues values, final int rowIndex) {
+                    for (AggregationRowPredicate predicate : this.predicates) {
+                        if (predicate.matches(values, rowIndex) != this.conjunction) {
+                            return !this.conjunction;
+                        }
+                    }
+                    return this.conjunction;
+                }
+
+            }
+
+            static final class Negation extends AggregationRowPredicate {
+
+                Negation(final AggregationRowPredicate predicate) {
+                    this.predicate = predicate;
+                }
+
+                private final AggregationRowPredicate predicate;
+
+                @Override
+                final boolean matches(final ColumnarResultValues values, final int rowIndex) {
+                    return !this.predicate.matches(values, rowIndex);
+                }
+
+            }
+
+            static final class NullTest extends AggregationRowPredicate {
+
+                NullTest(final int columnIndex, final boolean expectNull) {
+                    this.columnIndex = columnIndex;
+                    this.expectNull = expectNull;
+                }
+
+                private final int columnIndex;
+
+                private final boolean expectNull;
+
+                @Override
+                final boolean matches(final ColumnarResultValues values, final int rowIndex) {
+                    return values.isNull(rowIndex, this.columnIndex) == this.expectNull;
+                }
+
+            }
+
+            /**
+             * 列与常量或参数的比较，常量在构建时转换为与列存储方式相同的形式
+             */
+            static final class Comparison extends AggregationRowPredicate {
+
+                static final int EQUAL_TO = 0;
+
+                static final int UNEQUAL_TO = 1;
+
+                static final int GREATER_THAN = 2;
+
+                static final int GREATER_THAN_OR_EQUAL_TO = 3;
+
+                static final int LESS_THAN = 4;
+
+                static final int LESS_THAN_OR_EQUAL_TO = 5;
+
+                static Comparison build(final AggregationNormalSearchExecuteContext context,
+                                        final Expression expression,
+                                        final Expression operandExpression1,
+                                        final Expression operandExpression2,
+                                        final int operator) throws CrabsException {
+                    final int columnIndex1 = resolveColumnIndex(context, operandExpression1);
+                    final int columnIndex2 = resolveColumnIndex(context, operandExpression2);
+                    if (columnIndex1 >= 0 && columnIndex2 < 0) {
+                        return new Comparison(columnIndex1, operator, valueOf(context, expression, operandExpression2));
+                    } else if (columnIndex1 < 0 && columnIndex2 >= 0) {
+                        final int reversedOperator;
+                        switch (operator) {
+                            case GREATER_THAN:
+                                reversedOperator = LESS_THAN;
+                                break;
+                            case GREATER_THAN_OR_EQUAL_TO:
+                                reversedOperator = LESS_THAN_OR_EQUAL_TO;
+                                break;
+                            case LESS_THAN:
+                                reversedOperator = GREATER_THAN;
+                                break;
+                            case LESS_THAN_OR_EQUAL_TO:
+                                reversedOperator = GREATER_THAN_OR_EQUAL_TO;
+                                break;
+                            default:
+                                reversedOperator = operator;
+                        }
+                        return new Comparison(columnIndex2, reversedOperator, valueOf(context, expression, operandExpression1));
+                    }
+                    throw new CrabsException(
+                            "Unsupported expression[" + expression + "] in having clause, " +
+                                    "only comparison between a column and a value is allowed."
+                    );
+                }
+
+                private static Object valueOf(final AggregationNormalSearchExecuteContext context,
+                                              final Expression expression,
+                                              final Expression valueExpression) throws CrabsException {
+                    if (valueExpression instanceof Constant) {
+                        return Constant.class.cast(valueExpression).value;
+                    } else if (valueExpression instanceof Argument) {
+                        final Object value = context.argumentValue(Argument.class.cast(valueExpression));
+                        if (value != null) {
+                            return value;
+                        }
+                    }
+                    throw new CrabsException("Unsupported expression[" + expression + "] in having clause.");
+                }
+
+                Comparison(final int columnIndex, final int operator, final Object value) {
+                    this.columnIndex = columnIndex;
+                    this.operator = operator;
+                    this.value = value.toString();
+                    if (value instanceof Long || value instanceof Integer
+                            || value instanceof Short || value instanceof Byte) {
+                        this.longValue = ((Number) value).longValue();
+                        this.doubleValue = this.longValue;
+                        this.integralValue = true;
+                    } else if (value instanceof Number) {
+                        this.doubleValue = ((Number) value).doubleValue();
+                        this.longValue = (long) this.doubleValue;
+                        this.integralValue = false;
+                    } else if (value instanceof Date) {
+                        this.longValue = ((Date) value).getTime();
+                        this.doubleValue = this.longValue;
+                        this.integralValue = true;
+                    } else if (value instanceof Boolean) {
+                        this.longValue = ((Boolean) value) ? 1L : 0L;
+                        this.doubleValue = this.longValue;
+                        this.integralValue = true;
+                    } else {
+                        double doubleValue;
+                        try {
+                            doubleValue = Double.parseDouble(this.value);
+                        } catch (NumberFormatException e) {
+                            doubleValue = Double.NaN;
+                        }
+                        this.doubleValue = doubleValue;
+                        this.longValue = (long) doubleValue;
+                        this.integralValue = false;
+                    }
+                }
+
+                private final int columnIndex;
+
+                private final int operator;
+
+                // 与字符串列比较时使用
+                private final String value;
+
+                private final long longValue;
+
+                private final double doubleValue;
+
+                private final boolean integralValue;
+
+                @Override
+                final boolean matches(final ColumnarResultValues values, final int rowIndex) {
+                    final int columnIndex = this.columnIndex;
+                    if (values.isNull(rowIndex, columnIndex)) {
+                        return false;
+                    }
+                    final int result;
+                    if (values.isLongColumn(columnIndex) && this.integralValue) {
+                        final long columnValue = values.getLong(rowIndex, columnIndex);
+                        result = columnValue < this.longValue ? -1 : (columnValue == this.longValue ? 0 : 1);
+                    } else if (values.isLongColumn(columnIndex)) {
+                        if (Double.isNaN(this.doubleValue)) {
+                            return false;
+                        }
+                        result = Double.compare(values.getLong(rowIndex, columnIndex), this.doubleValue);
+                    } else if (values.isDoubleColumn(columnIndex)) {
+                        if (Double.isNaN(this.doubleValue)) {
+                            return false;
+                        }
+                        result = Double.compare(values.getDouble(rowIndex, columnIndex), this.doubleValue);
+                    } else {
+                        result = values.getObject(rowIndex, columnIndex).toString().compareTo(this.value);
+                    }
+                    switch (this.operator) {
+                        case EQUAL_TO:
+                            return result == 0;
+                        case UNEQUAL_TO:
+                            return result != 0;
+                        case GREATER_THAN:
+                            return result > 0;
+                        case GREATER_THAN_OR_EQUAL_TO:
+                            return result >= 0;
+                        case LESS_THAN:
+                            return result < 0;
+                        default:
+                            return result <= 0;
+                    }
+                }
+
+            }
+
+        }
+
+        private AggregationNormalSearchExecutePlan timeout(final AggregationNormalSearchExecuteContext context) {
+            if (context.options.isQueryTimeoutSpecified()) {
+                this.searchSourceBuilder.timeout(TimeValue.timeValueSeconds(context.options.getQueryTimeout()));
+            }
+            return this;
+        }
+
+        @Override
+        protected final AggregationNormalSearchCallback doCallback() throws CrabsException {
+            return new AggregationNormalSearchCallback();
+        }
+
+        private AggregationNormalSearchExecutePlan query(
+                final AggregationNormalSearchExecuteContext context) throws CrabsException {
+            FilterBuilder filterBuilder = null;
+            if (context.whereConditionExpression() != null) {
+                filterBuilder = this.buildWhereFilterBuilder(context);
+            }
+            if (context.flatGroup) {
+                // 与逐层的terms聚合一致，任一分组列没有值的文档不参与分组
+                final ArrayList<Identifier> groupColumnIdentifierList = context.finallyGroupColumnIdentifierList;
+                final int size = groupColumnIdentifierList.size();
+                final AndFilterBuilder andFilterBuilder = FilterBuilders.andFilter();
+                if (filterBuilder != null) {
+                    andFilterBuilder.add(filterBuilder);
+                }
+                for (int index = 0; index < size; index++) {
+                    andFilterBuilder.add(FilterBuilders.existsFilter(groupColumnIdentifierList.get(index).toString()));
+                }
+                filterBuilder = andFilterBuilder;
+            }
+            final AggregationPartitions aggregationPartitions = this.aggregationPartitions;
+            if (aggregationPartitions != null && !aggregationPartitions.cachedSpanList.isEmpty()) {
+                // 已缓存的分区不再参与聚合
+                final FilterBuilder[] cachedSpanFilterBuilders
+                        = new FilterBuilder[aggregationPartitions.cachedSpanList.size()];
+                for (int index = 0; index < cachedSpanFilterBuilders.length; index++) {
+                    final long[] cachedSpan = aggregationPartitions.cachedSpanList.get(index);
+                    cachedSpanFilterBuilders[index] = FilterBuilders
+                            .rangeFilter(aggregationPartitions.fieldName)
+                            .gte(cachedSpan[0])
+                            .lt(cachedSpan[1]);
+                }
+                final FilterBuilder excludeFilterBuilder = FilterBuilders.notFilter(
+                        cachedSpanFilterBuilders.length == 1
+                                ? cachedSpanFilterBuilders[0] : FilterBuilders.orFilter(cachedSpanFilterBuilders)
+                );
+                filterBuilder = filterBuilder == null
+                        ? excludeFilterBuilder : FilterBuilders.andFilter(filterBuilder, excludeFilterBuilder);
+            }
+            if (filterBuilder != null) {
+                this.searchSourceBuilder.query(
+                        new FilteredQueryBuilder(
+                                QueryBuilders.matchAllQuery(),
+                                filterBuilder
+                        )
+                );
+            }
+            return this;
+        }
+
+        private AggregationNormalSearchExecutePlan agg(
+                final AggregationNormalSearchExecuteContext context) throws CrabsException {
+            // limit中不包含参数时，聚合定义与参数无关，同一语句的多次执行复用
+            ArrayList<AbstractAggregationBuilder> aggregationBuilderList = context.aggregationBuilderList;
+            if (aggregationBuilderList == null) {
+                aggregationBuilderList = this.buildAggregationBuilderList(context);
+                final LimitClause limitClause = context.statement.limitClause;
+                if (limitClause == null
+                        || !(containsArgument(limitClause.offset) || containsArgument(limitClause.rowCount))) {
+                    context.aggregationBuilderList = aggregationBuilderList;
+                }
+            }
+            this.aggregationPartitions = this.buildAggregationPartitions(context, aggregationBuilderList);
+            if (this.aggregationPartitions != null) {
+                aggregationBuilderList = this.aggregationPartitions.aggregationBuilderList;
+            }
+            for (int index = 0, size = aggregationBuilderList.size(); index < size; index++) {
+                this.searchSourceBuilder.aggregation(aggregationBuilderList.get(index));
+            }
+            return this;
+        }
+
+        private AggregationPartitions aggregationPartitions;
+
+        // 一次查询最多缓存的分区个数，更早的部分与未结束的部分一起聚合
+        static final int MAX_AGGREGATION_PARTITION_COUNT = 1000;
+
+        static final String AGGREGATION_PARTITION_NAME_PREFIX = "_partition_";
+
+        static final String OPEN_AGGREGATION_PARTITION_NAME = "_partition_open";
+
+        /**
+         * where条件中日期字段的between（或者合并上下界得到的范围）内，按固定长度对齐、已经结束的时间分区的聚合结果可以缓存，
+         * 其余条件、分组及聚合函数相同的查询复用这些结果，只有未缓存的分区和未结束的部分需要elasticsearch聚合。
+         * 每个未缓存的分区和未结束的部分各自以filter聚合包装原有的聚合，
+         * limit下推时各部分只有前若干个分组，不能合并，不使用分区缓存
+         */
+        private AggregationPartitions buildAggregationPartitions(
+                final AggregationNormalSearchExecuteContext context,
+                final ArrayList<AbstractAggregationBuilder> aggregationBuilderList) throws CrabsException {
+            final long interval = Long.parseLong(
+                    context.environment.getProperty(
+                            PROPERTY_ENTRY$AGGREGATION_PARTITION_INTERVAL.identifier,
+                            PROPERTY_ENTRY$AGGREGATION_PARTITION_INTERVAL.defaultValue
+                    )
+            ) * 1000L;
+            Expression conditionExpression = context.whereConditionExpression();
+            if (interval <= 0 || context.limitPushedDown || conditionExpression == null) {
+                return null;
+            }
+            while (conditionExpression instanceof PreferentialExpression) {
+                conditionExpression = ((PreferentialExpression) conditionExpression).getOperandExpression(0);
+            }
+            final ArrayList<Expression> conjunctExpressionList = new ArrayList<Expression>();
+            if (conditionExpression instanceof AndExpression) {
+                final ReadonlyList<Expression> operandExpressionList = conditionExpression.getOperandExpressionList();
+                for (int index = 0, size = operandExpressionList.size(); index < size; index++) {
+                    conjunctExpressionList.add(operandExpressionList.get(index));
+                }
+            } else {
+                conjunctExpressionList.add(conditionExpression);
+            }
+            // between或者合并得到的范围
+            NonAggregation betweenExpression = null;
+            for (int index = 0, size = conjunctExpressionList.size(); index < size; index++) {
+                Expression conjunctExpression = conjunctExpressionList.get(index);
+                while (conjunctExpression instanceof PreferentialExpression) {
+                    conjunctExpression = ((PreferentialExpression) conjunctExpression).getOperandExpression(0);
+                }
+                if ((conjunctExpression instanceof BetweenExpression || conjunctExpression instanceof RangeExpression)
+                        && conjunctExpression.getOperandExpressionList().get(0) instanceof Reference
+                        && context.typeDefinition.getFieldDefinition(
+                        Reference.class.cast(conjunctExpression.getOperandExpressionList().get(0)).columnIdentifier
+                ).getDataType() == DataType.DATE) {
+                    betweenExpression = (NonAggregation) conjunctExpression;
+                    conjunctExpressionList.remove(index);
+                    break;
+                }
+            }
+            if (betweenExpression == null) {
+                return null;
+            }
+            final Reference reference = Reference.class.cast(betweenExpression.getOperandExpression(0));
+            long from = this.partitionBoundary(betweenExpression.getOperandExpression(1), reference);
+            long to = this.partitionBoundary(betweenExpression.getOperandExpression(2), reference);
+            if (from < 0 || to < 0) {
+                return null;
+            }
+            if (betweenExpression instanceof RangeExpression) {
+                // 日期精确到毫秒，不包含的边界换算为包含的边界
+                if (!((RangeExpression) betweenExpression).includeLower) {
+                    from++;
+                }
+                if (!((RangeExpression) betweenExpression).includeUpper) {
+                    to--;
+                }
+            }
+            if (to < from) {
+                return null;
+            }
+            // 与日期常量相同，以本地时间作为UTC时间比较
+            final long now = System.currentTimeMillis()
+                    + SelectStatementExecutePlan.SRC_TIME_ZONE_RAW_OFFSET
+                    - SelectStatementExecutePlan.TARGET_TIME_ZONE_RAW_OFFSET;
+            final long closedEnd = Math.min(to + 1, now) / interval * interval;
+            final long closedStart = Math.max(
+                    (from + interval - 1) / interval * interval,
+                    closedEnd - MAX_AGGREGATION_PARTITION_COUNT * interval
+            );
+            if (closedEnd - closedStart < interval) {
+                return null;
+            }
+            // 去掉between条件之后的请求决定了分区的聚合结果，作为分区缓存key的前缀
+            final SearchSourceBuilder cacheKeySourceBuilder = new SearchSourceBuilder();
+            if (!conjunctExpressionList.isEmpty()) {
+                final FilterBuilder[] filterBuilders = new FilterBuilder[conjunctExpressionList.size()];
+                for (int index = 0; index < filterBuilders.length; index++) {
+                    filterBuilders[index] = this.buildFilterBuilder(conjunctExpressionList.get(index));
+                }
+                cacheKeySourceBuilder.query(
+                        new FilteredQueryBuilder(
+                                QueryBuilders.matchAllQuery(),
+                                filterBuilders.length == 1 ? filterBuilders[0] : FilterBuilders.andFilter(filterBuilders)
+                        )
+                );
+            }
+            for (int index = 0, size = aggregationBuilderList.size(); index < size; index++) {
+                cacheKeySourceBuilder.aggregation(aggregationBuilderList.get(index));
+            }
+            final String fieldName = reference.columnIdentifier.toString();
+            final String cacheKeyPrefix = context.indexDefinition.getIdentifier() + "/" + context.tableIdentifier
+                    + "/" + Arrays.toString(super.routings) + "/" + super.preference + "/" + fieldName
+                    + "/" + interval + cacheKeySourceBuilder.toString();
+            final AggregationPartitions aggregationPartitions = new AggregationPartitions(fieldName);
+            final FilterAggregationBuilder openPartitionBuilder = AggregationBuilders
+                    .filter(OPEN_AGGREGATION_PARTITION_NAME)
+                    .filter(FilterBuilders.notFilter(FilterBuilders.rangeFilter(fieldName).gte(closedStart).lt(closedEnd)));
+            aggregationPartitions.aggregationBuilderList.add(openPartitionBuilder);
+            long[] cachedSpan = null;
+            for (long partitionStart = closedStart; partitionStart < closedEnd; partitionStart += interval) {
+                final long partitionEnd = partitionStart + interval;
+                final String cacheKey = cacheKeyPrefix + "@" + partitionStart;
+                final byte[] cachedPartition = context.environment.getAggregationPartition(cacheKey);
+                if (cachedPartition == null) {
+                    final String name = AGGREGATION_PARTITION_NAME_PREFIX + partitionStart;
+                    aggregationPartitions.aggregationBuilderList.add(
+                            AggregationBuilders
+                                    .filter(name)
+                                    .filter(FilterBuilders.rangeFilter(fieldName).gte(partitionStart).lt(partitionEnd))
+                    );
+                    aggregationPartitions.uncachedPartitionKeyMap.put(name, cacheKey);
+                    cachedSpan = null;
+                } else {
+                    aggregationPartitions.cachedPartitionList.add(cachedPartition);
+                    aggregationPartitions.cachedPartitionKeyList.add(cacheKey);
+                    if (cachedSpan == null) {
+                        cachedSpan = new long[]{partitionStart, partitionEnd};
+                        aggregationPartitions.cachedSpanList.add(cachedSpan);
+                    } else {
+                        cachedSpan[1] = partitionEnd;
+                    }
+                }
+            }
+            for (int index = 1, size = aggregationPartitions.aggregationBuilderList.size(); index < size; index++) {
+                final FilterAggregationBuilder partitionBuilder
+                        = (FilterAggregationBuilder) aggregationPartitions.aggregationBuilderList.get(index);
+                for (int i = 0, count = aggregationBuilderList.size(); i < count; i++) {
+                    partitionBuilder.subAggregation(aggregationBuilderList.get(i));
+                }
+            }
+            for (int index = 0, size = aggregationBuilderList.size(); index < size; index++) {
+                openPartitionBuilder.subAggregation(aggregationBuilderList.get(index));
+            }
+            return aggregationPartitions;
+        }
+
+        /**
+         * between的边界对应的毫秒数，与elasticsearch中保存的日期一致，不能确定时返回-1
+         */
+        private long partitionBoundary(Expression expression,
+                                       final Reference reference) throws CrabsException {
+            if (expression instanceof Argument) {
+                expression = new Constant(this.context.argumentValue((Argument) expression));
+            }
+            if (!(expression instanceof Constant)) {
+                return -1L;
+            }
+            final Object value = super.parseConstantValue((Constant) expression, reference);
+            if (value instanceof Long) {
+                return (Long) value;
+            }
+            // elasticsearch按UTC解析日期字符串
+            final SimpleDateFormat dateFormat = new SimpleDateFormat(
+                    this.context.typeDefinition.getFieldDefinition(reference.columnIdentifier).getPattern()
+            );
+            dateFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
+            try {
+                return dateFormat.parse(value.toString()).getTime();
+            } catch (ParseException e) {
+                return -1L;
+            }
+        }
+
+        /**
+         * 一次查询的时间分区，未缓存的分区在取回后写入缓存，
+         * 与缓存的分区、未结束的部分按elasticsearch合并分片结果的方式合并为最终的聚合结果。
+         * 序列化与合并使用的是elasticsearch 1.2.x的内部接口(InternalAggregations的writeTo、readAggregations和reduce)，
+         * 升级elasticsearch时需要核对；合并失败时丢弃涉及的缓存并报错，可以将aggregationPartitionInterval设为0关闭分区缓存
+         */
+        private static final class AggregationPartitions {
+
+            AggregationPartitions(final String fieldName) {
+                this.fieldName = fieldName;
+                this.aggregationBuilderList = new ArrayList<AbstractAggregationBuilder>();
+                this.uncachedPartitionKeyMap = new LinkedHashMap<String, String>();
+                this.cachedPartitionList = new ArrayList<byte[]>();
+                this.cachedPartitionKeyList = new ArrayList<String>();
+                this.cachedSpanList = new ArrayList<long[]>();
+            }
+
+            final String fieldName;
+
+            // 未结束的部分以及每个未缓存的分区对应的filter聚合
+            final ArrayList<AbstractAggregationBuilder> aggregationBuilderList;
+
+            // 未缓存的分区的聚合名称与缓存key
+            final LinkedHashMap<String, String> uncachedPartitionKeyMap;
+
+            // 已缓存的分区序列化后的聚合结果
+            final ArrayList<byte[]> cachedPartitionList;
 
-            NonAggregationNormalSearchExecuteContext(final SearchExecuteContext context) throws CrabsException {
-                super(context);
-                this.aliasReferenceMap = new HashMap<Identifier, Reference>();
-                this.aliasExpressionMap = new HashMap<Identifier, Expression>();
-                this.resultColumnReferenceList = new ArrayList<Reference>();
-                this.resultColumnAliasList = new ArrayList<Identifier>();
-                this.resultColumnExpressionList = new ArrayList<Expression>();
-            }
+            // 已缓存的分区的缓存key，与cachedPartitionList一一对应
+            final ArrayList<String> cachedPartitionKeyList;
 
-            Expression finallyHavingConditionExpression;
+            // 连续的已缓存分区合并后的区间，查询时排除
+            final ArrayList<long[]> cachedSpanList;
 
-            OrderSpecification[] finallyOrderSpecifications;
+            final Aggregations merge(final ExecuteEnvironment environment,
+                                     final SearchResponse response) throws CrabsException {
+                final Aggregations aggregations = response.getAggregations();
+                // 部分分片失败时的结果不完整，不能缓存
+                final boolean cacheable = response.getFailedShards() == 0;
+                final ArrayList<InternalAggregations> aggregationsList = new ArrayList<InternalAggregations>(
+                        1 + this.uncachedPartitionKeyMap.size() + this.cachedPartitionList.size()
+                );
+                try {
+                    aggregationsList.add(partitionAggregations(aggregations, OPEN_AGGREGATION_PARTITION_NAME));
+                    for (Map.Entry<String, String> partitionEntry : this.uncachedPartitionKeyMap.entrySet()) {
+                        final InternalAggregations partitionAggregations
+                                = partitionAggregations(aggregations, partitionEntry.getKey());
+                        if (cacheable) {
+                            // 合并时会修改参与合并的结果，需要在合并之前写入缓存
+                            final BytesStreamOutput output = new BytesStreamOutput();
+                            partitionAggregations.writeTo(output);
+                            environment.putAggregationPartition(partitionEntry.getValue(), output.bytes().toBytes());
+                        }
+                        aggregationsList.add(partitionAggregations);
+                    }
+                    for (byte[] cachedPartition : this.cachedPartitionList) {
+                        aggregationsList.add(
+                                InternalAggregations.readAggregations(new BytesStreamInput(cachedPartition, false))
+                        );
+                    }
+                    return InternalAggregations.reduce(aggregationsList, BigArrays.NON_RECYCLING_INSTANCE);
+                } catch (IOException e) {
+                    this.discard(environment);
+                    throw new CrabsException("Failed to cache aggregation partitions.", e);
+                } catch (RuntimeException e) {
+                    this.discard(environment);
+                    throw new CrabsException(
+                            "Failed to merge aggregation partitions, "
+                                    + "set aggregationPartitionInterval to 0 to disable the partition cache.",
+                            e
+                    );
+                }
+            }
 
-            int offset;
+            // 合并失败时缓存的结果可能无法再使用，下次查询重新聚合
+            private void discard(final ExecuteEnvironment environment) {
+                for (String cacheKey : this.uncachedPartitionKeyMap.values()) {
+                    environment.removeAggregationPartition(cacheKey);
+                }
+                for (String cacheKey : this.cachedPartitionKeyList) {
+                    environment.removeAggregationPartition(cacheKey);
+                }
+            }
 
-            int rowCount;
+            private static InternalAggregations partitionAggregations(final Aggregations aggregations,
+                                                                      final String name) {
+                return (InternalAggregations) aggregations.<Filter>get(name).getAggregations();
+            }
 
         }
 
-    }
+        private ArrayList<AbstractAggregationBuilder> buildAggregationBuilderList(
+                final AggregationNormalSearchExecuteContext context) throws CrabsException {
+            final ArrayList<AbstractAggregationBuilder> aggregationBuilderList
+                    = new ArrayList<AbstractAggregationBuilder>();
+            if (context.flatGroup) {
+                final TermsBuilder termsBuilder = AggregationBuilders
+                        .terms(FLAT_GROUP_AGGREGATION_NAME)
+                        .script(buildFlatGroupKeyScript(context.finallyGroupColumnIdentifierList))
+                        .size(0);
+                for (AbstractAggregationBuilder metricAggregationBuilder : this.metricAggregationBuilderList(context)) {
+                    termsBuilder.subAggregation(metricAggregationBuilder);
+                }
+                aggregationBuilderList.add(termsBuilder);
+            } else if (context.existsGroupByClause) {
+                final int size = context.finallyGroupColumnIdentifierList.size();
+                AggregationBuilder<?> groupAggregationBuilder = this.groupAggregationBuilder(context, size - 1);
+                if (groupAggregationBuilder instanceof TermsBuilder) {
+                    final TermsBuilder termsBuilder = (TermsBuilder) groupAggregationBuilder;
+                    if (context.groupOrder != null) {
+                        termsBuilder.order(context.groupOrder);
+                    }
+                    if (context.limitPushedDown) {
+                        // 只有一个分组列时才会下推limit，分片上多取一些分组以减小按指标排序时的误差，
+                        // size为0时elasticsearch返回所有分组
+                        final int bucketCount = Math.max(context.offset + context.rowCount, 1);
+                        termsBuilder.size(bucketCount).shardSize(bucketCount + (bucketCount >> 1) + 10);
+                    }
+                }
+                for (AbstractAggregationBuilder metricAggregationBuilder : this.metricAggregationBuilderList(context)) {
+                    groupAggregationBuilder.subAggregation(metricAggregationBuilder);
+                }
+                for (int index = size - 2; index >= 0; index--) {
+                    groupAggregationBuilder = this.groupAggregationBuilder(context, index)
+                            .subAggregation(groupAggregationBuilder);
+                }
+                aggregationBuilderList.add(groupAggregationBuilder);
+            } else {
+                aggregationBuilderList.addAll(this.metricAggregationBuilderList(context));
+            }
+            return aggregationBuilderList;
+        }
 
-    private static final class AggregationNormalSearchExecutePlan extends
-            SelectStatementExecutePlan<AggregationNormalSearchExecutePlan.AggregationNormalSearchRequestBuilder,
-                    AggregationNormalSearchExecutePlan.AggregationNormalSearchCallback> {
+        /**
+         * 每个分组中计算的指标聚合，合并到stats聚合中的指标不再单独计算
+         */
+        private ArrayList<AbstractAggregationBuilder> metricAggregationBuilderList(
+                final AggregationNormalSearchExecuteContext context) throws CrabsException {
+            final ArrayList<AbstractAggregationBuilder> metricAggregationBuilderList
+                    = new ArrayList<AbstractAggregationBuilder>();
+            for (Map.Entry<Aggregation, Integer> entry : context.finallyResultColumnAggregationIndexMap.entrySet()) {
+                if (!context.statsAggregationNameMap.containsKey(entry.getKey())) {
+                    metricAggregationBuilderList.add(this.agg(entry.getKey(), entry.getValue()));
+                }
+            }
+            for (Map.Entry<String, Identifier> entry : context.statsAggregationFieldMap.entrySet()) {
+                metricAggregationBuilderList.add(
+                        AggregationBuilders.stats(entry.getKey()).field(entry.getValue().toString())
+                );
+            }
+            return metricAggregationBuilderList;
+        }
 
-        protected AggregationNormalSearchExecutePlan(final SearchExecuteContext context) throws CrabsException {
-            super(new AggregationNormalSearchExecuteContext(context));
+        /**
+         * 聚合函数在stats聚合中对应的指标名称，不能由stats聚合计算时返回null
+         */
+        static String statsMetricName(final Aggregation aggregation) {
+            if (aggregation instanceof CountFunction) {
+                final Expression operandExpression = aggregation.getOperandExpression(0);
+                if (Reference.class.cast(operandExpression).columnIdentifier.equals(Reference.ALL_COLUMN_IDENTIFIER)) {
+                    return null;
+                }
+                return "count";
+            } else if (aggregation instanceof SummaryFunction || aggregation instanceof RollupCountFunction) {
+                return "sum";
+            } else if (aggregation instanceof AverageFunction) {
+                return "avg";
+            } else if (aggregation instanceof MaxinumFunction) {
+                return "max";
+            } else if (aggregation instanceof MininumFunction) {
+                return "min";
+            }
+            return null;
         }
 
-        @Override
-        protected final boolean accept() {
-            final SelectStatement statement = this.context.statement;
-            final ReadonlyList<ResultColumnDeclare> resultColumnDeclareList
-                    = statement.selectClause.resultColumnDeclareList;
-            ResultColumnDeclare resultColumnDeclare;
-            for (int index = 0, size = resultColumnDeclareList.size(); index < size; index++) {
-                resultColumnDeclare = resultColumnDeclareList.get(index);
-                if (resultColumnDeclare.expression instanceof Aggregation) {
-                    return true;
+        static final String STATS_AGGREGATION_NAME_PREFIX = "_stats_";
+
+        /**
+         * 分组列对应的分组聚合：普通字段为terms，DATE_TRUNC为date_histogram，HISTOGRAM为histogram或date_histogram，
+         * RANGE_BUCKET为range或date_range。
+         * 日期常量在parseConstantValue中已按本地时区换算后写入，elasticsearch中保存的日期即为本地时间，
+         * 因此按UTC切分的区间与本地时间的整点、整天一致，不再指定时区
+         */
+        private AggregationBuilder<?> groupAggregationBuilder(final AggregationNormalSearchExecuteContext context,
+                                                              final int groupColumnIndex) throws CrabsException {
+            final Identifier groupColumnIdentifier = context.finallyGroupColumnIdentifierList.get(groupColumnIndex);
+            final String name = groupAggregationName(context, groupColumnIndex);
+            final NonAggregation groupFunction = context.finallyGroupFunctionMap.get(groupColumnIdentifier);
+            final String fieldName = groupFieldIdentifier(context, groupColumnIdentifier).toString();
+            if (groupFunction instanceof DateTruncFunction) {
+                return AggregationBuilders.dateHistogram(name)
+                        .field(fieldName)
+                        .interval(new DateHistogram.Interval(((DateTruncFunction) groupFunction).unit));
+            } else if (groupFunction instanceof HistogramFunction) {
+                final long interval = ((HistogramFunction) groupFunction).interval;
+                if (groupColumnDataType(context, groupColumnIdentifier) == DataType.DATE) {
+                    return AggregationBuilders.dateHistogram(name).field(fieldName).interval(interval);
                 }
+                return AggregationBuilders.histogram(name).field(fieldName).interval(interval);
+            } else if (groupFunction instanceof RangeBucketFunction) {
+                return this.rangeBucketAggregationBuilder(context, name, (RangeBucketFunction) groupFunction);
             }
-            return false;
+            return AggregationBuilders.terms(name).field(fieldName).size(0);
         }
 
-        private SearchSourceBuilder searchSourceBuilder;
+        /**
+         * RANGE_BUCKET对应的range或date_range聚合，以区间的标签作为key，elasticsearch按区间定义的顺序返回，
+         * 包括没有文档的区间
+         */
+        private AggregationBuilder<?> rangeBucketAggregationBuilder(final AggregationNormalSearchExecuteContext context,
+                                                                    final String name,
+                                                                    final RangeBucketFunction rangeBucket)
+                throws CrabsException {
+            final Reference reference = Reference.class.cast(rangeBucket.getOperandExpression(0));
+            final int boundaryCount = rangeBucket.getBoundaryCount();
+            if (context.typeDefinition.getFieldDefinition(reference.columnIdentifier).getDataType() == DataType.DATE) {
+                final DateRangeBuilder dateRangeBuilder = AggregationBuilders.dateRange(name)
+                        .field(reference.columnIdentifier.toString());
+                Object from = null;
+                for (int index = 0; index < boundaryCount; index++) {
+                    final Object to = super.parseConstantValue(rangeBucket.getBoundary(index), reference);
+                    if (from == null) {
+                        dateRangeBuilder.addUnboundedTo(rangeBucket.getBucketLabel(index), to);
+                    } else {
+                        dateRangeBuilder.addRange(rangeBucket.getBucketLabel(index), from, to);
+                    }
+                    from = to;
+                }
+                return dateRangeBuilder.addUnboundedFrom(rangeBucket.getBucketLabel(boundaryCount), from);
+            }
+            final RangeBuilder rangeBuilder = AggregationBuilders.range(name)
+                    .field(reference.columnIdentifier.toString());
+            double from = 0;
+            for (int index = 0; index < boundaryCount; index++) {
+                final double to = ((Number) rangeBucket.getBoundary(index).value).doubleValue();
+                if (index == 0) {
+                    rangeBuilder.addUnboundedTo(rangeBucket.getBucketLabel(index), to);
+                } else {
+                    rangeBuilder.addRange(rangeBucket.getBucketLabel(index), from, to);
+                }
+                from = to;
+            }
+            return rangeBuilder.addUnboundedFrom(rangeBucket.getBucketLabel(boundaryCount), from);
+        }
 
-        @Override
-        protected final AggregationNormalSearchRequestBuilder doCreateRequestBuilder() throws CrabsException {
-            final AggregationNormalSearchExecuteContext context
-                    = (AggregationNormalSearchExecuteContext) this.context;
-            final SelectStatementSemanticAnalyzer semanticAnalyzer
-                    = new AggregationNormalSearchSemanticAnalyzer(context);
-            semanticAnalyzer.analyzeStatement();
-            this.searchSourceBuilder = new SearchSourceBuilder();
-            this
-                    .query(context)
-                    .agg(context);
-            return new AggregationNormalSearchRequestBuilder(this.searchSourceBuilder);
+        /**
+         * 分组聚合的名称，普通字段以字段名命名，分组表达式的文本不符合聚合名称的要求，以其位置命名
+         */
+        static String groupAggregationName(final AggregationNormalSearchExecuteContext context,
+                                           final int groupColumnIndex) {
+            final Identifier groupColumnIdentifier = context.finallyGroupColumnIdentifierList.get(groupColumnIndex);
+            if (context.finallyGroupFunctionMap.containsKey(groupColumnIdentifier)) {
+                return GROUP_FUNCTION_AGGREGATION_NAME_PREFIX + groupColumnIndex;
+            }
+            return groupColumnIdentifier.toString();
         }
 
-        @Override
-        protected final AggregationNormalSearchCallback doCallback() throws CrabsException {
-            return new AggregationNormalSearchCallback();
+        /**
+         * 分组列所依据的字段
+         */
+        static Identifier groupFieldIdentifier(final AggregationNormalSearchExecuteContext context,
+                                               final Identifier groupColumnIdentifier) {
+            final NonAggregation groupFunction = context.finallyGroupFunctionMap.get(groupColumnIdentifier);
+            if (groupFunction == null) {
+                return groupColumnIdentifier;
+            }
+            return Reference.class.cast(
+                    groupFunction.getOperandExpression(groupFunction instanceof DateTruncFunction ? 1 : 0)
+            ).columnIdentifier;
         }
 
-        private AggregationNormalSearchExecutePlan query(
-                final AggregationNormalSearchExecuteContext context) throws CrabsException {
-            final Expression conditionExpression = context.finallyWhereConditionExpression;
-            if (conditionExpression != null) {
-                this.searchSourceBuilder.query(
-                        new FilteredQueryBuilder(
-                                QueryBuilders.matchAllQuery(),
-                                this.buildFilterBuilder(conditionExpression)
-                        )
-                );
+        static DataType groupColumnDataType(final AggregationNormalSearchExecuteContext context,
+                                            final Identifier groupColumnIdentifier) throws CrabsException {
+            final NonAggregation groupFunction = context.finallyGroupFunctionMap.get(groupColumnIdentifier);
+            final DataType fieldDataType = context.typeDefinition.getFieldDefinition(
+                    groupFieldIdentifier(context, groupColumnIdentifier)
+            ).getDataType();
+            if (groupFunction instanceof RangeBucketFunction) {
+                // 区间的标签
+                return DataType.STRING;
             }
-            return this;
+            if (groupFunction == null || fieldDataType == DataType.DATE) {
+                return fieldDataType;
+            }
+            return groupFunction.getResultType();
         }
 
-        private AggregationNormalSearchExecutePlan agg(
-                final AggregationNormalSearchExecuteContext context) throws CrabsException {
-            if (context.existsGroupByClause) {
-                final ArrayList<Identifier> groupByColumnIdentifierList = context.finallyGroupColumnIdentifierList;
-                final int size = groupByColumnIdentifierList.size();
-                String groupByColumnName = groupByColumnIdentifierList.get(size - 1).toString();
-                TermsBuilder termsBuilder
-                        = AggregationBuilders.terms(groupByColumnName).field(groupByColumnName).size(0);
-                for (Map.Entry<Aggregation, Integer> entry : context.finallyResultColumnAggregationIndexMap.entrySet()) {
-                    termsBuilder.subAggregation(this.agg(entry.getKey(), entry.getValue()));
-                }
-                for (int index = size - 2; index >= 0; index--) {
-                    groupByColumnName = groupByColumnIdentifierList.get(index).toString();
-                    termsBuilder = AggregationBuilders
-                            .terms(groupByColumnName).field(groupByColumnName).size(0)
-                            .subAggregation(termsBuilder);
-                }
-                this.searchSourceBuilder.aggregation(termsBuilder);
-            } else {
-                for (Map.Entry<Aggregation, Integer> entry : context.finallyResultColumnAggregationIndexMap.entrySet()) {
-                    this.searchSourceBuilder.aggregation(
-                            this.agg(entry.getKey(), entry.getValue())
-                    );
+        static final String GROUP_FUNCTION_AGGREGATION_NAME_PREFIX = "_group_";
+
+        static final String FLAT_GROUP_AGGREGATION_NAME = "_flat_group";
+
+        // elasticsearch允许的cardinality精确计数阈值上限
+        static final long COUNT_DISTINCT_PRECISION_THRESHOLD = 40000L;
+
+        // 组合分组key中各列值之间的分隔符，不会出现在普通的字段值中
+        static final char FLAT_GROUP_KEY_SEPARATOR = '\u001f';
+
+        /**
+         * 以脚本将各分组列的值拼接为一个key，只需要一层terms聚合，避免逐层嵌套时分组数在每个分片上成倍增长
+         */
+        private static String buildFlatGroupKeyScript(final ArrayList<Identifier> groupColumnIdentifierList) {
+            final StringBuilder scriptBuilder = new StringBuilder("''");
+            for (int index = 0, size = groupColumnIdentifierList.size(); index < size; index++) {
+                if (index > 0) {
+                    scriptBuilder.append(" + '").append(FLAT_GROUP_KEY_SEPARATOR).append('\'');
                 }
+                scriptBuilder.append(" + doc['").append(groupColumnIdentifierList.get(index).toString()).append("'].value");
             }
-            return this;
+            return scriptBuilder.toString();
         }
 
         private AbstractAggregationBuilder agg(final Aggregation aggregation,
@@ -2649,11 +5646,10 @@ public final class SelectStatementExecutor extends StatementExecutor<SelectState
                         .field(
                                 operand.columnIdentifier.toString()
                         );
-            } else if (aggregation instanceof SummaryFunction) {
-                final SummaryFunction summary = SummaryFunction.class.cast(aggregation);
+            } else if (aggregation instanceof SummaryFunction || aggregation instanceof RollupCountFunction) {
                 return AggregationBuilders.sum(name)
                         .field(
-                                Reference.class.cast(summary.getOperandExpression(0)).columnIdentifier.toString()
+                                Reference.class.cast(aggregation.getOperandExpression(0)).columnIdentifier.toString()
                         );
             } else if (aggregation instanceof AverageFunction) {
                 final AverageFunction average = AverageFunction.class.cast(aggregation);
@@ -2673,10 +5669,80 @@ public final class SelectStatementExecutor extends StatementExecutor<SelectState
                         .field(
                                 Reference.class.cast(mininum.getOperandExpression(0)).columnIdentifier.toString()
                         );
+            } else if (aggregation instanceof CountDistinctFunction) {
+                // 不同值的个数在阈值以内时cardinality的结果接近精确值
+                return AggregationBuilders.cardinality(name)
+                        .field(
+                                Reference.class.cast(aggregation.getOperandExpression(0)).columnIdentifier.toString()
+                        )
+                        .precisionThreshold(COUNT_DISTINCT_PRECISION_THRESHOLD);
+            } else if (aggregation instanceof ApproximateCountDistinctFunction) {
+                final ApproximateCountDistinctFunction countDistinct
+                        = ApproximateCountDistinctFunction.class.cast(aggregation);
+                final CardinalityBuilder cardinalityBuilder = AggregationBuilders.cardinality(name)
+                        .field(
+                                Reference.class.cast(countDistinct.getOperandExpression(0)).columnIdentifier.toString()
+                        );
+                if (countDistinct.precision > 0) {
+                    cardinalityBuilder.precisionThreshold(
+                            Math.min(countDistinct.precision, COUNT_DISTINCT_PRECISION_THRESHOLD)
+                    );
+                }
+                return cardinalityBuilder;
+            } else if (aggregation instanceof PercentileFunction) {
+                final PercentileFunction percentile = PercentileFunction.class.cast(aggregation);
+                return AggregationBuilders.percentiles(name)
+                        .field(
+                                Reference.class.cast(percentile.getOperandExpression(0)).columnIdentifier.toString()
+                        )
+                        .percentiles(percentile.percent);
             }
             throw new CrabsException("Unsupported aggregation[" + aggregation + "]");
         }
 
+        static SearchResultSet.SearchResultSetMetaData buildResultSetMetaData(
+                final AggregationNormalSearchExecuteContext context) throws CrabsException {
+            SearchResultSet.SearchResultSetMetaData.ColumnInformation columnInformation;
+            Identifier columnIdentifier;
+            String columnLabel;
+            DataType dataType;
+            int columnDisplaySize;
+            Expression columnValueExpression;
+            ArrayList<SearchResultSet.SearchResultSetMetaData.ColumnInformation> columnInformationList
+                    = new ArrayList<SearchResultSet.SearchResultSetMetaData.ColumnInformation>();
+            for (int index = 0, size = context.finallyResultColumnAliasList.size(); index < size; index++) {
+                columnIdentifier = context.finallyResultColumnAliasList.get(index);
+                columnValueExpression = context.finallyResultColumnExpressionIndexMap.get(index);
+                if (columnValueExpression instanceof Reference) {
+                    dataType = context.typeDefinition.getFieldDefinition(
+                            Reference.class.cast(columnValueExpression).columnIdentifier
+                    ).getDataType();
+                } else if (columnValueExpression instanceof Aggregation) {
+                    dataType = columnValueExpression.getResultType();
+                } else if (columnValueExpression instanceof NonAggregation) {
+                    // 分组表达式
+                    dataType = groupColumnDataType(context, new Identifier(columnValueExpression.toString()));
+                } else {
+                    // constant
+                    dataType = DataType.getDataType(Constant.class.cast(columnValueExpression).value.getClass());
+                }
+                columnLabel = columnIdentifier.toString();
+                columnDisplaySize = dataType.displaySize();
+                columnInformation = new SearchResultSet.SearchResultSetMetaData.ColumnInformation(
+                        columnIdentifier,
+                        columnLabel,
+                        dataType,
+                        columnDisplaySize
+                );
+                columnInformationList.add(columnInformation);
+            }
+            return new SearchResultSet.SearchResultSetMetaData(
+                    columnInformationList.toArray(
+                            new SearchResultSet.SearchResultSetMetaData.ColumnInformation[columnInformationList.size()]
+                    )
+            );
+        }
+
         final class AggregationNormalSearchRequestBuilder implements
                 InternalDocumentRequestBuilder<SearchRequest, SearchResponse, SearchRequestBuilder,
                         SearchAction, SearchExecuteContext> {
@@ -2704,6 +5770,7 @@ public final class SelectStatementExecutor extends StatementExecutor<SelectState
                         AggregationNormalSearchExecutePlan.this.context.tableIdentifier.toString()
                 );
                 builder.setSearchType(SearchType.COUNT);
+                AggregationNormalSearchExecutePlan.this.applyHints(builder);
                 if (AggregationNormalSearchExecutePlan.this.outputSQLToElasticsearchRequestMapping) {
                     LOGGER.info("SQL and request mapping [" + context.statement + " -> "
                             + builder.toString() + "]");
@@ -2714,7 +5781,7 @@ public final class SelectStatementExecutor extends StatementExecutor<SelectState
 
         }
 
-        final class AggregationNormalSearchCallback extends SearchResponseCallback {
+        final class AggregationNormalSearchCallback extends SearchResponseCallback<InternalResultSet> {
 
             private final AggregationNormalSearchExecuteContext context;
 
@@ -2726,161 +5793,454 @@ public final class SelectStatementExecutor extends StatementExecutor<SelectState
             @Override
             public final InternalResultSet getResultSet() throws CrabsException {
                 return new SearchResultSet(
-                        this.buildResultSetMetaData(),
+                        this.metaData,
                         this.buildResultIterator()
                 );
             }
 
-            private ArrayList<Object[]> values;
+            private SearchResultSet.SearchResultSetMetaData metaData;
+
+            private Aggregations aggregations;
 
             @Override
             public final void callback(final SearchResponse response) throws CrabsException {
-                if (response.status() != RestStatus.OK) {
-                    throw new CrabsException("Failed to execute query with elasticsearch, response status is: "
-                            + response.status().getStatus());
-                }
-                this.values = new ArrayList<Object[]>();
-                final int resultColumnCount = this.context.finallyResultColumnAliasList.size();
-                final int groupColumnCount = this.context.finallyGroupColumnIdentifierList.size();
-                final Object[] columnValues = new Object[resultColumnCount];
-                this.parseAggregationResponse(
-                        response.getAggregations(),
-                        columnValues,
-                        0,
-                        groupColumnCount
-                );
+                checkResponse(response);
+                this.metaData = this.context.resultSetMetaData;
+                final AggregationPartitions aggregationPartitions
+                        = AggregationNormalSearchExecutePlan.this.aggregationPartitions;
+                // 代替响应的空响应中没有聚合结果
+                this.aggregations = aggregationPartitions == null || response.getAggregations() == null
+                        ? response.getAggregations() : aggregationPartitions.merge(this.context.environment, response);
             }
 
-            private void parseAggregationResponse(final Aggregations aggs,
-                                                  final Object[] columnValues,
-                                                  final int currentGroupColumnIndex,
-                                                  final int groupColumnCount) throws CrabsException {
-                if (currentGroupColumnIndex == groupColumnCount) {
-                    // 需要解析聚合函数值以及常量值
-                    for (Map.Entry<Integer, Constant> constantEntry : this.context.finallyResultColumnConstantIndexMap.entrySet()) {
-                        columnValues[constantEntry.getKey()] = constantEntry.getValue().value;
-                    }
-                    Aggregation agg;
-                    Integer index;
-                    Object aggValue;
-                    for (Map.Entry<Aggregation, Integer> aggEntry : this.context.finallyResultColumnAggregationIndexMap.entrySet()) {
-                        agg = aggEntry.getKey();
-                        index = aggEntry.getValue();
-                        if (agg instanceof CountFunction) {
-                            aggValue = ValueCount.class.cast(aggs.get(index.toString())).getValue();
-                        } else if (agg instanceof SummaryFunction) {
-                            aggValue = Sum.class.cast(aggs.get(index.toString())).getValue();
-                        } else if (agg instanceof AverageFunction) {
-                            aggValue = Avg.class.cast(aggs.get(index.toString())).getValue();
-                        } else if (agg instanceof MaxinumFunction) {
-                            aggValue = Max.class.cast(aggs.get(index.toString())).getValue();
-                        } else if (agg instanceof MininumFunction) {
-                            aggValue = Min.class.cast(aggs.get(index.toString())).getValue();
-                        } else {
-                            throw new CrabsException("Unsupported expression[" + agg + "]");
+            private SearchResultSetIterator buildResultIterator() throws CrabsException {
+                return new SearchResultSetIteratorImpl(this.aggregations);
+            }
+
+            /**
+             * 边遍历分组边输出行，按深度优先的顺序逐层展开terms聚合的分组，
+             * 所有行共用一行按列存储的缓冲区，外层分组的值只在该层移动到下一个分组时更新。
+             * 需要在客户端排序时，只保留limit范围内的分组
+             */
+            private final class SearchResultSetIteratorImpl extends SearchResultSetIterator {
+
+                private static final int ROW_INDEX = 0;
+
+                @SuppressWarnings("unchecked")
+                SearchResultSetIteratorImpl(final Aggregations aggregations) throws CrabsException {
+                    final AggregationNormalSearchExecuteContext context = AggregationNormalSearchCallback.this.context;
+                    final SearchResultSet.SearchResultSetMetaData metaData = AggregationNormalSearchCallback.this.metaData;
+                    final int resultColumnCount = metaData.getColumnCount();
+                    final DataType[] columnDataTypes = new DataType[resultColumnCount + context.hiddenAggregationCount];
+                    for (int index = 0; index < resultColumnCount; index++) {
+                        columnDataTypes[index] = metaData.getColumnValueType(index);
+                    }
+                    for (Map.Entry<Aggregation, Integer> aggEntry : context.finallyResultColumnAggregationIndexMap.entrySet()) {
+                        if (aggEntry.getValue() >= resultColumnCount) {
+                            columnDataTypes[aggEntry.getValue()] = aggEntry.getKey().getResultType();
                         }
-                        columnValues[index] = aggValue;
                     }
-                    final Object[] finallyResultColumnValues = new Object[columnValues.length];
-                    System.arraycopy(columnValues, 0, finallyResultColumnValues, 0, columnValues.length);
-                    this.values.add(finallyResultColumnValues);
-                    return;
-                }
-                final Identifier groupColumnIdentifier
-                        = this.context.finallyGroupColumnIdentifierList.get(currentGroupColumnIndex);
-                final int nextGroupColumnIndex = currentGroupColumnIndex + 1;
-                final Terms terms = aggs.get(groupColumnIdentifier.toString());
-                final Integer groupColumnInResultColumnsIndex
-                        = this.context.finallyGroupColumnResultSetIndexMap.get(groupColumnIdentifier);
-                final FieldDefinition groupColumnDefinition
-                        = this.context.typeDefinition.getFieldDefinition(groupColumnIdentifier);
-                final DataType currentGroupColumnDataType = groupColumnDefinition.getDataType();
-                final boolean groupColumnExistsResultColumns = groupColumnInResultColumnsIndex != null;
-                String groupColumnValue;
-                for (Terms.Bucket bucket : terms.getBuckets()) {
-                    if (groupColumnExistsResultColumns) {
-                        groupColumnValue = bucket.getKey();
-                        columnValues[groupColumnInResultColumnsIndex] = currentGroupColumnDataType.toValue(
-                                groupColumnValue,
-                                groupColumnDefinition.getPattern()
+                    this.resultColumnCount = resultColumnCount;
+                    this.row = new ColumnarResultValues(columnDataTypes);
+                    this.row.addRow();
+                    this.currentValues = this.row;
+                    this.currentRowIndex = ROW_INDEX;
+                    for (Map.Entry<Integer, Constant> constantEntry : context.finallyResultColumnConstantIndexMap.entrySet()) {
+                        this.row.setObject(ROW_INDEX, constantEntry.getKey(), constantEntry.getValue().value);
+                    }
+                    final int aggregationCount = context.finallyResultColumnAggregationIndexMap.size();
+                    this.aggregations = new Aggregation[aggregationCount];
+                    this.aggregationNames = new String[aggregationCount];
+                    this.aggregationResultIndexes = new int[aggregationCount];
+                    int aggregationIndex = 0;
+                    for (Map.Entry<Aggregation, Integer> aggEntry : context.finallyResultColumnAggregationIndexMap.entrySet()) {
+                        final String statsAggregationName = context.statsAggregationNameMap.get(aggEntry.getKey());
+                        this.aggregations[aggregationIndex] = aggEntry.getKey();
+                        this.aggregationNames[aggregationIndex] = statsAggregationName == null
+                                ? aggEntry.getValue().toString() : statsAggregationName;
+                        this.aggregationResultIndexes[aggregationIndex] = aggEntry.getValue();
+                        aggregationIndex++;
+                    }
+                    final ArrayList<Identifier> groupColumnIdentifierList = context.finallyGroupColumnIdentifierList;
+                    final int groupColumnCount = groupColumnIdentifierList.size();
+                    this.groupColumnNames = new String[groupColumnCount];
+                    this.groupColumnResultIndexes = new int[groupColumnCount];
+                    this.groupColumnDefinitions = new FieldDefinition[groupColumnCount];
+                    this.groupColumnDataTypes = new DataType[groupColumnCount];
+                    for (int index = 0; index < groupColumnCount; index++) {
+                        final Identifier groupColumnIdentifier = groupColumnIdentifierList.get(index);
+                        final Integer resultIndex = context.finallyGroupColumnResultSetIndexMap.get(groupColumnIdentifier);
+                        this.groupColumnNames[index] = groupAggregationName(context, index);
+                        this.groupColumnResultIndexes[index] = resultIndex == null ? -1 : resultIndex;
+                        this.groupColumnDefinitions[index] = context.typeDefinition.getFieldDefinition(
+                                groupFieldIdentifier(context, groupColumnIdentifier)
                         );
+                        this.groupColumnDataTypes[index] = groupColumnDataType(context, groupColumnIdentifier);
                     }
-                    this.parseAggregationResponse(
-                            bucket.getAggregations(),
-                            columnValues,
-                            nextGroupColumnIndex,
-                            groupColumnCount
-                    );
+                    this.flatGroup = context.flatGroup;
+                    if (this.flatGroup) {
+                        this.groupLevelNames = new String[]{FLAT_GROUP_AGGREGATION_NAME};
+                    } else {
+                        this.groupLevelNames = this.groupColumnNames;
+                    }
+                    this.bucketIterators = new Iterator[this.groupLevelNames.length];
+                    this.aggregationsWithoutGroup = aggregations;
+                    if (groupColumnCount > 0) {
+                        this.bucketIterators[0] = aggregations == null
+                                ? Collections.<MultiBucketsAggregation.Bucket>emptyList().iterator()
+                                : this.bucketIterator(aggregations, 0);
+                    }
+                    this.havingPredicate = AggregationNormalSearchExecutePlan.this.havingPredicate;
+                    this.rowOrder = context.rowOrder;
+                    // limit下推时elasticsearch返回的分组中仍然包含offset之前的部分
+                    this.rowLimit = new AggregationRowLimit(context.offset, context.rowCount);
                 }
-            }
 
-            private SearchResultSetIterator buildResultIterator() throws CrabsException {
-                return new SearchResultSetIteratorImpl();
-            }
+                private final int resultColumnCount;
 
-            private SearchResultSet.SearchResultSetMetaData buildResultSetMetaData() throws CrabsException {
-                SearchResultSet.SearchResultSetMetaData.ColumnInformation columnInformation;
-                Identifier columnIdentifier;
-                String columnLabel;
-                DataType dataType;
-                int columnDisplaySize;
-                Expression columnValueExpression;
-                ArrayList<SearchResultSet.SearchResultSetMetaData.ColumnInformation> columnInformationList
-                        = new ArrayList<SearchResultSet.SearchResultSetMetaData.ColumnInformation>();
-                for (int index = 0, size = this.context.finallyResultColumnAliasList.size(); index < size; index++) {
-                    columnIdentifier = this.context.finallyResultColumnAliasList.get(index);
-                    columnValueExpression = this.context.finallyResultColumnExpressionIndexMap.get(index);
-                    if (columnValueExpression instanceof Reference) {
-                        dataType = this.context.typeDefinition.getFieldDefinition(
-                                Reference.class.cast(columnValueExpression).columnIdentifier
-                        ).getDataType();
-                    } else if (columnValueExpression instanceof Aggregation) {
-                        dataType = columnValueExpression.getResultType();
-                    } else {
-                        // constant
-                        dataType = DataType.getDataType(Constant.class.cast(columnValueExpression).value.getClass());
-                    }
-                    columnLabel = columnIdentifier.toString();
-                    columnDisplaySize = dataType.displaySize();
-                    columnInformation = new SearchResultSet.SearchResultSetMetaData.ColumnInformation(
-                            columnIdentifier,
-                            columnLabel,
-                            dataType,
-                            columnDisplaySize
+                private final ColumnarResultValues row;
+
+                private final AggregationRowPredicate havingPredicate;
+
+                private final AggregationRowOrder rowOrder;
+
+                private final AggregationRowLimit rowLimit;
+
+                // 当前行所在的结果，不排序时为行缓冲区，排序时为保留下来的分组
+                private ColumnarResultValues currentValues;
+
+                private int currentRowIndex;
+
+                // 排序后各行在sortedValues中的索引
+                private int[] sortedRowIndexes;
+
+                private int sortedRowCount;
+
+                private int sortedRowPosition;
+
+                private final Aggregation[] aggregations;
+
+                private final String[] aggregationNames;
+
+                private final int[] aggregationResultIndexes;
+
+                private final String[] groupColumnNames;
+
+                // 分组列在结果列中的索引，分组列不在结果列中时为-1
+                private final int[] groupColumnResultIndexes;
+
+                private final FieldDefinition[] groupColumnDefinitions;
+
+                // 分组key的类型，按日期、数值区间分组时与分组字段的类型不同
+                private final DataType[] groupColumnDataTypes;
+
+                private final boolean flatGroup;
+
+                // 每个分组层级的分组聚合名称，按组合key分组时只有一层
+                private final String[] groupLevelNames;
+
+                // 每个分组层级上正在遍历的分组
+                private final Iterator<? extends MultiBucketsAggregation.Bucket>[] bucketIterators;
+
+                // 没有分组时只有一行结果，where条件恒假、没有发出请求时为null
+                private Aggregations aggregationsWithoutGroup;
+
+                private boolean rowWithoutGroupRead;
+
+                // 当前正在遍历的分组层级
+                private int groupLevel;
+
+                private Iterator<? extends MultiBucketsAggregation.Bucket> bucketIterator(final Aggregations aggregations,
+                                                                          final int groupLevel) {
+                    final MultiBucketsAggregation groupAggregation = aggregations.get(this.groupLevelNames[groupLevel]);
+                    return groupAggregation.getBuckets().iterator();
+                }
+
+                @Override
+                final boolean next() throws CrabsException {
+                    if (this.rowOrder != null) {
+                        return this.nextSortedRow();
+                    }
+                    final AggregationRowLimit rowLimit = this.rowLimit;
+                    while (rowLimit.hasRemaining() && this.nextMatchedRow()) {
+                        if (rowLimit.accept()) {
+                            return true;
+                        }
+                    }
+                    return false;
+                }
+
+                private boolean nextMatchedRow() throws CrabsException {
+                    while (this.nextBucketRow()) {
+                        if (this.havingPredicate == null || this.havingPredicate.matches(this.row, ROW_INDEX)) {
+                            return true;
+                        }
+                    }
+                    return false;
+                }
+
+                private boolean nextSortedRow() throws CrabsException {
+                    if (this.sortedRowIndexes == null) {
+                        this.sortRows();
+                    }
+                    if (this.sortedRowPosition < this.sortedRowCount) {
+                        this.currentRowIndex = this.sortedRowIndexes[this.sortedRowPosition++];
+                        return true;
+                    }
+                    return false;
+                }
+
+                /**
+                 * 只保留排在最前面的offset + rowCount个分组，遍历结束后再排序
+                 */
+                private void sortRows() throws CrabsException {
+                    final AggregationRowTopN topN = new AggregationRowTopN(
+                            this.rowOrder,
+                            this.row.getColumnDataTypes(),
+                            this.rowLimit.getRetainedRowCount()
                     );
-                    columnInformationList.add(columnInformation);
+                    while (topN.getMaxRowCount() > 0 && this.nextMatchedRow()) {
+                        topN.offer(this.row, ROW_INDEX);
+                    }
+                    this.currentValues = topN.getValues();
+                    this.sortedRowIndexes = topN.sort();
+                    this.sortedRowCount = topN.getRowCount();
+                    this.sortedRowPosition = Math.min(this.rowLimit.getSkipRowCount(), this.sortedRowCount);
+                }
+
+                private boolean nextBucketRow() throws CrabsException {
+                    final Iterator<? extends MultiBucketsAggregation.Bucket>[] bucketIterators = this.bucketIterators;
+                    final int lastGroupLevel = bucketIterators.length - 1;
+                    if (lastGroupLevel < 0) {
+                        if (this.rowWithoutGroupRead) {
+                            return false;
+                        }
+                        this.rowWithoutGroupRead = true;
+                        if (this.aggregationsWithoutGroup == null) {
+                            this.readEmptyAggregations();
+                        } else {
+                            this.readAggregations(this.aggregationsWithoutGroup);
+                            this.aggregationsWithoutGroup = null;
+                        }
+                        return true;
+                    }
+                    int groupLevel = this.groupLevel;
+                    while (groupLevel >= 0) {
+                        final Iterator<? extends MultiBucketsAggregation.Bucket> bucketIterator = bucketIterators[groupLevel];
+                        if (!bucketIterator.hasNext()) {
+                            groupLevel--;
+                            continue;
+                        }
+                        final MultiBucketsAggregation.Bucket bucket = bucketIterator.next();
+                        if (bucket.getDocCount() == 0) {
+                            // range聚合会返回没有文档的区间，与其它分组一致，不作为结果行
+                            continue;
+                        }
+                        this.readBucketKey(bucket, groupLevel);
+                        if (groupLevel == lastGroupLevel) {
+                            this.groupLevel = groupLevel;
+                            this.readAggregations(bucket.getAggregations());
+                            return true;
+                        }
+                        groupLevel++;
+                        bucketIterators[groupLevel] = this.bucketIterator(bucket.getAggregations(), groupLevel);
+                    }
+                    this.groupLevel = groupLevel;
+                    return false;
+                }
+
+                private void readBucketKey(final MultiBucketsAggregation.Bucket bucket,
+                                           final int groupLevel) throws CrabsException {
+                    if (this.flatGroup) {
+                        this.readFlatBucketKey(bucket.getKey());
+                        return;
+                    }
+                    final int resultIndex = this.groupColumnResultIndexes[groupLevel];
+                    if (resultIndex < 0) {
+                        return;
+                    }
+                    final FieldDefinition groupColumnDefinition = this.groupColumnDefinitions[groupLevel];
+                    final DataType groupColumnDataType = this.groupColumnDataTypes[groupLevel];
+                    // 数值与日期类型的分组直接取数值形式的key，不需要格式化后再解析
+                    switch (groupColumnDataType) {
+                        case LONG:
+                        case INTEGER:
+                        case DATE:
+                            this.row.setLong(ROW_INDEX, resultIndex, keyAsNumber(bucket).longValue());
+                            break;
+                        case DOUBLE:
+                        case FLOAT:
+                            this.row.setDouble(ROW_INDEX, resultIndex, keyAsNumber(bucket).doubleValue());
+                            break;
+                        case STRING:
+                            this.row.setObject(ROW_INDEX, resultIndex, bucket.getKey());
+                            break;
+                        default:
+                            this.row.setObject(
+                                    ROW_INDEX,
+                                    resultIndex,
+                                    groupColumnDataType.toValue(
+                                            bucket.getKey(),
+                                            groupColumnDefinition.getPattern()
+                                    )
+                            );
+                    }
+                }
+
+                private Number keyAsNumber(final MultiBucketsAggregation.Bucket bucket) {
+                    if (bucket instanceof Histogram.Bucket) {
+                        return ((Histogram.Bucket) bucket).getKeyAsNumber();
+                    }
+                    return ((Terms.Bucket) bucket).getKeyAsNumber();
+                }
+
+                private void readFlatBucketKey(final String key) throws CrabsException {
+                    int valueStartPosition = 0;
+                    for (int groupColumnIndex = 0, groupColumnCount = this.groupColumnResultIndexes.length;
+                         groupColumnIndex < groupColumnCount; groupColumnIndex++) {
+                        int valueEndPosition = key.indexOf(FLAT_GROUP_KEY_SEPARATOR, valueStartPosition);
+                        if (valueEndPosition < 0) {
+                            valueEndPosition = key.length();
+                        }
+                        final int resultIndex = this.groupColumnResultIndexes[groupColumnIndex];
+                        if (resultIndex >= 0) {
+                            final String value = key.substring(valueStartPosition, valueEndPosition);
+                            final FieldDefinition groupColumnDefinition = this.groupColumnDefinitions[groupColumnIndex];
+                            switch (groupColumnDefinition.getDataType()) {
+                                case LONG:
+                                case INTEGER:
+                                case DATE:
+                                    // 脚本中日期类型的doc value是毫秒数
+                                    this.row.setLong(ROW_INDEX, resultIndex, Long.parseLong(value));
+                                    break;
+                                case DOUBLE:
+                                case FLOAT:
+                                    this.row.setDouble(ROW_INDEX, resultIndex, Double.parseDouble(value));
+                                    break;
+                                case STRING:
+                                    this.row.setObject(ROW_INDEX, resultIndex, value);
+                                    break;
+                                default:
+                                    this.row.setObject(
+                                            ROW_INDEX,
+                                            resultIndex,
+                                            groupColumnDefinition.getDataType().toValue(
+                                                    value,
+                                                    groupColumnDefinition.getPattern()
+                                            )
+                                    );
+                            }
+                        }
+                        valueStartPosition = valueEndPosition + 1;
+                    }
+                }
+
+                /**
+                 * 与elasticsearch对没有文档的聚合返回的结果一致：计数为0，求和为0，
+                 * 最大值为负无穷，最小值为正无穷，平均值和百分位数为NaN
+                 */
+                private void readEmptyAggregations() {
+                    final ColumnarResultValues row = this.row;
+                    final Aggregation[] aggregations = this.aggregations;
+                    for (int index = 0; index < aggregations.length; index++) {
+                        final Aggregation agg = aggregations[index];
+                        final int resultIndex = this.aggregationResultIndexes[index];
+                        if (agg instanceof CountFunction
+                                || agg instanceof RollupCountFunction
+                                || agg instanceof CountDistinctFunction
+                                || agg instanceof ApproximateCountDistinctFunction) {
+                            row.setLong(ROW_INDEX, resultIndex, 0L);
+                        } else if (agg instanceof SummaryFunction) {
+                            row.setDouble(ROW_INDEX, resultIndex, 0D);
+                        } else if (agg instanceof MaxinumFunction) {
+                            row.setDouble(ROW_INDEX, resultIndex, Double.NEGATIVE_INFINITY);
+                        } else if (agg instanceof MininumFunction) {
+                            row.setDouble(ROW_INDEX, resultIndex, Double.POSITIVE_INFINITY);
+                        } else {
+                            row.setDouble(ROW_INDEX, resultIndex, Double.NaN);
+                        }
+                    }
+                }
+
+                private void readAggregations(final Aggregations aggs) throws CrabsException {
+                    final ColumnarResultValues row = this.row;
+                    final Aggregation[] aggregations = this.aggregations;
+                    for (int index = 0; index < aggregations.length; index++) {
+                        final Aggregation agg = aggregations[index];
+                        final String name = this.aggregationNames[index];
+                        final int resultIndex = this.aggregationResultIndexes[index];
+                        final Object aggregationResult = aggs.get(name);
+                        if (aggregationResult instanceof Stats) {
+                            final Stats stats = (Stats) aggregationResult;
+                            if (agg instanceof CountFunction) {
+                                row.setLong(ROW_INDEX, resultIndex, stats.getCount());
+                            } else if (agg instanceof SummaryFunction) {
+                                row.setDouble(ROW_INDEX, resultIndex, stats.getSum());
+                            } else if (agg instanceof RollupCountFunction) {
+                                row.setLong(ROW_INDEX, resultIndex, Math.round(stats.getSum()));
+                            } else if (agg instanceof AverageFunction) {
+                                row.setDouble(ROW_INDEX, resultIndex, stats.getAvg());
+                            } else if (agg instanceof MaxinumFunction) {
+                                row.setDouble(ROW_INDEX, resultIndex, stats.getMax());
+                            } else {
+                                row.setDouble(ROW_INDEX, resultIndex, stats.getMin());
+                            }
+                        } else if (agg instanceof CountFunction) {
+                            row.setLong(ROW_INDEX, resultIndex, ValueCount.class.cast(aggs.get(name)).getValue());
+                        } else if (agg instanceof SummaryFunction) {
+                            row.setDouble(ROW_INDEX, resultIndex, Sum.class.cast(aggs.get(name)).getValue());
+                        } else if (agg instanceof RollupCountFunction) {
+                            // 计数之和，elasticsearch的sum聚合以浮点数返回
+                            row.setLong(ROW_INDEX, resultIndex, Math.round(Sum.class.cast(aggs.get(name)).getValue()));
+                        } else if (agg instanceof AverageFunction) {
+                            row.setDouble(ROW_INDEX, resultIndex, Avg.class.cast(aggs.get(name)).getValue());
+                        } else if (agg instanceof MaxinumFunction) {
+                            row.setDouble(ROW_INDEX, resultIndex, Max.class.cast(aggs.get(name)).getValue());
+                        } else if (agg instanceof MininumFunction) {
+                            row.setDouble(ROW_INDEX, resultIndex, Min.class.cast(aggs.get(name)).getValue());
+                        } else if (agg instanceof CountDistinctFunction
+                                || agg instanceof ApproximateCountDistinctFunction) {
+                            row.setLong(ROW_INDEX, resultIndex, Cardinality.class.cast(aggs.get(name)).getValue());
+                        } else if (agg instanceof PercentileFunction) {
+                            row.setDouble(
+                                    ROW_INDEX,
+                                    resultIndex,
+                                    Percentiles.class.cast(aggs.get(name)).percentile(((PercentileFunction) agg).percent)
+                            );
+                        } else {
+                            throw new CrabsException("Unsupported expression[" + agg + "]");
+                        }
+                    }
                 }
-                return new SearchResultSet.SearchResultSetMetaData(
-                        columnInformationList.toArray(
-                                new SearchResultSet.SearchResultSetMetaData.ColumnInformation[columnInformationList.size()]
-                        )
-                );
-            }
-
-            private final class SearchResultSetIteratorImpl extends SearchResultSetIterator {
 
-                private int index;
+                @Override
+                final int getResultValueCount() {
+                    return this.resultColumnCount;
+                }
 
-                private final int size;
+                @Override
+                final Object getResultValue(int valueIndex) {
+                    return this.currentValues.getObject(this.currentRowIndex, valueIndex);
+                }
 
-                SearchResultSetIteratorImpl() {
-                    this.index = -1;
-                    this.size = AggregationNormalSearchCallback.this.values.size();
+                @Override
+                final boolean isPrimitiveResultValue(final int valueIndex) {
+                    return this.currentValues.isPrimitive(valueIndex);
                 }
 
                 @Override
-                final boolean next() throws CrabsException {
-                    return ++this.index < this.size;
+                final boolean isNullResultValue(final int valueIndex) {
+                    return this.currentValues.isNull(this.currentRowIndex, valueIndex);
                 }
 
                 @Override
-                final int getResultValueCount() {
-                    return AggregationNormalSearchCallback.this.values.get(this.index).length;
+                final long getLongResultValue(final int valueIndex) {
+                    return this.currentValues.getLong(this.currentRowIndex, valueIndex);
                 }
 
                 @Override
-                final Object getResultValue(int valueIndex) {
-                    return AggregationNormalSearchCallback.this.values.get(this.index)[valueIndex];
+                final double getDoubleResultValue(final int valueIndex) {
+                    return this.currentValues.getDouble(this.currentRowIndex, valueIndex);
                 }
 
                 @Override
@@ -2895,16 +6255,72 @@ public final class SelectStatementExecutor extends StatementExecutor<SelectState
 
             AggregationNormalSearchExecuteContext(final SearchExecuteContext context) throws CrabsException {
                 super(context);
-                this.finallyGroupColumnIdentifierList = new ArrayList<Identifier>();
-                this.finallyResultColumnAliasList = new ArrayList<Identifier>();
-                this.finallyResultColumnExpressionIndexMap = new HashMap<Integer, Expression>();
-                this.finallyResultColumnAggregationIndexMap = new HashMap<Aggregation, Integer>();
-                this.finallyGroupColumnResultSetIndexMap = new HashMap<Identifier, Integer>();
-                this.finallyResultColumnConstantIndexMap = new HashMap<Integer, Constant>();
+                final AggregationNormalSearchExecuteContext analyzedContext
+                        = context.compiledStatement.getAnalyzedContext(AggregationNormalSearchExecuteContext.class);
+                if (analyzedContext == null) {
+                    this.finallyGroupColumnIdentifierList = new ArrayList<Identifier>();
+                    this.finallyResultColumnAliasList = new ArrayList<Identifier>();
+                    this.finallyResultColumnExpressionIndexMap = new HashMap<Integer, Expression>();
+                    this.finallyResultColumnAggregationIndexMap = new HashMap<Aggregation, Integer>();
+                    this.finallyGroupColumnResultSetIndexMap = new HashMap<Identifier, Integer>();
+                    this.finallyResultColumnConstantIndexMap = new HashMap<Integer, Constant>();
+                    this.finallyGroupFunctionMap = new HashMap<Identifier, NonAggregation>();
+                    this.statsAggregationNameMap = new HashMap<Aggregation, String>();
+                    this.statsAggregationFieldMap = new LinkedHashMap<String, Identifier>();
+                } else {
+                    // 分析完成后以下结果只读，直接共享
+                    this.copyAnalyzedState(analyzedContext);
+                    this.existsGroupByClause = analyzedContext.existsGroupByClause;
+                    this.finallyGroupColumnIdentifierList = analyzedContext.finallyGroupColumnIdentifierList;
+                    this.finallyResultColumnAliasList = analyzedContext.finallyResultColumnAliasList;
+                    this.finallyResultColumnExpressionIndexMap = analyzedContext.finallyResultColumnExpressionIndexMap;
+                    this.finallyResultColumnAggregationIndexMap = analyzedContext.finallyResultColumnAggregationIndexMap;
+                    this.finallyGroupColumnResultSetIndexMap = analyzedContext.finallyGroupColumnResultSetIndexMap;
+                    this.finallyResultColumnConstantIndexMap = analyzedContext.finallyResultColumnConstantIndexMap;
+                    this.finallyGroupFunctionMap = analyzedContext.finallyGroupFunctionMap;
+                    this.statsAggregationNameMap = analyzedContext.statsAggregationNameMap;
+                    this.statsAggregationFieldMap = analyzedContext.statsAggregationFieldMap;
+                    this.aggregationBuilderList = analyzedContext.aggregationBuilderList;
+                    this.resultSetMetaData = analyzedContext.resultSetMetaData;
+                    this.groupOrder = analyzedContext.groupOrder;
+                    this.flatGroup = analyzedContext.flatGroup;
+                    this.hiddenAggregationCount = analyzedContext.hiddenAggregationCount;
+                    this.finallyHavingConditionExpression = analyzedContext.finallyHavingConditionExpression;
+                    this.havingPredicate = analyzedContext.havingPredicate;
+                    this.rowOrder = analyzedContext.rowOrder;
+                    this.limitPushedDown = analyzedContext.limitPushedDown;
+                }
             }
 
+            // 是否以脚本生成的组合key代替逐层嵌套的terms聚合进行分组
+            boolean flatGroup = false;
+
             boolean existsGroupByClause = false;
 
+            // 下推到分组的排序，未指定order by时为null
+            Terms.Order groupOrder;
+
+            // 不能下推时在客户端对分组排序，否则为null
+            AggregationRowOrder rowOrder;
+
+            boolean limitPushedDown = false;
+
+            // 只在having、order by中出现的聚合函数，其值位于结果列之后
+            int hiddenAggregationCount = 0;
+
+            Expression finallyHavingConditionExpression;
+
+            // having条件不包含参数时，第一次分析得到的条件被之后的执行复用
+            AggregationRowPredicate havingPredicate;
+
+            int offset;
+
+            int rowCount = NonAggregationNormalSearchExecutePlan.NO_LIMIT_ROW_COUNT;
+
+            ArrayList<AbstractAggregationBuilder> aggregationBuilderList;
+
+            SearchResultSet.SearchResultSetMetaData resultSetMetaData;
+
             private final ArrayList<Identifier> finallyGroupColumnIdentifierList;
 
             private final ArrayList<Identifier> finallyResultColumnAliasList;
@@ -2919,6 +6335,15 @@ public final class SelectStatementExecutor extends StatementExecutor<SelectState
 
             private final HashMap<Integer, Constant> finallyResultColumnConstantIndexMap;
 
+            // 以DATE_TRUNC、HISTOGRAM分组时，分组列的标识为表达式的文本
+            private final HashMap<Identifier, NonAggregation> finallyGroupFunctionMap;
+
+            // 合并到stats聚合中的聚合函数与stats聚合名称的映射关系
+            private final HashMap<Aggregation, String> statsAggregationNameMap;
+
+            // stats聚合的名称与字段
+            private final LinkedHashMap<String, Identifier> statsAggregationFieldMap;
+
         }
 
         private static final class AggregationNormalSearchSemanticAnalyzer
@@ -2936,9 +6361,68 @@ public final class SelectStatementExecutor extends StatementExecutor<SelectState
                 this.analyzeSelectClause();
                 this.analyzeHavingClause();
                 this.analyzeOrderByClause();
+                this.analyzeStatsAggregations();
                 this.analyzeLimitClause();
             }
 
+            // 下推到terms聚合的排序所依据的聚合函数，合并为stats聚合后需要改为按stats的指标排序
+            private Aggregation groupOrderAggregation;
+
+            private boolean groupOrderAscending;
+
+            /**
+             * 同一数值字段上的多个count、sum、avg、max、min合并为一个stats聚合，每个分组中对该字段只计算一次
+             */
+            private void analyzeStatsAggregations() throws CrabsException {
+                final LinkedHashMap<Identifier, ArrayList<Aggregation>> fieldAggregationListMap
+                        = new LinkedHashMap<Identifier, ArrayList<Aggregation>>();
+                for (Aggregation aggregation : this.context.finallyResultColumnAggregationIndexMap.keySet()) {
+                    if (statsMetricName(aggregation) == null) {
+                        continue;
+                    }
+                    final Identifier fieldIdentifier
+                            = Reference.class.cast(aggregation.getOperandExpression(0)).columnIdentifier;
+                    switch (this.context.typeDefinition.getFieldDefinition(fieldIdentifier).getDataType()) {
+                        case LONG:
+                        case INTEGER:
+                        case DOUBLE:
+                        case FLOAT:
+                        case DATE:
+                            break;
+                        default:
+                            // stats只能用于数值字段
+                            continue;
+                    }
+                    ArrayList<Aggregation> aggregationList = fieldAggregationListMap.get(fieldIdentifier);
+                    if (aggregationList == null) {
+                        aggregationList = new ArrayList<Aggregation>();
+                        fieldAggregationListMap.put(fieldIdentifier, aggregationList);
+                    }
+                    aggregationList.add(aggregation);
+                }
+                for (Map.Entry<Identifier, ArrayList<Aggregation>> entry : fieldAggregationListMap.entrySet()) {
+                    final ArrayList<Aggregation> aggregationList = entry.getValue();
+                    if (aggregationList.size() < 2) {
+                        continue;
+                    }
+                    final String name = STATS_AGGREGATION_NAME_PREFIX + this.context.statsAggregationFieldMap.size();
+                    this.context.statsAggregationFieldMap.put(name, entry.getKey());
+                    for (Aggregation aggregation : aggregationList) {
+                        this.context.statsAggregationNameMap.put(aggregation, name);
+                    }
+                }
+                if (this.groupOrderAggregation != null) {
+                    final String name = this.context.statsAggregationNameMap.get(this.groupOrderAggregation);
+                    if (name != null) {
+                        this.context.groupOrder = Terms.Order.aggregation(
+                                name,
+                                statsMetricName(this.groupOrderAggregation),
+                                this.groupOrderAscending
+                        );
+                    }
+                }
+            }
+
             private void analyzeGroupByClause() throws CrabsException {
                 final GroupByClause originalGroupClause = this.context.statement.groupByClause;
                 if (originalGroupClause == null) {
@@ -2951,6 +6435,10 @@ public final class SelectStatementExecutor extends StatementExecutor<SelectState
                 Identifier identifier;
                 for (int index = 0, size = originalGroupExpressionList.size(); index < size; index++) {
                     originalExpression = originalGroupExpressionList.get(index);
+                    if (isGroupFunction(originalExpression)) {
+                        this.analyzeGroupFunction((NonAggregation) originalExpression);
+                        continue;
+                    }
                     if (!(originalExpression instanceof Reference)) {
                         throw new CrabsException("Invalid expression in where clause, only allow column name.");
                     }
@@ -2975,6 +6463,77 @@ public final class SelectStatementExecutor extends StatementExecutor<SelectState
                     }
                     this.context.finallyGroupColumnIdentifierList.add(identifier);
                 }
+                final int flatGroupByColumnCount = Integer.parseInt(
+                        this.context.environment.getProperty(
+                                PROPERTY_ENTRY$FLAT_GROUP_BY_COLUMN_COUNT.identifier,
+                                PROPERTY_ENTRY$FLAT_GROUP_BY_COLUMN_COUNT.defaultValue
+                        )
+                );
+                // 组合key依赖elasticsearch的动态脚本，需要显式开启，单列分组总是使用terms聚合
+                // 组合key的脚本只拼接字段的原值，存在分组表达式时仍然逐层分组
+                final int groupColumnCount = this.context.finallyGroupColumnIdentifierList.size();
+                this.context.flatGroup = flatGroupByColumnCount > 0
+                        && groupColumnCount > 1
+                        && groupColumnCount >= flatGroupByColumnCount
+                        && this.context.finallyGroupFunctionMap.isEmpty();
+            }
+
+            /**
+             * DATE_TRUNC只能用于日期字段，HISTOGRAM、RANGE_BUCKET只能用于数值或日期字段，
+             * RANGE_BUCKET用于数值字段时边界为数值，用于日期字段时边界为日期字符串
+             */
+            private void analyzeGroupFunction(final NonAggregation groupFunction) throws CrabsException {
+                final boolean dateTrunc = groupFunction instanceof DateTruncFunction;
+                final String functionIdentifier = ((Function) groupFunction).getIdentifier();
+                final Expression operandExpression = groupFunction.getOperandExpression(dateTrunc ? 1 : 0);
+                if (!(operandExpression instanceof Reference)) {
+                    throw new CrabsException(
+                            "Unsupported expression[" + operandExpression + "] in " + functionIdentifier + "()."
+                    );
+                }
+                final Reference reference = Reference.class.cast(operandExpression);
+                if (reference.columnIdentifier.equals(Reference.ALL_COLUMN_IDENTIFIER)) {
+                    throw new CrabsException("Can not contains '*' in " + functionIdentifier + "().");
+                }
+                final DataType dataType;
+                try {
+                    dataType = this.context.typeDefinition.getFieldDefinition(reference.columnIdentifier).getDataType();
+                } catch (FieldNotExistsException e) {
+                    throw new CrabsException(
+                            "Unknown column[" + reference.columnIdentifier + "] in " + functionIdentifier + "()."
+                    );
+                }
+                switch (dataType) {
+                    case DATE:
+                        break;
+                    case LONG:
+                    case INTEGER:
+                    case DOUBLE:
+                    case FLOAT:
+                        if (!dateTrunc) {
+                            break;
+                        }
+                        // DATE_TRUNC不能用于数值字段
+                    default:
+                        throw new CrabsException(
+                                "Unsupported column[" + reference.columnIdentifier + "] of type " + dataType
+                                        + " in " + functionIdentifier + "()."
+                        );
+                }
+                if (groupFunction instanceof RangeBucketFunction) {
+                    final RangeBucketFunction rangeBucket = (RangeBucketFunction) groupFunction;
+                    final boolean numericBoundary = rangeBucket.getBoundary(0).value instanceof Number;
+                    if (numericBoundary == (dataType == DataType.DATE)) {
+                        throw new CrabsException(
+                                "Boundaries of " + functionIdentifier + "() must be "
+                                        + (numericBoundary ? "date strings" : "numbers")
+                                        + " for column[" + reference.columnIdentifier + "] of type " + dataType + "."
+                        );
+                    }
+                }
+                final Identifier identifier = new Identifier(groupFunction.toString());
+                this.context.finallyGroupColumnIdentifierList.add(identifier);
+                this.context.finallyGroupFunctionMap.put(identifier, groupFunction);
             }
 
             private void analyzeSelectClause() throws CrabsException {
@@ -3010,128 +6569,21 @@ public final class SelectStatementExecutor extends StatementExecutor<SelectState
                         this.context.finallyResultColumnExpressionIndexMap.put(index, reference);
                         this.context.finallyGroupColumnResultSetIndexMap.put(reference.columnIdentifier, index);
 
-                    } else if (resultColumnExpression instanceof Aggregation) {
-                        final Aggregation aggregation;
-                        if (resultColumnExpression instanceof CountFunction) {
-                            aggregation = CountFunction.class.cast(resultColumnExpression);
-                            final Expression operandExpression = aggregation.getOperandExpression(0);
-                            if (!(operandExpression instanceof Reference)) {
-                                throw new CrabsException(
-                                        "Unsupported expression[" + operandExpression + "] in " +
-                                                CountFunction.IDENTIFIER + "()."
-                                );
-                            }
-                            final Reference reference = Reference.class.cast(operandExpression);
-                            if (!reference.columnIdentifier.equals(Reference.ALL_COLUMN_IDENTIFIER)) {
-                                try {
-                                    this.context.typeDefinition.getFieldDefinition(reference.columnIdentifier);
-                                } catch (FieldNotExistsException e) {
-                                    throw new CrabsException(
-                                            "Unknown column[" + reference.columnIdentifier + "] in " +
-                                                    CountFunction.IDENTIFIER + "()."
-                                    );
-                                }
-                            }
-                        } else if (resultColumnExpression instanceof SummaryFunction) {
-                            aggregation = SummaryFunction.class.cast(resultColumnExpression);
-                            final Expression operandExpression = aggregation.getOperandExpression(0);
-                            if (!(operandExpression instanceof Reference)) {
-                                throw new CrabsException(
-                                        "Unsupported expression[" + operandExpression + "] in " +
-                                                SummaryFunction.IDENTIFIER + "()."
-                                );
-                            }
-                            final Reference reference = Reference.class.cast(operandExpression);
-                            if (reference.columnIdentifier.equals(Reference.ALL_COLUMN_IDENTIFIER)) {
-                                throw new CrabsException(
-                                        "Can not contains '*' in " +
-                                                SummaryFunction.IDENTIFIER + "()."
-                                );
-                            }
-                            try {
-                                this.context.typeDefinition.getFieldDefinition(reference.columnIdentifier);
-                            } catch (FieldNotExistsException e) {
-                                throw new CrabsException(
-                                        "Unknown column[" + reference.columnIdentifier + "] in " +
-                                                SummaryFunction.IDENTIFIER + "()."
-                                );
-                            }
-
-                        } else if (resultColumnExpression instanceof MaxinumFunction) {
-                            aggregation = MaxinumFunction.class.cast(resultColumnExpression);
-                            final Expression operandExpression = aggregation.getOperandExpression(0);
-                            if (!(operandExpression instanceof Reference)) {
-                                throw new CrabsException(
-                                        "Unsupported expression[" + operandExpression + "] in " +
-                                                MaxinumFunction.IDENTIFIER + "()."
-                                );
-                            }
-                            final Reference reference = Reference.class.cast(operandExpression);
-                            if (reference.columnIdentifier.equals(Reference.ALL_COLUMN_IDENTIFIER)) {
-                                throw new CrabsException(
-                                        "Can not contains '*' in " +
-                                                MaxinumFunction.IDENTIFIER + "()."
-                                );
-                            }
-                            try {
-                                this.context.typeDefinition.getFieldDefinition(reference.columnIdentifier);
-                            } catch (FieldNotExistsException e) {
-                                throw new CrabsException(
-                                        "Unknown column[" + reference.columnIdentifier + "]" +
-                                                MaxinumFunction.IDENTIFIER + "()."
-                                );
-                            }
-                        } else if (resultColumnExpression instanceof MininumFunction) {
-                            aggregation = MininumFunction.class.cast(resultColumnExpression);
-                            final Expression operandExpression = aggregation.getOperandExpression(0);
-                            if (!(operandExpression instanceof Reference)) {
-                                throw new CrabsException(
-                                        "Unsupported expression[" + operandExpression + "] in " +
-                                                MininumFunction.IDENTIFIER + "()."
-                                );
-                            }
-                            final Reference reference = Reference.class.cast(operandExpression);
-                            if (reference.columnIdentifier.equals(Reference.ALL_COLUMN_IDENTIFIER)) {
-                                throw new CrabsException(
-                                        "Can not contains '*' in " +
-                                                MininumFunction.IDENTIFIER + "()."
-                                );
-                            }
-                            try {
-                                this.context.typeDefinition.getFieldDefinition(reference.columnIdentifier);
-                            } catch (FieldNotExistsException e) {
-                                throw new CrabsException(
-                                        "Unknown column[" + reference.columnIdentifier + "]" +
-                                                MininumFunction.IDENTIFIER + "()."
-                                );
-                            }
-                        } else if (resultColumnExpression instanceof AverageFunction) {
-                            aggregation = AverageFunction.class.cast(resultColumnExpression);
-                            final Expression operandExpression = aggregation.getOperandExpression(0);
-                            if (!(operandExpression instanceof Reference)) {
-                                throw new CrabsException(
-                                        "Unsupported expression[" + operandExpression + "] in " +
-                                                AverageFunction.IDENTIFIER + "()."
-                                );
-                            }
-                            final Reference reference = Reference.class.cast(operandExpression);
-                            if (reference.columnIdentifier.equals(Reference.ALL_COLUMN_IDENTIFIER)) {
-                                throw new CrabsException(
-                                        "Can not contains '*' in " +
-                                                AverageFunction.IDENTIFIER + "()."
-                                );
-                            }
-                            try {
-                                this.context.typeDefinition.getFieldDefinition(reference.columnIdentifier);
-                            } catch (FieldNotExistsException e) {
-                                throw new CrabsException(
-                                        "Unknown column[" + reference.columnIdentifier + "]" +
-                                                AverageFunction.IDENTIFIER + "()."
-                                );
-                            }
-                        } else {
-                            throw new CrabsException("Unsupported aggregation[" + resultColumnExpression + "]");
+                    } else if (isGroupFunction(resultColumnExpression)) {
+                        final Identifier identifier = new Identifier(resultColumnExpression.toString());
+                        if (!this.context.finallyGroupFunctionMap.containsKey(identifier)) {
+                            throw new CrabsException(
+                                    "Invalid expression[" + resultColumnExpression + "] in select clause, it must in group by clause."
+                            );
                         }
+                        this.context.finallyResultColumnAliasList.add(
+                                resultColumnAlias == null ? identifier : resultColumnAlias
+                        );
+                        this.context.finallyResultColumnExpressionIndexMap.put(index, resultColumnExpression);
+                        this.context.finallyGroupColumnResultSetIndexMap.put(identifier, index);
+
+                    } else if (resultColumnExpression instanceof Aggregation) {
+                        final Aggregation aggregation = this.analyzeAggregation(resultColumnExpression);
                         this.context.finallyResultColumnAliasList.add(
                                 resultColumnAlias == null
                                         ? new Identifier(resultColumnExpression.toString()) : resultColumnAlias
@@ -3154,28 +6606,291 @@ public final class SelectStatementExecutor extends StatementExecutor<SelectState
                 }
             }
 
-            private void analyzeHavingClause() throws CrabsException {
-                if (this.context.statement.havingClause != null) {
+            /**
+             * 校验聚合函数的参数，聚合函数只能以字段作为参数
+             */
+            private Aggregation analyzeAggregation(final Expression resultColumnExpression) throws CrabsException {
+                final Aggregation aggregation;
+                if (resultColumnExpression instanceof CountFunction) {
+                    aggregation = CountFunction.class.cast(resultColumnExpression);
+                    final Expression operandExpression = aggregation.getOperandExpression(0);
+                    if (!(operandExpression instanceof Reference)) {
+                        throw new CrabsException(
+                                "Unsupported expression[" + operandExpression + "] in " +
+                                        CountFunction.IDENTIFIER + "()."
+                        );
+                    }
+                    final Reference reference = Reference.class.cast(operandExpression);
+                    if (!reference.columnIdentifier.equals(Reference.ALL_COLUMN_IDENTIFIER)) {
+                        try {
+                            this.context.typeDefinition.getFieldDefinition(reference.columnIdentifier);
+                        } catch (FieldNotExistsException e) {
+                            throw new CrabsException(
+                                    "Unknown column[" + reference.columnIdentifier + "] in " +
+                                            CountFunction.IDENTIFIER + "()."
+                            );
+                        }
+                    }
+                } else if (resultColumnExpression instanceof SummaryFunction
+                        || resultColumnExpression instanceof RollupCountFunction) {
+                    aggregation = Aggregation.class.cast(resultColumnExpression);
+                    final Expression operandExpression = aggregation.getOperandExpression(0);
+                    if (!(operandExpression instanceof Reference)) {
+                        throw new CrabsException(
+                                "Unsupported expression[" + operandExpression + "] in " +
+                                        SummaryFunction.IDENTIFIER + "()."
+                        );
+                    }
+                    final Reference reference = Reference.class.cast(operandExpression);
+                    if (reference.columnIdentifier.equals(Reference.ALL_COLUMN_IDENTIFIER)) {
+                        throw new CrabsException(
+                                "Can not contains '*' in " +
+                                        SummaryFunction.IDENTIFIER + "()."
+                        );
+                    }
+                    try {
+                        this.context.typeDefinition.getFieldDefinition(reference.columnIdentifier);
+                    } catch (FieldNotExistsException e) {
+                        throw new CrabsException(
+                                "Unknown column[" + reference.columnIdentifier + "] in " +
+                                        SummaryFunction.IDENTIFIER + "()."
+                        );
+                    }
+
+                } else if (resultColumnExpression instanceof MaxinumFunction) {
+                    aggregation = MaxinumFunction.class.cast(resultColumnExpression);
+                    final Expression operandExpression = aggregation.getOperandExpression(0);
+                    if (!(operandExpression instanceof Reference)) {
+                        throw new CrabsException(
+                                "Unsupported expression[" + operandExpression + "] in " +
+                                        MaxinumFunction.IDENTIFIER + "()."
+                        );
+                    }
+                    final Reference reference = Reference.class.cast(operandExpression);
+                    if (reference.columnIdentifier.equals(Reference.ALL_COLUMN_IDENTIFIER)) {
+                        throw new CrabsException(
+                                "Can not contains '*' in " +
+                                        MaxinumFunction.IDENTIFIER + "()."
+                        );
+                    }
+                    try {
+                        this.context.typeDefinition.getFieldDefinition(reference.columnIdentifier);
+                    } catch (FieldNotExistsException e) {
+                        throw new CrabsException(
+                                "Unknown column[" + reference.columnIdentifier + "]" +
+                                        MaxinumFunction.IDENTIFIER + "()."
+                        );
+                    }
+                } else if (resultColumnExpression instanceof MininumFunction) {
+                    aggregation = MininumFunction.class.cast(resultColumnExpression);
+                    final Expression operandExpression = aggregation.getOperandExpression(0);
+                    if (!(operandExpression instanceof Reference)) {
+                        throw new CrabsException(
+                                "Unsupported expression[" + operandExpression + "] in " +
+                                        MininumFunction.IDENTIFIER + "()."
+                        );
+                    }
+                    final Reference reference = Reference.class.cast(operandExpression);
+                    if (reference.columnIdentifier.equals(Reference.ALL_COLUMN_IDENTIFIER)) {
+                        throw new CrabsException(
+                                "Can not contains '*' in " +
+                                        MininumFunction.IDENTIFIER + "()."
+                        );
+                    }
+                    try {
+                        this.context.typeDefinition.getFieldDefinition(reference.columnIdentifier);
+                    } catch (FieldNotExistsException e) {
+                        throw new CrabsException(
+                                "Unknown column[" + reference.columnIdentifier + "]" +
+                                        MininumFunction.IDENTIFIER + "()."
+                        );
+                    }
+                } else if (resultColumnExpression instanceof AverageFunction) {
+                    aggregation = AverageFunction.class.cast(resultColumnExpression);
+                    final Expression operandExpression = aggregation.getOperandExpression(0);
+                    if (!(operandExpression instanceof Reference)) {
+                        throw new CrabsException(
+                                "Unsupported expression[" + operandExpression + "] in " +
+                                        AverageFunction.IDENTIFIER + "()."
+                        );
+                    }
+                    final Reference reference = Reference.class.cast(operandExpression);
+                    if (reference.columnIdentifier.equals(Reference.ALL_COLUMN_IDENTIFIER)) {
+                        throw new CrabsException(
+                                "Can not contains '*' in " +
+                                        AverageFunction.IDENTIFIER + "()."
+                        );
+                    }
+                    try {
+                        this.context.typeDefinition.getFieldDefinition(reference.columnIdentifier);
+                    } catch (FieldNotExistsException e) {
+                        throw new CrabsException(
+                                "Unknown column[" + reference.columnIdentifier + "]" +
+                                        AverageFunction.IDENTIFIER + "()."
+                        );
+                    }
+                } else if (resultColumnExpression instanceof CountDistinctFunction) {
+                    aggregation = CountDistinctFunction.class.cast(resultColumnExpression);
+                    this.analyzeAggregationField(aggregation, CountDistinctFunction.IDENTIFIER);
+                } else if (resultColumnExpression instanceof ApproximateCountDistinctFunction) {
+                    aggregation = ApproximateCountDistinctFunction.class.cast(resultColumnExpression);
+                    this.analyzeAggregationField(aggregation, ApproximateCountDistinctFunction.IDENTIFIER);
+                } else if (resultColumnExpression instanceof PercentileFunction) {
+                    aggregation = PercentileFunction.class.cast(resultColumnExpression);
+                    this.analyzeAggregationField(aggregation, PercentileFunction.IDENTIFIER);
+                } else {
+                    throw new CrabsException("Unsupported aggregation[" + resultColumnExpression + "]");
+                }
+                return aggregation;
+            }
+
+            private void analyzeAggregationField(final Aggregation aggregation,
+                                                 final String functionIdentifier) throws CrabsException {
+                final Expression operandExpression = aggregation.getOperandExpression(0);
+                if (!(operandExpression instanceof Reference)) {
+                    throw new CrabsException(
+                            "Unsupported expression[" + operandExpression + "] in " + functionIdentifier + "()."
+                    );
+                }
+                final Reference reference = Reference.class.cast(operandExpression);
+                if (reference.columnIdentifier.equals(Reference.ALL_COLUMN_IDENTIFIER)) {
+                    throw new CrabsException("Can not contains '*' in " + functionIdentifier + "().");
+                }
+                try {
+                    this.context.typeDefinition.getFieldDefinition(reference.columnIdentifier);
+                } catch (FieldNotExistsException e) {
                     throw new CrabsException(
-                            "For aggregation, having clause is not supported."
+                            "Unknown column[" + reference.columnIdentifier + "] in " + functionIdentifier + "()."
                     );
                 }
             }
 
+            /**
+             * having条件在客户端对每个分组求值，条件中不在SELECT子句中的聚合函数作为隐藏列一并计算
+             */
+            private void analyzeHavingClause() throws CrabsException {
+                final HavingClause havingClause = this.context.statement.havingClause;
+                if (havingClause == null) {
+                    return;
+                }
+                this.analyzeAggregationInHavingClause(havingClause.conditionExpression);
+                this.context.finallyHavingConditionExpression = havingClause.conditionExpression;
+            }
+
+            private void analyzeAggregationInHavingClause(final Expression expression) throws CrabsException {
+                if (expression instanceof Aggregation) {
+                    this.analyzeHiddenAggregation(expression);
+                    return;
+                }
+                final ReadonlyList<Expression> operandExpressionList = expression.getOperandExpressionList();
+                for (int index = 0, size = operandExpressionList.size(); index < size; index++) {
+                    this.analyzeAggregationInHavingClause(operandExpressionList.get(index));
+                }
+            }
+
+            private void analyzeHiddenAggregation(final Expression expression) throws CrabsException {
+                if (this.context.finallyResultColumnAggregationIndexMap.containsKey(expression)) {
+                    return;
+                }
+                final Aggregation aggregation = this.analyzeAggregation(expression);
+                this.context.finallyResultColumnAggregationIndexMap.put(
+                        aggregation,
+                        this.context.finallyResultColumnAliasList.size() + this.context.hiddenAggregationCount++
+                );
+            }
+
+            /**
+             * 只有一个分组列且只按一个条件排序时，order by下推为terms聚合的order，否则在客户端对分组排序
+             */
             private void analyzeOrderByClause() throws CrabsException {
-                if (this.context.statement.orderByClause != null) {
-                    throw new CrabsException(
-                            "For aggregation, order by clause is not supported."
-                    );
+                final OrderByClause originalClause = this.context.statement.orderByClause;
+                if (originalClause == null) {
+                    return;
+                }
+                final ReadonlyList<OrderSpecification> originalOrderSpecificationList
+                        = originalClause.orderSpecificationList;
+                final int size = originalOrderSpecificationList.size();
+                final int[] columnIndexes = new int[size];
+                final boolean[] ascendingOrders = new boolean[size];
+                Expression orderExpression = null;
+                for (int index = 0; index < size; index++) {
+                    final OrderSpecification originalOrderSpecification = originalOrderSpecificationList.get(index);
+                    orderExpression = originalOrderSpecification.expression;
+                    if (orderExpression instanceof Reference) {
+                        final Identifier columnIdentifier = Reference.class.cast(orderExpression).columnIdentifier;
+                        final int resultColumnIndex = this.context.finallyResultColumnAliasList.indexOf(columnIdentifier);
+                        if (resultColumnIndex >= 0) {
+                            orderExpression = this.context.finallyResultColumnExpressionIndexMap.get(resultColumnIndex);
+                        }
+                    }
+                    if (orderExpression instanceof Aggregation) {
+                        this.analyzeHiddenAggregation(orderExpression);
+                    } else if (!(orderExpression instanceof Reference || isGroupFunction(orderExpression))) {
+                        throw new CrabsException("Invalid expression[" + orderExpression + "] in order by clause.");
+                    }
+                    columnIndexes[index] = resolveColumnIndex(this.context, orderExpression);
+                    ascendingOrders[index] = originalOrderSpecification.ascendingOrder;
+                }
+                // percentiles是多值聚合，不能直接作为terms聚合的排序依据
+                if (size == 1
+                        && this.isTermsGroupedByOneColumn()
+                        && !(orderExpression instanceof PercentileFunction)) {
+                    final boolean ascendingOrder = ascendingOrders[0];
+                    if (orderExpression instanceof Reference) {
+                        this.context.groupOrder = Terms.Order.term(ascendingOrder);
+                    } else if (orderExpression instanceof CountFunction
+                            && Reference.class.cast(((CountFunction) orderExpression).getOperandExpression(0))
+                            .columnIdentifier.equals(Reference.ALL_COLUMN_IDENTIFIER)) {
+                        this.context.groupOrder = Terms.Order.count(ascendingOrder);
+                    } else {
+                        this.context.groupOrder = Terms.Order.aggregation(
+                                String.valueOf(columnIndexes[0]),
+                                ascendingOrder
+                        );
+                        this.groupOrderAggregation = (Aggregation) orderExpression;
+                        this.groupOrderAscending = ascendingOrder;
+                    }
+                } else {
+                    this.context.rowOrder = new AggregationRowOrder(columnIndexes, ascendingOrders);
                 }
             }
 
+            /**
+             * 只以一个普通字段分组时只有一层terms聚合，order by和limit才能下推
+             */
+            private boolean isTermsGroupedByOneColumn() {
+                return this.context.finallyGroupColumnIdentifierList.size() == 1
+                        && !this.context.flatGroup
+                        && this.context.finallyGroupFunctionMap.isEmpty();
+            }
+
+            /**
+             * 分组顺序由elasticsearch决定且不需要在客户端过滤分组时，limit下推为terms聚合的size
+             */
             private void analyzeLimitClause() throws CrabsException {
-                if (this.context.statement.limitClause != null) {
-                    throw new CrabsException(
-                            "For aggregation, limit clause is not supported."
+                this.context.limitPushedDown = this.context.statement.limitClause != null
+                        && this.isTermsGroupedByOneColumn()
+                        && this.context.finallyHavingConditionExpression == null
+                        && this.context.rowOrder == null;
+                analyzeLimitClause(this.context);
+            }
+
+            static void analyzeLimitClause(final AggregationNormalSearchExecuteContext context) throws CrabsException {
+                final LimitClause limitClause = context.statement.limitClause;
+                if (limitClause == null) {
+                    return;
+                }
+                final Expression offsetExpression = limitClause.offset;
+                if (offsetExpression instanceof Argument) {
+                    context.offset = Integer.parseInt(
+                            context.argumentValue(Argument.class.cast(offsetExpression)).toString()
+                    );
+                } else {
+                    context.offset = Integer.parseInt(
+                            Constant.class.cast(offsetExpression).value.toString()
                     );
                 }
+                context.rowCount = NonAggregationNormalSearchExecutePlan.limitRowCount(context);
             }
 
         }
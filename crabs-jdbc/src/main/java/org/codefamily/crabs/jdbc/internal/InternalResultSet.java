@@ -6,6 +6,7 @@ import org.codefamily.crabs.exception.CrabsException;
 
 import java.io.Closeable;
 import java.io.IOException;
+import java.util.Date;
 
 public abstract class InternalResultSet implements Closeable {
 
@@ -27,9 +28,46 @@ public abstract class InternalResultSet implements Closeable {
 
     public abstract InternalMetaData getMetaData();
 
-    public abstract Object getColumnValue(Identifier columnIdentifier);
+    public abstract Object getColumnValue(Identifier columnIdentifier) throws CrabsException;
 
-    public abstract Object getColumnValue(int columnIndex);
+    public abstract Object getColumnValue(int columnIndex) throws CrabsException;
+
+    /**
+     * 列值是否以基本类型存储，LONG、INTEGER、DATE、BOOLEAN类型的列存储为long（DATE为毫秒数，BOOLEAN为1或0），
+     * DOUBLE、FLOAT类型的列存储为double，此时可以通过{@link #getLongColumnValue(int)}或
+     * {@link #getDoubleColumnValue(int)}直接读取，避免装箱
+     */
+    public boolean isPrimitiveColumn(final int columnIndex) {
+        return false;
+    }
+
+    public boolean isColumnValueNull(final int columnIndex) throws CrabsException {
+        return this.getColumnValue(columnIndex) == null;
+    }
+
+    public long getLongColumnValue(final int columnIndex) throws CrabsException {
+        final Object value = this.getColumnValue(columnIndex);
+        if (value == null) {
+            return 0L;
+        } else if (value instanceof Number) {
+            return ((Number) value).longValue();
+        } else if (value instanceof Boolean) {
+            return ((Boolean) value) ? 1L : 0L;
+        } else if (value instanceof Date) {
+            return ((Date) value).getTime();
+        }
+        throw new CrabsException("Can not cast " + value.getClass().getName() + " value to long.");
+    }
+
+    public double getDoubleColumnValue(final int columnIndex) throws CrabsException {
+        final Object value = this.getColumnValue(columnIndex);
+        if (value == null) {
+            return 0D;
+        } else if (value instanceof Number) {
+            return ((Number) value).doubleValue();
+        }
+        return this.getLongColumnValue(columnIndex);
+    }
 
     public abstract boolean next() throws CrabsException;
 
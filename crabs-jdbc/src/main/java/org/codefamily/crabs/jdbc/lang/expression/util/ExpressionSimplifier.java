@@ -0,0 +1,866 @@
+package org.codefamily.crabs.jdbc.lang.expression.util;
+
+import org.codefamily.crabs.util.ReadonlyList;
+import org.codefamily.crabs.core.DataType;
+import org.codefamily.crabs.core.exception.UnsupportedDataTypeException;
+import org.codefamily.crabs.exception.CrabsException;
+import org.codefamily.crabs.jdbc.lang.Expression;
+import org.codefamily.crabs.jdbc.lang.expression.Argument;
+import org.codefamily.crabs.jdbc.lang.expression.Constant;
+import org.codefamily.crabs.jdbc.lang.expression.NonAggregation;
+import org.codefamily.crabs.jdbc.lang.expression.Reference;
+import org.codefamily.crabs.jdbc.lang.extension.expression.*;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+
+/**
+ * 条件表达式的化简：折叠常量运算和常量之间的比较，展平嵌套的AND、OR，
+ * 把OR中同一列的等值比较合并为一个IN，把AND中同一列的比较合并为一个范围，去掉重复的操作数和IN中重复的值，以及恒真、恒假的操作数。
+ * elasticsearch的字段可以有多个值，同一文档可以分别以不同的值满足同一列上的不同比较，
+ * 因此只有单值的列才合并上下界、判断等值比较与范围的矛盾，多值的列只合并同一方向的比较。
+ * 参数的值在执行时才确定，化简只改变参数所在的位置，不依赖参数的值，化简结果可以被同一语句的多次执行复用；
+ * 执行时以{@link #bindArguments(Expression, Object[])}绑定参数值后可以再次化简
+ */
+public final class ExpressionSimplifier {
+
+    public static final Constant TRUE = new Constant(Boolean.TRUE);
+
+    public static final Constant FALSE = new Constant(Boolean.FALSE);
+
+    /**
+     * 判断列是否只有一个值
+     */
+    public interface SingleValuedColumns {
+
+        boolean isSingleValued(Reference reference);
+
+    }
+
+    /**
+     * 所有列都可能有多个值
+     */
+    public static final SingleValuedColumns NO_SINGLE_VALUED_COLUMNS = new SingleValuedColumns() {
+
+        @Override
+        public final boolean isSingleValued(final Reference reference) {
+            return false;
+        }
+
+    };
+
+    /**
+     * 按所有列都可能有多个值化简
+     *
+     * @return 化简后的条件，恒真时返回{@link #TRUE}，恒假时返回{@link #FALSE}
+     */
+    public static Expression simplifyCondition(final Expression expression) throws CrabsException {
+        return simplifyCondition(expression, NO_SINGLE_VALUED_COLUMNS);
+    }
+
+    /**
+     * @param singleValuedColumns 只有一个值的列，这些列上的比较可以合并为一个范围
+     * @return 化简后的条件，恒真时返回{@link #TRUE}，恒假时返回{@link #FALSE}
+     */
+    public static Expression simplifyCondition(final Expression expression,
+                                               final SingleValuedColumns singleValuedColumns) throws CrabsException {
+        if (expression == null) {
+            throw new IllegalArgumentException("Argument[expression] is null.");
+        }
+        if (singleValuedColumns == null) {
+            throw new IllegalArgumentException("Argument[singleValuedColumns] is null.");
+        }
+        return simplify(expression, singleValuedColumns);
+    }
+
+    /**
+     * 以本次执行的参数值代替条件中的参数，之后可以再次化简，得到由参数值决定的恒真、恒假以及范围。
+     * 没有对应的参数值、参数值为null或者类型不能作为常量时保留参数，由执行时报告错误
+     */
+    public static Expression bindArguments(final Expression expression,
+                                           final Object[] argumentValues) throws CrabsException {
+        if (expression == null) {
+            throw new IllegalArgumentException("Argument[expression] is null.");
+        }
+        if (argumentValues == null) {
+            throw new IllegalArgumentException("Argument[argumentValues] is null.");
+        }
+        if (expression instanceof Argument) {
+            final int index = ((Argument) expression).index;
+            if (index >= argumentValues.length || argumentValues[index] == null) {
+                return expression;
+            }
+            try {
+                return new Constant(argumentValues[index]);
+            } catch (UnsupportedDataTypeException e) {
+                return expression;
+            }
+        }
+        if (!(expression instanceof NonAggregation)) {
+            return expression;
+        }
+        final ReadonlyList<Expression> operandExpressionList = expression.getOperandExpressionList();
+        final int operandExpressionCount = operandExpressionList.size();
+        final Expression[] operandExpressions = new Expression[operandExpressionCount];
+        boolean changed = false;
+        for (int index = 0; index < operandExpressionCount; index++) {
+            final Expression operandExpression = operandExpressionList.get(index);
+            operandExpressions[index] = bindArguments(operandExpression, argumentValues);
+            changed |= operandExpressions[index] != operandExpression;
+        }
+        if (!changed) {
+            return expression;
+        }
+        if (expression instanceof RangeExpression) {
+            final RangeExpression rangeExpression = (RangeExpression) expression;
+            return new RangeExpression(
+                    operandExpressions[0],
+                    operandExpressions[1],
+                    rangeExpression.includeLower,
+                    operandExpressions[2],
+                    rangeExpression.includeUpper
+            );
+        }
+        return ExtensionExpressionFactory.newExtensionExpression(expression.getClass(), operandExpressions);
+    }
+
+    public static boolean isTrue(final Expression expression) {
+        return TRUE.equals(expression);
+    }
+
+    public static boolean isFalse(final Expression expression) {
+        return FALSE.equals(expression);
+    }
+
+    private ExpressionSimplifier() {
+        // nothing to do.
+    }
+
+    private static Expression simplify(final Expression expression,
+                                       final SingleValuedColumns singleValuedColumns) throws CrabsException {
+        if (!(expression instanceof NonAggregation)) {
+            return expression;
+        }
+        if (expression instanceof RangeExpression) {
+            // 范围由化简得到，操作数已经化简，绑定参数值之后上下界可能为空
+            return isEmptyRange(expression) ? FALSE : expression;
+        }
+        final ReadonlyList<Expression> operandExpressionList = expression.getOperandExpressionList();
+        final int operandExpressionCount = operandExpressionList.size();
+        final Expression[] operandExpressions = new Expression[operandExpressionCount];
+        boolean changed = false;
+        for (int index = 0; index < operandExpressionCount; index++) {
+            final Expression operandExpression = operandExpressionList.get(index);
+            operandExpressions[index] = simplify(operandExpression, singleValuedColumns);
+            changed |= operandExpressions[index] != operandExpression;
+        }
+        if (expression instanceof PreferentialExpression) {
+            // 表达式树已经表示了优先级
+            return operandExpressions[0];
+        } else if (expression instanceof AndExpression) {
+            return simplifyJunction(operandExpressions, true, singleValuedColumns);
+        } else if (expression instanceof OrExpression) {
+            return simplifyJunction(operandExpressions, false, singleValuedColumns);
+        } else if (expression instanceof NotExpression) {
+            final Expression operandExpression = operandExpressions[0];
+            if (isTrue(operandExpression)) {
+                return FALSE;
+            } else if (isFalse(operandExpression)) {
+                return TRUE;
+            } else if (operandExpression instanceof NotExpression) {
+                return ((NotExpression) operandExpression).getOperandExpression(0);
+            }
+            return changed ? new NotExpression(operandExpression) : expression;
+        } else if (expression instanceof InExpression) {
+            return simplifyIn(expression, operandExpressions, changed);
+        }
+        Expression foldedExpression = null;
+        if (expression instanceof PositiveExpression || expression instanceof NegativeExpression) {
+            final Constant constant = asNumber(operandExpressions[0]);
+            if (constant != null) {
+                foldedExpression = expression instanceof PositiveExpression ? constant : negate(constant);
+            }
+        } else if (operandExpressionCount == 2
+                && operandExpressions[0] instanceof Constant
+                && operandExpressions[1] instanceof Constant) {
+            foldedExpression = fold(expression, (Constant) operandExpressions[0], (Constant) operandExpressions[1]);
+        }
+        if (foldedExpression != null) {
+            return foldedExpression;
+        }
+        final Expression simplifiedExpression = changed
+                ? ExtensionExpressionFactory.newExtensionExpression(expression.getClass(), operandExpressions)
+                : expression;
+        if (simplifiedExpression instanceof BetweenExpression && isEmptyRange(simplifiedExpression)) {
+            return FALSE;
+        }
+        return simplifiedExpression;
+    }
+
+    /**
+     * 一个between或者范围对应一个range过滤器，上下界都是数值常量且范围为空时恒假，与列是否有多个值无关
+     */
+    private static boolean isEmptyRange(final Expression expression) throws CrabsException {
+        final Reference reference = getRangeReference(expression);
+        if (reference == null) {
+            return false;
+        }
+        final Range range = new Range(reference);
+        range.addBounds(expression);
+        return !range.merge();
+    }
+
+    /**
+     * 展平同类的操作数，去掉不影响结果的恒真（AND）或恒假（OR）操作数以及重复的操作数
+     */
+    private static Expression simplifyJunction(final Expression[] operandExpressions,
+                                               final boolean conjunction,
+                                               final SingleValuedColumns singleValuedColumns) throws CrabsException {
+        final Constant identity = conjunction ? TRUE : FALSE;
+        final Constant absorbing = conjunction ? FALSE : TRUE;
+        final LinkedHashSet<Expression> operandExpressionSet = new LinkedHashSet<Expression>();
+        for (Expression operandExpression : operandExpressions) {
+            if (operandExpression.equals(absorbing)) {
+                return absorbing;
+            }
+            if (conjunction ? operandExpression instanceof AndExpression : operandExpression instanceof OrExpression) {
+                final ReadonlyList<Expression> nestedExpressionList = operandExpression.getOperandExpressionList();
+                for (int index = 0, size = nestedExpressionList.size(); index < size; index++) {
+                    operandExpressionSet.add(nestedExpressionList.get(index));
+                }
+            } else if (!operandExpression.equals(identity)) {
+                operandExpressionSet.add(operandExpression);
+            }
+        }
+        final ArrayList<Expression> operandExpressionList = new ArrayList<Expression>(operandExpressionSet);
+        if (!conjunction) {
+            mergeEqualities(operandExpressionList);
+        } else if (!mergeRanges(operandExpressionList, singleValuedColumns)) {
+            return FALSE;
+        }
+        final int size = operandExpressionList.size();
+        if (size == 0) {
+            return identity;
+        } else if (size == 1) {
+            return operandExpressionList.get(0);
+        }
+        final Expression[] expressions = new Expression[size];
+        for (int index = 0; index < size; index++) {
+            final Expression operandExpression = operandExpressionList.get(index);
+            // 去掉括号后OR作为AND的操作数时，保留括号以便输出的SQL与表达式树一致
+            expressions[index] = conjunction && operandExpression instanceof OrExpression
+                    ? new PreferentialExpression(operandExpression) : operandExpression;
+        }
+        return conjunction ? new AndExpression(expressions) : new OrExpression(expressions);
+    }
+
+    /**
+     * OR中同一列与常量或参数的等值比较以及IN合并为一个IN，合并后的IN放在该列第一次出现的位置
+     */
+    private static void mergeEqualities(final ArrayList<Expression> operandExpressionList) throws CrabsException {
+        final LinkedHashMap<Reference, LinkedHashSet<Expression>> valueSetMap
+                = new LinkedHashMap<Reference, LinkedHashSet<Expression>>();
+        final LinkedHashMap<Reference, Integer> operandCountMap = new LinkedHashMap<Reference, Integer>();
+        for (int index = 0, size = operandExpressionList.size(); index < size; index++) {
+            final Expression operandExpression = operandExpressionList.get(index);
+            final Reference reference = getEqualityReference(operandExpression);
+            if (reference != null) {
+                LinkedHashSet<Expression> valueSet = valueSetMap.get(reference);
+                if (valueSet == null) {
+                    valueSet = new LinkedHashSet<Expression>();
+                    valueSetMap.put(reference, valueSet);
+                    operandCountMap.put(reference, 0);
+                }
+                addEqualityValues(operandExpression, valueSet);
+                operandCountMap.put(reference, operandCountMap.get(reference) + 1);
+            }
+        }
+        for (int index = 0; index < operandExpressionList.size(); ) {
+            final Reference reference = getEqualityReference(operandExpressionList.get(index));
+            if (reference == null || operandCountMap.get(reference) < 2) {
+                index++;
+                continue;
+            }
+            final LinkedHashSet<Expression> valueSet = valueSetMap.remove(reference);
+            if (valueSet == null) {
+                // 已经合并到该列第一次出现的位置
+                operandExpressionList.remove(index);
+                continue;
+            }
+            final Expression[] expressions = new Expression[valueSet.size() + 1];
+            expressions[0] = reference;
+            int valueIndex = 1;
+            for (Expression value : valueSet) {
+                expressions[valueIndex++] = value;
+            }
+            operandExpressionList.set(index, new InExpression(expressions));
+            index++;
+        }
+    }
+
+    /**
+     * @return 列与常量或参数的等值比较以及IN中的列，其他表达式返回null
+     */
+    private static Reference getEqualityReference(final Expression expression) throws CrabsException {
+        if (expression instanceof EqualToExpression) {
+            final Expression operandExpression1 = ((EqualToExpression) expression).getOperandExpression(0);
+            final Expression operandExpression2 = ((EqualToExpression) expression).getOperandExpression(1);
+            if (operandExpression1 instanceof Reference && isValue(operandExpression2)) {
+                return (Reference) operandExpression1;
+            } else if (operandExpression2 instanceof Reference && isValue(operandExpression1)) {
+                return (Reference) operandExpression2;
+            }
+        } else if (expression instanceof InExpression) {
+            final InExpression inExpression = (InExpression) expression;
+            if (!(inExpression.getOperandExpression(0) instanceof Reference)) {
+                return null;
+            }
+            for (int index = 1; index <= inExpression.expressionCountInSet; index++) {
+                if (!isValue(inExpression.getOperandExpression(index))) {
+                    return null;
+                }
+            }
+            return (Reference) inExpression.getOperandExpression(0);
+        }
+        return null;
+    }
+
+    private static void addEqualityValues(final Expression expression,
+                                          final LinkedHashSet<Expression> valueSet) {
+        if (expression instanceof EqualToExpression) {
+            final Expression operandExpression1 = ((EqualToExpression) expression).getOperandExpression(0);
+            final Expression operandExpression2 = ((EqualToExpression) expression).getOperandExpression(1);
+            valueSet.add(operandExpression1 instanceof Reference ? operandExpression2 : operandExpression1);
+        } else {
+            final InExpression inExpression = (InExpression) expression;
+            for (int index = 1; index <= inExpression.expressionCountInSet; index++) {
+                valueSet.add(inExpression.getOperandExpression(index));
+            }
+        }
+    }
+
+    /**
+     * AND中单值的列上的比较和between合并为一个范围，上界、下界各取最严格的一个，合并后放在该列第一次出现的位置；
+     * 同一列有多个上界或多个下界时，只有都是数值常量才能比较，否则该列保持原样。
+     * 数值常量的范围为空，或者等值比较的常量在范围之外时条件恒假；不等比较的常量在范围之外时恒真，直接去掉。
+     * 多值的列只把同一方向的多个比较合并为最严格的一个，between、范围以及等值、不等比较保持原样
+     *
+     * @return 条件恒假时返回false
+     */
+    private static boolean mergeRanges(final ArrayList<Expression> operandExpressionList,
+                                       final SingleValuedColumns singleValuedColumns) throws CrabsException {
+        final LinkedHashMap<Object, Range> rangeMap = new LinkedHashMap<Object, Range>();
+        for (int index = 0, size = operandExpressionList.size(); index < size; index++) {
+            final Expression operandExpression = operandExpressionList.get(index);
+            final Object rangeKey = getRangeKey(operandExpression, singleValuedColumns);
+            if (rangeKey != null) {
+                Range range = rangeMap.get(rangeKey);
+                if (range == null) {
+                    range = new Range(getRangeReference(operandExpression));
+                    rangeMap.put(rangeKey, range);
+                }
+                range.addBounds(operandExpression);
+            }
+        }
+        if (rangeMap.isEmpty()) {
+            return true;
+        }
+        for (Range range : rangeMap.values()) {
+            if (!range.merge()) {
+                return false;
+            }
+        }
+        for (int index = 0; index < operandExpressionList.size(); ) {
+            final Expression operandExpression = operandExpressionList.get(index);
+            final Object rangeKey = getRangeKey(operandExpression, singleValuedColumns);
+            if (rangeKey != null) {
+                final Range range = rangeMap.get(rangeKey);
+                if (range.mergedExpression == null) {
+                    index++;
+                } else if (range.mergedExpressionIndex < 0) {
+                    range.mergedExpressionIndex = index;
+                    operandExpressionList.set(index++, range.mergedExpression);
+                } else {
+                    operandExpressionList.remove(index);
+                }
+                continue;
+            }
+            if (operandExpression instanceof EqualToExpression || operandExpression instanceof UnequalToExpression) {
+                final Expression operandExpression1 = ((NonAggregation) operandExpression).getOperandExpression(0);
+                final Expression operandExpression2 = ((NonAggregation) operandExpression).getOperandExpression(1);
+                final Range range;
+                final Constant constant;
+                // 多值的列的范围以列和方向为key，不会在这里取到
+                if (operandExpression1 instanceof Reference && operandExpression2 instanceof Constant) {
+                    range = rangeMap.get((Reference) operandExpression1);
+                    constant = (Constant) operandExpression2;
+                } else if (operandExpression2 instanceof Reference && operandExpression1 instanceof Constant) {
+                    range = rangeMap.get((Reference) operandExpression2);
+                    constant = (Constant) operandExpression1;
+                } else {
+                    range = null;
+                    constant = null;
+                }
+                if (range != null && range.excludes(constant)) {
+                    if (operandExpression instanceof EqualToExpression) {
+                        return false;
+                    }
+                    // 不等比较恒真
+                    operandExpressionList.remove(index);
+                    continue;
+                }
+            }
+            index++;
+        }
+        return true;
+    }
+
+    /**
+     * 可以合并为一个范围的比较有相同的key：单值的列为列本身；多值的列为列和比较的方向，between和范围不与其他比较合并
+     *
+     * @return 不能合并的表达式返回null
+     */
+    private static Object getRangeKey(final Expression expression,
+                                      final SingleValuedColumns singleValuedColumns) throws CrabsException {
+        final Reference reference = getRangeReference(expression);
+        if (reference == null || singleValuedColumns.isSingleValued(reference)) {
+            return reference;
+        }
+        if (expression instanceof BetweenExpression || expression instanceof RangeExpression) {
+            return null;
+        }
+        return new BoundKey(reference, isLowerBound(expression));
+    }
+
+    /**
+     * 列与常量或参数的比较是否为下界，列在右侧时比较的方向相反
+     */
+    private static boolean isLowerBound(final Expression expression) throws CrabsException {
+        final boolean referenceFirst = expression.getOperandExpressionList().get(0) instanceof Reference;
+        final boolean greater = expression instanceof GreaterThanExpression
+                || expression instanceof GreaterThanOrEqualToExpression;
+        return greater == referenceFirst;
+    }
+
+    /**
+     * @return 列与常量或参数的比较、between以及合并得到的范围中的列，其他表达式返回null
+     */
+    private static Reference getRangeReference(final Expression expression) throws CrabsException {
+        if (expression instanceof GreaterThanExpression
+                || expression instanceof GreaterThanOrEqualToExpression
+                || expression instanceof LessThanExpression
+                || expression instanceof LessThanOrEqualToExpression) {
+            final ReadonlyList<Expression> operandExpressionList = expression.getOperandExpressionList();
+            if (operandExpressionList.get(0) instanceof Reference && isValue(operandExpressionList.get(1))) {
+                return (Reference) operandExpressionList.get(0);
+            } else if (operandExpressionList.get(1) instanceof Reference && isValue(operandExpressionList.get(0))) {
+                return (Reference) operandExpressionList.get(1);
+            }
+        } else if (expression instanceof BetweenExpression || expression instanceof RangeExpression) {
+            final ReadonlyList<Expression> operandExpressionList = expression.getOperandExpressionList();
+            if (operandExpressionList.get(0) instanceof Reference
+                    && isValue(operandExpressionList.get(1))
+                    && isValue(operandExpressionList.get(2))) {
+                return (Reference) operandExpressionList.get(0);
+            }
+        }
+        return null;
+    }
+
+    private static boolean isValue(final Expression expression) {
+        return expression instanceof Constant || expression instanceof Argument;
+    }
+
+    /**
+     * 去掉IN中重复的值
+     */
+    private static Expression simplifyIn(final Expression expression,
+                                         final Expression[] operandExpressions,
+                                         final boolean changed) {
+        final LinkedHashSet<Expression> valueSet = new LinkedHashSet<Expression>();
+        for (int index = 1; index < operandExpressions.length; index++) {
+            valueSet.add(operandExpressions[index]);
+        }
+        if (valueSet.size() == operandExpressions.length - 1) {
+            return changed ? new InExpression(operandExpressions) : expression;
+        }
+        final Expression[] expressions = new Expression[valueSet.size() + 1];
+        expressions[0] = operandExpressions[0];
+        int index = 1;
+        for (Expression value : valueSet) {
+            expressions[index++] = value;
+        }
+        return new InExpression(expressions);
+    }
+
+    /**
+     * 两个常量之间的算术运算和比较
+     *
+     * @return 无法折叠时返回null
+     */
+    private static Constant fold(final Expression expression,
+                                 final Constant constant1,
+                                 final Constant constant2) {
+        if (expression instanceof EqualToExpression || expression instanceof UnequalToExpression) {
+            final Integer result = compare(constant1, constant2);
+            if (result == null) {
+                return null;
+            }
+            return (result == 0) == (expression instanceof EqualToExpression) ? TRUE : FALSE;
+        } else if (expression instanceof GreaterThanExpression
+                || expression instanceof GreaterThanOrEqualToExpression
+                || expression instanceof LessThanExpression
+                || expression instanceof LessThanOrEqualToExpression) {
+            if (constant1.dataType == DataType.BOOLEAN) {
+                return null;
+            }
+            final Integer result = compare(constant1, constant2);
+            if (result == null) {
+                return null;
+            }
+            final boolean value;
+            if (expression instanceof GreaterThanExpression) {
+                value = result > 0;
+            } else if (expression instanceof GreaterThanOrEqualToExpression) {
+                value = result >= 0;
+            } else if (expression instanceof LessThanExpression) {
+                value = result < 0;
+            } else {
+                value = result <= 0;
+            }
+            return value ? TRUE : FALSE;
+        }
+        if (!(isNumber(constant1) && isNumber(constant2))) {
+            return null;
+        }
+        if (isInteger(constant1) && isInteger(constant2)) {
+            final long value1 = ((Number) constant1.value).longValue();
+            final long value2 = ((Number) constant2.value).longValue();
+            final long result;
+            if (expression instanceof AdditionExpression) {
+                result = value1 + value2;
+                if (((value1 ^ result) & (value2 ^ result)) < 0) {
+                    return null;
+                }
+            } else if (expression instanceof SubtractionExpression) {
+                result = value1 - value2;
+                if (((value1 ^ value2) & (value1 ^ result)) < 0) {
+                    return null;
+                }
+            } else if (expression instanceof MultiplicationExpression) {
+                result = value1 * value2;
+                if (value1 != 0 && (result / value1 != value2 || (value1 == -1 && value2 == Long.MIN_VALUE))) {
+                    return null;
+                }
+            } else if (expression instanceof DivisionExpression) {
+                // 相除取整
+                if (value2 == 0) {
+                    return null;
+                }
+                result = value1 / value2;
+            } else if (expression instanceof ModuloExpression) {
+                if (value2 == 0) {
+                    return null;
+                }
+                result = value1 % value2;
+            } else {
+                return null;
+            }
+            return toIntegerConstant(result);
+        }
+        final double value1 = ((Number) constant1.value).doubleValue();
+        final double value2 = ((Number) constant2.value).doubleValue();
+        final double result;
+        if (expression instanceof AdditionExpression) {
+            result = value1 + value2;
+        } else if (expression instanceof SubtractionExpression) {
+            result = value1 - value2;
+        } else if (expression instanceof MultiplicationExpression) {
+            result = value1 * value2;
+        } else if (expression instanceof DivisionExpression) {
+            if (value2 == 0) {
+                return null;
+            }
+            result = value1 / value2;
+        } else {
+            return null;
+        }
+        if (constant1.dataType == DataType.DOUBLE || constant2.dataType == DataType.DOUBLE) {
+            return new Constant(result);
+        }
+        return new Constant((float) result);
+    }
+
+    /**
+     * @return 类型不可比较时返回null
+     */
+    private static Integer compare(final Constant constant1, final Constant constant2) {
+        if (isNumber(constant1) && isNumber(constant2)) {
+            if (isInteger(constant1) && isInteger(constant2)) {
+                final long value1 = ((Number) constant1.value).longValue();
+                final long value2 = ((Number) constant2.value).longValue();
+                return value1 < value2 ? -1 : (value1 == value2 ? 0 : 1);
+            }
+            return Double.compare(((Number) constant1.value).doubleValue(), ((Number) constant2.value).doubleValue());
+        }
+        if (constant1.dataType != constant2.dataType) {
+            return null;
+        }
+        switch (constant1.dataType) {
+            case STRING:
+                return ((String) constant1.value).compareTo((String) constant2.value);
+            case BOOLEAN:
+                return constant1.value.equals(constant2.value) ? 0 : 1;
+            default:
+                return null;
+        }
+    }
+
+    private static Constant asNumber(final Expression expression) {
+        if (expression instanceof Constant && isNumber((Constant) expression)) {
+            return (Constant) expression;
+        }
+        return null;
+    }
+
+    private static Constant negate(final Constant constant) {
+        switch (constant.dataType) {
+            case LONG:
+                final long longValue = (Long) constant.value;
+                return longValue == Long.MIN_VALUE ? null : toIntegerConstant(-longValue);
+            case INTEGER:
+                return toIntegerConstant(-((Integer) constant.value).longValue());
+            case DOUBLE:
+                return new Constant((Double) constant.value * -1);
+            case FLOAT:
+                return new Constant((Float) constant.value * -1);
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * 与语法分析中整数常量的类型一致
+     */
+    private static Constant toIntegerConstant(final long value) {
+        if (value > Integer.MIN_VALUE && value <= Integer.MAX_VALUE) {
+            return new Constant((int) value);
+        }
+        return new Constant(value);
+    }
+
+    /**
+     * 同一列的上界和下界
+     */
+    private static final class Range {
+
+        Range(final Reference reference) {
+            this.reference = reference;
+            this.lowerBoundList = new ArrayList<Bound>();
+            this.upperBoundList = new ArrayList<Bound>();
+            this.mergedExpressionIndex = -1;
+        }
+
+        final Reference reference;
+
+        final ArrayList<Bound> lowerBoundList;
+
+        final ArrayList<Bound> upperBoundList;
+
+        // 来自几个操作数
+        int operandCount;
+
+        Bound lowerBound;
+
+        Bound upperBound;
+
+        // 只有一个操作数或者无法合并时为null
+        Expression mergedExpression;
+
+        int mergedExpressionIndex;
+
+        final void addBounds(final Expression expression) throws CrabsException {
+            this.operandCount++;
+            final ReadonlyList<Expression> operandExpressionList = expression.getOperandExpressionList();
+            if (expression instanceof BetweenExpression) {
+                this.lowerBoundList.add(new Bound(operandExpressionList.get(1), true));
+                this.upperBoundList.add(new Bound(operandExpressionList.get(2), true));
+            } else if (expression instanceof RangeExpression) {
+                final RangeExpression rangeExpression = (RangeExpression) expression;
+                this.lowerBoundList.add(new Bound(operandExpressionList.get(1), rangeExpression.includeLower));
+                this.upperBoundList.add(new Bound(operandExpressionList.get(2), rangeExpression.includeUpper));
+            } else {
+                final boolean referenceFirst = operandExpressionList.get(0) instanceof Reference;
+                final Expression value = operandExpressionList.get(referenceFirst ? 1 : 0);
+                final boolean inclusive = expression instanceof GreaterThanOrEqualToExpression
+                        || expression instanceof LessThanOrEqualToExpression;
+                (isLowerBound(expression) ? this.lowerBoundList : this.upperBoundList).add(new Bound(value, inclusive));
+            }
+        }
+
+        /**
+         * @return 范围为空时返回false
+         */
+        final boolean merge() {
+            this.lowerBound = tightestBound(this.lowerBoundList, true);
+            this.upperBound = tightestBound(this.upperBoundList, false);
+            if ((this.lowerBound == null && !this.lowerBoundList.isEmpty())
+                    || (this.upperBound == null && !this.upperBoundList.isEmpty())) {
+                // 无法比较，保持原样
+                this.lowerBound = null;
+                this.upperBound = null;
+                return true;
+            }
+            if (this.lowerBound != null && this.upperBound != null) {
+                final Constant lowerValue = asNumber(this.lowerBound.value);
+                final Constant upperValue = asNumber(this.upperBound.value);
+                if (lowerValue != null && upperValue != null) {
+                    final int result = compare(lowerValue, upperValue);
+                    if (result > 0 || (result == 0 && !(this.lowerBound.inclusive && this.upperBound.inclusive))) {
+                        return false;
+                    }
+                }
+            }
+            if (this.operandCount > 1) {
+                this.mergedExpression = this.toExpression();
+            }
+            return true;
+        }
+
+        /**
+         * @return 常量一定在范围之外时返回true
+         */
+        final boolean excludes(final Constant constant) {
+            if (asNumber(constant) == null) {
+                return false;
+            }
+            if (this.lowerBound != null && asNumber(this.lowerBound.value) != null) {
+                final int result = compare(constant, (Constant) this.lowerBound.value);
+                if (result < 0 || (result == 0 && !this.lowerBound.inclusive)) {
+                    return true;
+                }
+            }
+            if (this.upperBound != null && asNumber(this.upperBound.value) != null) {
+                final int result = compare(constant, (Constant) this.upperBound.value);
+                if (result > 0 || (result == 0 && !this.upperBound.inclusive)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private Expression toExpression() {
+            final Bound lowerBound = this.lowerBound;
+            final Bound upperBound = this.upperBound;
+            if (lowerBound != null && upperBound != null) {
+                if (lowerBound.inclusive && upperBound.inclusive) {
+                    return new BetweenExpression(this.reference, lowerBound.value, upperBound.value);
+                }
+                return new RangeExpression(
+                        this.reference,
+                        lowerBound.value,
+                        lowerBound.inclusive,
+                        upperBound.value,
+                        upperBound.inclusive
+                );
+            } else if (lowerBound != null) {
+                return lowerBound.inclusive ? new GreaterThanOrEqualToExpression(this.reference, lowerBound.value)
+                        : new GreaterThanExpression(this.reference, lowerBound.value);
+            } else {
+                return upperBound.inclusive ? new LessThanOrEqualToExpression(this.reference, upperBound.value)
+                        : new LessThanExpression(this.reference, upperBound.value);
+            }
+        }
+
+        /**
+         * 下界取最大的，上界取最小的，相等时不包含边界的更严格
+         *
+         * @return 没有边界，或者有多个边界但不都是数值常量时返回null
+         */
+        private static Bound tightestBound(final ArrayList<Bound> boundList, final boolean lower) {
+            final int size = boundList.size();
+            if (size == 0) {
+                return null;
+            }
+            Bound tightestBound = boundList.get(0);
+            if (size == 1) {
+                return tightestBound;
+            }
+            if (asNumber(tightestBound.value) == null) {
+                return null;
+            }
+            for (int index = 1; index < size; index++) {
+                final Bound bound = boundList.get(index);
+                if (asNumber(bound.value) == null) {
+                    return null;
+                }
+                final int result = compare((Constant) bound.value, (Constant) tightestBound.value);
+                if ((lower ? result > 0 : result < 0) || (result == 0 && !bound.inclusive)) {
+                    tightestBound = bound;
+                }
+            }
+            return tightestBound;
+        }
+
+    }
+
+    /**
+     * 多值的列上同一方向的比较
+     */
+    private static final class BoundKey {
+
+        BoundKey(final Reference reference, final boolean lower) {
+            this.reference = reference;
+            this.lower = lower;
+        }
+
+        final Reference reference;
+
+        final boolean lower;
+
+        @Override
+        public final int hashCode() {
+            return this.reference.hashCode() * 31 + (this.lower ? 1 : 0);
+        }
+
+        @Override
+        public final boolean equals(final Object object) {
+            if (object == this) {
+                return true;
+            }
+            if (object instanceof BoundKey) {
+                final BoundKey that = (BoundKey) object;
+                return this.lower == that.lower && this.reference.equals(that.reference);
+            }
+            return false;
+        }
+
+    }
+
+    private static final class Bound {
+
+        Bound(final Expression value, final boolean inclusive) {
+            this.value = value;
+            this.inclusive = inclusive;
+        }
+
+        final Expression value;
+
+        final boolean inclusive;
+
+    }
+
+    private static boolean isNumber(final Constant constant) {
+        final DataType dataType = constant.dataType;
+        return dataType == DataType.LONG
+                || dataType == DataType.INTEGER
+                || dataType == DataType.DOUBLE
+                || dataType == DataType.FLOAT;
+    }
+
+    private static boolean isInteger(final Constant constant) {
+        return constant.dataType == DataType.LONG || constant.dataType == DataType.INTEGER;
+    }
+
+}
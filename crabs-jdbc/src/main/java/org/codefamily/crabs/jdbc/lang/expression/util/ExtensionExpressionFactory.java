@@ -192,7 +192,12 @@ public final class ExtensionExpressionFactory {
             } catch (IllegalAccessException e) {
                 throw new RuntimeException(e.getMessage(), e);
             } catch (InvocationTargetException e) {
-                throw new RuntimeException(e.getMessage(), e);
+                // 构造方法对操作数的校验失败，保留其异常信息
+                final Throwable cause = e.getCause();
+                if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                }
+                throw new RuntimeException(cause.getMessage(), cause);
             }
         }
 
@@ -0,0 +1,48 @@
+package org.codefamily.crabs.jdbc.lang.extension.clause;
+
+import org.codefamily.crabs.util.ReadonlyList;
+import org.codefamily.crabs.core.Identifier;
+import org.codefamily.crabs.jdbc.lang.Clause;
+import org.codefamily.crabs.jdbc.lang.Keyword;
+import org.codefamily.crabs.jdbc.lang.extension.ReservedKeyword;
+
+/**
+ * CREATE MATERIALIZED VIEW view AS，其后紧跟定义物化视图的查询语句
+ */
+public final class CreateMaterializedViewClause extends Clause {
+
+    public static final ReadonlyList<Keyword> PREFIX_KEYWORD_LIST
+            = ReadonlyList.newInstance((Keyword) ReservedKeyword.CREATE);
+
+    public static final String MATERIALIZED = "MATERIALIZED";
+
+    public static final String VIEW = "VIEW";
+
+    public CreateMaterializedViewClause(final String viewName) {
+        super(PREFIX_KEYWORD_LIST);
+        if (viewName == null) {
+            throw new IllegalArgumentException("Argument[viewName] is null.");
+        }
+        this.viewIdentifier = new Identifier(viewName);
+    }
+
+    public final Identifier viewIdentifier;
+
+    @Override
+    public final String toString() {
+        return this.getPrefixKeywordsString() + " " + MATERIALIZED + " " + VIEW + " "
+                + this.viewIdentifier + " " + ReservedKeyword.AS.getName() + " ";
+    }
+
+    @Override
+    public final int hashCode() {
+        return this.viewIdentifier.hashCode();
+    }
+
+    @Override
+    public final boolean equals(final Object object) {
+        return object != null && (object instanceof CreateMaterializedViewClause)
+                && ((CreateMaterializedViewClause) object).viewIdentifier.equals(this.viewIdentifier);
+    }
+
+}
@@ -29,7 +29,7 @@ public final class OrderByClause extends Clause {
     private ReadonlyList<Expression> orderExpressionList;
 
     public final ReadonlyList<Expression> getOrderExpressionList() {
-        final ReadonlyList<Expression> orderExpressionList = this.orderExpressionList;
+        ReadonlyList<Expression> orderExpressionList = this.orderExpressionList;
         if (orderExpressionList == null) {
             final ReadonlyList<OrderSpecification> resultColumnDeclareList = this.orderSpecificationList;
             final int resultColumnCount = resultColumnDeclareList.size();
@@ -37,7 +37,7 @@ public final class OrderByClause extends Clause {
             for (int i = 0; i < resultColumnCount; i++) {
                 orderExpressions[i] = resultColumnDeclareList.get(i).expression;
             }
-            this.orderExpressionList = ReadonlyList.newInstance(orderExpressions);
+            orderExpressionList = this.orderExpressionList = ReadonlyList.newInstance(orderExpressions);
         }
         return orderExpressionList;
     }
@@ -17,7 +17,22 @@ public final class SelectClause extends Clause {
     public SelectClause(final Boolean distinct,
                         final Expression topNExpression,
                         final ResultColumnDeclare... resultColumnDeclares) {
+        this(NO_HINTS, distinct, topNExpression, resultColumnDeclares);
+    }
+
+    public SelectClause(final Hint[] hints,
+                        final Boolean distinct,
+                        final Expression topNExpression,
+                        final ResultColumnDeclare... resultColumnDeclares) {
         super(PREFIX_KEYWORD_LIST);
+        if (hints == null) {
+            throw new IllegalArgumentException("Argument[hints] is null.");
+        }
+        for (int i = 0; i < hints.length; i++) {
+            if (hints[i] == null) {
+                throw new IllegalArgumentException("Argument[hints[" + i + "]] is null.");
+            }
+        }
         if (resultColumnDeclares == null) {
             throw new IllegalArgumentException("Argument[resultColumnDeclares] is null.");
         }
@@ -29,11 +44,19 @@ public final class SelectClause extends Clause {
                 throw new IllegalArgumentException("Argument[resultColumnDeclares[" + i + "]] is null.");
             }
         }
+        this.hintList = ReadonlyList.newInstance(hints);
         this.distinct = distinct;
         this.topNExpression = topNExpression;
         this.resultColumnDeclareList = ReadonlyList.newInstance(resultColumnDeclares);
     }
 
+    private static final Hint[] NO_HINTS = new Hint[0];
+
+    /**
+     * SELECT关键字之后以"/*+"开始的注释中给出的优化提示
+     */
+    public final ReadonlyList<Hint> hintList;
+
     public final Boolean distinct;
 
     public final Expression topNExpression;
@@ -59,6 +82,15 @@ public final class SelectClause extends Clause {
     public final String toString() {
         final StringBuilder stringBuilder = new StringBuilder();
         stringBuilder.append(this.getPrefixKeywordsString());
+        final ReadonlyList<Hint> hintList = this.hintList;
+        if (hintList.size() > 0) {
+            stringBuilder.append(" /*+");
+            for (int i = 0, hintCount = hintList.size(); i < hintCount; i++) {
+                stringBuilder.append(WHITESPACE);
+                stringBuilder.append(hintList.get(i).toString());
+            }
+            stringBuilder.append(" */");
+        }
         if (this.distinct != null && this.distinct) {
             stringBuilder.append(WHITESPACE);
             stringBuilder.append(ReservedKeyword.DISTINCT.getName());
@@ -84,6 +116,9 @@ public final class SelectClause extends Clause {
     public final boolean equals(final Object object) {
         if (object != null && object instanceof SelectClause) {
             final SelectClause that = (SelectClause) object;
+            if (!this.hintList.equals(that.hintList)) {
+                return false;
+            }
             final ReadonlyList<ResultColumnDeclare> thisResultColumnDeclareList = this.resultColumnDeclareList;
             final ReadonlyList<ResultColumnDeclare> thatResultColumnDeclareList = that.resultColumnDeclareList;
             if (thisResultColumnDeclareList.size() == thatResultColumnDeclareList.size()) {
@@ -99,6 +134,80 @@ public final class SelectClause extends Clause {
         return false;
     }
 
+    /**
+     * 优化提示，形如ROUTING(key1, key2)，名称大写，参数保持原样
+     */
+    public static final class Hint {
+
+        public static final String ROUTING = "ROUTING";
+
+        public static final String PREFERENCE = "PREFERENCE";
+
+        public static final String SHARDS = "SHARDS";
+
+        /**
+         * 不使用物化视图改写查询，直接查询语句中的type
+         */
+        public static final String NO_MATERIALIZED_VIEW = "NO_MATERIALIZED_VIEW";
+
+        public Hint(final String name, final String... arguments) {
+            if (name == null) {
+                throw new IllegalArgumentException("Argument[name] is null.");
+            }
+            if (arguments == null) {
+                throw new IllegalArgumentException("Argument[arguments] is null.");
+            }
+            for (int i = 0; i < arguments.length; i++) {
+                if (arguments[i] == null) {
+                    throw new IllegalArgumentException("Argument[arguments[" + i + "]] is null.");
+                }
+            }
+            this.name = name;
+            this.argumentList = ReadonlyList.newInstance(arguments);
+        }
+
+        public final String name;
+
+        public final ReadonlyList<String> argumentList;
+
+        @Override
+        public final String toString() {
+            final StringBuilder stringBuilder = new StringBuilder();
+            stringBuilder.append(this.name);
+            stringBuilder.append('(');
+            final ReadonlyList<String> argumentList = this.argumentList;
+            for (int i = 0, argumentCount = argumentList.size(); i < argumentCount; i++) {
+                if (i > 0) {
+                    stringBuilder.append(',');
+                }
+                stringBuilder.append(argumentList.get(i));
+            }
+            stringBuilder.append(')');
+            return stringBuilder.toString();
+        }
+
+        @Override
+        public final int hashCode() {
+            int hashCode = this.name.hashCode();
+            final ReadonlyList<String> argumentList = this.argumentList;
+            for (int i = 0, argumentCount = argumentList.size(); i < argumentCount; i++) {
+                hashCode = 31 * hashCode + argumentList.get(i).hashCode();
+            }
+            return hashCode;
+        }
+
+        @Override
+        public final boolean equals(final Object object) {
+            if (object != null && object instanceof Hint) {
+                final Hint that = (Hint) object;
+                return this.name.equals(that.name)
+                        && this.argumentList.equals(that.argumentList);
+            }
+            return false;
+        }
+
+    }
+
     public static final class ResultColumnDeclare {
 
         public ResultColumnDeclare(final String alias,
@@ -1,5 +1,6 @@
 package org.codefamily.crabs.jdbc.lang.extension.expression;
 
+import org.codefamily.crabs.util.ReadonlyList;
 import org.codefamily.crabs.core.DataType;
 import org.codefamily.crabs.exception.CrabsException;
 import org.codefamily.crabs.jdbc.lang.Expression;
@@ -12,10 +13,26 @@ public final class AndExpression extends NonAggregation {
         super(expression1, expression2);
     }
 
+    /**
+     * 多个操作数的AND，由嵌套的AND展平得到
+     */
+    public AndExpression(final Expression... expressions) {
+        super(expressions);
+        if (expressions.length < 2) {
+            throw new IllegalArgumentException("Expression count must be more than one.");
+        }
+    }
+
     @Override
-    protected final String doToString() {
-        return this.getOperandExpression(0).toString() + " AND "
-                + this.getOperandExpression(1).toString();
+    protected final String doToString() throws CrabsException {
+        final ReadonlyList<Expression> operandExpressionList = this.getOperandExpressionList();
+        final StringBuilder stringBuilder = new StringBuilder();
+        stringBuilder.append(operandExpressionList.get(0).toString());
+        for (int i = 1, operandExpressionCount = operandExpressionList.size(); i < operandExpressionCount; i++) {
+            stringBuilder.append(" AND ");
+            stringBuilder.append(operandExpressionList.get(i).toString());
+        }
+        return stringBuilder.toString();
     }
 
     @Override
@@ -0,0 +1,68 @@
+package org.codefamily.crabs.jdbc.lang.extension.expression;
+
+import org.codefamily.crabs.core.DataType;
+import org.codefamily.crabs.exception.CrabsException;
+import org.codefamily.crabs.jdbc.lang.Expression;
+import org.codefamily.crabs.jdbc.lang.expression.Aggregation;
+import org.codefamily.crabs.jdbc.lang.expression.Constant;
+import org.codefamily.crabs.jdbc.lang.expression.Function;
+
+/**
+ * APPROX_COUNT_DISTINCT(column[, precision])，precision为精确计数的阈值，
+ * 不同值的个数低于该阈值时结果接近精确值
+ */
+public final class ApproximateCountDistinctFunction extends Aggregation implements Function {
+
+    public static final String IDENTIFIER = "APPROX_COUNT_DISTINCT";
+
+    public ApproximateCountDistinctFunction(final Expression... expressions) throws CrabsException {
+        super(expressions);
+        if (expressions.length < 1 || expressions.length > 2) {
+            throw new IllegalArgumentException("Expect 1 or 2 arguments in " + IDENTIFIER + "().");
+        }
+        if (expressions.length == 2) {
+            final Expression precisionExpression = expressions[1];
+            if (!(precisionExpression instanceof Constant
+                    && (((Constant) precisionExpression).value instanceof Integer
+                    || ((Constant) precisionExpression).value instanceof Long)
+                    && ((Number) ((Constant) precisionExpression).value).longValue() > 0)) {
+                throw new IllegalArgumentException(
+                        "Precision of " + IDENTIFIER + "() must be a positive integer constant."
+                );
+            }
+            this.precision = ((Number) ((Constant) precisionExpression).value).longValue();
+        } else {
+            this.precision = -1L;
+        }
+    }
+
+    /**
+     * 精确计数的阈值，未指定时为-1
+     */
+    public final long precision;
+
+    @Override
+    public final String getIdentifier() {
+        return IDENTIFIER;
+    }
+
+    @Override
+    protected final String doToString() {
+        final StringBuilder stringBuilder = new StringBuilder();
+        stringBuilder.append(IDENTIFIER);
+        stringBuilder.append('(');
+        stringBuilder.append(this.getOperandExpression(0).toString());
+        if (this.precision > 0) {
+            stringBuilder.append(", ");
+            stringBuilder.append(this.getOperandExpression(1).toString());
+        }
+        stringBuilder.append(')');
+        return stringBuilder.toString();
+    }
+
+    @Override
+    public final DataType getResultType() throws CrabsException {
+        return DataType.LONG;
+    }
+
+}
@@ -0,0 +1,37 @@
+package org.codefamily.crabs.jdbc.lang.extension.expression;
+
+import org.codefamily.crabs.core.DataType;
+import org.codefamily.crabs.exception.CrabsException;
+import org.codefamily.crabs.jdbc.lang.Expression;
+import org.codefamily.crabs.jdbc.lang.expression.Aggregation;
+import org.codefamily.crabs.jdbc.lang.expression.Function;
+import org.codefamily.crabs.jdbc.lang.extension.ReservedKeyword;
+
+/**
+ * COUNT(DISTINCT ...)，由语法分析直接构造，不作为函数注册
+ */
+public final class CountDistinctFunction extends Aggregation implements Function {
+
+    public static final String IDENTIFIER = CountFunction.IDENTIFIER;
+
+    public CountDistinctFunction(final Expression expression) throws CrabsException {
+        super(expression);
+    }
+
+    @Override
+    public final String getIdentifier() {
+        return IDENTIFIER;
+    }
+
+    @Override
+    protected final String doToString() {
+        return IDENTIFIER + "(" + ReservedKeyword.DISTINCT.getName() + " "
+                + this.getOperandExpression(0).toString() + ")";
+    }
+
+    @Override
+    public final DataType getResultType() throws CrabsException {
+        return DataType.LONG;
+    }
+
+}
@@ -0,0 +1,63 @@
+package org.codefamily.crabs.jdbc.lang.extension.expression;
+
+import org.codefamily.crabs.core.DataType;
+import org.codefamily.crabs.exception.CrabsException;
+import org.codefamily.crabs.jdbc.lang.Expression;
+import org.codefamily.crabs.jdbc.lang.expression.Constant;
+import org.codefamily.crabs.jdbc.lang.expression.Function;
+import org.codefamily.crabs.jdbc.lang.expression.NonAggregation;
+
+import java.util.Arrays;
+
+/**
+ * DATE_TRUNC(unit, column)，将日期截断到指定的时间单位，只能作为分组表达式使用
+ */
+public final class DateTruncFunction extends NonAggregation implements Function {
+
+    public static final String IDENTIFIER = "DATE_TRUNC";
+
+    private static final String[] UNITS = {"second", "minute", "hour", "day", "week", "month", "quarter", "year"};
+
+    public DateTruncFunction(final Expression expression1, final Expression expression2) {
+        super(expression1, expression2);
+        this.unit = expression1 instanceof Constant && ((Constant) expression1).value instanceof String
+                ? toUnit((String) ((Constant) expression1).value) : null;
+        if (this.unit == null) {
+            throw new IllegalArgumentException(
+                    "Unit of " + IDENTIFIER + "() must be one of " + Arrays.toString(UNITS) + "."
+            );
+        }
+    }
+
+    private static String toUnit(final String value) {
+        final String unit = value.toLowerCase();
+        for (String candidate : UNITS) {
+            if (candidate.equals(unit)) {
+                return candidate;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 小写的时间单位
+     */
+    public final String unit;
+
+    @Override
+    public final String getIdentifier() {
+        return IDENTIFIER;
+    }
+
+    @Override
+    protected final String doToString() {
+        return IDENTIFIER + "(" + this.getOperandExpression(0).toString() + ", "
+                + this.getOperandExpression(1).toString() + ")";
+    }
+
+    @Override
+    public final DataType getResultType() throws CrabsException {
+        return DataType.DATE;
+    }
+
+}
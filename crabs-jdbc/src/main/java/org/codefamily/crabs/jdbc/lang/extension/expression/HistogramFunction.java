@@ -0,0 +1,48 @@
+package org.codefamily.crabs.jdbc.lang.extension.expression;
+
+import org.codefamily.crabs.core.DataType;
+import org.codefamily.crabs.exception.CrabsException;
+import org.codefamily.crabs.jdbc.lang.Expression;
+import org.codefamily.crabs.jdbc.lang.expression.Constant;
+import org.codefamily.crabs.jdbc.lang.expression.Function;
+import org.codefamily.crabs.jdbc.lang.expression.NonAggregation;
+
+/**
+ * HISTOGRAM(column, interval)，将数值按固定间隔向下取整，日期列的间隔单位为毫秒，只能作为分组表达式使用
+ */
+public final class HistogramFunction extends NonAggregation implements Function {
+
+    public static final String IDENTIFIER = "HISTOGRAM";
+
+    public HistogramFunction(final Expression expression1, final Expression expression2) {
+        super(expression1, expression2);
+        if (!(expression2 instanceof Constant
+                && (((Constant) expression2).value instanceof Integer
+                || ((Constant) expression2).value instanceof Long)
+                && ((Number) ((Constant) expression2).value).longValue() > 0)) {
+            throw new IllegalArgumentException(
+                    "Interval of " + IDENTIFIER + "() must be a positive integer constant."
+            );
+        }
+        this.interval = ((Number) ((Constant) expression2).value).longValue();
+    }
+
+    public final long interval;
+
+    @Override
+    public final String getIdentifier() {
+        return IDENTIFIER;
+    }
+
+    @Override
+    protected final String doToString() {
+        return IDENTIFIER + "(" + this.getOperandExpression(0).toString() + ", "
+                + this.getOperandExpression(1).toString() + ")";
+    }
+
+    @Override
+    public final DataType getResultType() throws CrabsException {
+        return DataType.LONG;
+    }
+
+}
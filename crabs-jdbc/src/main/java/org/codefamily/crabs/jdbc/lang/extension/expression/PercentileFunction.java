@@ -0,0 +1,48 @@
+package org.codefamily.crabs.jdbc.lang.extension.expression;
+
+import org.codefamily.crabs.core.DataType;
+import org.codefamily.crabs.exception.CrabsException;
+import org.codefamily.crabs.jdbc.lang.Expression;
+import org.codefamily.crabs.jdbc.lang.expression.Aggregation;
+import org.codefamily.crabs.jdbc.lang.expression.Constant;
+import org.codefamily.crabs.jdbc.lang.expression.Function;
+
+/**
+ * PERCENTILE(column, percent)，percent为0到100之间的数值常量，结果为近似值
+ */
+public final class PercentileFunction extends Aggregation implements Function {
+
+    public static final String IDENTIFIER = "PERCENTILE";
+
+    public PercentileFunction(final Expression expression1, final Expression expression2) throws CrabsException {
+        super(expression1, expression2);
+        if (!(expression2 instanceof Constant && ((Constant) expression2).value instanceof Number)) {
+            throw new IllegalArgumentException("Percent of " + IDENTIFIER + "() must be a number constant.");
+        }
+        // float常量直接转换为double会引入误差
+        final double percent = Double.parseDouble(((Constant) expression2).value.toString());
+        if (!(percent >= 0 && percent <= 100)) {
+            throw new IllegalArgumentException("Percent of " + IDENTIFIER + "() must be between 0 and 100.");
+        }
+        this.percent = percent;
+    }
+
+    public final double percent;
+
+    @Override
+    public final String getIdentifier() {
+        return IDENTIFIER;
+    }
+
+    @Override
+    protected final String doToString() {
+        return IDENTIFIER + "(" + this.getOperandExpression(0).toString() + ", "
+                + this.getOperandExpression(1).toString() + ")";
+    }
+
+    @Override
+    public final DataType getResultType() throws CrabsException {
+        return DataType.DOUBLE;
+    }
+
+}
@@ -0,0 +1,99 @@
+package org.codefamily.crabs.jdbc.lang.extension.expression;
+
+import org.codefamily.crabs.core.DataType;
+import org.codefamily.crabs.exception.CrabsException;
+import org.codefamily.crabs.jdbc.lang.Expression;
+import org.codefamily.crabs.jdbc.lang.expression.Constant;
+import org.codefamily.crabs.jdbc.lang.expression.Function;
+import org.codefamily.crabs.jdbc.lang.expression.NonAggregation;
+
+/**
+ * RANGE_BUCKET(column, b1, b2, ...)，按递增的边界将值划分到区间[*, b1)、[b1, b2)、...、[bn, *)，
+ * 结果为区间的标签，如"*-60"、"60-80"、"80-*"，只能作为分组表达式使用。
+ * 数值列的边界为数值常量，日期列的边界为符合字段格式的日期字符串
+ */
+public final class RangeBucketFunction extends NonAggregation implements Function {
+
+    public static final String IDENTIFIER = "RANGE_BUCKET";
+
+    public static final String UNBOUNDED = "*";
+
+    public RangeBucketFunction(final Expression... expressions) {
+        super(expressions);
+        if (expressions.length < 2) {
+            throw new IllegalArgumentException("Expect at least 2 arguments in " + IDENTIFIER + "().");
+        }
+        final int boundaryCount = expressions.length - 1;
+        final Constant[] boundaries = new Constant[boundaryCount];
+        for (int index = 0; index < boundaryCount; index++) {
+            final Expression boundaryExpression = expressions[index + 1];
+            if (!(boundaryExpression instanceof Constant
+                    && (((Constant) boundaryExpression).value instanceof Number
+                    || ((Constant) boundaryExpression).value instanceof String))) {
+                throw new IllegalArgumentException(
+                        "Boundary of " + IDENTIFIER + "() must be a number or string constant."
+                );
+            }
+            boundaries[index] = (Constant) boundaryExpression;
+        }
+        final boolean numeric = boundaries[0].value instanceof Number;
+        for (int index = 1; index < boundaryCount; index++) {
+            if ((boundaries[index].value instanceof Number) != numeric) {
+                throw new IllegalArgumentException(
+                        "Boundaries of " + IDENTIFIER + "() must be all numbers or all strings."
+                );
+            }
+            if (numeric && ((Number) boundaries[index - 1].value).doubleValue()
+                    >= ((Number) boundaries[index].value).doubleValue()) {
+                throw new IllegalArgumentException(
+                        "Boundaries of " + IDENTIFIER + "() must be in ascending order."
+                );
+            }
+        }
+        this.boundaries = boundaries;
+    }
+
+    private final Constant[] boundaries;
+
+    public final int getBoundaryCount() {
+        return this.boundaries.length;
+    }
+
+    public final Constant getBoundary(final int index) {
+        return this.boundaries[index];
+    }
+
+    /**
+     * 第index个区间的标签，区间个数比边界个数多一个
+     */
+    public final String getBucketLabel(final int index) {
+        final String from = index == 0 ? UNBOUNDED : this.boundaries[index - 1].value.toString();
+        final String to = index == this.boundaries.length ? UNBOUNDED : this.boundaries[index].value.toString();
+        return from + "-" + to;
+    }
+
+    @Override
+    public final String getIdentifier() {
+        return IDENTIFIER;
+    }
+
+    @Override
+    protected final String doToString() {
+        final StringBuilder stringBuilder = new StringBuilder();
+        stringBuilder.append(IDENTIFIER);
+        stringBuilder.append('(');
+        stringBuilder.append(this.getOperandExpression(0).toString());
+        for (Constant boundary : this.boundaries) {
+            stringBuilder.append(", ");
+            stringBuilder.append(boundary.toString());
+        }
+        stringBuilder.append(')');
+        return stringBuilder.toString();
+    }
+
+    @Override
+    public final DataType getResultType() throws CrabsException {
+        return DataType.STRING;
+    }
+
+}
@@ -0,0 +1,50 @@
+package org.codefamily.crabs.jdbc.lang.extension.expression;
+
+import org.codefamily.crabs.core.DataType;
+import org.codefamily.crabs.exception.CrabsException;
+import org.codefamily.crabs.jdbc.lang.Expression;
+import org.codefamily.crabs.jdbc.lang.expression.NonAggregation;
+
+/**
+ * 同一列上下界的比较合并得到的范围，不能由SQL直接写出，因此不注册为扩展表达式。
+ * 上下界都包含时使用{@link BetweenExpression}
+ */
+public final class RangeExpression extends NonAggregation {
+
+    public RangeExpression(final Expression expression,
+                           final Expression lowerExpression,
+                           final boolean includeLower,
+                           final Expression upperExpression,
+                           final boolean includeUpper) {
+        super(expression, lowerExpression, upperExpression);
+        this.includeLower = includeLower;
+        this.includeUpper = includeUpper;
+    }
+
+    public final boolean includeLower;
+
+    public final boolean includeUpper;
+
+    @Override
+    public final boolean equals(final Object object) {
+        if (super.equals(object)) {
+            final RangeExpression that = (RangeExpression) object;
+            return this.includeLower == that.includeLower && this.includeUpper == that.includeUpper;
+        }
+        return false;
+    }
+
+    @Override
+    protected final String doToString() {
+        final String expressionString = this.getOperandExpression(0).toString();
+        return expressionString + (this.includeLower ? " >= " : " > ")
+                + this.getOperandExpression(1).toString() + " AND "
+                + expressionString + (this.includeUpper ? " <= " : " < ")
+                + this.getOperandExpression(2).toString();
+    }
+
+    @Override
+    public final DataType getResultType() throws CrabsException {
+        return DataType.BOOLEAN;
+    }
+}
@@ -0,0 +1,34 @@
+package org.codefamily.crabs.jdbc.lang.extension.expression;
+
+import org.codefamily.crabs.core.DataType;
+import org.codefamily.crabs.exception.CrabsException;
+import org.codefamily.crabs.jdbc.lang.Expression;
+import org.codefamily.crabs.jdbc.lang.expression.Aggregation;
+import org.codefamily.crabs.jdbc.lang.expression.Function;
+
+/**
+ * 物化视图中COUNT聚合列的再次聚合，即对各分组的计数求和，结果与COUNT一样为长整型。
+ * 由查询改写得到，不能由SQL直接写出，因此不注册为扩展表达式
+ */
+public final class RollupCountFunction extends Aggregation implements Function {
+
+    public RollupCountFunction(final Expression expression) throws CrabsException {
+        super(expression);
+    }
+
+    @Override
+    public final String getIdentifier() {
+        return SummaryFunction.IDENTIFIER;
+    }
+
+    @Override
+    protected final String doToString() {
+        return SummaryFunction.IDENTIFIER + "(" + this.getOperandExpression(0).toString() + ")";
+    }
+
+    @Override
+    public final DataType getResultType() throws CrabsException {
+        return DataType.LONG;
+    }
+
+}
@@ -0,0 +1,58 @@
+package org.codefamily.crabs.jdbc.lang.extension.statement;
+
+import org.codefamily.crabs.util.ReadonlyList;
+import org.codefamily.crabs.exception.CrabsException;
+import org.codefamily.crabs.jdbc.lang.Expression;
+import org.codefamily.crabs.jdbc.lang.Statement;
+import org.codefamily.crabs.jdbc.lang.extension.clause.CreateMaterializedViewClause;
+
+/**
+ * CREATE MATERIALIZED VIEW view AS SELECT ...，以分组查询的结果作为一个新的type保存
+ */
+public final class CreateMaterializedViewStatement extends Statement {
+
+    public CreateMaterializedViewStatement(final CreateMaterializedViewClause createMaterializedViewClause,
+                                           final SelectStatement selectStatement) {
+        if (createMaterializedViewClause == null) {
+            throw new IllegalArgumentException("Argument[createMaterializedViewClause] is null.");
+        }
+        if (selectStatement == null) {
+            throw new IllegalArgumentException("Argument[selectStatement] is null.");
+        }
+        this.createMaterializedViewClause = createMaterializedViewClause;
+        this.selectStatement = selectStatement;
+    }
+
+    public final CreateMaterializedViewClause createMaterializedViewClause;
+
+    public final SelectStatement selectStatement;
+
+    @Override
+    public final boolean equals(final Object object) {
+        if (object != null && object instanceof CreateMaterializedViewStatement) {
+            if (object == this) {
+                return true;
+            }
+            final CreateMaterializedViewStatement that = (CreateMaterializedViewStatement) object;
+            return this.createMaterializedViewClause.equals(that.createMaterializedViewClause)
+                    && this.selectStatement.equals(that.selectStatement);
+        }
+        return false;
+    }
+
+    @Override
+    protected final String doToString() {
+        return this.createMaterializedViewClause.toString() + this.selectStatement.toString();
+    }
+
+    @Override
+    protected final int doGetParameterCount() throws CrabsException {
+        return this.selectStatement.getParameterCount();
+    }
+
+    @Override
+    protected final ReadonlyList<Expression> doGetTopLevelExpressionList() throws CrabsException {
+        return this.selectStatement.getTopLevelExpressionList();
+    }
+
+}
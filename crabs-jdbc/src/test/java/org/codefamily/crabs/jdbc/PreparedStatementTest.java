@@ -5,6 +5,7 @@ import org.junit.Test;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.text.SimpleDateFormat;
+import java.util.Properties;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
@@ -85,4 +86,45 @@ public class PreparedStatementTest extends StatementTestBase {
         }
     }
 
-}
\ No newline at end of file
+    @Test
+    public void testExecuteQuery_SearchTemplate() throws Exception {
+        final Properties properties = new Properties();
+        properties.setProperty("searchTemplateEnabled", "false");
+        final java.sql.Connection connection = getConnection(properties);
+        try {
+            // 第二次执行起按search template发送，结果与不使用template时一致
+            assertExecuteQuery_SearchTemplate(this.connection);
+            assertExecuteQuery_SearchTemplate(connection);
+        } finally {
+            connection.close();
+        }
+    }
+
+    private static void assertExecuteQuery_SearchTemplate(final java.sql.Connection connection) throws Exception {
+        final String sql = "select stuno from student where stuclass = ? and chinesescore >= ? order by stuno";
+        final int[] classes = {101, 103, 102, 101};
+        final double[] scores = {95D, 90D, 95D, 96D};
+        final long[][] expectedStudentNos = {{10010L, 10012L}, {10013L}, {}, {}};
+        final PreparedStatement pstmt = connection.prepareStatement(sql);
+        try {
+            for (int i = 0; i < classes.length; i++) {
+                pstmt.setInt(1, classes[i]);
+                pstmt.setDouble(2, scores[i]);
+                final ResultSet rs = pstmt.executeQuery();
+                try {
+                    int rowCount = 0;
+                    while (rs.next()) {
+                        assertEquals(expectedStudentNos[i][rowCount], rs.getLong(1));
+                        rowCount++;
+                    }
+                    assertEquals(expectedStudentNos[i].length, rowCount);
+                } finally {
+                    rs.close();
+                }
+            }
+        } finally {
+            pstmt.close();
+        }
+    }
+
+}
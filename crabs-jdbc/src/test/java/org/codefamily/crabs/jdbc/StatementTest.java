@@ -4,6 +4,13 @@ import org.junit.Test;
 
 import java.sql.Statement;
 import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.Properties;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import static org.junit.Assert.*;
 
@@ -30,4 +37,549 @@ public class StatementTest extends StatementTestBase {
             statement.close();
         }
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testExecuteQuery_OrderByAndLimitWithLiterals() throws Exception {
+        final String sql = "select stuno, stuname from student where stuno > 10000 order by stuno limit 0, 5";
+        final Statement statement = this.connection.createStatement();
+        try {
+            // 常量被参数化后，第二次执行使用缓存的语法分析结果
+            for (int i = 0; i < 2; i++) {
+                final ResultSet resultSet = statement.executeQuery(sql);
+                try {
+                    int rowCount = 0;
+                    long lastStudentNo = Long.MIN_VALUE;
+                    while (resultSet.next()) {
+                        rowCount++;
+                        final long studentNo = resultSet.getLong(1);
+                        assertTrue(studentNo > 10000L);
+                        assertTrue(studentNo >= lastStudentNo);
+                        lastStudentNo = studentNo;
+                    }
+                    assertTrue(rowCount > 0 && rowCount <= 5);
+                } finally {
+                    resultSet.close();
+                }
+            }
+        } finally {
+            statement.close();
+        }
+    }
+
+    @Test
+    public void testExecuteQuery_ContradictionWithLiterals() throws Exception {
+        final Statement statement = this.connection.createStatement();
+        try {
+            // 常量之间的比较不参数化，与列比较的常量绑定后再化简，两者都得到恒假的条件
+            final String[] sqls = {
+                    "select stuno, stuname from student where 2 < 1",
+                    "select stuno, stuname from student where stuno > 10011 and stuno < 10000",
+                    "select stuno, stuname from student where stuno > 10000 and stuno < 20000"
+            };
+            final boolean[] emptyResults = {true, true, false};
+            for (int i = 0; i < sqls.length; i++) {
+                final ResultSet resultSet = statement.executeQuery(sqls[i]);
+                try {
+                    assertEquals(emptyResults[i], !resultSet.next());
+                } finally {
+                    resultSet.close();
+                }
+            }
+        } finally {
+            statement.close();
+        }
+    }
+
+    @Test
+    public void testExecuteBatch_ResultOrder() throws Exception {
+        final Statement statement = this.connection.createStatement();
+        try {
+            // 前两条查询合并为multi search发出，结果集仍按加入的顺序读取
+            statement.addBatch("select stuno, stuname from student where stuno = 10012");
+            statement.addBatch("select stuno, stuname from student where stuno = 10010");
+            statement.addBatch("select count(*) from student");
+            final int[] updateCounts = statement.executeBatch();
+            assertEquals(3, updateCounts.length);
+            for (int updateCount : updateCounts) {
+                assertEquals(Statement.SUCCESS_NO_INFO, updateCount);
+            }
+            ResultSet resultSet = statement.getResultSet();
+            assertTrue(resultSet.next());
+            assertEquals(10012L, resultSet.getLong(1));
+            assertEquals("wangwu", resultSet.getString(2));
+            assertFalse(resultSet.next());
+            resultSet.close();
+            assertTrue(statement.getMoreResults());
+            resultSet = statement.getResultSet();
+            assertTrue(resultSet.next());
+            assertEquals(10010L, resultSet.getLong(1));
+            assertEquals("zhangsan", resultSet.getString(2));
+            assertFalse(resultSet.next());
+            resultSet.close();
+            assertTrue(statement.getMoreResults());
+            resultSet = statement.getResultSet();
+            assertTrue(resultSet.next());
+            assertEquals(4L, resultSet.getLong(1));
+            resultSet.close();
+            assertFalse(statement.getMoreResults());
+            assertNull(statement.getResultSet());
+        } finally {
+            statement.close();
+        }
+    }
+
+    @Test
+    public void testExecuteQuery_ClosePreviousResults() throws Exception {
+        final Statement statement = this.connection.createStatement();
+        try {
+            final ResultSet resultSet = statement.executeQuery("select stuno from student order by stuno");
+            // 再次执行时关闭上一次执行得到的结果集
+            statement.addBatch("select stuno from student where stuno = 10010");
+            statement.addBatch("select stuno from student where stuno = 10011");
+            statement.executeBatch();
+            assertTrue(resultSet.isClosed());
+            // 批量执行尚未读取的结果集同样被关闭，不能再通过getMoreResults读取
+            final ResultSet lastResultSet = statement.executeQuery("select stuno from student where stuno = 10012");
+            assertTrue(lastResultSet.next());
+            assertEquals(10012L, lastResultSet.getLong(1));
+            assertFalse(statement.getMoreResults());
+            assertTrue(lastResultSet.isClosed());
+        } finally {
+            statement.close();
+        }
+    }
+
+    @Test
+    public void testExecuteQuery_Scroll() throws Exception {
+        final Properties properties = new Properties();
+        properties.setProperty("clientScanSize", "2");
+        final java.sql.Connection connection = getConnection(properties);
+        try {
+            final Statement statement = connection.createStatement();
+            try {
+                // rowCount超过clientScanSize，按页滚动读取，offset在客户端跳过
+                ResultSet resultSet = statement.executeQuery(
+                        "select stuno, stuname from student order by stuno limit 1, 10"
+                );
+                final long[] expectedStudentNos = {10011L, 10012L, 10013L};
+                int rowCount = 0;
+                while (resultSet.next()) {
+                    assertEquals(expectedStudentNos[rowCount], resultSet.getLong(1));
+                    rowCount++;
+                }
+                assertEquals(expectedStudentNos.length, rowCount);
+                resultSet.close();
+                // 没有limit子句时设置了fetchSize，每页一行
+                statement.setFetchSize(1);
+                resultSet = statement.executeQuery("select stuno from student order by stuno");
+                rowCount = 0;
+                while (resultSet.next()) {
+                    assertEquals(10010L + rowCount, resultSet.getLong(1));
+                    rowCount++;
+                }
+                assertEquals(4, rowCount);
+                resultSet.close();
+                // 没有读完就关闭结果集
+                resultSet = statement.executeQuery("select stuno from student order by stuno");
+                assertTrue(resultSet.next());
+                assertEquals(10010L, resultSet.getLong(1));
+                resultSet.close();
+                assertTrue(resultSet.isClosed());
+            } finally {
+                statement.close();
+            }
+        } finally {
+            connection.close();
+        }
+    }
+
+    @Test
+    public void testExecuteQuery_ReadColumnsInAnyOrder() throws Exception {
+        final String sql = "select stuno, stuname, birthday, chinesescore from student where stuno >= 10012 order by stuno";
+        final SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
+        final Statement statement = this.connection.createStatement();
+        try {
+            final ResultSet resultSet = statement.executeQuery(sql);
+            try {
+                // 列值在第一次读取时才解码，跳过的列不解码，同一行重复读取得到相同的值
+                assertTrue(resultSet.next());
+                assertEquals(dateFormat.parse("1999-03-30 00:00:00"), resultSet.getObject(3));
+                assertEquals(10012L, resultSet.getLong(1));
+                assertEquals(dateFormat.parse("1999-03-30 00:00:00").getTime(), resultSet.getTimestamp(3).getTime());
+                assertEquals("wangwu", resultSet.getString(2));
+                assertEquals("wangwu", resultSet.getObject(2));
+                assertTrue(resultSet.next());
+                assertEquals(100.0D, resultSet.getDouble(4), 0D);
+                assertNull(resultSet.getString(2));
+                assertTrue(resultSet.wasNull());
+                assertEquals(10013L, resultSet.getLong(1));
+                assertFalse(resultSet.wasNull());
+                assertFalse(resultSet.next());
+            } finally {
+                resultSet.close();
+            }
+        } finally {
+            statement.close();
+        }
+    }
+
+    @Test
+    public void testExecuteQuery_PrimitiveAggregationColumns() throws Exception {
+        final String sql = "select stuclass, count(*), sum(chinesescore), avg(englishscore) from student group by stuclass";
+        final Statement statement = this.connection.createStatement();
+        try {
+            final ResultSet resultSet = statement.executeQuery(sql);
+            try {
+                final int[] expectedClasses = {101, 102, 103};
+                final long[] expectedCounts = {2L, 1L, 1L};
+                final double[] expectedSums = {191D, 92.5D, 100D};
+                final double[] expectedAverages = {94D, 99.5D, Double.NaN};
+                int rowCount = 0;
+                while (resultSet.next()) {
+                    // 数值列按基本类型读取，与按对象读取的结果一致
+                    assertEquals(expectedClasses[rowCount], resultSet.getInt(1));
+                    assertEquals(expectedClasses[rowCount], resultSet.getObject(1));
+                    assertEquals(expectedCounts[rowCount], resultSet.getLong(2));
+                    assertEquals(expectedCounts[rowCount], resultSet.getObject(2));
+                    assertEquals(expectedSums[rowCount], resultSet.getDouble(3), 0D);
+                    assertFalse(resultSet.wasNull());
+                    assertEquals(expectedAverages[rowCount], resultSet.getDouble(4), 0D);
+                    assertEquals(expectedAverages[rowCount], resultSet.getObject(4));
+                    rowCount++;
+                }
+                assertEquals(expectedClasses.length, rowCount);
+            } finally {
+                resultSet.close();
+            }
+        } finally {
+            statement.close();
+        }
+    }
+
+    @Test
+    public void testExecuteQueryAsync() throws Exception {
+        final Statement statement = this.connection.createStatement();
+        try {
+            final AsyncStatement asyncStatement = statement.unwrap(AsyncStatement.class);
+            // 两个查询都已发出后再等待结果，各自得到自己的结果集
+            final Future<ResultSet> studentFuture
+                    = asyncStatement.executeQueryAsync("select stuno, stuname from student where stuno = 10011");
+            final Future<ResultSet> countFuture
+                    = asyncStatement.executeQueryAsync("select count(*) from student where stuclass = 101");
+            final ResultSet countResultSet = countFuture.get(10, TimeUnit.SECONDS);
+            try {
+                assertTrue(countResultSet.next());
+                assertEquals(2L, countResultSet.getLong(1));
+                assertFalse(countResultSet.next());
+            } finally {
+                countResultSet.close();
+            }
+            final ResultSet studentResultSet = studentFuture.get(10, TimeUnit.SECONDS);
+            try {
+                assertTrue(studentResultSet.next());
+                assertEquals(10011L, studentResultSet.getLong(1));
+                assertEquals("lisi", studentResultSet.getString(2));
+                assertFalse(studentResultSet.next());
+            } finally {
+                studentResultSet.close();
+            }
+            // 异步查询的结果集不是Statement的当前结果集
+            assertNull(statement.getResultSet());
+        } finally {
+            statement.close();
+        }
+    }
+
+    @Test
+    public void testExecuteQuery_CompiledStatementSharedByThreads() throws Exception {
+        final String sql = "select stuno, birthday from student order by stuno";
+        final SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
+        final Date[] expectedBirthdays = {
+                dateFormat.parse("1999-01-30 00:00:00"),
+                dateFormat.parse("1999-02-28 00:00:00"),
+                dateFormat.parse("1999-03-30 00:00:00"),
+                dateFormat.parse("2013-01-01 00:00:00")
+        };
+        // 同一语句编译后被多个线程同时执行，每个结果集使用自己的日期解码器
+        final Thread[] threads = new Thread[4];
+        final Throwable[] failures = new Throwable[threads.length];
+        for (int i = 0; i < threads.length; i++) {
+            final int threadIndex = i;
+            threads[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        final Statement statement = StatementTest.this.connection.createStatement();
+                        try {
+                            for (int j = 0; j < 20; j++) {
+                                final ResultSet resultSet = statement.executeQuery(sql);
+                                try {
+                                    int rowCount = 0;
+                                    while (resultSet.next()) {
+                                        assertEquals(10010L + rowCount, resultSet.getLong(1));
+                                        assertEquals(expectedBirthdays[rowCount], resultSet.getObject(2));
+                                        rowCount++;
+                                    }
+                                    assertEquals(expectedBirthdays.length, rowCount);
+                                } finally {
+                                    resultSet.close();
+                                }
+                            }
+                        } finally {
+                            statement.close();
+                        }
+                    } catch (Throwable e) {
+                        failures[threadIndex] = e;
+                    }
+                }
+            });
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        for (Throwable failure : failures) {
+            if (failure != null) {
+                throw new AssertionError(failure);
+            }
+        }
+    }
+
+    @Test
+    public void testExecuteQuery_CompiledStatementRebindsLimit() throws Exception {
+        final Statement statement = this.connection.createStatement();
+        try {
+            // 两条语句参数化后相同，共用编译结果，limit按各自的常量重新绑定
+            final String[] sqls = {
+                    "select stuno from student order by stuno limit 0, 1",
+                    "select stuno from student order by stuno limit 2, 2"
+            };
+            final long[][] expectedStudentNos = {{10010L}, {10012L, 10013L}};
+            for (int i = 0; i < sqls.length; i++) {
+                final ResultSet resultSet = statement.executeQuery(sqls[i]);
+                try {
+                    int rowCount = 0;
+                    while (resultSet.next()) {
+                        assertEquals(expectedStudentNos[i][rowCount], resultSet.getLong(1));
+                        rowCount++;
+                    }
+                    assertEquals(expectedStudentNos[i].length, rowCount);
+                } finally {
+                    resultSet.close();
+                }
+            }
+        } finally {
+            statement.close();
+        }
+    }
+
+    @Test
+    public void testExecuteQuery_CountFromTotalHits() throws Exception {
+        final Statement statement = this.connection.createStatement();
+        try {
+            // 不分组的count(*)由命中总数回答
+            final String[] sqls = {
+                    "select count(*) from student",
+                    "select count(*) from student where stuclass = 101",
+                    "select count(*) from student where stuname like '%an%'",
+                    "select count(*) from student where stuno > 20000"
+            };
+            final long[] expectedCounts = {4L, 2L, 2L, 0L};
+            for (int i = 0; i < sqls.length; i++) {
+                final ResultSet resultSet = statement.executeQuery(sqls[i]);
+                try {
+                    assertTrue(resultSet.next());
+                    assertEquals(expectedCounts[i], resultSet.getLong(1));
+                    assertFalse(resultSet.next());
+                } finally {
+                    resultSet.close();
+                }
+            }
+        } finally {
+            statement.close();
+        }
+    }
+
+    @Test
+    public void testExecuteQuery_Hints() throws Exception {
+        final Statement statement = this.connection.createStatement();
+        try {
+            // 提示只决定搜索哪些分片，结果与不带提示的查询一致
+            final String[] sqls = {
+                    "select /*+ PREFERENCE(_primary) */ stuno, stuname from student where stuno = 10011",
+                    "select /*+ PREFERENCE(_primary) */ count(*) from student where stuclass = 101",
+                    "select /*+ PREFERENCE(_primary) */ stuclass, count(*) from student group by stuclass"
+            };
+            final String[] plainSqls = {
+                    "select stuno, stuname from student where stuno = 10011",
+                    "select count(*) from student where stuclass = 101",
+                    "select stuclass, count(*) from student group by stuclass"
+            };
+            for (int i = 0; i < sqls.length; i++) {
+                final String rows = readRows(statement.executeQuery(sqls[i]));
+                assertTrue(rows.length() > 0);
+                assertEquals(readRows(statement.executeQuery(plainSqls[i])), rows);
+            }
+            try {
+                statement.executeQuery("select /*+ TIMEOUT(1) */ stuno from student");
+                fail();
+            } catch (SQLException e) {
+                // 不支持的提示
+            }
+        } finally {
+            statement.close();
+        }
+    }
+
+    @Test
+    public void testExecuteQuery_GroupOrderByAndLimitPushedDown() throws Exception {
+        final Statement statement = this.connection.createStatement();
+        try {
+            // 按分组列排序，跳过offset个分组
+            ResultSet resultSet = statement.executeQuery(
+                    "select stuclass, count(*) from student group by stuclass order by stuclass desc limit 1, 2"
+            );
+            try {
+                assertTrue(resultSet.next());
+                assertEquals(102, resultSet.getInt(1));
+                assertEquals(1L, resultSet.getLong(2));
+                assertTrue(resultSet.next());
+                assertEquals(101, resultSet.getInt(1));
+                assertEquals(2L, resultSet.getLong(2));
+                assertFalse(resultSet.next());
+            } finally {
+                resultSet.close();
+            }
+            // 按聚合函数排序，只返回前rowCount个分组
+            resultSet = statement.executeQuery(
+                    "select stuclass, sum(chinesescore) from student group by stuclass order by sum(chinesescore) desc limit 0, 2"
+            );
+            try {
+                assertTrue(resultSet.next());
+                assertEquals(101, resultSet.getInt(1));
+                assertEquals(191D, resultSet.getDouble(2), 0D);
+                assertTrue(resultSet.next());
+                assertEquals(103, resultSet.getInt(1));
+                assertEquals(100D, resultSet.getDouble(2), 0D);
+                assertFalse(resultSet.next());
+            } finally {
+                resultSet.close();
+            }
+        } finally {
+            statement.close();
+        }
+    }
+
+    @Test
+    public void testExecuteQuery_FlatGroupBy() throws Exception {
+        final String[] sqls = {
+                "select stuclass, stuno, sum(chinesescore) from student group by stuclass, stuno",
+                "select stuclass, stuname, count(*) from student group by stuclass, stuname"
+        };
+        final Properties properties = new Properties();
+        properties.setProperty("flatGroupByColumnCount", "2");
+        // 按脚本生成的组合键分组，需要elasticsearch开启动态脚本；分组的顺序可能不同，排序后比较
+        final java.sql.Connection connection = getConnection(properties);
+        try {
+            final Statement flatStatement = connection.createStatement();
+            final Statement statement = this.connection.createStatement();
+            try {
+                for (String sql : sqls) {
+                    final String[] flatRows = readRows(flatStatement.executeQuery(sql)).split(";");
+                    final String[] rows = readRows(statement.executeQuery(sql)).split(";");
+                    Arrays.sort(flatRows);
+                    Arrays.sort(rows);
+                    assertTrue(rows.length > 1);
+                    assertArrayEquals(rows, flatRows);
+                }
+            } finally {
+                statement.close();
+                flatStatement.close();
+            }
+        } finally {
+            connection.close();
+        }
+    }
+
+    @Test
+    public void testExecuteQuery_StatsOnSameField() throws Exception {
+        final Statement statement = this.connection.createStatement();
+        try {
+            // 同一字段上的count、sum、avg、min、max由一个stats聚合计算
+            ResultSet resultSet = statement.executeQuery(
+                    "select count(chinesescore), sum(chinesescore), avg(chinesescore), min(chinesescore), max(chinesescore) from student"
+            );
+            try {
+                assertTrue(resultSet.next());
+                assertEquals(4L, resultSet.getLong(1));
+                assertEquals(383.5D, resultSet.getDouble(2), 0D);
+                assertEquals(95.875D, resultSet.getDouble(3), 0D);
+                assertEquals(92.5D, resultSet.getDouble(4), 0D);
+                assertEquals(100D, resultSet.getDouble(5), 0D);
+                assertFalse(resultSet.next());
+            } finally {
+                resultSet.close();
+            }
+            resultSet = statement.executeQuery(
+                    "select stuclass, count(englishscore), sum(englishscore), avg(englishscore), min(englishscore), max(englishscore) from student group by stuclass"
+            );
+            try {
+                final double[][] expectedValues = {
+                        {101, 2, 188D, 94D, 90.5D, 97.5D},
+                        {102, 1, 99.5D, 99.5D, 99.5D, 99.5D},
+                        {103, 0, 0D, Double.NaN, Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY}
+                };
+                int rowCount = 0;
+                while (resultSet.next()) {
+                    assertEquals((int) expectedValues[rowCount][0], resultSet.getInt(1));
+                    assertEquals((long) expectedValues[rowCount][1], resultSet.getLong(2));
+                    for (int columnIndex = 3; columnIndex <= 6; columnIndex++) {
+                        assertEquals(expectedValues[rowCount][columnIndex - 1], resultSet.getDouble(columnIndex), 0D);
+                    }
+                    rowCount++;
+                }
+                assertEquals(expectedValues.length, rowCount);
+            } finally {
+                resultSet.close();
+            }
+            // 下推的排序改写为stats聚合中的指标
+            resultSet = statement.executeQuery(
+                    "select stuclass, sum(chinesescore), max(chinesescore) from student group by stuclass order by max(chinesescore) desc limit 0, 1"
+            );
+            try {
+                assertTrue(resultSet.next());
+                assertEquals(103, resultSet.getInt(1));
+                assertEquals(100D, resultSet.getDouble(2), 0D);
+                assertEquals(100D, resultSet.getDouble(3), 0D);
+                assertFalse(resultSet.next());
+            } finally {
+                resultSet.close();
+            }
+        } finally {
+            statement.close();
+        }
+    }
+
+    /**
+     * 读取结果集的所有行并关闭结果集，行内各列以逗号分隔，各行以分号结尾
+     */
+    private static String readRows(final ResultSet resultSet) throws SQLException {
+        try {
+            final int columnCount = resultSet.getMetaData().getColumnCount();
+            final StringBuilder rows = new StringBuilder();
+            while (resultSet.next()) {
+                for (int columnIndex = 1; columnIndex <= columnCount; columnIndex++) {
+                    if (columnIndex > 1) {
+                        rows.append(',');
+                    }
+                    rows.append(resultSet.getString(columnIndex));
+                }
+                rows.append(';');
+            }
+            return rows.toString();
+        } finally {
+            resultSet.close();
+        }
+    }
+
+}
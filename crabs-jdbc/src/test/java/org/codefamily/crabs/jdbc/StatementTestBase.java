@@ -4,6 +4,7 @@ import org.junit.After;
 import org.junit.Before;
 
 import java.sql.*;
+import java.util.Properties;
 
 /**
  * @author zhuchunlai
@@ -11,7 +12,7 @@ import java.sql.*;
  */
 abstract class StatementTestBase {
 
-    private static final String URL = "jdbc:elasticsearch://localhost:9300/test";
+    private static final String URL = "jdbc:crabs://localhost:9300/test";
 
     protected java.sql.Connection connection;
 
@@ -25,4 +26,11 @@ abstract class StatementTestBase {
         this.connection.close();
     }
 
+    /**
+     * 以指定的属性另外建立连接，由调用方负责关闭
+     */
+    protected static java.sql.Connection getConnection(final Properties properties) throws SQLException {
+        return DriverManager.getConnection(URL, properties);
+    }
+
 }
@@ -6,6 +6,7 @@ import org.codefamily.crabs.jdbc.lang.expression.Constant;
 import org.codefamily.crabs.jdbc.lang.expression.Reference;
 import org.codefamily.crabs.jdbc.lang.extension.clause.*;
 import org.codefamily.crabs.jdbc.lang.extension.expression.*;
+import org.codefamily.crabs.jdbc.lang.extension.statement.CreateMaterializedViewStatement;
 import org.codefamily.crabs.jdbc.lang.extension.statement.SelectStatement;
 import org.junit.Test;
 
@@ -557,4 +558,243 @@ public class GrammarAnalyzerTest {
         assertEquals(expected, actual);
     }
 
-}
\ No newline at end of file
+    @Test
+    public final void testAnalyzeSelectStatement_OK_DistinctAndPercentileAggregation() throws Exception {
+        final String sql = "select count(distinct name), approx_count_distinct(name, 1000), percentile(score, 99.5) " +
+                "from student";
+        final Statement actual = GrammarAnalyzer.analyze(sql);
+        final Statement expected = new SelectStatement(
+                new SelectClause(
+                        null,
+                        null,
+                        new SelectClause.ResultColumnDeclare(
+                                (String) null,
+                                new CountDistinctFunction(new Reference(null, "name"))
+                        ),
+                        new SelectClause.ResultColumnDeclare(
+                                (String) null,
+                                new ApproximateCountDistinctFunction(
+                                        new Reference(null, "name"),
+                                        new Constant(1000)
+                                )
+                        ),
+                        new SelectClause.ResultColumnDeclare(
+                                (String) null,
+                                new PercentileFunction(
+                                        new Reference(null, "score"),
+                                        new Constant(99.5F)
+                                )
+                        )),
+                new FromClause(
+                        new FromClause.SimpleTableDeclare(null, "student")
+                ),
+                null,
+                null,
+                null,
+                null,
+                null
+        );
+        assertEquals(expected, actual);
+        assertEquals(99.5, ((PercentileFunction) ((SelectStatement) actual).selectClause
+                .resultColumnDeclareList.get(2).expression).percent, 0);
+    }
+
+    @Test(expected = SQLException.class)
+    public final void testAnalyzeSelectStatement_DistinctOutsideCount() throws Exception {
+        GrammarAnalyzer.analyze("select sum(distinct score) from student");
+    }
+
+    @Test
+    public final void testAnalyzeSelectStatement_PercentOutOfRange() throws Exception {
+        try {
+            GrammarAnalyzer.analyze("select percentile(score, 150) from student");
+            fail("Expect SQLException.");
+        } catch (SQLException e) {
+            assertEquals("Percent of PERCENTILE() must be between 0 and 100.", e.getMessage());
+        }
+    }
+
+    @Test
+    public final void testAnalyzeSelectStatement_OK_GroupByDateTruncAndHistogram() throws Exception {
+        final String sql = "select date_trunc('hour', login_time), histogram(age, 10), count(*) " +
+                "from student group by date_trunc('hour', login_time), histogram(age, 10)";
+        final Statement actual = GrammarAnalyzer.analyze(sql);
+        final Statement expected = new SelectStatement(
+                new SelectClause(
+                        null,
+                        null,
+                        new SelectClause.ResultColumnDeclare(
+                                (String) null,
+                                new DateTruncFunction(new Constant("hour"), new Reference(null, "login_time"))
+                        ),
+                        new SelectClause.ResultColumnDeclare(
+                                (String) null,
+                                new HistogramFunction(new Reference(null, "age"), new Constant(10))
+                        ),
+                        new SelectClause.ResultColumnDeclare(
+                                (String) null,
+                                new CountFunction(new Reference((String) null, Reference.ALL_COLUMN_IDENTIFIER))
+                        )),
+                new FromClause(
+                        new FromClause.SimpleTableDeclare(null, "student")
+                ),
+                null,
+                new GroupByClause(
+                        new DateTruncFunction(new Constant("hour"), new Reference(null, "login_time")),
+                        new HistogramFunction(new Reference(null, "age"), new Constant(10))
+                ),
+                null,
+                null,
+                null
+        );
+        assertEquals(expected, actual);
+    }
+
+    @Test
+    public final void testAnalyzeSelectStatement_UnknownDateTruncUnit() throws Exception {
+        try {
+            GrammarAnalyzer.analyze("select count(*) from student group by date_trunc('century', login_time)");
+            fail("Expect SQLException.");
+        } catch (SQLException e) {
+            assertTrue(e.getMessage(), e.getMessage().startsWith("Unit of DATE_TRUNC() must be one of "));
+        }
+    }
+
+    @Test
+    public final void testAnalyzeSelectStatement_NonPositiveHistogramInterval() throws Exception {
+        try {
+            GrammarAnalyzer.analyze("select count(*) from student group by histogram(age, 0)");
+            fail("Expect SQLException.");
+        } catch (SQLException e) {
+            assertEquals("Interval of HISTOGRAM() must be a positive integer constant.", e.getMessage());
+        }
+    }
+
+    @Test
+    public final void testAnalyzeSelectStatement_OK_GroupByRangeBucket() throws Exception {
+        final String sql = "select range_bucket(score, 60, 80), count(*) from student group by range_bucket(score, 60, 80)";
+        final Statement actual = GrammarAnalyzer.analyze(sql);
+        final Statement expected = new SelectStatement(
+                new SelectClause(
+                        null,
+                        null,
+                        new SelectClause.ResultColumnDeclare(
+                                (String) null,
+                                new RangeBucketFunction(new Reference(null, "score"), new Constant(60), new Constant(80))
+                        ),
+                        new SelectClause.ResultColumnDeclare(
+                                (String) null,
+                                new CountFunction(new Reference((String) null, Reference.ALL_COLUMN_IDENTIFIER))
+                        )),
+                new FromClause(
+                        new FromClause.SimpleTableDeclare(null, "student")
+                ),
+                null,
+                new GroupByClause(
+                        new RangeBucketFunction(new Reference(null, "score"), new Constant(60), new Constant(80))
+                ),
+                null,
+                null,
+                null
+        );
+        assertEquals(expected, actual);
+    }
+
+    @Test
+    public final void testAnalyzeSelectStatement_DescendingRangeBucketBoundaries() throws Exception {
+        try {
+            GrammarAnalyzer.analyze("select count(*) from student group by range_bucket(score, 80, 60)");
+            fail("Expect SQLException.");
+        } catch (SQLException e) {
+            assertEquals("Boundaries of RANGE_BUCKET() must be in ascending order.", e.getMessage());
+        }
+    }
+
+    @Test
+    public final void testAnalyzeCreateMaterializedViewStatement_OK() throws Exception {
+        final String sql = "create materialized view student_daily as " +
+                "select class, date_trunc('day', login_time) as login_day, count(*), sum(score) " +
+                "from student group by class, date_trunc('day', login_time)";
+        final Statement actual = GrammarAnalyzer.analyze(sql);
+        final Statement expected = new CreateMaterializedViewStatement(
+                new CreateMaterializedViewClause("student_daily"),
+                new SelectStatement(
+                        new SelectClause(
+                                null,
+                                null,
+                                new SelectClause.ResultColumnDeclare((String) null, new Reference(null, "class")),
+                                new SelectClause.ResultColumnDeclare(
+                                        "login_day",
+                                        new DateTruncFunction(new Constant("day"), new Reference(null, "login_time"))
+                                ),
+                                new SelectClause.ResultColumnDeclare(
+                                        (String) null,
+                                        new CountFunction(new Reference((String) null, Reference.ALL_COLUMN_IDENTIFIER))
+                                ),
+                                new SelectClause.ResultColumnDeclare(
+                                        (String) null,
+                                        new SummaryFunction(new Reference(null, "score"))
+                                )),
+                        new FromClause(
+                                new FromClause.SimpleTableDeclare(null, "student")
+                        ),
+                        null,
+                        new GroupByClause(
+                                new Reference(null, "class"),
+                                new DateTruncFunction(new Constant("day"), new Reference(null, "login_time"))
+                        ),
+                        null,
+                        null,
+                        null
+                )
+        );
+        assertEquals(expected, actual);
+        // 视图的定义以查询语句的文本保存，需要能够重新解析
+        final SelectStatement definition = ((CreateMaterializedViewStatement) actual).selectStatement;
+        assertEquals(definition, GrammarAnalyzer.analyze(definition.toString()));
+    }
+
+    @Test(expected = SQLException.class)
+    public final void testAnalyzeCreateMaterializedViewStatement_MissingAs() throws Exception {
+        GrammarAnalyzer.analyze("create materialized view student_daily select class, count(*) from student group by class");
+    }
+
+    @Test
+    public final void testAnalyzeSelectStatement_OK_NoMaterializedViewHint() throws Exception {
+        final SelectStatement actual = (SelectStatement) GrammarAnalyzer.analyze(
+                "select /*+ NO_MATERIALIZED_VIEW() */ count(*) from student"
+        );
+        assertEquals(1, actual.selectClause.hintList.size());
+        assertEquals(SelectClause.Hint.NO_MATERIALIZED_VIEW, actual.selectClause.hintList.get(0).name);
+        assertTrue(actual.selectClause.hintList.get(0).argumentList.isEmpty());
+    }
+
+    @Test
+    public final void testAnalyzeSelectStatement_OK_KeywordLikeIdentifiers() throws Exception {
+        // 大小写混合的关键字，以及包含关键字、数字或非ASCII字符的标识符
+        final Statement actual = GrammarAnalyzer.analyze(
+                "SeLeCt select_1, fromDate, 学生 FrOm student2 wHeRe limit$ = 10"
+        );
+        final Statement expected = new SelectStatement(
+                new SelectClause(
+                        false,
+                        null,
+                        new SelectClause.ResultColumnDeclare((String) null, new Reference(null, "select_1")),
+                        new SelectClause.ResultColumnDeclare((String) null, new Reference(null, "fromDate")),
+                        new SelectClause.ResultColumnDeclare((String) null, new Reference(null, "学生"))
+                ),
+                new FromClause(
+                        new FromClause.SimpleTableDeclare(null, "student2")
+                ),
+                new WhereClause(
+                        new EqualToExpression(new Reference(null, "limit$"), new Constant(10))
+                ),
+                null,
+                null,
+                null,
+                null
+        );
+        assertEquals(expected, actual);
+    }
+
+}
@@ -0,0 +1,143 @@
+package org.codefamily.crabs.jdbc.compiler;
+
+import org.codefamily.crabs.jdbc.lang.Expression;
+import org.codefamily.crabs.jdbc.lang.Statement;
+import org.codefamily.crabs.jdbc.lang.expression.Constant;
+import org.codefamily.crabs.jdbc.lang.expression.Reference;
+import org.codefamily.crabs.jdbc.lang.expression.util.ExpressionSimplifier;
+import org.codefamily.crabs.jdbc.lang.extension.expression.RangeExpression;
+import org.codefamily.crabs.jdbc.lang.extension.statement.SelectStatement;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class LiteralParameterizerTest {
+
+    @Test
+    public final void testParameterizeLiterals_OK() throws Exception {
+        final LiteralParameterizer first = LiteralParameterizer.parameterize(
+                "select * from student where age > 18 and name like 'Li%' and class in ('A', 'B')"
+                        + " and score between 60.5 and 100 limit 0, 10"
+        );
+        final LiteralParameterizer second = LiteralParameterizer.parameterize(
+                "select * from student where age > 20 and name like 'Wang%' and class in ('C', 'D')"
+                        + " and score between 70.5 and 90 limit 10, 10"
+        );
+        assertNotNull(first);
+        assertNotNull(second);
+        assertEquals(
+                "select * from student where age > ? and name like ? and class in (?, ?)"
+                        + " and score between ? and ? limit ?, ?",
+                first.parameterizedSQL
+        );
+        assertEquals(first.parameterizedSQL, second.parameterizedSQL);
+        assertArrayEquals(new Object[]{18, "Li%", "A", "B", 60.5F, 100, 0, 10}, first.argumentValues);
+        final Statement statement = GrammarAnalyzer.analyze(first.parameterizedSQL);
+        assertTrue(LiteralParameterizer.isParameterizable(statement, first.argumentValues.length));
+    }
+
+    @Test
+    public final void testParameterizeLiterals_KeepLiteralsOutsideCondition() throws Exception {
+        final LiteralParameterizer actual = LiteralParameterizer.parameterize(
+                "select /*+ ROUTING('1') */ 1, date_trunc('day', login_time) from student"
+                        + " where age >= 18 and class = \"student\".name group by date_trunc('day', login_time)"
+                        + " having count(*) > 10"
+        );
+        assertNotNull(actual);
+        assertEquals(
+                "select /*+ ROUTING('1') */ 1, date_trunc('day', login_time) from student"
+                        + " where age >= ? and class = \"student\".name group by date_trunc('day', login_time)"
+                        + " having count(*) > 10",
+                actual.parameterizedSQL
+        );
+        assertArrayEquals(new Object[]{18}, actual.argumentValues);
+        assertNull(LiteralParameterizer.parameterize("select * from student where age > ?"));
+        assertNull(LiteralParameterizer.parameterize("select * from student where age > -1"));
+    }
+
+    @Test
+    public final void testParameterizeLiterals_NotParameterizable() throws Exception {
+        final LiteralParameterizer actual = LiteralParameterizer.parameterize(
+                "select * from student where class in (concat('A', 'B'))"
+        );
+        assertNotNull(actual);
+        assertEquals("select * from student where class in (concat(?, ?))", actual.parameterizedSQL);
+        assertFalse(LiteralParameterizer.isParameterizable(
+                GrammarAnalyzer.analyze(actual.parameterizedSQL),
+                actual.argumentValues.length
+        ));
+    }
+
+    @Test
+    public final void testParameterizeLiterals_OrderByAndLimit() throws Exception {
+        final LiteralParameterizer actual = LiteralParameterizer.parameterize(
+                "select stuno, stuname from student where stuno > 10000 order by stuno desc limit 0, 5"
+        );
+        assertNotNull(actual);
+        assertEquals(
+                "select stuno, stuname from student where stuno > ? order by stuno desc limit ?, ?",
+                actual.parameterizedSQL
+        );
+        assertArrayEquals(new Object[]{10000, 0, 5}, actual.argumentValues);
+        // 第一次检查参数位置时order by子句的表达式列表还没有初始化
+        final Statement statement = GrammarAnalyzer.analyze(actual.parameterizedSQL);
+        assertTrue(LiteralParameterizer.isParameterizable(statement, actual.argumentValues.length));
+        assertTrue(LiteralParameterizer.isParameterizable(statement, actual.argumentValues.length));
+    }
+
+    @Test
+    public final void testParameterizeLiterals_OnlyComparedWithColumn() throws Exception {
+        final LiteralParameterizer actual = LiteralParameterizer.parameterize(
+                "select * from student where 2 < 1 or 18 <= age or `class` <> 'A' or s.name not like 'Li%'"
+                        + " or upper(name) = 'LI' or 'A' in ('A', 'B') or age not between 1 and 10"
+                        + " or 'a' between 'a' and 'b' or age in (1, 2)"
+        );
+        assertNotNull(actual);
+        assertEquals(
+                "select * from student where 2 < 1 or 18 <= age or `class` <> ? or s.name not like ?"
+                        + " or upper(name) = 'LI' or 'A' in ('A', 'B') or age not between ? and ?"
+                        + " or 'a' between 'a' and 'b' or age in (?, ?)",
+                actual.parameterizedSQL
+        );
+        assertArrayEquals(new Object[]{"A", "Li%", 1, 10, 1, 2}, actual.argumentValues);
+        assertNull(LiteralParameterizer.parameterize("select * from student where 2 < 1"));
+    }
+
+    @Test
+    public final void testParameterizeLiterals_SimplifyBoundCondition() throws Exception {
+        final LiteralParameterizer actual = LiteralParameterizer.parameterize(
+                "select * from student where age > 10 and age < 5"
+        );
+        assertNotNull(actual);
+        assertEquals("select * from student where age > ? and age < ?", actual.parameterizedSQL);
+        final SelectStatement statement = (SelectStatement) GrammarAnalyzer.analyze(actual.parameterizedSQL);
+        // age只有一个值时上下界才能合并
+        final ExpressionSimplifier.SingleValuedColumns singleValuedColumns
+                = new ExpressionSimplifier.SingleValuedColumns() {
+
+            @Override
+            public final boolean isSingleValued(final Reference reference) {
+                return reference.columnIdentifier.toString().equals("age");
+            }
+
+        };
+        final Expression conditionExpression = ExpressionSimplifier.simplifyCondition(
+                statement.whereClause.conditionExpression,
+                singleValuedColumns
+        );
+        // 化简不依赖参数值，绑定参数值之后才能确定条件恒假
+        assertFalse(ExpressionSimplifier.isFalse(conditionExpression));
+        assertTrue(ExpressionSimplifier.isFalse(ExpressionSimplifier.simplifyCondition(
+                ExpressionSimplifier.bindArguments(conditionExpression, actual.argumentValues),
+                singleValuedColumns
+        )));
+        assertEquals(
+                new RangeExpression(new Reference(null, "age"), new Constant(10), false, new Constant(20), false),
+                ExpressionSimplifier.simplifyCondition(
+                        ExpressionSimplifier.bindArguments(conditionExpression, new Object[]{10, 20}),
+                        singleValuedColumns
+                )
+        );
+    }
+
+}
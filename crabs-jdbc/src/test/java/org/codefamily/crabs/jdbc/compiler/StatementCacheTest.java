@@ -0,0 +1,126 @@
+package org.codefamily.crabs.jdbc.compiler;
+
+import org.codefamily.crabs.jdbc.lang.Statement;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+public class StatementCacheTest {
+
+    private static final String SQL = "select * from student where age > ?";
+
+    @Test
+    public final void testPutStatement_Capacity() throws Exception {
+        final StatementCache cache = new StatementCache(10);
+        final Statement statement = GrammarAnalyzer.analyze(SQL);
+        for (int index = 0; index < 25; index++) {
+            cache.putStatement(SQL + " and id = " + index, statement);
+            assertTrue(cache.size() <= 10);
+        }
+        assertEquals(10, cache.size());
+        assertEquals(15L, cache.getEvictionCount());
+    }
+
+    @Test
+    public final void testPutStatement_EvictionOrder() throws Exception {
+        final StatementCache cache = new StatementCache(3);
+        final Statement statement = GrammarAnalyzer.analyze(SQL);
+        cache.putStatement("a", statement);
+        cache.putStatement("b", statement);
+        cache.putStatement("c", statement);
+        cache.putStatement("d", statement);
+        // 都只放入过一次，最早放入的先被淘汰
+        assertNull(cache.getStatement("a"));
+        assertNotNull(cache.getStatement("b"));
+        assertNotNull(cache.getStatement("c"));
+        assertNotNull(cache.getStatement("d"));
+        assertEquals(1L, cache.getEvictionCount());
+        assertEquals(3L, cache.getHitCount());
+        assertEquals(1L, cache.getMissCount());
+    }
+
+    @Test
+    public final void testGetStatement_Promotion() throws Exception {
+        final StatementCache cache = new StatementCache(10);
+        final Statement statement = GrammarAnalyzer.analyze(SQL);
+        cache.putStatement(SQL, statement);
+        // 再次命中后晋升到保护段，只用过一次的语句不会把它挤掉
+        assertSame(statement, cache.getStatement(SQL));
+        for (int index = 0; index < 100; index++) {
+            cache.putStatement(SQL + " and id = " + index, statement);
+        }
+        assertSame(statement, cache.getStatement(SQL));
+        assertEquals(10, cache.size());
+    }
+
+    @Test
+    public final void testGetStatement_Demotion() throws Exception {
+        // 保护段容量为8
+        final StatementCache cache = new StatementCache(10);
+        final Statement statement = GrammarAnalyzer.analyze(SQL);
+        for (int index = 0; index < 9; index++) {
+            cache.putStatement("hot" + index, statement);
+            cache.getStatement("hot" + index);
+        }
+        // hot0最久未使用，被降回试用段，之后作为试用段中最早的语句被淘汰
+        cache.putStatement("cold0", statement);
+        cache.putStatement("cold1", statement);
+        assertNull(cache.getStatement("hot0"));
+        for (int index = 1; index < 9; index++) {
+            assertNotNull(cache.getStatement("hot" + index));
+        }
+    }
+
+    @Test
+    public final void testConcurrentGetAndPut() throws Exception {
+        final int capacity = 50;
+        final StatementCache cache = new StatementCache(capacity);
+        final Statement statement = GrammarAnalyzer.analyze(SQL);
+        final int threadCount = 8;
+        final int operationCount = 10000;
+        final CountDownLatch startLatch = new CountDownLatch(1);
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        final ArrayList<Thread> threadList = new ArrayList<Thread>(threadCount);
+        for (int index = 0; index < threadCount; index++) {
+            final int seed = index;
+            final Thread thread = new Thread(new Runnable() {
+                @Override
+                public final void run() {
+                    try {
+                        startLatch.await();
+                        for (int operation = 0; operation < operationCount; operation++) {
+                            final String key = "sql" + ((operation * 31 + seed * 17) % 200);
+                            final Statement cachedStatement = cache.getStatement(key);
+                            if (cachedStatement == null) {
+                                cache.putStatement(key, statement);
+                            } else {
+                                assertSame(statement, cachedStatement);
+                            }
+                        }
+                    } catch (Throwable e) {
+                        failure.compareAndSet(null, e);
+                    }
+                }
+            });
+            thread.start();
+            threadList.add(thread);
+        }
+        startLatch.countDown();
+        for (Thread thread : threadList) {
+            thread.join();
+        }
+        if (failure.get() != null) {
+            throw new AssertionError(failure.get());
+        }
+        assertTrue(cache.size() <= capacity);
+        assertEquals((long) threadCount * operationCount, cache.getHitCount() + cache.getMissCount());
+        // 缓存仍然可用
+        cache.putStatement(SQL, statement);
+        assertSame(statement, cache.getStatement(SQL));
+    }
+
+}
@@ -0,0 +1,58 @@
+package org.codefamily.crabs.jdbc.engine;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class AggregationPartitionCacheTest {
+
+    @Test
+    public final void testPutPartition_EvictByBytes() throws Exception {
+        // 每个分区约占 64 + 2 + 100 字节，容量只能容纳两个
+        final AggregationPartitionCache cache = new AggregationPartitionCache(400L);
+        cache.putPartition("a", new byte[100]);
+        cache.putPartition("b", new byte[100]);
+        assertNotNull(cache.getPartition("a"));
+        cache.putPartition("c", new byte[100]);
+        // b最久未使用，被淘汰
+        assertNull(cache.getPartition("b"));
+        assertNotNull(cache.getPartition("a"));
+        assertNotNull(cache.getPartition("c"));
+        assertTrue(cache.size() <= 400L);
+    }
+
+    @Test
+    public final void testPutPartition_TooLarge() throws Exception {
+        final AggregationPartitionCache cache = new AggregationPartitionCache(400L);
+        cache.putPartition("a", new byte[100]);
+        cache.putPartition("b", new byte[1000]);
+        assertNull(cache.getPartition("b"));
+        assertNotNull(cache.getPartition("a"));
+    }
+
+    @Test
+    public final void testPutPartition_ReplaceAndRemove() throws Exception {
+        final AggregationPartitionCache cache = new AggregationPartitionCache(400L);
+        cache.putPartition("a", new byte[100]);
+        final long size = cache.size();
+        cache.putPartition("a", new byte[200]);
+        assertEquals(size + 100L, cache.size());
+        cache.removePartition("a");
+        assertEquals(0L, cache.size());
+        assertNull(cache.getPartition("a"));
+    }
+
+    @Test
+    public final void testGetInstance_SharedByURL() throws Exception {
+        final String URL = "jdbc:crabs://localhost:9300/aggregation_partition_cache_test";
+        final AggregationPartitionCache cache = AggregationPartitionCache.getInstance(URL, 400L);
+        // 同一URL的连接共用第一次创建的缓存，之后传入的容量被忽略
+        assertSame(cache, AggregationPartitionCache.getInstance(URL, 4000L));
+        cache.putPartition("a", new byte[100]);
+        assertNotNull(AggregationPartitionCache.getInstance(URL, 4000L).getPartition("a"));
+        assertNotSame(cache, AggregationPartitionCache.getInstance(URL + "_other", 400L));
+        cache.putPartition("b", new byte[1000]);
+        assertNull(cache.getPartition("b"));
+    }
+
+}
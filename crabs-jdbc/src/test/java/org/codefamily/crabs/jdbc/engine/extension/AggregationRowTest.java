@@ -0,0 +1,227 @@
+package org.codefamily.crabs.jdbc.engine.extension;
+
+import org.codefamily.crabs.core.DataType;
+import org.codefamily.crabs.jdbc.engine.extension.SelectStatementExecutor.AggregationNormalSearchExecutePlan.AggregationRowLimit;
+import org.codefamily.crabs.jdbc.engine.extension.SelectStatementExecutor.AggregationNormalSearchExecutePlan.AggregationRowOrder;
+import org.codefamily.crabs.jdbc.engine.extension.SelectStatementExecutor.AggregationNormalSearchExecutePlan.AggregationRowPredicate;
+import org.codefamily.crabs.jdbc.engine.extension.SelectStatementExecutor.AggregationNormalSearchExecutePlan.AggregationRowTopN;
+import org.codefamily.crabs.jdbc.engine.extension.SelectStatementExecutor.ColumnarResultValues;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class AggregationRowTest {
+
+    // 列依次为：分组名称、计数、平均值
+    private static final DataType[] COLUMN_DATA_TYPES
+            = new DataType[]{DataType.STRING, DataType.LONG, DataType.DOUBLE};
+
+    private static ColumnarResultValues newRows(final Object[][] rows) {
+        final ColumnarResultValues values = new ColumnarResultValues(COLUMN_DATA_TYPES);
+        for (Object[] row : rows) {
+            final int rowIndex = values.addRow();
+            for (int columnIndex = 0; columnIndex < row.length; columnIndex++) {
+                values.setObject(rowIndex, columnIndex, row[columnIndex]);
+            }
+        }
+        return values;
+    }
+
+    private static String[] topN(final AggregationRowOrder rowOrder,
+                                 final ColumnarResultValues rows,
+                                 final int maxRowCount) {
+        final AggregationRowTopN topN = new AggregationRowTopN(rowOrder, COLUMN_DATA_TYPES, maxRowCount);
+        for (int rowIndex = 0; rowIndex < rows.getRowCount(); rowIndex++) {
+            topN.offer(rows, rowIndex);
+        }
+        final int[] sortedRowIndexes = topN.sort();
+        final String[] names = new String[topN.getRowCount()];
+        for (int index = 0; index < names.length; index++) {
+            names[index] = (String) topN.getValues().getObject(sortedRowIndexes[index], 0);
+        }
+        return names;
+    }
+
+    /**
+     * 满足条件的分组名称依次连接成的字符串
+     */
+    private static String matches(final AggregationRowPredicate predicate, final ColumnarResultValues rows) {
+        final StringBuilder names = new StringBuilder();
+        for (int rowIndex = 0; rowIndex < rows.getRowCount(); rowIndex++) {
+            if (predicate.matches(rows, rowIndex)) {
+                names.append(rows.getObject(rowIndex, 0));
+            }
+        }
+        return names.toString();
+    }
+
+    /**
+     * 按limit依次取分组时输出的分组序号
+     */
+    private static String limit(final AggregationRowLimit rowLimit, final int groupCount) {
+        final StringBuilder groups = new StringBuilder();
+        for (int group = 0; group < groupCount && rowLimit.hasRemaining(); group++) {
+            if (rowLimit.accept()) {
+                groups.append(group);
+            }
+        }
+        return groups.toString();
+    }
+
+    private static final Object[][] ROWS = new Object[][]{
+            {"a", 3L, 1.5D},
+            {"b", 7L, 0.5D},
+            {"c", 1L, 2.5D},
+            {"d", 7L, 3.5D},
+            {"e", 5L, null},
+            {"f", 2L, 4.5D}
+    };
+
+    @Test
+    public final void testTopN_KeepFirstRows() throws Exception {
+        final ColumnarResultValues rows = newRows(ROWS);
+        // order by 计数 desc, 平均值
+        final AggregationRowOrder rowOrder
+                = new AggregationRowOrder(new int[]{1, 2}, new boolean[]{false, true});
+        assertArrayEquals(new String[]{"b", "d", "e", "a", "f", "c"}, topN(rowOrder, rows, Integer.MAX_VALUE));
+        assertArrayEquals(new String[]{"b", "d", "e"}, topN(rowOrder, rows, 3));
+        assertArrayEquals(new String[]{"b"}, topN(rowOrder, rows, 1));
+        assertArrayEquals(new String[0], topN(rowOrder, rows, 0));
+    }
+
+    @Test
+    public final void testTopN_NullFirst() throws Exception {
+        final ColumnarResultValues rows = newRows(ROWS);
+        // order by 平均值，null排在最前面
+        final AggregationRowOrder rowOrder = new AggregationRowOrder(new int[]{2}, new boolean[]{true});
+        assertArrayEquals(new String[]{"e", "b", "a"}, topN(rowOrder, rows, 3));
+        // 保留的分组数超过初始容量时扩容
+        final Object[][] manyRows = new Object[40][];
+        for (int index = 0; index < manyRows.length; index++) {
+            manyRows[index] = new Object[]{Integer.toString(index), (long) (index * 7 % 40), 0D};
+        }
+        final AggregationRowOrder countOrder = new AggregationRowOrder(new int[]{1}, new boolean[]{true});
+        final String[] names = topN(countOrder, newRows(manyRows), 20);
+        assertEquals(20, names.length);
+        for (int index = 0; index < names.length; index++) {
+            assertEquals(index, Integer.parseInt(names[index]) * 7 % 40);
+        }
+    }
+
+    @Test
+    public final void testHaving_Comparison() throws Exception {
+        final ColumnarResultValues rows = newRows(ROWS);
+        assertEquals(
+                "bd",
+                matches(new AggregationRowPredicate.Comparison(1, AggregationRowPredicate.Comparison.EQUAL_TO, 7), rows)
+        );
+        // 整数列与浮点数比较
+        assertEquals(
+                "bde",
+                matches(new AggregationRowPredicate.Comparison(
+                        1, AggregationRowPredicate.Comparison.GREATER_THAN, 4.5D), rows)
+        );
+        // 浮点数列，null不满足任何比较
+        assertEquals(
+                "ab",
+                matches(new AggregationRowPredicate.Comparison(
+                        2, AggregationRowPredicate.Comparison.LESS_THAN_OR_EQUAL_TO, 2L), rows)
+        );
+        assertEquals(
+                "abcdf",
+                matches(new AggregationRowPredicate.Comparison(
+                        2, AggregationRowPredicate.Comparison.UNEQUAL_TO, 1L), rows)
+        );
+        // 字符串列
+        assertEquals(
+                "def",
+                matches(new AggregationRowPredicate.Comparison(
+                        0, AggregationRowPredicate.Comparison.GREATER_THAN_OR_EQUAL_TO, "d"), rows)
+        );
+        // 无法转换为数值的值与数值列比较时不满足
+        assertEquals(
+                "",
+                matches(new AggregationRowPredicate.Comparison(
+                        1, AggregationRowPredicate.Comparison.LESS_THAN, "x"), rows)
+        );
+    }
+
+    @Test
+    public final void testHaving_Junction() throws Exception {
+        final ColumnarResultValues rows = newRows(ROWS);
+        final AggregationRowPredicate countGreaterThan2 = new AggregationRowPredicate.Comparison(
+                1, AggregationRowPredicate.Comparison.GREATER_THAN, 2L);
+        final AggregationRowPredicate averageLessThan3 = new AggregationRowPredicate.Comparison(
+                2, AggregationRowPredicate.Comparison.LESS_THAN, 3L);
+        final AggregationRowPredicate averageIsNull = new AggregationRowPredicate.NullTest(2, true);
+        assertEquals(
+                "ab",
+                matches(new AggregationRowPredicate.Junction(
+                        new AggregationRowPredicate[]{countGreaterThan2, averageLessThan3}, true), rows)
+        );
+        assertEquals(
+                "abcde",
+                matches(new AggregationRowPredicate.Junction(
+                        new AggregationRowPredicate[]{countGreaterThan2, averageLessThan3}, false), rows)
+        );
+        assertEquals(
+                "e",
+                matches(averageIsNull, rows)
+        );
+        // not (平均值 < 3 or 平均值 is null)
+        assertEquals(
+                "df",
+                matches(new AggregationRowPredicate.Negation(new AggregationRowPredicate.Junction(
+                        new AggregationRowPredicate[]{averageLessThan3, averageIsNull}, false)), rows)
+        );
+    }
+
+    @Test
+    public final void testLimit_OffsetAndRowCount() throws Exception {
+        assertEquals("234", limit(new AggregationRowLimit(2, 3), 10));
+        // 分组不足offset + rowCount个
+        assertEquals("34", limit(new AggregationRowLimit(3, 5), 5));
+        assertEquals("", limit(new AggregationRowLimit(6, 5), 5));
+        assertEquals("012", limit(new AggregationRowLimit(0, 3), 10));
+        assertEquals("", limit(new AggregationRowLimit(2, 0), 10));
+        // 取满rowCount个分组后不再读取后面的分组
+        final AggregationRowLimit rowLimit = new AggregationRowLimit(1, 2);
+        assertEquals("12", limit(rowLimit, 10));
+        assertFalse(rowLimit.hasRemaining());
+    }
+
+    @Test
+    public final void testLimit_NoLimit() throws Exception {
+        // 没有limit子句时rowCount为-1
+        final AggregationRowLimit rowLimit = new AggregationRowLimit(0, -1);
+        assertEquals(0, rowLimit.getSkipRowCount());
+        assertEquals(Integer.MAX_VALUE, rowLimit.getRetainedRowCount());
+        assertEquals("01234", limit(rowLimit, 5));
+        assertTrue(rowLimit.hasRemaining());
+    }
+
+    @Test
+    public final void testLimit_RetainedRowCount() throws Exception {
+        final AggregationRowLimit rowLimit = new AggregationRowLimit(5, 10);
+        assertEquals(5, rowLimit.getSkipRowCount());
+        assertEquals(15, rowLimit.getRetainedRowCount());
+        // offset + rowCount超出int范围
+        assertEquals(
+                Integer.MAX_VALUE,
+                new AggregationRowLimit(Integer.MAX_VALUE, Integer.MAX_VALUE).getRetainedRowCount()
+        );
+        // 排序后跳过offset个分组，与逐个输出时的结果一致
+        final ColumnarResultValues rows = newRows(ROWS);
+        final AggregationRowOrder rowOrder
+                = new AggregationRowOrder(new int[]{1, 2}, new boolean[]{false, true});
+        final AggregationRowLimit sortedRowLimit = new AggregationRowLimit(2, 3);
+        final String[] names = topN(rowOrder, rows, sortedRowLimit.getRetainedRowCount());
+        assertArrayEquals(
+                new String[]{"e", "a", "f"},
+                Arrays.copyOfRange(names, sortedRowLimit.getSkipRowCount(), names.length)
+        );
+    }
+
+}
@@ -0,0 +1,143 @@
+package org.codefamily.crabs.jdbc.lang.expression.util;
+
+import org.codefamily.crabs.jdbc.compiler.GrammarAnalyzer;
+import org.codefamily.crabs.jdbc.lang.Expression;
+import org.codefamily.crabs.jdbc.lang.expression.Argument;
+import org.codefamily.crabs.jdbc.lang.expression.Constant;
+import org.codefamily.crabs.jdbc.lang.expression.Reference;
+import org.codefamily.crabs.jdbc.lang.extension.expression.*;
+import org.codefamily.crabs.jdbc.lang.extension.statement.SelectStatement;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class ExpressionSimplifierTest {
+
+    // 测试中所有的列都只有一个值
+    private static final ExpressionSimplifier.SingleValuedColumns ALL_SINGLE_VALUED_COLUMNS
+            = new ExpressionSimplifier.SingleValuedColumns() {
+
+        @Override
+        public final boolean isSingleValued(final Reference reference) {
+            return true;
+        }
+
+    };
+
+    @Test
+    public final void testSimplifyCondition_OK() throws Exception {
+        final SelectStatement statement = (SelectStatement) GrammarAnalyzer.analyze(
+                "select * from student where (age = -18 and (class = 'A' and 1 = 1))"
+                        + " and (name = 'Li' or name = ? or name in ('Li', 'Wang') or age > 20)"
+        );
+        final Expression actual = ExpressionSimplifier.simplifyCondition(statement.whereClause.conditionExpression);
+        final Expression expected = new AndExpression(
+                new EqualToExpression(new Reference(null, "age"), new Constant(-18)),
+                new EqualToExpression(new Reference(null, "class"), new Constant("A")),
+                new PreferentialExpression(
+                        new OrExpression(
+                                new InExpression(
+                                        new Reference(null, "name"),
+                                        new Constant("Li"),
+                                        new Argument(0),
+                                        new Constant("Wang")
+                                ),
+                                new GreaterThanExpression(new Reference(null, "age"), new Constant(20))
+                        )
+                )
+        );
+        assertEquals(expected, actual);
+    }
+
+    @Test
+    public final void testSimplifyCondition_TautologyAndContradiction() throws Exception {
+        final SelectStatement tautology = (SelectStatement) GrammarAnalyzer.analyze(
+                "select * from student where age > 18 or 'a' = 'a'"
+        );
+        assertTrue(ExpressionSimplifier.isTrue(
+                ExpressionSimplifier.simplifyCondition(tautology.whereClause.conditionExpression)
+        ));
+        final SelectStatement contradiction = (SelectStatement) GrammarAnalyzer.analyze(
+                "select * from student where age > 18 and (2 < 1 or false)"
+        );
+        assertTrue(ExpressionSimplifier.isFalse(
+                ExpressionSimplifier.simplifyCondition(contradiction.whereClause.conditionExpression)
+        ));
+    }
+
+    @Test
+    public final void testSimplifyCondition_MergeRanges() throws Exception {
+        final SelectStatement statement = (SelectStatement) GrammarAnalyzer.analyze(
+                "select * from student where age > 10 and age <= 20 and age > 5 and age <> 15 and age <> 30"
+                        + " and login_time >= ? and login_time < ?"
+        );
+        final Expression actual = ExpressionSimplifier.simplifyCondition(
+                statement.whereClause.conditionExpression,
+                ALL_SINGLE_VALUED_COLUMNS
+        );
+        final Expression expected = new AndExpression(
+                new RangeExpression(new Reference(null, "age"), new Constant(10), false, new Constant(20), true),
+                new UnequalToExpression(new Reference(null, "age"), new Constant(15)),
+                new RangeExpression(new Reference(null, "login_time"), new Argument(0), true, new Argument(1), false)
+        );
+        assertEquals(expected, actual);
+        assertFalse(expected.equals(new AndExpression(
+                new RangeExpression(new Reference(null, "age"), new Constant(10), true, new Constant(20), true),
+                new UnequalToExpression(new Reference(null, "age"), new Constant(15)),
+                new RangeExpression(new Reference(null, "login_time"), new Argument(0), true, new Argument(1), false)
+        )));
+        final SelectStatement contradiction = (SelectStatement) GrammarAnalyzer.analyze(
+                "select * from student where age between 18 and 20 and age > 20 or (age < 10 and age = 12)"
+        );
+        assertTrue(ExpressionSimplifier.isFalse(
+                ExpressionSimplifier.simplifyCondition(
+                        contradiction.whereClause.conditionExpression,
+                        ALL_SINGLE_VALUED_COLUMNS
+                )
+        ));
+    }
+
+    @Test
+    public final void testSimplifyCondition_MultiValuedColumns() throws Exception {
+        // 只有name只有一个值，tag和age都可能有多个值
+        final ExpressionSimplifier.SingleValuedColumns singleValuedColumns
+                = new ExpressionSimplifier.SingleValuedColumns() {
+
+            @Override
+            public final boolean isSingleValued(final Reference reference) {
+                return reference.columnIdentifier.toString().equals("name");
+            }
+
+        };
+        final SelectStatement statement = (SelectStatement) GrammarAnalyzer.analyze(
+                "select * from student where age > 10 and age < 5 and age > 3 and age = 12 and age <> 30"
+                        + " and tag between 1 and 2 and tag > 5 and name > 'A' and name <= 'C'"
+        );
+        final Expression actual = ExpressionSimplifier.simplifyCondition(
+                statement.whereClause.conditionExpression,
+                singleValuedColumns
+        );
+        // 同一文档可以分别以不同的值满足age > 10和age < 5，只合并同一方向的比较
+        final Expression expected = new AndExpression(
+                new GreaterThanExpression(new Reference(null, "age"), new Constant(10)),
+                new LessThanExpression(new Reference(null, "age"), new Constant(5)),
+                new EqualToExpression(new Reference(null, "age"), new Constant(12)),
+                new UnequalToExpression(new Reference(null, "age"), new Constant(30)),
+                new BetweenExpression(new Reference(null, "tag"), new Constant(1), new Constant(2)),
+                new GreaterThanExpression(new Reference(null, "tag"), new Constant(5)),
+                new RangeExpression(new Reference(null, "name"), new Constant("A"), false, new Constant("C"), true)
+        );
+        assertEquals(expected, actual);
+        assertFalse(ExpressionSimplifier.isFalse(ExpressionSimplifier.simplifyCondition(
+                statement.whereClause.conditionExpression
+        )));
+        // 一个between对应一个range过滤器，范围为空时与列是否有多个值无关
+        final SelectStatement emptyRange = (SelectStatement) GrammarAnalyzer.analyze(
+                "select * from student where age between 20 and 18"
+        );
+        assertTrue(ExpressionSimplifier.isFalse(
+                ExpressionSimplifier.simplifyCondition(emptyRange.whereClause.conditionExpression)
+        ));
+    }
+
+}